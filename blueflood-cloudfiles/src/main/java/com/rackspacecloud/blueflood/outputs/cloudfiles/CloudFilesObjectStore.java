@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.outputs.cloudfiles;
+
+import com.google.common.io.Closeables;
+import com.rackspacecloud.blueflood.service.CloudfilesConfig;
+import com.rackspacecloud.blueflood.service.Configuration;
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.location.reference.LocationConstants;
+
+import java.io.IOException;
+import java.util.Properties;
+
+public class CloudFilesObjectStore implements ObjectStore {
+    public static final String PROVIDER = "cloudfiles-us";
+    public static final String ZONE;
+
+    public static final String USERNAME;
+    public static final String API_KEY;
+
+    private static final String OBJECT_MANIFEST = "X-Object-Manifest";
+
+    private final BlobStoreContext context;
+    private final BlobStore blobStore;
+
+    static {
+        Configuration conf = Configuration.getInstance();
+        USERNAME = conf.getStringProperty(CloudfilesConfig.CLOUDFILES_USERNAME);
+        API_KEY = conf.getStringProperty(CloudfilesConfig.CLOUDFILES_API_KEY);
+        ZONE = conf.getStringProperty(CloudfilesConfig.CLOUDFILES_ZONE);
+    }
+
+    public CloudFilesObjectStore() {
+        Properties overrides = new Properties();
+        overrides.setProperty(LocationConstants.PROPERTY_ZONE, ZONE);
+
+        context = ContextBuilder.newBuilder(PROVIDER)
+                .credentials(USERNAME, API_KEY)
+                .overrides(overrides)
+                .buildView(BlobStoreContext.class);
+        blobStore = context.getBlobStore();
+    }
+
+    public void createContainer(String container) {
+        blobStore.createContainerInLocation(null, container);
+    }
+
+    public void putObject(String container, String name, byte[] payload, String contentType, String contentEncoding) throws IOException {
+        blobStore.putBlob(container, buildBlob(name, payload, contentType, contentEncoding));
+    }
+
+    public void putManifest(String container, String name, String contentType, String contentEncoding) throws IOException {
+        // a Cloud Files dynamic large object: an empty object whose X-Object-Manifest points at the "container/name/"
+        // prefix. It is served with the manifest's own headers, which the swift client's putObjectManifest cannot
+        // set, so the request is built from a signed put instead.
+        Blob manifest = buildBlob(name, new byte[0], contentType, contentEncoding);
+        HttpRequest request = context.getSigner().signPutBlob(container, manifest).toBuilder()
+                .addHeader(OBJECT_MANIFEST, container + "/" + name + "/")
+                .build();
+        HttpResponse response = context.utils().http().invoke(request);
+        try {
+            if (response.getStatusCode() / 100 != 2) {
+                throw new IOException("Could not put manifest " + name + ": " + response.getStatusLine());
+            }
+        } finally {
+            if (response.getPayload() != null) {
+                response.getPayload().release();
+            }
+        }
+    }
+
+    private Blob buildBlob(String name, byte[] payload, String contentType, String contentEncoding) throws IOException {
+        return blobStore.blobBuilder(name).payload(payload)
+                .contentType(contentType)
+                .contentEncoding(contentEncoding == null ? "identity" : contentEncoding)
+                .calculateMD5().build();
+    }
+
+    public void close() throws IOException {
+        Closeables.close(context, true);
+    }
+}
@@ -16,79 +16,103 @@
 
 package com.rackspacecloud.blueflood.outputs.cloudfiles;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.google.common.io.Closeables;
 import com.rackspacecloud.blueflood.service.CloudfilesConfig;
 import com.rackspacecloud.blueflood.service.Configuration;
 import com.rackspacecloud.blueflood.utils.Metrics;
-import org.jclouds.ContextBuilder;
-import org.jclouds.blobstore.BlobStore;
-import org.jclouds.blobstore.BlobStoreContext;
-import org.jclouds.blobstore.domain.Blob;
-import org.jclouds.location.reference.LocationConstants;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
 
 public class CloudFilesPublisher implements Closeable {
-    private final BlobStore blobStore;
+    private static final int BUFFER_SIZE = 64 * 1024;
 
-    public static final String PROVIDER = "cloudfiles-us";
-    public static final String ZONE;
+    // what rollup files are served as, whether they were uploaded in one piece or in segments
+    static final String CONTENT_TYPE = "application/json";
+    static final String CONTENT_ENCODING = "gzip";
 
-    public static final String USERNAME;
-    public static final String API_KEY;
-    public static final SimpleDateFormat CONTAINER_DATE_FORMAT;
     public static final Timer uploadTimer = Metrics.timer(CloudFilesPublisher.class, "Rollup Upload Timer");
+    private static final Meter bytesRead = Metrics.meter(CloudFilesPublisher.class, "Rollup Bytes Read");
+    private static final Counter uploadsInFlight = Metrics.counter(CloudFilesPublisher.class, "Rollup Uploads In Flight");
+
+    private final ObjectStore store;
+    private final int segmentSize;
+    // SimpleDateFormat is not thread-safe, and each uploader thread has its own publisher
+    private final SimpleDateFormat containerDateFormat;
     private String lastContainerCreated = "";
 
-    static {
-        Configuration conf = Configuration.getInstance();
-        USERNAME = conf.getStringProperty(CloudfilesConfig.CLOUDFILES_USERNAME);
-        API_KEY = conf.getStringProperty(CloudfilesConfig.CLOUDFILES_API_KEY);
-        CONTAINER_DATE_FORMAT = new SimpleDateFormat(conf.getStringProperty(CloudfilesConfig.CLOUDFILES_CONTAINER_FORMAT));
-        ZONE = conf.getStringProperty(CloudfilesConfig.CLOUDFILES_ZONE);
+    public CloudFilesPublisher() throws IOException {
+        this(createObjectStore());
     }
 
-    public CloudFilesPublisher() {
-        Properties overrides = new Properties();
-        overrides.setProperty(LocationConstants.PROPERTY_ZONE, ZONE);
+    public CloudFilesPublisher(ObjectStore store) {
+        Configuration conf = Configuration.getInstance();
+        this.store = store;
+        this.segmentSize = conf.getIntegerProperty(CloudfilesConfig.CLOUDFILES_SEGMENT_SIZE);
+        this.containerDateFormat = new SimpleDateFormat(conf.getStringProperty(CloudfilesConfig.CLOUDFILES_CONTAINER_FORMAT));
+    }
 
-        BlobStoreContext context = ContextBuilder.newBuilder(PROVIDER)
-                .credentials(USERNAME, API_KEY)
-                .overrides(overrides)
-                .buildView(BlobStoreContext.class);
-        blobStore = context.getBlobStore();
+    /**
+     * @return a {@link LocalObjectStore} if CLOUDFILES_LOCAL_STORE_DIR is set, otherwise a {@link CloudFilesObjectStore}.
+     */
+    public static ObjectStore createObjectStore() throws IOException {
+        String localDir = Configuration.getInstance().getStringProperty(CloudfilesConfig.CLOUDFILES_LOCAL_STORE_DIR);
+        if (!localDir.isEmpty()) {
+            return new LocalObjectStore(new File(localDir));
+        }
+        return new CloudFilesObjectStore();
     }
 
     // idempotent other than when the month changes between two calls
-    private void createContainer() {
-        String containerName = CONTAINER_DATE_FORMAT.format(new Date());
-        blobStore.createContainerInLocation(null, containerName);
+    private void createContainer(String containerName) throws IOException {
+        store.createContainer(containerName);
         lastContainerCreated = containerName;
     }
 
     public void close() throws IOException {
-        Closeables.close(blobStore.getContext(), true);
+        Closeables.close(store, true);
     }
 
-    public void publish(String remoteName, byte[] payload) throws IOException {
+    /**
+     * Gzips {@code input} and uploads it as {@code remoteName}. The data is compressed as it is read and uploaded in
+     * CLOUDFILES_SEGMENT_SIZE segments as the compressed output fills them, so neither the whole file nor its
+     * compressed form is ever held in memory or written to disk. Closes {@code input}.
+     */
+    public void publish(String remoteName, InputStream input) throws IOException {
         Timer.Context ctx = uploadTimer.time();
+        uploadsInFlight.inc();
+        String containerName = containerDateFormat.format(new Date());
+        SegmentedUploadStream upload = new SegmentedUploadStream(store, containerName, remoteName,
+                CONTENT_TYPE, CONTENT_ENCODING, segmentSize);
+        GZIPOutputStream gzip = null;
         try {
-            Blob blob = blobStore.blobBuilder(remoteName).payload(payload)
-                    .contentType("application/json")
-                    .contentEncoding(remoteName.endsWith(".gz") ? "gzip" : "identity")
-                    .calculateMD5().build();
+            if (!lastContainerCreated.equals(containerName)) {
+                createContainer(containerName);
+            }
 
-            String containerName = CONTAINER_DATE_FORMAT.format(new Date());
-            if (!lastContainerCreated.matches(containerName)) {
-                createContainer();
+            gzip = new GZIPOutputStream(upload, BUFFER_SIZE);
+            byte[] buf = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buf)) != -1) {
+                gzip.write(buf, 0, read);
+                bytesRead.mark(read);
             }
-            blobStore.putBlob(containerName, blob);
+            gzip.finish();
+            upload.complete();
         } finally {
+            // a no-op if the upload completed; otherwise keeps closing the compressor from uploading a partial object
+            upload.abort();
+            Closeables.close(gzip, true);
+            Closeables.close(input, true);
+            uploadsInFlight.dec();
             ctx.stop();
         }
     }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.outputs.cloudfiles;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * An {@link ObjectStore} backed by a local directory: each container is a subdirectory and each object a file in it,
+ * named by the URL-encoded object name. The Content-Type and Content-Encoding of each object are kept in a properties
+ * file of the same name under {@code .metadata/<container>}. Manifests are materialized by concatenating their segments
+ * when they are put.
+ */
+public class LocalObjectStore implements ObjectStore {
+    private static final String ENCODING = "UTF-8";
+    private static final String METADATA_DIR = ".metadata";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+
+    private final File root;
+
+    public LocalObjectStore(File root) throws IOException {
+        if (!root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Could not create local object store directory: " + root.getAbsolutePath());
+        }
+        this.root = root;
+    }
+
+    public synchronized void createContainer(String container) throws IOException {
+        for (File dir : new File[] { new File(root, container), getMetadataDir(container) }) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create container directory: " + dir.getAbsolutePath());
+            }
+        }
+    }
+
+    public void putObject(String container, String name, byte[] payload, String contentType, String contentEncoding) throws IOException {
+        OutputStream out = new FileOutputStream(getFile(container, name));
+        try {
+            out.write(payload);
+        } finally {
+            out.close();
+        }
+        putMetadata(container, name, contentType, contentEncoding);
+    }
+
+    public void putManifest(String container, String name, String contentType, String contentEncoding) throws IOException {
+        List<String> segments = listObjects(container, name + "/");
+        Collections.sort(segments);
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(getFile(container, name)));
+        try {
+            byte[] buf = new byte[64 * 1024];
+            for (String segment : segments) {
+                InputStream in = new FileInputStream(getFile(container, segment));
+                try {
+                    int read;
+                    while ((read = in.read(buf)) != -1) {
+                        out.write(buf, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        putMetadata(container, name, contentType, contentEncoding);
+    }
+
+    /**
+     * @return the names of the objects in {@code container} which start with {@code prefix}.
+     */
+    public List<String> listObjects(String container, String prefix) throws IOException {
+        List<String> names = new ArrayList<String>();
+        String[] files = new File(root, container).list();
+        if (files == null) {
+            throw new FileNotFoundException("No such container: " + container);
+        }
+        for (String file : files) {
+            String name = URLDecoder.decode(file, ENCODING);
+            if (name.startsWith(prefix)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return the file holding the object {@code name} in {@code container}.
+     */
+    public File getFile(String container, String name) throws IOException {
+        return new File(new File(root, container), URLEncoder.encode(name, ENCODING));
+    }
+
+    /**
+     * @return the Content-Type the object was stored with.
+     */
+    public String getContentType(String container, String name) throws IOException {
+        return getMetadata(container, name).getProperty(CONTENT_TYPE);
+    }
+
+    /**
+     * @return the Content-Encoding the object was stored with, or null if it has none.
+     */
+    public String getContentEncoding(String container, String name) throws IOException {
+        return getMetadata(container, name).getProperty(CONTENT_ENCODING);
+    }
+
+    private void putMetadata(String container, String name, String contentType, String contentEncoding) throws IOException {
+        Properties metadata = new Properties();
+        metadata.setProperty(CONTENT_TYPE, contentType);
+        if (contentEncoding != null) {
+            metadata.setProperty(CONTENT_ENCODING, contentEncoding);
+        }
+        OutputStream out = new FileOutputStream(getMetadataFile(container, name));
+        try {
+            metadata.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private Properties getMetadata(String container, String name) throws IOException {
+        Properties metadata = new Properties();
+        InputStream in = new FileInputStream(getMetadataFile(container, name));
+        try {
+            metadata.load(in);
+        } finally {
+            in.close();
+        }
+        return metadata;
+    }
+
+    private File getMetadataDir(String container) {
+        return new File(new File(root, METADATA_DIR), container);
+    }
+
+    private File getMetadataFile(String container, String name) throws IOException {
+        return new File(getMetadataDir(container), URLEncoder.encode(name, ENCODING));
+    }
+
+    public void close() {
+    }
+}
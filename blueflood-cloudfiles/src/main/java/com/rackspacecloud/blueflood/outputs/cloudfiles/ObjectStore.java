@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.outputs.cloudfiles;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The object storage operations {@link CloudFilesPublisher} needs. {@link CloudFilesObjectStore} talks to Rackspace
+ * Cloud Files; {@link LocalObjectStore} keeps objects in a local directory and can stand in for it in tests.
+ */
+public interface ObjectStore extends Closeable {
+
+    void createContainer(String container) throws IOException;
+
+    /**
+     * @param contentEncoding the Content-Encoding to serve the object with, or null for none.
+     */
+    void putObject(String container, String name, byte[] payload, String contentType, String contentEncoding) throws IOException;
+
+    /**
+     * Stores a manifest under {@code name} which presents every object whose name starts with {@code name + "/"},
+     * concatenated in name order, as a single object served with the given Content-Type and Content-Encoding.
+     */
+    void putManifest(String container, String name, String contentType, String contentEncoding) throws IOException;
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.outputs.cloudfiles;
+
+import com.codahale.metrics.Meter;
+import com.rackspacecloud.blueflood.utils.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * An OutputStream which uploads what is written to it in fixed-size segments, so an object can be uploaded while it
+ * is still being produced and without knowing its length up front. If everything fits into one segment it is uploaded
+ * as a plain object; otherwise the segments are uploaded as {@code name/00000001}, {@code name/00000002}, ... and
+ * joined by a manifest stored under {@code name}. Either way, {@code name} is served with the given Content-Type and
+ * Content-Encoding. A segment on its own is only a slice of the object, so segments are stored as untyped bytes.
+ *
+ * Nothing is uploaded as {@code name} until {@link #complete()} is called.
+ */
+class SegmentedUploadStream extends OutputStream {
+    private static final Meter bytesUploaded = Metrics.meter(SegmentedUploadStream.class, "Bytes Uploaded");
+    private static final Meter segmentsUploaded = Metrics.meter(SegmentedUploadStream.class, "Segments Uploaded");
+
+    static final String SEGMENT_CONTENT_TYPE = "application/octet-stream";
+
+    private final ObjectStore store;
+    private final String container;
+    private final String name;
+    private final String contentType;
+    private final String contentEncoding;
+    private final byte[] buffer;
+    private int count = 0;
+    private int segments = 0;
+    private boolean completed = false;
+    private boolean aborted = false;
+
+    SegmentedUploadStream(ObjectStore store, String container, String name, String contentType,
+                          String contentEncoding, int segmentSize) {
+        this.store = store;
+        this.container = container;
+        this.name = name;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.buffer = new byte[segmentSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (aborted) {
+            return;
+        }
+        if (completed) {
+            throw new IOException("Upload of " + name + " was already completed");
+        }
+        while (len > 0) {
+            // a full buffer is only uploaded once more data arrives, so that an object which fits in exactly one
+            // segment is still uploaded as a plain object.
+            if (count == buffer.length) {
+                uploadSegment();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Uploads the rest of the data, and the manifest if the object was split into segments.
+     */
+    public void complete() throws IOException {
+        if (completed || aborted) {
+            return;
+        }
+        if (segments == 0) {
+            put(name, contentType, contentEncoding);
+        } else {
+            uploadSegment();
+            store.putManifest(container, name, contentType, contentEncoding);
+        }
+        completed = true;
+    }
+
+    /**
+     * Discards anything written from now on. Segments which were already uploaded are left in place; they are
+     * overwritten when the same object is uploaded again.
+     */
+    public void abort() {
+        aborted = true;
+    }
+
+    private void uploadSegment() throws IOException {
+        segments++;
+        put(segmentName(name, segments), SEGMENT_CONTENT_TYPE, null);
+        count = 0;
+    }
+
+    private void put(String objectName, String type, String encoding) throws IOException {
+        store.putObject(container, objectName, Arrays.copyOf(buffer, count), type, encoding);
+        bytesUploaded.mark(count);
+        segmentsUploaded.mark();
+    }
+
+    static String segmentName(String name, int segment) {
+        return String.format("%s/%08d", name, segment);
+    }
+}
@@ -30,9 +30,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -41,11 +42,12 @@ public class StorageManager {
     private final File bufferDir;
     private final int maxBufferAge;
     private final int maxBufferSize;
+    private final int uploadThreads;
     private static final int UPLOAD_RETRY_INTERVAL = 30000;
     private final BlockingQueue<RollupFile> done = new LinkedBlockingQueue<RollupFile>();
     private RollupFile current;
-    private Thread uploaderThread;
-    private DoneFileUploader fileUploader;
+    private final List<Thread> uploaderThreads = new ArrayList<Thread>();
+    private final List<DoneFileUploader> fileUploaders = new ArrayList<DoneFileUploader>();
 
     private Meter fileCreationMeter = Metrics.meter(StorageManager.class, "Rollup Files Created");
     private Meter rollupEventsSeen = Metrics.meter(StorageManager.class, "Rollup Events Received");
@@ -59,6 +61,7 @@ public class StorageManager {
         this.maxBufferAge = config.getIntegerProperty(CloudfilesConfig.CLOUDFILES_MAX_BUFFER_AGE);
         this.maxBufferSize = config.getIntegerProperty(CloudfilesConfig.CLOUDFILES_MAX_BUFFER_SIZE);
         this.bufferDir = new File(config.getStringProperty(CloudfilesConfig.CLOUDFILES_BUFFER_DIR));
+        this.uploadThreads = config.getIntegerProperty(CloudfilesConfig.CLOUDFILES_UPLOAD_THREADS);
         this.uploadQueueDepthGauge = new Gauge<Integer>() {
             @Override
             public Integer getValue() {
@@ -94,16 +97,21 @@ public class StorageManager {
     }
 
     /**
-     * Start background storage management and uploading tasks.
+     * Start background storage management and uploading tasks. CLOUDFILES_UPLOAD_THREADS uploaders take files from
+     * the done queue, so that many files can be in flight at once.
      */
     public synchronized void start() {
-        if (uploaderThread != null) {
+        if (!uploaderThreads.isEmpty()) {
             throw new RuntimeException("StorageManager is already started");
         }
 
-        fileUploader = new DoneFileUploader();
-        uploaderThread = new Thread(fileUploader, "StorageManager uploader");
-        uploaderThread.start();
+        for (int i = 0; i < uploadThreads; i++) {
+            DoneFileUploader fileUploader = new DoneFileUploader();
+            Thread uploaderThread = new Thread(fileUploader, "StorageManager uploader " + i);
+            fileUploaders.add(fileUploader);
+            uploaderThreads.add(uploaderThread);
+            uploaderThread.start();
+        }
     }
 
     /**
@@ -111,13 +119,18 @@ public class StorageManager {
      * @throws IOException
      */
     public synchronized void stop() throws IOException {
-        if (uploaderThread == null) {
+        if (uploaderThreads.isEmpty()) {
             throw new RuntimeException("Not running");
         }
 
-        uploaderThread.interrupt();
-        uploaderThread = null;
-        fileUploader.shutdown();
+        for (Thread uploaderThread : uploaderThreads) {
+            uploaderThread.interrupt();
+        }
+        uploaderThreads.clear();
+        for (DoneFileUploader fileUploader : fileUploaders) {
+            fileUploader.shutdown();
+        }
+        fileUploaders.clear();
     }
 
     public synchronized void store(RollupEvent... events) throws IOException {
@@ -149,7 +162,6 @@ public class StorageManager {
 
     private class DoneFileUploader implements Runnable {
         private CloudFilesPublisher publisher;
-        private Gzipper gzipper = new Gzipper();
 
         public DoneFileUploader() {
             resetPublisher();
@@ -181,7 +193,11 @@ public class StorageManager {
                     log.warn("Error closing down existing publisher", e);
                 }
             }
-            this.publisher = new CloudFilesPublisher();
+            try {
+                this.publisher = new CloudFilesPublisher();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not create publisher", e);
+            }
         }
 
         private void shutdown() throws IOException {
@@ -190,10 +206,11 @@ public class StorageManager {
 
 
         private synchronized void uploadAndDeleteFile(RollupFile file) throws InterruptedException {
+            // keep the remote name across retries, so a retry overwrites the segments of a failed attempt
+            String remoteName = file.getRemoteName() + ".gz";
             while (true) {
                 try {
-                    InputStream fileStream = file.asReadStream();
-                    publisher.publish(file.getRemoteName() + ".gz", gzipper.gzip(fileStream));
+                    publisher.publish(remoteName, file.asReadStream());
                     file.delete();
                     break;
                 } catch (FileNotFoundException e) {
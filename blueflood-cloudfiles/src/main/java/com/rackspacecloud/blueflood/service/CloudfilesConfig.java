@@ -24,7 +24,10 @@ public enum CloudfilesConfig implements ConfigDefaults {
     CLOUDFILES_MAX_BUFFER_AGE("3600000"), // 1000*60*60 = 60 minutes
     CLOUDFILES_MAX_BUFFER_SIZE("104857600"), // 1024*1024*100 = 100MB
     CLOUDFILES_BUFFER_DIR("./CLOUDFILES_BUFFER"),
-    CLOUDFILES_HOST_UNIQUE_IDENTIFIER("bf-host");
+    CLOUDFILES_HOST_UNIQUE_IDENTIFIER("bf-host"),
+    CLOUDFILES_UPLOAD_THREADS("4"), // number of rollup files uploaded concurrently
+    CLOUDFILES_SEGMENT_SIZE("5242880"), // 1024*1024*5 = 5MB of compressed data per uploaded segment
+    CLOUDFILES_LOCAL_STORE_DIR(""); // if set, rollup files are published to this directory instead of Cloud Files
 
     static {
         Configuration.getInstance().loadDefaults(CloudfilesConfig.values());
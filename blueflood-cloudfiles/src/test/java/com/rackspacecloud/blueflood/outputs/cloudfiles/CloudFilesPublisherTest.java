@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.outputs.cloudfiles;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.rackspacecloud.blueflood.service.CloudfilesConfig;
+import com.rackspacecloud.blueflood.service.Configuration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class CloudFilesPublisherTest {
+
+    private static final String NAME = "20160101_1451606400000_bf-host.gz";
+
+    private File root;
+    private LocalObjectStore store;
+    private String container;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDir();
+        store = new LocalObjectStore(root);
+        container = new SimpleDateFormat(Configuration.getInstance()
+                .getStringProperty(CloudfilesConfig.CLOUDFILES_CONTAINER_FORMAT)).format(new Date());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        System.clearProperty(CloudfilesConfig.CLOUDFILES_SEGMENT_SIZE.toString());
+        Configuration.getInstance().init();
+        delete(root);
+    }
+
+    @Test
+    public void testSmallFileIsPublishedAsOneGzippedObject() throws IOException {
+        byte[] rollups = rollups(100);
+        new CloudFilesPublisher(store).publish(NAME, new ByteArrayInputStream(rollups));
+
+        Assert.assertEquals(1, store.listObjects(container, "").size());
+        assertPublished(rollups);
+    }
+
+    @Test
+    public void testLargeFileIsPublishedInSegmentsWithSameHeaders() throws IOException {
+        System.setProperty(CloudfilesConfig.CLOUDFILES_SEGMENT_SIZE.toString(), "1024");
+        byte[] rollups = rollups(10000);
+        new CloudFilesPublisher(store).publish(NAME, new ByteArrayInputStream(rollups));
+
+        Assert.assertTrue(store.listObjects(container, NAME + "/").size() > 1);
+        assertPublished(rollups);
+    }
+
+    private void assertPublished(byte[] expected) throws IOException {
+        Assert.assertEquals(CloudFilesPublisher.CONTENT_TYPE, store.getContentType(container, NAME));
+        Assert.assertEquals(CloudFilesPublisher.CONTENT_ENCODING, store.getContentEncoding(container, NAME));
+        InputStream in = new GZIPInputStream(new FileInputStream(store.getFile(container, NAME)));
+        try {
+            Assert.assertArrayEquals(expected, ByteStreams.toByteArray(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] rollups(int count) {
+        Random random = new Random(1);
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            json.append("{\"tenantId\":\"t\",\"value\":").append(random.nextLong()).append("}\n");
+        }
+        return json.toString().getBytes();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
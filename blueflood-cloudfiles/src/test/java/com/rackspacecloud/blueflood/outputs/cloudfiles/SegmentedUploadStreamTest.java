@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.outputs.cloudfiles;
+
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SegmentedUploadStreamTest {
+
+    private static final String CONTAINER = "container";
+    private static final String NAME = "rollups.json.gz";
+
+    private File root;
+    private LocalObjectStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDir();
+        store = new LocalObjectStore(root);
+        store.createContainer(CONTAINER);
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    @Test
+    public void testSingleSegmentIsUploadedAsPlainObject() throws IOException {
+        byte[] data = bytes(100);
+        SegmentedUploadStream upload = new SegmentedUploadStream(store, CONTAINER, NAME, "application/json", "gzip", 100);
+        upload.write(data);
+        upload.complete();
+
+        Assert.assertEquals(Collections.singletonList(NAME), store.listObjects(CONTAINER, ""));
+        Assert.assertArrayEquals(data, Files.toByteArray(store.getFile(CONTAINER, NAME)));
+        Assert.assertEquals("application/json", store.getContentType(CONTAINER, NAME));
+        Assert.assertEquals("gzip", store.getContentEncoding(CONTAINER, NAME));
+    }
+
+    @Test
+    public void testMultipleSegmentsAreJoinedByManifest() throws IOException {
+        byte[] data = bytes(250);
+        SegmentedUploadStream upload = new SegmentedUploadStream(store, CONTAINER, NAME, "application/json", "gzip", 100);
+        upload.write(data, 0, 150);
+        upload.write(data, 150, 100);
+        upload.complete();
+
+        List<String> segments = store.listObjects(CONTAINER, NAME + "/");
+        Collections.sort(segments);
+        Assert.assertEquals(Arrays.asList(NAME + "/00000001", NAME + "/00000002", NAME + "/00000003"), segments);
+        for (String segment : segments) {
+            Assert.assertEquals(SegmentedUploadStream.SEGMENT_CONTENT_TYPE, store.getContentType(CONTAINER, segment));
+            Assert.assertNull(store.getContentEncoding(CONTAINER, segment));
+        }
+        Assert.assertEquals(50, store.getFile(CONTAINER, NAME + "/00000003").length());
+
+        // the manifest is served with the same headers a single-segment object would have.
+        Assert.assertArrayEquals(data, Files.toByteArray(store.getFile(CONTAINER, NAME)));
+        Assert.assertEquals("application/json", store.getContentType(CONTAINER, NAME));
+        Assert.assertEquals("gzip", store.getContentEncoding(CONTAINER, NAME));
+    }
+
+    @Test
+    public void testAbortedUploadLeavesNothingUnderName() throws IOException {
+        SegmentedUploadStream upload = new SegmentedUploadStream(store, CONTAINER, NAME, "application/json", "gzip", 100);
+        upload.write(bytes(150));
+        upload.abort();
+        upload.write(bytes(100));
+        upload.complete();
+
+        Assert.assertEquals(Collections.singletonList(NAME + "/00000001"), store.listObjects(CONTAINER, ""));
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
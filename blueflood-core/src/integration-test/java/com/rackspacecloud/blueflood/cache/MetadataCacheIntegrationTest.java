@@ -16,6 +16,7 @@
 
 package com.rackspacecloud.blueflood.cache;
 
+import com.google.common.collect.Table;
 import com.rackspacecloud.blueflood.io.CassandraModel;
 import com.rackspacecloud.blueflood.io.CassandraUtilsIO;
 import com.rackspacecloud.blueflood.io.astyanax.ACassandraUtilsIO;
@@ -140,6 +141,35 @@ public class MetadataCacheIntegrationTest extends IntegrationTestBase {
         Assert.assertEquals(expected, cache1.get(loc1, key));
     }
 
+    @Test
+    public void testReadAllAndPopulate() throws Exception {
+        Locator loc1 = Locator.createLocatorFromPathComponents( getRandomTenantId(), "prefetch", "one");
+        Locator loc2 = Locator.createLocatorFromPathComponents( getRandomTenantId(), "prefetch", "two");
+        Locator loc3 = Locator.createLocatorFromPathComponents( getRandomTenantId(), "prefetch", "three");
+        MetadataCache writer = MetadataCache.createLoadingCacheInstance(new TimeValue(5, TimeUnit.MINUTES), 1);
+        writer.setIO( metadataIO );
+        writer.put(loc1, "unit", "ms");
+        writer.put(loc2, "unit", "bytes");
+        writer.put(loc2, "type", "counter");
+
+        MetadataCache reader = MetadataCache.createLoadingCacheInstance(new TimeValue(5, TimeUnit.MINUTES), 1);
+        reader.setIO( metadataIO );
+        List<Locator> locators = Arrays.asList(loc1, loc2, loc3);
+        Assert.assertEquals(3, reader.withoutCachedValue(locators, "unit").size());
+
+        Table<Locator, String, String> meta = reader.readAll(locators);
+        Assert.assertEquals("ms", meta.get(loc1, "unit"));
+        Assert.assertEquals("bytes", meta.get(loc2, "unit"));
+        Assert.assertEquals("counter", meta.get(loc2, "type"));
+        Assert.assertTrue(meta.row(loc3).isEmpty());
+
+        reader.populate(locators, meta, "unit");
+        Assert.assertTrue(reader.withoutCachedValue(locators, "unit").isEmpty());
+        Assert.assertEquals("ms", reader.get(loc1, "unit"));
+        Assert.assertEquals("bytes", reader.get(loc2, "unit"));
+        Assert.assertNull(reader.get(loc3, "unit"));
+    }
+
     @Test
     public void testPutsAreNotDuplicative() throws Exception {
         Locator loc1 = Locator.createLocatorFromPathComponents( getRandomTenantId(), "acOne", "ent", "chk", "mz", "met");
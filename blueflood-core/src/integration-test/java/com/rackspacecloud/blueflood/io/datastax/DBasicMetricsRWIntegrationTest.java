@@ -27,8 +27,10 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -249,6 +251,37 @@ public class DBasicMetricsRWIntegrationTest extends IntegrationTestBase {
         Assert.assertEquals(expectedTimestamps, actualTimestamps);
     }
 
+    @Test
+    public void testDataToRollupForManyLocators() throws Exception {
+
+        final long baseMillis = 1333635148000L; // some point during 5 April 2012.
+        long lastMillis = baseMillis + (300 * 1000); // 300 seconds.
+        final String acctId = "ac" + IntegrationTestBase.randString(8);
+
+        final Locator first = Locator.createLocatorFromPathComponents(acctId, "fooService,barServer," + randString(8));
+        final Locator second = Locator.createLocatorFromPathComponents(acctId, "fooService,barServer," + randString(8));
+        final Locator missing = Locator.createLocatorFromPathComponents(acctId, "fooService,barServer," + randString(8));
+
+        DBasicMetricsRW metricsRW = new DBasicMetricsRW(locatorIO, false, new ArrayList<String>());
+
+        List<IMetric> metrics = new ArrayList<IMetric>();
+        for (int i = 0; i < 10; i++) {
+            final long curMillis = baseMillis + (i * 30000); // 30 seconds later.
+            metrics.add(makeMetric(first, curMillis, getRandomIntMetricValue()));
+            if (i % 2 == 0) {
+                metrics.add(makeMetric(second, curMillis, getRandomIntMetricValue()));
+            }
+        }
+        metricsRW.insertMetrics(metrics);
+
+        Map<Locator, Points> points = metricsRW.getDataToRollup(Arrays.asList(first, second, missing), RollupType.BF_BASIC,
+                new Range(baseMillis, lastMillis), CassandraModel.getBasicColumnFamilyName(Granularity.FULL));
+        Assert.assertEquals(3, points.size());
+        Assert.assertEquals(10, points.get(first).getPoints().size());
+        Assert.assertEquals(5, points.get(second).getPoints().size());
+        Assert.assertTrue(points.get(missing).isEmpty());
+    }
+
     @Test
     //In this test, the same value is sent, and the metric is not persisted except for the first time.
     public void testBooleanMetricsWithSameValueAreNotPersisted() throws Exception {
@@ -213,7 +213,8 @@ public class RollupRunnableIntegrationTest extends IntegrationTestBase {
         rr.run();
 
         if (rollupType == RollupType.ENUM) {
-            verify(enumValidatorExec, times(1)).execute(any(EnumValidator.class));
+            // enum locators are validated in batches once the batch window ends.
+            verify(enumValidatorExec, timeout(10000).times(1)).execute(any(EnumValidator.class));
         }
 
         // assert something in 5m for this locator.
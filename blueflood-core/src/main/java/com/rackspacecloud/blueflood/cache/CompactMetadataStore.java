@@ -0,0 +1,369 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.cache;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link MetadataStore} that keeps entries in primitive arrays instead of on-heap objects.
+ *
+ * Locators are reduced to a 64-bit fingerprint and metadata keys and values are interned into a
+ * {@link MetadataStringTable}, so an entry costs a long and three ints (fingerprint, key code, value code and
+ * expiration deadline) in an open-addressing table, instead of a Guava entry, a key object and two strings.
+ *
+ * The table is split into independently locked segments, like the Guava cache it replaces. Unlike Guava, concurrent
+ * misses on the same key are not coalesced: each caller runs its own loader.
+ *
+ * Since locators are not retained, {@link #asTable()} is always empty and {@link #visit(EntryVisitor)} hands out
+ * fingerprints only.
+ */
+public class CompactMetadataStore implements MetadataStore {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final MetadataStringTable strings;
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final long expireAfterWriteNanos;
+    private final Ticker ticker;
+    private final long baseNanos;
+    private final AbstractCache.SimpleStatsCounter statsCounter = new AbstractCache.SimpleStatsCounter();
+
+    public CompactMetadataStore(TimeValue expiration, int concurrency) {
+        this(expiration, concurrency, Ticker.systemTicker(), new MetadataStringTable());
+    }
+
+    CompactMetadataStore(TimeValue expiration, int concurrency, Ticker ticker, MetadataStringTable strings) {
+        int segmentCount = 1;
+        int segmentBits = 0;
+        while (segmentCount < concurrency) {
+            segmentCount <<= 1;
+            segmentBits++;
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+        this.segmentShift = 32 - segmentBits;
+        this.expireAfterWriteNanos = expiration.getUnit().toNanos(expiration.getValue());
+        this.ticker = ticker;
+        this.baseNanos = ticker.read();
+        this.strings = strings;
+    }
+
+    /**
+     * @return the 64-bit fingerprint under which {@code locator} is stored.
+     */
+    public static long fingerprint(Locator locator) {
+        return locator.getFingerprint();
+    }
+
+    @Override
+    public String getIfPresent(Locator locator, String key) {
+        return getIfPresent(fingerprint(locator), key);
+    }
+
+    public String getIfPresent(long fingerprint, String key) {
+        int keyCode = strings.codeOf(key);
+        int valueCode = keyCode == 0 ? 0 : segmentFor(fingerprint, keyCode).get(fingerprint, keyCode, nowSeconds());
+        if (valueCode == 0) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        return strings.valueOf(valueCode);
+    }
+
+    @Override
+    public String peek(Locator locator, String key) {
+        long fingerprint = fingerprint(locator);
+        int keyCode = strings.codeOf(key);
+        int valueCode = keyCode == 0 ? 0 : segmentFor(fingerprint, keyCode).get(fingerprint, keyCode, nowSeconds());
+        return valueCode == 0 ? null : strings.valueOf(valueCode);
+    }
+
+    @Override
+    public String get(Locator locator, String key, Callable<String> loader) throws ExecutionException {
+        long fingerprint = fingerprint(locator);
+        String value = getIfPresent(fingerprint, key);
+        if (value != null) {
+            return value;
+        }
+
+        long start = ticker.read();
+        try {
+            value = loader.call();
+        } catch (Exception ex) {
+            statsCounter.recordLoadException(ticker.read() - start);
+            throw new ExecutionException(ex);
+        }
+        if (value == null) {
+            statsCounter.recordLoadException(ticker.read() - start);
+            throw new ExecutionException(new IllegalStateException("Loader returned null for " + locator + "," + key));
+        }
+        statsCounter.recordLoadSuccess(ticker.read() - start);
+        put(fingerprint, key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Locator locator, String key, String value) {
+        put(fingerprint(locator), key, value);
+    }
+
+    public void put(long fingerprint, String key, String value) {
+        int keyCode = strings.intern(key);
+        int valueCode = strings.intern(value);
+        segmentFor(fingerprint, keyCode).put(fingerprint, keyCode, valueCode, deadlineSeconds(), nowSeconds());
+    }
+
+    @Override
+    public void invalidate(Locator locator, String key) {
+        long fingerprint = fingerprint(locator);
+        int keyCode = strings.codeOf(key);
+        if (keyCode != 0) {
+            segmentFor(fingerprint, keyCode).remove(fingerprint, keyCode);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    @Override
+    public Table<Locator, String, String> asTable() {
+        return HashBasedTable.create();
+    }
+
+    @Override
+    public void visit(EntryVisitor visitor) throws IOException {
+        for (Segment segment : segments) {
+            // copy under the segment lock, then visit without holding it.
+            Segment copy = segment.copy();
+            int now = nowSeconds();
+            for (int i = 0; i < copy.keyCodes.length; i++) {
+                if (copy.keyCodes[i] != 0 && copy.deadlines[i] > now) {
+                    visitor.visit(copy.fingerprints[i], null, strings.valueOf(copy.keyCodes[i]),
+                            strings.valueOf(copy.valueCodes[i]));
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean restore(long fingerprint, Locator locator, String key, String value) {
+        put(locator == null ? fingerprint : fingerprint(locator), key, value);
+        return true;
+    }
+
+    private Segment segmentFor(long fingerprint, int keyCode) {
+        return segments.length == 1 ? segments[0] : segments[hash(fingerprint, keyCode) >>> segmentShift];
+    }
+
+    private int nowSeconds() {
+        return (int) ((ticker.read() - baseNanos) / NANOS_PER_SECOND);
+    }
+
+    // rounded up, so that an entry never expires early.
+    private int deadlineSeconds() {
+        return (int) ((ticker.read() - baseNanos + expireAfterWriteNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+    }
+
+    private static int hash(long fingerprint, int keyCode) {
+        long h = fingerprint * 31 + keyCode;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * A linear-probing hash table of (fingerprint, key code) -> (value code, deadline). A key code of 0 marks an
+     * empty slot.
+     */
+    private static final class Segment {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] fingerprints;
+        private int[] keyCodes;
+        private int[] valueCodes;
+        private int[] deadlines;
+        private int count;
+
+        Segment() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        synchronized int get(long fingerprint, int keyCode, int now) {
+            int slot = find(fingerprint, keyCode);
+            if (slot < 0) {
+                return 0;
+            }
+            if (deadlines[slot] <= now) {
+                removeAt(slot);
+                return 0;
+            }
+            return valueCodes[slot];
+        }
+
+        synchronized void put(long fingerprint, int keyCode, int valueCode, int deadline, int now) {
+            int slot = find(fingerprint, keyCode);
+            if (slot < 0) {
+                if ((count + 1) * 4 > keyCodes.length * 3) {
+                    rehash(now);
+                }
+                slot = hash(fingerprint, keyCode) & (keyCodes.length - 1);
+                while (keyCodes[slot] != 0) {
+                    slot = (slot + 1) & (keyCodes.length - 1);
+                }
+                fingerprints[slot] = fingerprint;
+                keyCodes[slot] = keyCode;
+                count++;
+            }
+            valueCodes[slot] = valueCode;
+            deadlines[slot] = deadline;
+        }
+
+        synchronized void remove(long fingerprint, int keyCode) {
+            int slot = find(fingerprint, keyCode);
+            if (slot >= 0) {
+                removeAt(slot);
+            }
+        }
+
+        synchronized Segment copy() {
+            Segment copy = new Segment();
+            copy.fingerprints = fingerprints.clone();
+            copy.keyCodes = keyCodes.clone();
+            copy.valueCodes = valueCodes.clone();
+            copy.deadlines = deadlines.clone();
+            copy.count = count;
+            return copy;
+        }
+
+        synchronized void clear() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        synchronized int size() {
+            return count;
+        }
+
+        private void allocate(int capacity) {
+            fingerprints = new long[capacity];
+            keyCodes = new int[capacity];
+            valueCodes = new int[capacity];
+            deadlines = new int[capacity];
+            count = 0;
+        }
+
+        private int find(long fingerprint, int keyCode) {
+            int mask = keyCodes.length - 1;
+            int slot = hash(fingerprint, keyCode) & mask;
+            while (keyCodes[slot] != 0) {
+                if (keyCodes[slot] == keyCode && fingerprints[slot] == fingerprint) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        // backward-shift deletion keeps probe sequences intact without tombstones.
+        private void removeAt(int slot) {
+            int mask = keyCodes.length - 1;
+            int hole = slot;
+            int i = (slot + 1) & mask;
+            while (keyCodes[i] != 0) {
+                int ideal = hash(fingerprints[i], keyCodes[i]) & mask;
+                if (((i - ideal) & mask) >= ((i - hole) & mask)) {
+                    fingerprints[hole] = fingerprints[i];
+                    keyCodes[hole] = keyCodes[i];
+                    valueCodes[hole] = valueCodes[i];
+                    deadlines[hole] = deadlines[i];
+                    hole = i;
+                }
+                i = (i + 1) & mask;
+            }
+            keyCodes[hole] = 0;
+            count--;
+        }
+
+        // drops expired entries, growing the table if the live ones still do not leave room for one more.
+        private void rehash(int now) {
+            long[] oldFingerprints = fingerprints;
+            int[] oldKeyCodes = keyCodes;
+            int[] oldValueCodes = valueCodes;
+            int[] oldDeadlines = deadlines;
+
+            int live = 0;
+            for (int i = 0; i < oldKeyCodes.length; i++) {
+                if (oldKeyCodes[i] != 0 && oldDeadlines[i] > now) {
+                    live++;
+                }
+            }
+            int capacity = oldKeyCodes.length;
+            while ((live + 1) * 4 > capacity * 3) {
+                capacity <<= 1;
+            }
+            allocate(capacity);
+            int mask = keyCodes.length - 1;
+            for (int i = 0; i < oldKeyCodes.length; i++) {
+                if (oldKeyCodes[i] == 0 || oldDeadlines[i] <= now) {
+                    continue;
+                }
+                int slot = hash(oldFingerprints[i], oldKeyCodes[i]) & mask;
+                while (keyCodes[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                fingerprints[slot] = oldFingerprints[i];
+                keyCodes[slot] = oldKeyCodes[i];
+                valueCodes[slot] = oldValueCodes[i];
+                deadlines[slot] = oldDeadlines[i];
+                count++;
+            }
+        }
+    }
+}
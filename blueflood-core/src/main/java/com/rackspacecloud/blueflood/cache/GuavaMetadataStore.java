@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The default {@link MetadataStore}: a Guava cache of (locator, key) -> value.
+ */
+class GuavaMetadataStore implements MetadataStore {
+
+    private final Cache<Key, String> cache;
+
+    GuavaMetadataStore(TimeValue expiration, int concurrency) {
+        cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(expiration.getValue(), expiration.getUnit())
+                .concurrencyLevel(concurrency)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public String getIfPresent(Locator locator, String key) {
+        return cache.getIfPresent(new Key(locator, key));
+    }
+
+    @Override
+    public String peek(Locator locator, String key) {
+        return cache.asMap().get(new Key(locator, key));
+    }
+
+    @Override
+    public String get(Locator locator, String key, Callable<String> loader) throws ExecutionException {
+        return cache.get(new Key(locator, key), loader);
+    }
+
+    @Override
+    public void put(Locator locator, String key, String value) {
+        cache.put(new Key(locator, key), value);
+    }
+
+    @Override
+    public void invalidate(Locator locator, String key) {
+        cache.invalidate(new Key(locator, key));
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return cache.size();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public Table<Locator, String, String> asTable() {
+        Map<Key, String> map = new HashMap<Key, String>(cache.asMap());
+        Table<Locator, String, String> table = HashBasedTable.create();
+        for (Map.Entry<Key, String> entry : map.entrySet()) {
+            table.put(entry.getKey().locator, entry.getKey().keyString, entry.getValue());
+        }
+        return table;
+    }
+
+    @Override
+    public void visit(EntryVisitor visitor) throws IOException {
+        for (Map.Entry<Key, String> entry : cache.asMap().entrySet()) {
+            visitor.visit(0, entry.getKey().locator, entry.getKey().keyString, entry.getValue());
+        }
+    }
+
+    @Override
+    public boolean restore(long fingerprint, Locator locator, String key, String value) {
+        if (locator == null) {
+            return false;
+        }
+        put(locator, key, value);
+        return true;
+    }
+
+    private static final class Key {
+        private final Locator locator;
+        private final String keyString;
+        private final int hashCode;
+
+        Key(Locator locator, String keyString) {
+            this.locator = locator;
+            this.keyString = keyString;
+            hashCode = (locator.toString() + "," + keyString).hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key)obj;
+            return locator.equals(other.locator) && keyString.equals(other.keyString);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.cache;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.rackspacecloud.blueflood.service.Configuration;
+import com.rackspacecloud.blueflood.service.CoreConfig;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.utils.Clock;
+import com.rackspacecloud.blueflood.utils.DefaultClockImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A time-partitioned Bloom filter of the locators that were indexed for discovery, used to skip re-indexing the
+ * locators that were already indexed before a restart. Writes to metrics_locator do not use it: they are skipped
+ * only for the locators in the exact cache of {@link com.rackspacecloud.blueflood.io.AbstractMetricsRW}, so a
+ * false positive can never leave a locator out of metrics_locator. A locator is added only once every discovery
+ * module reported its document indexed, not when the document was merely queued.
+ *
+ * Locators are added to the newest partition. A new partition is started once the newest one is older than the
+ * partition period or holds its expected number of insertions, so the filter grows with the number of locators
+ * instead of degrading. A partition is dropped once nothing was added to it for the whole window (partition
+ * period times the number of partitions), which keeps every positive answer backed by indexing done within the
+ * window. A false positive only delays the indexing of a new locator until the partitions that hold it are dropped.
+ *
+ * The filter can be saved to and loaded from a local file so that it survives restarts.
+ */
+public class IndexedLocatorFilter {
+    private static final Logger log = LoggerFactory.getLogger(IndexedLocatorFilter.class);
+
+    static final int MAGIC = 0x42464c46; // "BFLF"
+    static final short VERSION = 1;
+
+    private static volatile boolean initialized = false;
+    private static volatile IndexedLocatorFilter instance;
+
+    private final Clock clock;
+    private final long partitionMillis;
+    private final int maxPartitions;
+    private final int expectedInsertions;
+    private final double fpp;
+
+    // oldest first. guarded by this.
+    private final List<Partition> partitions = new ArrayList<Partition>();
+
+    /**
+     * @return the process wide filter, or null if {@link CoreConfig#LOCATOR_FILTER_ENABLED} is off.
+     */
+    public static IndexedLocatorFilter getInstanceIfEnabled() {
+        if (!initialized) {
+            synchronized (IndexedLocatorFilter.class) {
+                if (!initialized) {
+                    Configuration config = Configuration.getInstance();
+                    if (config.getBooleanProperty(CoreConfig.LOCATOR_FILTER_ENABLED)) {
+                        instance = new IndexedLocatorFilter(new DefaultClockImpl(),
+                                TimeUnit.MINUTES.toMillis(config.getIntegerProperty(CoreConfig.LOCATOR_FILTER_PARTITION_MINS)),
+                                config.getIntegerProperty(CoreConfig.LOCATOR_FILTER_PARTITIONS),
+                                config.getIntegerProperty(CoreConfig.LOCATOR_FILTER_EXPECTED_INSERTIONS),
+                                config.getFloatProperty(CoreConfig.LOCATOR_FILTER_FPP));
+                    }
+                    initialized = true;
+                }
+            }
+        }
+        return instance;
+    }
+
+    IndexedLocatorFilter(Clock clock, long partitionMillis, int maxPartitions, int expectedInsertions, double fpp) {
+        if (partitionMillis <= 0 || maxPartitions <= 0 || expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("Invalid locator filter settings");
+        }
+        this.clock = clock;
+        this.partitionMillis = partitionMillis;
+        this.maxPartitions = maxPartitions;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+    }
+
+    /**
+     * @return true if {@code locator} was probably added within the window, false if it definitely was not.
+     */
+    public synchronized boolean mightContain(Locator locator) {
+        long now = clock.now().getMillis();
+        expire(now);
+        long fingerprint = locator.getFingerprint();
+        // newest first, recent locators are the likely hits.
+        for (int i = partitions.size() - 1; i >= 0; i--) {
+            if (partitions.get(i).filter.mightContain(fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void put(Locator locator) {
+        long now = clock.now().getMillis();
+        expire(now);
+        Partition newest = partitions.isEmpty() ? null : partitions.get(partitions.size() - 1);
+        if (newest == null || newest.count >= expectedInsertions || now - newest.created >= partitionMillis) {
+            newest = new Partition(now, now, 0, BloomFilter.create(Funnels.longFunnel(), expectedInsertions, fpp));
+            partitions.add(newest);
+        }
+        newest.filter.put(locator.getFingerprint());
+        newest.count++;
+        newest.lastPut = now;
+    }
+
+    synchronized int getPartitionCount() {
+        expire(clock.now().getMillis());
+        return partitions.size();
+    }
+
+    private void expire(long now) {
+        long window = partitionMillis * maxPartitions;
+        Iterator<Partition> it = partitions.iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastPut >= window) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes the filter to {@code file}, replacing it only once the new contents are complete.
+     */
+    public void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        int written;
+        try {
+            written = writeTo(out);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            // rename does not replace an existing file on every platform.
+            if (!file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Could not move " + tmp + " to " + file);
+            }
+        }
+        log.info("Saved {} locator filter partitions to {}", written, file);
+    }
+
+    synchronized int writeTo(DataOutputStream out) throws IOException {
+        expire(clock.now().getMillis());
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(partitions.size());
+        for (Partition partition : partitions) {
+            out.writeLong(partition.created);
+            out.writeLong(partition.lastPut);
+            out.writeInt(partition.count);
+            partition.filter.writeTo(out);
+        }
+        return partitions.size();
+    }
+
+    /**
+     * Replaces the contents of the filter with the partitions saved in {@code file}, skipping the ones that have
+     * expired since.
+     */
+    public void load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            readFrom(in);
+        } finally {
+            in.close();
+        }
+        log.info("Loaded {} locator filter partitions from {}", getPartitionCount(), file);
+    }
+
+    synchronized void readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a locator filter snapshot");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported locator filter snapshot version " + version);
+        }
+        int count = in.readInt();
+        List<Partition> loaded = new ArrayList<Partition>(count);
+        for (int i = 0; i < count; i++) {
+            long created = in.readLong();
+            long lastPut = in.readLong();
+            int inserted = in.readInt();
+            loaded.add(new Partition(created, lastPut, inserted, BloomFilter.readFrom(in, Funnels.longFunnel())));
+        }
+        partitions.clear();
+        partitions.addAll(loaded);
+        expire(clock.now().getMillis());
+    }
+
+    private static class Partition {
+        private final long created;
+        private long lastPut;
+        private int count;
+        private final BloomFilter<Long> filter;
+
+        private Partition(long created, long lastPut, int count, BloomFilter<Long> filter) {
+            this.created = created;
+            this.lastPut = lastPut;
+            this.count = count;
+            this.filter = filter;
+        }
+    }
+}
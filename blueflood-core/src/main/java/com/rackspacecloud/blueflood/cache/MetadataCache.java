@@ -18,13 +18,12 @@ package com.rackspacecloud.blueflood.cache;
 
 import com.codahale.metrics.*;
 import com.codahale.metrics.Timer;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
 import com.google.common.cache.CacheStats;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import com.rackspacecloud.blueflood.concurrent.ThreadPoolBuilder;
 import com.rackspacecloud.blueflood.exceptions.CacheException;
+import com.rackspacecloud.blueflood.exceptions.MetadataReadException;
 import com.rackspacecloud.blueflood.io.IOContainer;
 import com.rackspacecloud.blueflood.io.MetadataIO;
 import com.rackspacecloud.blueflood.service.Configuration;
@@ -40,19 +39,18 @@ import org.slf4j.LoggerFactory;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.io.*;
 import java.lang.management.ManagementFactory;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBean {
     // todo: give each cache a name.
 
-    private final com.google.common.cache.LoadingCache<CacheKey, String> cache;
+    private final MetadataStore cache;
     private static final String NULL = "null".intern();
     private static final Logger log = LoggerFactory.getLogger(MetadataCache.class);
     private static final TimeValue defaultExpiration = new TimeValue(Configuration.getInstance().getIntegerProperty(
@@ -63,6 +61,10 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
     private final Boolean batchedWrites;
     private static final boolean SHOULD_STORE_UNITS = Configuration.getInstance().getBooleanProperty(
             CoreConfig.SHOULD_STORE_UNITS);
+    private static final int prefetchBatchSize = Configuration.getInstance().getIntegerProperty(
+            CoreConfig.META_CACHE_PREFETCH_BATCH_SIZE);
+    private static final boolean USE_COMPACT_STORE = Configuration.getInstance().getBooleanProperty(
+            CoreConfig.META_CACHE_COMPACT_STORE);
 
     // Specific to batched meta reads
 
@@ -98,6 +100,17 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
 
     private static final MetadataCache INSTANCE = new MetadataCache(defaultExpiration, defaultConcurrency);
     private MetadataIO io = IOContainer.fromConfig().getMetadataIO();
+    // Specific to snapshot persistence
+
+    private static final int snapshotMaxDeltas = Configuration.getInstance().getIntegerProperty(
+            CoreConfig.METADATA_CACHE_PERSISTENCE_MAX_DELTAS);
+    private static final int snapshotLoadThreads = Configuration.getInstance().getIntegerProperty(
+            CoreConfig.METADATA_CACHE_PERSISTENCE_LOAD_THREADS);
+    private final Object snapshotLock = new Object();
+    private final Set<CacheKey> dirtyKeys = Collections.newSetFromMap(new ConcurrentHashMap<CacheKey, Boolean>());
+    private volatile boolean trackDirtyKeys = false; // only once a full snapshot exists to write deltas against.
+    private int deltasSinceFullSnapshot = 0;
+
     private static Timer cacheSaveTimer = Metrics.timer(MetadataCache.class, "Persistence Save");
     private static Timer cacheLoadTimer = Metrics.timer(MetadataCache.class, "Persistence Load");
     private static final Meter updatedMetricMeter = Metrics.meter(MetadataCache.class, "Received updated metric");
@@ -124,17 +137,11 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
             log.error("Unable to register mbean for " + getClass().getName(), ex);
         }
 
-        CacheLoader<CacheKey, String> loader = new CacheLoader<CacheKey, String>() {
-            @Override
-            public String load(CacheKey key) throws Exception {
-                return MetadataCache.this.databaseLoad(key.locator, key.keyString);
-            }
-        };
-        cache = CacheBuilder.newBuilder()
-                .expireAfterWrite(expiration.getValue(), expiration.getUnit())
-                .concurrencyLevel(concurrency)
-                .recordStats()
-                .build(loader);
+        if (USE_COMPACT_STORE) {
+            cache = new CompactMetadataStore(expiration, concurrency);
+        } else {
+            cache = new GuavaMetadataStore(expiration, concurrency);
+        }
         try {
             Metrics.getRegistry().register(MetricRegistry.name(MetadataCache.class, "Cache Size"), this.cacheSizeGauge);
         } catch (Exception e) {
@@ -200,10 +207,9 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
         Timer.Context ctx = cacheSaveTimer.time();
         try {
         // convert to a table. this avoids us writing out the locator over and over.
-            Map<CacheKey, String> map = new HashMap<CacheKey, String>(cache.asMap());
-            Table<Locator, String, String> table = HashBasedTable.create();
-            for (Map.Entry<CacheKey, String> entry : map.entrySet()) {
-                table.put(entry.getKey().locator, entry.getKey().keyString, entry.getValue());
+            Table<Locator, String, String> table = cache.asTable();
+            if (USE_COMPACT_STORE) {
+                log.warn("The compact metadata store does not retain locators; use saveSnapshot() to persist it.");
             }
             
             Set<Locator> rowKeys = table.rowKeySet();
@@ -233,7 +239,38 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
                 Locator locator = Locator.createLocatorFromDbKey(in.readUTF());
                 int numPairs = in.readInt();
                 for (int pairIndex = 0; pairIndex < numPairs; pairIndex++) {
-                    cache.put(new CacheKey(locator, in.readUTF()), in.readUTF());
+                    cache.put(locator, in.readUTF(), in.readUTF());
+                }
+            }
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    /**
+     * Persists the cache to {@code file} in the {@link MetadataSnapshot} format. The first save, and every
+     * METADATA_CACHE_PERSISTENCE_MAX_DELTAS saves after that, rewrite the whole file; the saves in between only
+     * append the entries that changed since the previous save.
+     */
+    public void saveSnapshot(File file) throws IOException {
+        Timer.Context ctx = cacheSaveTimer.time();
+        try {
+            synchronized (snapshotLock) {
+                boolean success = false;
+                try {
+                    if (!trackDirtyKeys || !file.isFile() || deltasSinceFullSnapshot >= snapshotMaxDeltas) {
+                        writeFullSnapshot(file);
+                        deltasSinceFullSnapshot = 0;
+                    } else {
+                        writeDeltaSnapshot(file);
+                        deltasSinceFullSnapshot++;
+                    }
+                    success = true;
+                } finally {
+                    if (!success) {
+                        // changes may be missing from the file; start over with a full snapshot next time.
+                        trackDirtyKeys = false;
+                    }
                 }
             }
         } finally {
@@ -241,8 +278,86 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
         }
     }
 
+    private void writeFullSnapshot(File file) throws IOException {
+        // track changes from before the visit starts, so that anything changing during the visit lands in the next delta.
+        trackDirtyKeys = true;
+        dirtyKeys.clear();
+
+        boolean replace = !file.exists() || file.isFile();
+        File target = replace ? new File(file.getPath() + ".tmp") : file;
+        final MetadataSnapshot.Writer writer = new MetadataSnapshot.Writer(target, false, MetadataSnapshot.FULL);
+        try {
+            cache.visit(new MetadataStore.EntryVisitor() {
+                @Override
+                public void visit(long fingerprint, Locator locator, String key, String value) throws IOException {
+                    writer.add(fingerprint, locator, key, value);
+                }
+            });
+        } finally {
+            writer.close();
+        }
+        if (replace && !target.renameTo(file)) {
+            throw new IOException("Unable to move " + target + " to " + file);
+        }
+    }
+
+    private void writeDeltaSnapshot(File file) throws IOException {
+        MetadataSnapshot.Writer writer = new MetadataSnapshot.Writer(file, true, MetadataSnapshot.DELTA);
+        try {
+            Iterator<CacheKey> keys = dirtyKeys.iterator();
+            while (keys.hasNext()) {
+                CacheKey key = keys.next();
+                // removed before the read, so a concurrent change is either seen here or marked dirty again.
+                keys.remove();
+                writer.add(0, key.locator(), key.keyString(), cache.peek(key.locator(), key.keyString()));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Loads a file written by {@link #saveSnapshot(File)}, or by {@link #save(DataOutputStream)} for files in the
+     * older format.
+     */
+    public void loadSnapshot(File file) throws IOException {
+        if (!MetadataSnapshot.isSnapshot(file)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                load(in);
+            } finally {
+                in.close();
+            }
+            return;
+        }
+
+        Timer.Context ctx = cacheLoadTimer.time();
+        try {
+            final AtomicLong skipped = new AtomicLong(0);
+            long entries = MetadataSnapshot.read(file, snapshotLoadThreads, new MetadataStore.EntryVisitor() {
+                @Override
+                public void visit(long fingerprint, Locator locator, String key, String value) {
+                    if (value == null) {
+                        if (locator != null) {
+                            cache.invalidate(locator, key);
+                        }
+                    } else if (!cache.restore(fingerprint, locator, key, value)) {
+                        skipped.incrementAndGet();
+                    }
+                }
+            });
+            log.info("Loaded " + entries + " metadata snapshot entries from " + file);
+            if (skipped.get() > 0) {
+                log.warn("Skipped " + skipped.get() + " metadata snapshot entries without locators; "
+                        + "they were saved by the compact metadata store.");
+            }
+        } finally {
+            ctx.stop();
+        }
+    }
+
     public boolean containsKey(Locator locator, String key) {
-        return cache.getIfPresent(new CacheKey(locator, key)) != null;
+        return cache.getIfPresent(locator, key) != null;
     }
 
     public String get(Locator locator, String key) throws CacheException {
@@ -250,7 +365,7 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
             return getImmediately(locator, key);
         }
 
-        String val = cache.getIfPresent(new CacheKey(locator, key));
+        String val = cache.getIfPresent(locator, key);
 
         if (val == null) {
             databaseLazyLoad(locator); // loads all meta for the locator (optimized to prevent duplicate reads)
@@ -259,11 +374,15 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
         return val;
     }
 
-    public String getImmediately(Locator locator, String key) throws CacheException {
+    public String getImmediately(final Locator locator, final String key) throws CacheException {
         Timer.Context cacheGetTimerContext = cacheGetTimer.time();
         try {
-            CacheKey cacheKey = new CacheKey(locator, key);
-            String result = cache.get(cacheKey);
+            String result = cache.get(locator, key, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return databaseLoad(locator, key);
+                }
+            });
             if (result.equals(NULL)) {
                 return null;
             } else {
@@ -288,10 +407,17 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
         }
     }
 
+    /**
+     * @return true if {@link #getUnitString(Locator)} reads units from metrics_metadata.
+     */
+    public static boolean readsUnitsFromMetadata() {
+        return SHOULD_STORE_UNITS && !Util.shouldUseESForUnits();
+    }
+
     public String getUnitString(Locator locator) {
         String unitString = Util.UNKNOWN;
         // Only grab units from cassandra, if we have to
-        if (SHOULD_STORE_UNITS && !Util.shouldUseESForUnits()) {
+        if (readsUnitsFromMetadata()) {
             try {
                 unitString = get(locator, MetricMetadata.UNIT.name().toLowerCase(), String.class);
             } catch (CacheException ex) {
@@ -304,6 +430,96 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
         return unitString;
     }
 
+    /**
+     * @return the locators that have no cached value for {@code key}.
+     */
+    public Set<Locator> withoutCachedValue(Collection<Locator> locators, String key) {
+        Set<Locator> missing = new HashSet<Locator>();
+        for (Locator locator : locators) {
+            if (cache.peek(locator, key) == null) {
+                missing.add(locator);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Reads all metadata of {@code locators} from the database, META_CACHE_PREFETCH_BATCH_SIZE locators per
+     * multi-key read. The result is not cached; see {@link #populate(Collection, Table, String)}.
+     *
+     * @throws CacheException if any of the locators could not be read.
+     */
+    public Table<Locator, String, String> readAll(Collection<Locator> locators) throws CacheException {
+        Set<Locator> failed = new HashSet<Locator>();
+        Table<Locator, String, String> meta = readAll(locators, failed);
+        if (!failed.isEmpty()) {
+            throw new CacheException(String.format("Could not read metadata for %d locators", failed.size()));
+        }
+        return meta;
+    }
+
+    /**
+     * Like {@link #readAll(Collection)}, but tolerates some locators failing to read: those are added to
+     * {@code failed} and left out of the result. Callers must not take a failed locator's absence from the result
+     * to mean it has no metadata.
+     */
+    public Table<Locator, String, String> readAll(Collection<Locator> locators, Set<Locator> failed) throws CacheException {
+        Table<Locator, String, String> meta = HashBasedTable.create();
+        Timer.Context ctx = batchedReadsTimerMetric.time();
+        try {
+            Set<Locator> batch = new HashSet<Locator>();
+            for (Locator locator : locators) {
+                batch.add(locator);
+                if (batch.size() == prefetchBatchSize) {
+                    readBatch(batch, meta, failed);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                readBatch(batch, meta, failed);
+            }
+            return meta;
+        } catch (IOException ex) {
+            throw new CacheException(ex);
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    private void readBatch(Set<Locator> batch, Table<Locator, String, String> meta, Set<Locator> failed) throws IOException {
+        try {
+            meta.putAll(io.getAllValues(batch));
+        } catch (MetadataReadException ex) {
+            log.warn("Could not read metadata for {} of {} locators", ex.getFailedLocators().size(), batch.size());
+            failed.addAll(ex.getFailedLocators());
+            for (Map.Entry<Locator, Map<String, String>> row : ex.getPartialResult().rowMap().entrySet()) {
+                if (!ex.getFailedLocators().contains(row.getKey())) {
+                    meta.row(row.getKey()).putAll(row.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Caches metadata that was read in bulk. Values already in the cache are kept. Unless reads are batched,
+     * locators that have no {@code key} in {@code meta} are cached as not having one, so that looking them up
+     * later does not go to the database either; {@code locators} must therefore only hold locators whose read
+     * succeeded.
+     */
+    public void populate(Collection<Locator> locators, Table<Locator, String, String> meta, String key) {
+        for (Locator locator : locators) {
+            Map<String, String> row = meta.row(locator);
+            for (Map.Entry<String, String> entry : row.entrySet()) {
+                if (entry.getValue() != null && cache.peek(locator, entry.getKey()) == null) {
+                    cachePut(locator, entry.getKey(), entry.getValue());
+                }
+            }
+            if (!batchedReads && !row.containsKey(key) && cache.peek(locator, key) == null) {
+                cachePut(locator, key, NULL);
+            }
+        }
+    }
+
     // todo: synchronization?
     // returns true if updated.
     public boolean put(Locator locator, String key, String value) throws CacheException {
@@ -312,11 +528,10 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
         Timer.Context cachePutTimerContext = MetadataCache.cachePutTimer.time();
         boolean dbWrite = false;
         try {
-            CacheKey cacheKey = new CacheKey(locator, key);
-            String oldValue = cache.getIfPresent(cacheKey);
+            String oldValue = cache.getIfPresent(locator, key);
             // don't care if oldValue == EMPTY.
             // always put new value in the cache. it keeps reads from happening.
-            cache.put(cacheKey, value);
+            cachePut(locator, key, value);
             if (oldValue == null || !oldValue.equals(value)) {
                 dbWrite = true;
             }
@@ -337,7 +552,19 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
     }
 
     public void invalidate(Locator locator, String key) {
-        cache.invalidate(new CacheKey(locator, key));
+        cache.invalidate(locator, key);
+        markDirty(locator, key);
+    }
+
+    private void cachePut(Locator locator, String key, String value) {
+        cache.put(locator, key, value);
+        markDirty(locator, key);
+    }
+
+    private void markDirty(Locator locator, String key) {
+        if (trackDirtyKeys) {
+            dirtyKeys.add(new CacheKey(locator, key));
+        }
     }
 
     private void databasePut(Locator locator, String key, String value) throws CacheException {
@@ -351,10 +578,9 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
     // implements the CacheLoader interface.
     private String databaseLoad(Locator locator, String key) throws CacheException {
         try {
-            CacheKey cacheKey = new CacheKey(locator, key);
             Map<String, String> metadata = io.getAllValues(locator);
             if (metadata == null || metadata.isEmpty()) {
-                cache.put(cacheKey, NULL);
+                cachePut(locator, key, NULL);
                 return NULL;
             }
 
@@ -365,15 +591,14 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
                 if (meta.getValue() != null)
                     metadataRowSize += meta.getValue().getBytes().length;
                 if (meta.getKey().equals(key)) continue;
-                CacheKey metaKey = new CacheKey(locator, meta.getKey());
-                cache.put(metaKey, meta.getValue());
+                cachePut(locator, meta.getKey(), meta.getValue());
             }
             totalMetadataSize.update(metadataRowSize);
 
             String value = metadata.get(key);
 
             if (value == null) {
-                cache.put(cacheKey, NULL);
+                cachePut(locator, key, NULL);
                 value = NULL;
             }
 
@@ -444,7 +669,7 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
                     CacheKey compoundKey = metaWrites.poll(); // destructive read.
                     Locator locator = compoundKey.locator();
                     String metaKey = compoundKey.keyString();
-                    String metaVal = cache.getIfPresent(compoundKey);
+                    String metaVal = cache.getIfPresent(locator, metaKey);
                     if (metaVal != null) {
                         metaBatch.put(locator, metaKey, metaVal);
                     }
@@ -514,18 +739,27 @@ public class MetadataCache extends AbstractJmxCache implements MetadataCacheMBea
         public void run() {
             Timer.Context ctx = batchedReadsTimerMetric.time();
             try {
-                Table<Locator, String, String> metaTable = io.getAllValues(locators);
+                Table<Locator, String, String> metaTable;
+                try {
+                    metaTable = io.getAllValues(locators);
+                } catch (MetadataReadException ex) {
+                    // keep what was read, and queue up the locators that failed again (at the end)
+                    metaTable = ex.getPartialResult();
+                    for (Locator locator : ex.getFailedLocators()) {
+                        metaReads.add(locator);
+                    }
+                    log.error("Exception reading metadata from db (batched reads)", ex);
+                }
                 int metadataRowSize = 0;
 
                 for (Locator locator : metaTable.rowKeySet()) {
                     Map<String, String> metaMapForLocator = metaTable.row(locator);
 
                     for (Map.Entry<String, String> meta : metaMapForLocator.entrySet()) {
-                        CacheKey metaKey = new CacheKey(locator, meta.getKey());
-                        String existing = cache.getIfPresent(metaKey);
+                        String existing = cache.getIfPresent(locator, meta.getKey());
 
                         if (existing == null) {
-                            cache.put(metaKey, meta.getValue());
+                            cachePut(locator, meta.getKey(), meta.getValue());
                         }
 
                         boolean differs = existing != null && !existing.equals(meta.getValue());
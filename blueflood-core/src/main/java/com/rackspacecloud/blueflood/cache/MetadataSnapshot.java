@@ -0,0 +1,384 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.cache;
+
+import com.google.common.base.Charsets;
+import com.rackspacecloud.blueflood.concurrent.ThreadPoolBuilder;
+import com.rackspacecloud.blueflood.types.Locator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+/**
+ * The on-disk format of a persisted {@link MetadataCache}.
+ *
+ * A snapshot file is a sequence of segments. A full save writes the whole cache as one or more FULL segments; an
+ * incremental save appends a DELTA segment holding only the entries changed since the previous save, with removed
+ * entries written without a value. Entries in later segments override earlier ones.
+ *
+ * Each segment is a 24 byte header (int magic, short version, byte kind, byte unused, long creation time millis,
+ * int body length, int CRC32 of the body) followed by the body: the metadata key/value string table, the locator
+ * string table, an int entry count and the entries. A string table is an int count, that many int end offsets and
+ * then the UTF-8 bytes. Each entry is a fixed 20 bytes: long fingerprint, int locator index, int key index and
+ * int value index. The locator index is -1 for entries written by a backend that keeps fingerprints only (the
+ * fingerprint is 0 otherwise), and the value index is -1 for removed entries.
+ *
+ * Fixed size entries let the reader split a memory-mapped segment between several threads. A truncated segment or
+ * one whose checksum does not match (typically a save that was cut short) ends the read, keeping what came before.
+ */
+public class MetadataSnapshot {
+    private static final Logger log = LoggerFactory.getLogger(MetadataSnapshot.class);
+
+    static final int MAGIC = 0x42464d43; // "BFMC"
+    static final short VERSION = 1;
+    static final byte FULL = 0;
+    static final byte DELTA = 1;
+
+    private static final int HEADER_SIZE = 24;
+    private static final int ENTRY_SIZE = 20;
+    private static final int NO_LOCATOR = -1;
+    private static final int REMOVED = -1;
+    private static final int DEFAULT_ENTRIES_PER_SEGMENT = 1 << 18;
+
+    /**
+     * @return true if {@code file} starts with a snapshot segment, false if it is empty or in the legacy format.
+     */
+    public static boolean isSnapshot(File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return in.readInt() == MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads every entry of {@code file} into {@code visitor}, splitting each segment between {@code threads} threads.
+     * Removed entries are passed to the visitor with a null value.
+     *
+     * @return the number of entries read.
+     */
+    public static long read(File file, int threads, MetadataStore.EntryVisitor visitor) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ExecutorService executor = null;
+        if (threads > 1) {
+            executor = new ThreadPoolBuilder().withCorePoolSize(threads).withMaxPoolSize(threads)
+                    .withUnboundedQueue().withName("MetadataSnapshotReader").build();
+        }
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            long position = 0;
+            long entries = 0;
+            while (position + HEADER_SIZE <= size) {
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, position, HEADER_SIZE);
+                int magic = header.getInt();
+                short version = header.getShort();
+                header.get(); // kind
+                header.get(); // unused
+                header.getLong(); // created
+                int bodyLength = header.getInt();
+                int checksum = header.getInt();
+
+                if (magic != MAGIC) {
+                    log.warn("Metadata snapshot " + file + " has an invalid segment at offset " + position + ", ignoring the rest");
+                    break;
+                }
+                if (version > VERSION) {
+                    throw new IOException("Metadata snapshot " + file + " has unsupported version " + version);
+                }
+                if (bodyLength < 0 || position + HEADER_SIZE + bodyLength > size) {
+                    log.warn("Metadata snapshot " + file + " is truncated at offset " + position + ", ignoring the rest");
+                    break;
+                }
+
+                ByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, position + HEADER_SIZE, bodyLength);
+                if (crc(body) != checksum) {
+                    log.warn("Metadata snapshot " + file + " has a corrupt segment at offset " + position + ", ignoring the rest");
+                    break;
+                }
+                entries += readSegment(body, executor, threads, visitor);
+                position += HEADER_SIZE + bodyLength;
+            }
+            return entries;
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            raf.close();
+        }
+    }
+
+    private static int crc(ByteBuffer body) {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = body.duplicate();
+        byte[] chunk = new byte[64 * 1024];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static long readSegment(ByteBuffer body, ExecutorService executor, int threads,
+                                    final MetadataStore.EntryVisitor visitor) throws IOException {
+        final String[] strings = readStrings(body);
+        final LocatorTable locators = new LocatorTable(body);
+        final int entryCount = body.getInt();
+        final int entriesStart = body.position();
+
+        if (executor == null || entryCount < threads) {
+            readEntries(body, entriesStart, 0, entryCount, strings, locators, visitor);
+            return entryCount;
+        }
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        int chunk = (entryCount + threads - 1) / threads;
+        for (int start = 0; start < entryCount; start += chunk) {
+            final ByteBuffer buffer = body.duplicate();
+            final int from = start;
+            final int to = Math.min(entryCount, start + chunk);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    readEntries(buffer, entriesStart, from, to, strings, locators, visitor);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                throw new IOException("Interrupted reading metadata snapshot", ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+                throw new IOException(ex.getCause());
+            }
+        }
+        return entryCount;
+    }
+
+    private static void readEntries(ByteBuffer buffer, int entriesStart, int from, int to, String[] strings,
+                                    LocatorTable locators, MetadataStore.EntryVisitor visitor) throws IOException {
+        for (int i = from; i < to; i++) {
+            int offset = entriesStart + i * ENTRY_SIZE;
+            long fingerprint = buffer.getLong(offset);
+            int locatorIndex = buffer.getInt(offset + 8);
+            int keyIndex = buffer.getInt(offset + 12);
+            int valueIndex = buffer.getInt(offset + 16);
+
+            Locator locator = locatorIndex == NO_LOCATOR ? null : locators.get(buffer, locatorIndex);
+            String value = valueIndex == REMOVED ? null : strings[valueIndex];
+            visitor.visit(fingerprint, locator, strings[keyIndex], value);
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer body) {
+        int count = body.getInt();
+        int[] ends = new int[count];
+        for (int i = 0; i < count; i++) {
+            ends[i] = body.getInt();
+        }
+        String[] strings = new String[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[ends[i] - start];
+            body.get(bytes);
+            strings[i] = new String(bytes, Charsets.UTF_8);
+            start = ends[i];
+        }
+        return strings;
+    }
+
+    /**
+     * Locators are decoded lazily by whichever reader thread needs them first, and shared after that.
+     */
+    private static class LocatorTable {
+        private final int endsStart;
+        private final int bytesStart;
+        private final AtomicReferenceArray<Locator> locators;
+
+        LocatorTable(ByteBuffer body) {
+            int count = body.getInt();
+            this.endsStart = body.position();
+            this.bytesStart = endsStart + count * 4;
+            this.locators = new AtomicReferenceArray<Locator>(count);
+            int length = count == 0 ? 0 : body.getInt(endsStart + (count - 1) * 4);
+            body.position(bytesStart + length);
+        }
+
+        Locator get(ByteBuffer buffer, int index) {
+            Locator locator = locators.get(index);
+            if (locator == null) {
+                int start = index == 0 ? 0 : buffer.getInt(endsStart + (index - 1) * 4);
+                int end = buffer.getInt(endsStart + index * 4);
+                byte[] bytes = new byte[end - start];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = buffer.get(bytesStart + start + i);
+                }
+                locator = Locator.createLocatorFromDbKey(new String(bytes, Charsets.UTF_8));
+                if (!locators.compareAndSet(index, null, locator)) {
+                    locator = locators.get(index);
+                }
+            }
+            return locator;
+        }
+    }
+
+    /**
+     * Writes segments of one kind to a snapshot file, either replacing it or appending to it.
+     */
+    public static class Writer implements Closeable {
+        private final FileOutputStream fileOut;
+        private final OutputStream out;
+        private final boolean sync;
+        private final byte kind;
+        private final int entriesPerSegment;
+
+        private final StringTable strings = new StringTable();
+        private final StringTable locators = new StringTable();
+        private final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        private final DataOutputStream entries = new DataOutputStream(entryBytes);
+        private int entryCount = 0;
+        private int segmentCount = 0;
+
+        public Writer(File file, boolean append, byte kind) throws IOException {
+            this(file, append, kind, DEFAULT_ENTRIES_PER_SEGMENT);
+        }
+
+        Writer(File file, boolean append, byte kind, int entriesPerSegment) throws IOException {
+            this.sync = !file.exists() || file.isFile();
+            this.fileOut = new FileOutputStream(file, append);
+            this.out = new BufferedOutputStream(fileOut, 64 * 1024);
+            this.kind = kind;
+            this.entriesPerSegment = entriesPerSegment;
+        }
+
+        /**
+         * Adds an entry. {@code locator} may be null if only the fingerprint is known; a null {@code value} marks
+         * the entry as removed.
+         */
+        public void add(long fingerprint, Locator locator, String key, String value) throws IOException {
+            entries.writeLong(locator == null ? fingerprint : 0);
+            entries.writeInt(locator == null ? NO_LOCATOR : locators.indexOf(locator.toString()));
+            entries.writeInt(strings.indexOf(key));
+            entries.writeInt(value == null ? REMOVED : strings.indexOf(value));
+            if (++entryCount == entriesPerSegment) {
+                writeSegment();
+            }
+        }
+
+        public int getSegmentCount() {
+            return segmentCount;
+        }
+
+        private void writeSegment() throws IOException {
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(entryBytes.size() + 1024);
+            DataOutputStream body = new DataOutputStream(bodyBytes);
+            strings.writeTo(body);
+            locators.writeTo(body);
+            body.writeInt(entryCount);
+            entries.flush();
+            entryBytes.writeTo(body);
+            body.flush();
+
+            byte[] bytes = bodyBytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeShort(VERSION);
+            header.writeByte(kind);
+            header.writeByte(0);
+            header.writeLong(System.currentTimeMillis());
+            header.writeInt(bytes.length);
+            header.writeInt((int) crc.getValue());
+            out.write(bytes);
+
+            strings.clear();
+            locators.clear();
+            entryBytes.reset();
+            entryCount = 0;
+            segmentCount++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                // a full snapshot always has at least one segment, so that an empty cache is still a valid snapshot.
+                if (entryCount > 0 || (segmentCount == 0 && kind == FULL)) {
+                    writeSegment();
+                }
+                out.flush();
+                if (sync) {
+                    fileOut.getFD().sync();
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream endBytes = new ByteArrayOutputStream();
+        private final DataOutputStream ends = new DataOutputStream(endBytes);
+
+        int indexOf(String value) throws IOException {
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = indexes.size();
+                indexes.put(value, index);
+                bytes.write(value.getBytes(Charsets.UTF_8));
+                ends.writeInt(bytes.size());
+            }
+            return index;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            ends.flush();
+            out.writeInt(indexes.size());
+            endBytes.writeTo(out);
+            bytes.writeTo(out);
+        }
+
+        void clear() {
+            indexes.clear();
+            bytes.reset();
+            endBytes.reset();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.cache;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Table;
+import com.rackspacecloud.blueflood.types.Locator;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The storage backend behind {@link MetadataCache}. Entries are (locator, metadata key) -> metadata value and
+ * expire a fixed time after they were written.
+ */
+interface MetadataStore {
+
+    /**
+     * @return the cached value, or null if there is no live entry.
+     */
+    String getIfPresent(Locator locator, String key);
+
+    /**
+     * Like {@link #getIfPresent(Locator, String)}, but without recording a hit or miss.
+     */
+    String peek(Locator locator, String key);
+
+    /**
+     * Returns the cached value, calling {@code loader} to produce (and cache) it on a miss.
+     */
+    String get(Locator locator, String key, Callable<String> loader) throws ExecutionException;
+
+    void put(Locator locator, String key, String value);
+
+    void invalidate(Locator locator, String key);
+
+    void invalidateAll();
+
+    long size();
+
+    CacheStats stats();
+
+    /**
+     * @return the live entries of the store. Backends that do not retain locators return an empty table.
+     */
+    Table<Locator, String, String> asTable();
+
+    /**
+     * Calls {@code visitor} once for every live entry. The locator passed to the visitor is null for backends that
+     * do not retain locators, and the fingerprint is only meaningful in that case.
+     */
+    void visit(EntryVisitor visitor) throws IOException;
+
+    /**
+     * Puts an entry read back from a snapshot. {@code locator} may be null when the snapshot was written by a
+     * backend that does not retain locators.
+     *
+     * @return false if the entry could not be restored into this backend.
+     */
+    boolean restore(long fingerprint, Locator locator, String key, String value);
+
+    interface EntryVisitor {
+        void visit(long fingerprint, Locator locator, String key, String value) throws IOException;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns metadata keys and values ("type", "unit", "counter", "ms", ...) into small integer codes. There are only a
+ * handful of distinct metadata strings, so every cache entry can refer to them by code instead of by reference.
+ *
+ * Codes start at 1; 0 is never handed out so that callers can use it to mark an empty slot.
+ */
+public class MetadataStringTable {
+
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<String, Integer>();
+    private volatile String[] strings = new String[64];
+    private int next = 1;
+
+    /**
+     * @return the code for {@code value}, assigning a new one if it has not been seen before.
+     */
+    public int intern(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            String[] current = strings;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[next] = value;
+            strings = current;
+            codes.put(value, next);
+            return next++;
+        }
+    }
+
+    /**
+     * @return the code for {@code value}, or 0 if it has never been interned.
+     */
+    public int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code == null ? 0 : code;
+    }
+
+    public String valueOf(int code) {
+        String[] current = strings;
+        if (code <= 0 || code >= current.length) {
+            throw new IllegalArgumentException("Unknown metadata string code " + code);
+        }
+        return current[code];
+    }
+
+    public int size() {
+        return codes.size();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.exceptions;
+
+import com.google.common.collect.Table;
+import com.rackspacecloud.blueflood.types.Locator;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Thrown by a multi-locator metadata read when some of the locators could not be read. Carries what was read for
+ * the others, so callers can tell "no metadata" apart from "not read".
+ */
+public class MetadataReadException extends IOException {
+    private final Table<Locator, String, String> partialResult;
+    private final Set<Locator> failedLocators;
+
+    public MetadataReadException(String message, Table<Locator, String, String> partialResult,
+                                 Set<Locator> failedLocators, Throwable cause) {
+        super(message, cause);
+        this.partialResult = partialResult;
+        this.failedLocators = failedLocators;
+    }
+
+    /**
+     * @return the metadata of the locators that were read successfully.
+     */
+    public Table<Locator, String, String> getPartialResult() {
+        return partialResult;
+    }
+
+    public Set<Locator> getFailedLocators() {
+        return failedLocators;
+    }
+}
@@ -47,6 +47,19 @@ public class AggregatedPayload {
     
     private Map<String, Object> metadata;
 
+    // used by Gson.
+    public AggregatedPayload() {
+    }
+
+    /**
+     * A payload carrying only the header fields, for parsers that convert the metrics themselves.
+     */
+    public AggregatedPayload(String tenantId, long timestamp, long flushInterval) {
+        this.tenantId = tenantId;
+        this.timestamp = timestamp;
+        this.flushInterval = flushInterval;
+    }
+
     public static AggregatedPayload create(String json) {
         AggregatedPayload payload = new Gson().fromJson(json, AggregatedPayload.class);
         return payload;
@@ -31,7 +31,6 @@ import com.rackspacecloud.blueflood.types.IMetric;
 import com.rackspacecloud.blueflood.types.Locator;
 import com.rackspacecloud.blueflood.utils.Metrics;
 import com.rackspacecloud.blueflood.utils.TimeValue;
-import com.rackspacecloud.blueflood.utils.Util;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -99,7 +98,7 @@ public class BatchWriter extends FunctionWithThreadPool<List<List<IMetric>>, Lis
                         try {
                             // marks this shard dirty, so rollup nodes know to pick up the work.
                             for (IMetric metric : batch) {
-                                context.update(metric.getCollectionTime(), Util.getShard(metric.getLocator().toString()));
+                                context.update(metric.getCollectionTime(), metric.getLocator().getShard());
                             }
                         } finally {
                             dirtyTimerCtx.stop();
@@ -17,10 +17,15 @@
 package com.rackspacecloud.blueflood.inputs.processors;
 
 import com.codahale.metrics.Meter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.rackspacecloud.blueflood.cache.IndexedLocatorFilter;
 import com.rackspacecloud.blueflood.concurrent.FunctionWithThreadPool;
+import com.rackspacecloud.blueflood.io.AsyncDiscoveryIO;
 import com.rackspacecloud.blueflood.io.IOContainer;
 import com.rackspacecloud.blueflood.io.DiscoveryIO;
+import com.rackspacecloud.blueflood.io.DiscoveryListener;
 import com.rackspacecloud.blueflood.service.Configuration;
 import com.rackspacecloud.blueflood.service.CoreConfig;
 import com.rackspacecloud.blueflood.types.IMetric;
@@ -29,10 +34,14 @@ import com.rackspacecloud.blueflood.types.RollupType;
 import com.rackspacecloud.blueflood.utils.Metrics;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +52,35 @@ public class DiscoveryWriter extends FunctionWithThreadPool<List<List<IMetric>>,
     private static final Logger log = LoggerFactory.getLogger(DiscoveryWriter.class);
     private final boolean canIndex;
 
+    // the locators whose documents were dropped. They are current already, so they are offered again explicitly the
+    // next time they are seen.
+    private final Cache<Locator, Boolean> toRetry = CacheBuilder.newBuilder().maximumSize(100000).build();
+    // the number of ios yet to index each offered locator. A locator goes into the indexed locator filter only once
+    // all of them did; an entry that expires or is evicted just leaves its locator out of the filter.
+    private final Cache<Locator, AtomicInteger> outstanding = CacheBuilder.newBuilder()
+            .maximumSize(100000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+    private final DiscoveryListener outcomes = new DiscoveryListener() {
+        @Override
+        public void indexed(Locator locator) {
+            AtomicInteger remaining = outstanding.getIfPresent(locator);
+            if (remaining != null && remaining.decrementAndGet() == 0) {
+                outstanding.invalidate(locator);
+                IndexedLocatorFilter filter = locatorFilter();
+                if (filter != null) {
+                    filter.put(locator);
+                }
+            }
+        }
+
+        @Override
+        public void notIndexed(Locator locator) {
+            outstanding.invalidate(locator);
+            toRetry.put(locator, Boolean.TRUE);
+        }
+    };
+
     public DiscoveryWriter(ThreadPoolExecutor threadPool) {
         super(threadPool);
         registerIOModules();
@@ -51,6 +89,9 @@ public class DiscoveryWriter extends FunctionWithThreadPool<List<List<IMetric>>,
 
     public void registerIO(DiscoveryIO io) {
         discoveryIOs.add(io);
+        if (io instanceof AsyncDiscoveryIO) {
+            ((AsyncDiscoveryIO) io).setDiscoveryListener(outcomes);
+        }
         writeErrorMeters.put(io.getClass(),
                 Metrics.meter(io.getClass(), "DiscoveryWriter Write Errors")
                 );
@@ -81,8 +122,12 @@ public class DiscoveryWriter extends FunctionWithThreadPool<List<List<IMetric>>,
         }
     }
 
-    private static List<IMetric> condense(List<List<IMetric>> input) {
+    private List<IMetric> condense(List<List<IMetric>> input) {
+        // after a restart the locator cache is empty; the filter remembers the locators indexed before it. A false
+        // positive only delays the indexing of a new locator until the filter partitions holding it expire.
+        IndexedLocatorFilter filter = locatorFilter();
         List<IMetric> willIndex = new ArrayList<IMetric>();
+        Set<Locator> seen = new HashSet<Locator>();
         for (List<IMetric> list : input) {
             // make mockito happy.
             if (list.size() == 0) {
@@ -90,7 +135,9 @@ public class DiscoveryWriter extends FunctionWithThreadPool<List<List<IMetric>>,
             }
 
             for (IMetric m : list) {
-                if (!isLocatorCurrent(m)) {
+                boolean retry = toRetry.asMap().remove(m.getLocator()) != null;
+                if ((retry || !isLocatorCurrent(m) && (filter == null || !filter.mightContain(m.getLocator())))
+                        && seen.add(m.getLocator())) {
                     willIndex.add(m);
                 }
             }
@@ -98,6 +145,10 @@ public class DiscoveryWriter extends FunctionWithThreadPool<List<List<IMetric>>,
         return willIndex;
     }
 
+    IndexedLocatorFilter locatorFilter() {
+        return IndexedLocatorFilter.getInstanceIfEnabled();
+    }
+
     private static boolean isLocatorCurrent(IMetric m) {
         Locator locator = m.getLocator();
         RollupType rollupType = m.getRollupType();
@@ -116,15 +167,30 @@ public class DiscoveryWriter extends FunctionWithThreadPool<List<List<IMetric>>,
             public Boolean call() throws Exception {
                 boolean success = true;
 		// filter out the metrics that are current.
-		final List<IMetric> willIndex = DiscoveryWriter.condense(input);
+		final List<IMetric> willIndex = condense(input);
+                for (IMetric m : willIndex) {
+                    outstanding.put(m.getLocator(), new AtomicInteger(discoveryIOs.size()));
+                }
 
                 for (DiscoveryIO io : discoveryIOs) {
                     try {
                         io.insertDiscovery(willIndex);
+                        // an asynchronous io reports what it indexed itself.
+                        if (!(io instanceof AsyncDiscoveryIO)) {
+                            for (IMetric m : willIndex) {
+                                outcomes.indexed(m.getLocator());
+                            }
+                        }
                     } catch (Exception ex) {
                         getLogger().error(ex.getMessage(), ex);
                         writeErrorMeters.get(io.getClass()).mark();
                         success = false;
+                        // an asynchronous io reports what it dropped itself.
+                        if (!(io instanceof AsyncDiscoveryIO)) {
+                            for (IMetric m : willIndex) {
+                                outcomes.notIndexed(m.getLocator());
+                            }
+                        }
                     }
                 }
                 return success;
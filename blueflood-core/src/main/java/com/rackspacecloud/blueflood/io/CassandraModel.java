@@ -31,6 +31,8 @@ public class CassandraModel {
     public static final String CF_METRICS_EXCESS_ENUMS_NAME = "metrics_excess_enums";
 
     public static final String CF_METRICS_FULL_NAME = "metrics_full";
+    public static final String CF_METRICS_FULL_BLOCKS_NAME = "metrics_full_blocks";
+    public static final String CF_METRICS_5M_PARTIALS_NAME = "metrics_5m_partials";
     public static final String CF_METRICS_5M_NAME = "metrics_5m";
     public static final String CF_METRICS_20M_NAME = "metrics_20m";
     public static final String CF_METRICS_60M_NAME = "metrics_60m";
@@ -32,12 +32,16 @@ public class Constants {
     public static final byte VERSION_2_ROLLUP = 1;
     public static final byte VERSION_1_TIMER = 0;
     public static final byte VERSION_2_TIMER = 1;
+    public static final byte VERSION_3_TIMER = 2; // version 2, followed by a quantile sketch.
 
     public static final byte VERSION_1_COUNTER_ROLLUP = 0;
     public static final byte VERSION_1_SET_ROLLUP = VERSION_1_ROLLUP; // don't change this.
+    public static final byte VERSION_2_SET_ROLLUP = 1; // a HyperLogLog instead of the member hashes.
 
     public static final byte VERSION_1_ENUM_ROLLUP = 0;
 
+    public static final byte VERSION_1_FULL_RES_BLOCK = 0;
+
     public static final int DOUBLE = (int) MetricHelper.Type.DOUBLE;
     public static final int I32 = (int) MetricHelper.Type.INT32;
     public static final int I64 = (int) MetricHelper.Type.INT64;
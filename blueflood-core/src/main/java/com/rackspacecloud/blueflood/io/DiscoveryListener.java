@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.io;
+
+import com.rackspacecloud.blueflood.types.Locator;
+
+/**
+ * Told what became of the discovery documents given to an {@link AsyncDiscoveryIO}. Every locator it accepts is
+ * eventually reported once, to one of the two methods, possibly from another thread.
+ */
+public interface DiscoveryListener {
+
+    public void indexed(Locator locator);
+
+    /**
+     * The document of {@code locator} was dropped, because the indexer was full or closed, or failed permanently.
+     */
+    public void notIndexed(Locator locator);
+}
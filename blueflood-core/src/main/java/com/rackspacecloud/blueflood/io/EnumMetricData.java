@@ -24,6 +24,7 @@ import com.rackspacecloud.blueflood.rollup.Granularity;
 import com.rackspacecloud.blueflood.service.Configuration;
 import com.rackspacecloud.blueflood.service.CoreConfig;
 import com.rackspacecloud.blueflood.types.*;
+import com.rackspacecloud.blueflood.utils.LongLongHashMap;
 import com.rackspacecloud.blueflood.utils.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -158,9 +159,11 @@ public class EnumMetricData {
      */
     private void populateEnumValueToCountMap(Map<Long, BluefloodEnumRollup> enumRollupMap, Map<Long, String> enumHashValuesMap) {
         for (BluefloodEnumRollup enumRollup : enumRollupMap.values() ) {
-            for ( Map.Entry<Long, Long> hashCount: enumRollup.getHashedEnumValuesWithCounts().entrySet()){
-                Long hash = hashCount.getKey();
-                enumRollup.getStringEnumValuesWithCounts().put(enumHashValuesMap.get(hash), hashCount.getValue());
+            LongLongHashMap hashCounts = enumRollup.getHashedEnumCounts();
+            for (int slot = 0; slot < hashCounts.capacity(); slot++) {
+                if (hashCounts.isUsed(slot)) {
+                    enumRollup.getStringEnumValuesWithCounts().put(enumHashValuesMap.get(hashCounts.keyAt(slot)), hashCounts.valueAt(slot));
+                }
             }
         }
     }
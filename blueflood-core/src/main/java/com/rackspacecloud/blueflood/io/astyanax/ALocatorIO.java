@@ -40,7 +40,7 @@ public class ALocatorIO implements LocatorIO {
     private static final Logger LOG = LoggerFactory.getLogger(ALocatorIO.class);
 
     /**
-     * Insert a locator with key = shard long value calculated using Util.getShard()
+     * Insert a locator with key = shard long value calculated using Locator.getShard()
      * @param locator
      * @throws IOException
      */
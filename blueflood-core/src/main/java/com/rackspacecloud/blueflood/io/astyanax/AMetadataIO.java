@@ -1,13 +1,16 @@
 package com.rackspacecloud.blueflood.io.astyanax;
 
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.rackspacecloud.blueflood.exceptions.MetadataReadException;
 import com.rackspacecloud.blueflood.io.MetadataIO;
 import com.rackspacecloud.blueflood.io.astyanax.AstyanaxReader;
 import com.rackspacecloud.blueflood.io.astyanax.AstyanaxWriter;
 import com.rackspacecloud.blueflood.types.Locator;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,7 +40,13 @@ public class AMetadataIO implements MetadataIO {
 
     @Override
     public Table<Locator, String, String> getAllValues(Set<Locator> locators) throws IOException {
-        return AstyanaxReader.getInstance().getMetadataValues(locators);
+        try {
+            return AstyanaxReader.getInstance().readMetadataValues(locators);
+        } catch (ConnectionException ex) {
+            // the locators are read in one query, so none of them were read.
+            throw new MetadataReadException("Could not read metadata", HashBasedTable.<Locator, String, String>create(),
+                    new HashSet<Locator>(locators), ex);
+        }
     }
 
     @Override
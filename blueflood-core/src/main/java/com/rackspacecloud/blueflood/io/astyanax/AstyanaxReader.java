@@ -44,6 +44,7 @@ import com.rackspacecloud.blueflood.rollup.Granularity;
 import com.rackspacecloud.blueflood.service.Configuration;
 import com.rackspacecloud.blueflood.service.CoreConfig;
 import com.rackspacecloud.blueflood.types.*;
+import com.rackspacecloud.blueflood.utils.LongLongHashMap;
 import com.rackspacecloud.blueflood.utils.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -103,6 +104,17 @@ public class AstyanaxReader extends AstyanaxIO {
     }
 
     public Table<Locator, String, String> getMetadataValues(Set<Locator> locators) {
+        try {
+            return readMetadataValues(locators);
+        } catch (ConnectionException e) {
+            return HashBasedTable.create();
+        }
+    }
+
+    /**
+     * Like {@link #getMetadataValues(Set)}, but throws if the read failed instead of returning an empty table.
+     */
+    public Table<Locator, String, String> readMetadataValues(Set<Locator> locators) throws ConnectionException {
         ColumnFamily CF = CassandraModel.CF_METRICS_METADATA;
         boolean isBatch = locators.size() > 1;
         Table<Locator, String, String> metaTable = HashBasedTable.create();
@@ -132,6 +144,9 @@ public class AstyanaxReader extends AstyanaxIO {
                 else { Instrumentation.markReadError(e); }
             }
             log.warn((isBatch ? "Batch " : "") + " read query failed for column family " + CF.getName(), e);
+            if (!(e instanceof NotFoundException)) {
+                throw e;
+            }
         } finally {
             ctx.stop();
         }
@@ -520,10 +535,13 @@ public class AstyanaxReader extends AstyanaxIO {
 
         for (Long timestamp : pointsMap.keySet()) {
             BluefloodEnumRollup enumRollup = (BluefloodEnumRollup)pointsMap.get(timestamp).getData();
-            for (Long hash : enumRollup.getHashedEnumValuesWithCounts().keySet()) {
-                String enumValueString = hash2enumValues.get(hash);
-                enumRollup.getStringEnumValuesWithCounts().put(enumValueString, enumRollup.getHashedEnumValuesWithCounts().get(hash));
-                pointsEnum.add(new Points.Point<T>(timestamp,(T)enumRollup));
+            LongLongHashMap hashCounts = enumRollup.getHashedEnumCounts();
+            for (int slot = 0; slot < hashCounts.capacity(); slot++) {
+                if (hashCounts.isUsed(slot)) {
+                    String enumValueString = hash2enumValues.get(hashCounts.keyAt(slot));
+                    enumRollup.getStringEnumValuesWithCounts().put(enumValueString, hashCounts.valueAt(slot));
+                    pointsEnum.add(new Points.Point<T>(timestamp,(T)enumRollup));
+                }
             }
         }
         return pointsEnum;
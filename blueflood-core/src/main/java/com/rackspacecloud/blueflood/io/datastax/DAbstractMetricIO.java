@@ -140,7 +140,7 @@ public abstract class DAbstractMetricIO {
             Locator locator = entry.getKey();
             List<ResultSetFuture> futures = entry.getValue();
 
-            Table<Locator, Long, T> result = toLocatorTimestampValue( futures, locator, CassandraModel.getGranularity( columnFamily ) );
+            Table<Locator, Long, T> result = toLocatorTimestampValue( futures, locator, range, CassandraModel.getGranularity( columnFamily ) );
             locatorTimestampRollup.putAll(result);
         }
         return locatorTimestampRollup;
@@ -228,6 +228,19 @@ public abstract class DAbstractMetricIO {
         return resultsFutures;
     }
 
+    /**
+     *  Like {@link #toLocatorTimestampValue(java.util.List, Locator, Granularity)}, for
+     *  futures returned by {@link #selectForLocatorAndRange(String, Locator, Range)} for
+     *  this range. IO subclasses whose selects may return values outside of the range
+     *  override this.
+     */
+    public <T extends Object> Table<Locator, Long, T> toLocatorTimestampValue( List<ResultSetFuture> futures,
+                                                                               Locator locator,
+                                                                               Range range,
+                                                                               Granularity granularity ) {
+        return toLocatorTimestampValue( futures, locator, granularity );
+    }
+
     /**
      *  Give a {@link com.datastax.driver.core.ResultSetFuture}, get
      *  the corresponding data from it and return it as a
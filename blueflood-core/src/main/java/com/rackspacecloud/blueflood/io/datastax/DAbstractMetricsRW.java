@@ -174,7 +174,7 @@ public abstract class DAbstractMetricsRW extends AbstractMetricsRW {
                     LOG.error(String.format("Error looking up locator %s in cache", locator), ex);
                 }
             }
-            return resultSetsToMetricData(locatorToFuturesMap, locatorIOMap, granularity);
+            return resultSetsToMetricData(locatorToFuturesMap, locatorIOMap, range, granularity);
         }
         finally {
 
@@ -223,6 +223,44 @@ public abstract class DAbstractMetricsRW extends AbstractMetricsRW {
         }
     }
 
+    /**
+     * Like {@link #getDataToRollup(Locator, RollupType, Range, String)}, for many locators at once. The reads for all
+     * of the locators are issued asynchronously before waiting on any of them.
+     *
+     * @param locators
+     * @param rollupType
+     * @param range
+     * @param columnFamilyName
+     * @return a map of Locator -> Points, with an entry for every locator
+     */
+    public Map<Locator, Points> getDataToRollup(List<Locator> locators,
+                                                RollupType rollupType,
+                                                Range range,
+                                                String columnFamilyName) throws IOException {
+        Timer.Context ctx = Instrumentation.getReadTimerContext(columnFamilyName);
+        try {
+            DAbstractMetricIO io = getIO( rollupType.name().toLowerCase(), CassandraModel.getGranularity( columnFamilyName ) );
+
+            Table<Locator, Long, Object> locatorTimestampRollup = io.getValuesForLocators( locators, columnFamilyName, range );
+
+            Map<Locator, Points> locatorPoints = new HashMap<Locator, Points>();
+            for (Locator locator : locators) {
+                locatorPoints.put( locator, convertToPoints( locatorTimestampRollup.row( locator ) ) );
+            }
+            return locatorPoints;
+        } catch( Exception e ) {
+
+            Instrumentation.markReadError();
+            LOG.error( String.format( "Unable to read %d locators rolluptype=%s columnFamilyName=%s for rollup",
+                    locators.size(), rollupType.name(), columnFamilyName ), e );
+
+            throw new IOException( e );
+        }
+        finally {
+            ctx.stop();
+        }
+    }
+
     /**
      * Converts a list of {@link com.datastax.driver.core.ResultSetFuture} for each
      * {@link com.rackspacecloud.blueflood.types.Locator} to
@@ -230,11 +268,13 @@ public abstract class DAbstractMetricsRW extends AbstractMetricsRW {
      *
      * @param resultSets
      * @param locatorIO
+     * @param range
      * @param granularity
      * @return
      */
     protected Map<Locator, MetricData> resultSetsToMetricData(Map<Locator, List<ResultSetFuture>> resultSets,
                                                               Map<Locator, DAbstractMetricIO> locatorIO,
+                                                              Range range,
                                                               Granularity granularity) {
 
         MetadataCache metadataCache = MetadataCache.getInstance();
@@ -250,7 +290,7 @@ public abstract class DAbstractMetricsRW extends AbstractMetricsRW {
                 DAbstractMetricIO io = locatorIO.get(locator);
 
                 // get ResultSets to a Table of locator, timestamp, rollup
-                Table<Locator, Long, Object> locatorTimestampRollup = io.toLocatorTimestampValue( futures, locator, granularity );
+                Table<Locator, Long, Object> locatorTimestampRollup = io.toLocatorTimestampValue( futures, locator, range, granularity );
 
                 Map<Long, Object> tsRollupMap = locatorTimestampRollup.row( locator );
 
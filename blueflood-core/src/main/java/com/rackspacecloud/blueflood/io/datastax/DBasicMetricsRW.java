@@ -69,6 +69,8 @@ public class DBasicMetricsRW extends DAbstractMetricsRW {
         Timer.Context ctx = Instrumentation.getWriteTimerContext( CassandraModel.CF_METRICS_FULL_NAME );
 
         Map<Locator, ResultSetFuture> futures = new HashMap<Locator, ResultSetFuture>();
+        FullResBlockBuffer blockBuffer = FullResBlockBuffer.getInstanceIfEnabled();
+        PartialRollupBuffer partialRollups = PartialRollupBuffer.getInstanceIfEnabled();
 
         try {
 
@@ -89,6 +91,15 @@ public class DBasicMetricsRW extends DAbstractMetricsRW {
                         locatorIO.insertLocator( locator );
                 }
 
+                if ( partialRollups != null ) {
+                    partialRollups.add( metric );
+                }
+
+                if ( blockBuffer != null && blockBuffer.add( metric ) ) {
+                    // still written raw, so the point is durable once acked; only its TTL is shortened.
+                    futures.put( locator, rawIO.insertAsync( metric, blockBuffer.rawTtlSeconds( metric ) ) );
+                    continue;
+                }
 
                 futures.put( locator, rawIO.insertAsync( metric ) );
             }
@@ -2,6 +2,7 @@ package com.rackspacecloud.blueflood.io.datastax;
 
 
 import com.rackspacecloud.blueflood.io.serializers.metrics.BasicRollupSerDes;
+import com.rackspacecloud.blueflood.io.serializers.metrics.BufferSlab;
 import com.rackspacecloud.blueflood.types.*;
 
 import java.nio.ByteBuffer;
@@ -22,7 +23,7 @@ public class DBasicNumericIO extends DAbstractMetricIO {
             throw new IllegalArgumentException("toByteBuffer(): expecting BasicRollup class but got " + value.getClass().getSimpleName());
         }
 
-        return serDes.serialize( (BasicRollup)value );
+        return serDes.serialize( (BasicRollup)value, BufferSlab.forCurrentThread() );
     }
 
     @Override
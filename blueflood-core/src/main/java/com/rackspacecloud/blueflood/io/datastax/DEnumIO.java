@@ -25,6 +25,7 @@ import com.rackspacecloud.blueflood.io.serializers.metrics.EnumSerDes;
 import com.rackspacecloud.blueflood.rollup.Granularity;
 import com.rackspacecloud.blueflood.types.*;
 import com.rackspacecloud.blueflood.utils.LocatorsUtils;
+import com.rackspacecloud.blueflood.utils.LongLongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -297,9 +298,11 @@ public class DEnumIO extends DAbstractMetricIO implements EnumReaderIO {
      */
     private void populateEnumValueToCountMap(Map<Long, BluefloodEnumRollup> enumRollupMap, Map<Long, String> enumHashValuesMap) {
         for (BluefloodEnumRollup enumRollup : enumRollupMap.values() ) {
-            for ( Map.Entry<Long, Long> hashCount: enumRollup.getHashedEnumValuesWithCounts().entrySet()){
-                Long hash = hashCount.getKey();
-                enumRollup.getStringEnumValuesWithCounts().put(enumHashValuesMap.get(hash), hashCount.getValue());
+            LongLongHashMap hashCounts = enumRollup.getHashedEnumCounts();
+            for (int slot = 0; slot < hashCounts.capacity(); slot++) {
+                if (hashCounts.isUsed(slot)) {
+                    enumRollup.getStringEnumValuesWithCounts().put(enumHashValuesMap.get(hashCounts.keyAt(slot)), hashCounts.valueAt(slot));
+                }
             }
         }
     }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.rackspacecloud.blueflood.io.datastax;
+
+import com.datastax.driver.core.*;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.datastax.driver.core.querybuilder.Select;
+import com.rackspacecloud.blueflood.io.CassandraModel;
+import com.rackspacecloud.blueflood.io.serializers.metrics.FullResBlockSerDes;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.service.Configuration;
+import com.rackspacecloud.blueflood.service.CoreConfig;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.types.Points;
+import com.rackspacecloud.blueflood.types.Range;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
+
+/**
+ * This class reads/writes compressed blocks of full resolution points from/to the metrics_full_blocks column family
+ * using the Datastax driver. A block holds the points of one locator in one 5m slot, as written by one ingest node:
+ * its row is keyed by locator, then by the slot's start time (column1) and a block id unique to the writer (column2).
+ */
+public class DFullResBlockIO {
+
+    public static final String KEY = "key";
+    public static final String COLUMN1 = "column1";
+    public static final String COLUMN2 = "column2";
+    public static final String VALUE = "value";
+
+    private static DFullResBlockIO instance;
+
+    private final PreparedStatement putBlock;
+    private final PreparedStatement getBlocks;
+    private final FullResBlockSerDes serDes = new FullResBlockSerDes();
+
+    /**
+     * @return the shared instance, or null if full resolution blocks are not enabled.
+     */
+    public static synchronized DFullResBlockIO getInstanceIfEnabled() {
+        if (instance == null && Configuration.getInstance().getBooleanProperty(CoreConfig.FULL_RES_BLOCKS_ENABLED)) {
+            instance = new DFullResBlockIO();
+        }
+        return instance;
+    }
+
+    public DFullResBlockIO() {
+        Session session = DatastaxIO.getSession();
+
+        Insert.Options insert = insertInto( CassandraModel.CF_METRICS_FULL_BLOCKS_NAME )
+                .value( KEY, bindMarker() )
+                .value( COLUMN1, bindMarker() )
+                .value( COLUMN2, bindMarker() )
+                .value( VALUE, bindMarker() )
+                .using( ttl( bindMarker() ) );
+        putBlock = session.prepare( insert ).setConsistencyLevel( ConsistencyLevel.ONE );
+
+        Select.Where select = select()
+                .all()
+                .from( CassandraModel.CF_METRICS_FULL_BLOCKS_NAME )
+                .where( eq( KEY, bindMarker() ) )
+                .and( gte( COLUMN1, bindMarker() ) )
+                .and( lte( COLUMN1, bindMarker() ) );
+        getBlocks = session.prepare( select );
+    }
+
+    public ResultSetFuture putAsync( Locator locator, long slotStart, long blockId, ByteBuffer block, int ttl ) {
+        BoundStatement bound = putBlock.bind( locator.toString(), slotStart, blockId, block, ttl );
+        return DatastaxIO.getSession().executeAsync( bound );
+    }
+
+    /**
+     * Selects the blocks of every slot overlapping the range.
+     */
+    public ResultSetFuture selectAsync( Locator locator, Range range ) {
+        BoundStatement bound = getBlocks.bind( locator.toString(),
+                Granularity.MIN_5.snapMillis( range.getStart() ), range.getStop() );
+        return DatastaxIO.getSession().executeAsync( bound );
+    }
+
+    /**
+     * Decodes the block in {@code row} and puts its points within {@code range} in {@code timestampValues}.
+     */
+    public void decodeInto( Row row, Range range, Map<Long, Object> timestampValues ) {
+        Points<Object> points = serDes.deserialize( row.getBytes( VALUE ) );
+        for ( Map.Entry<Long, Points.Point<Object>> point : points.getPoints().entrySet() ) {
+            long timestamp = point.getKey();
+            if ( timestamp >= range.getStart() && timestamp <= range.getStop() ) {
+                timestampValues.put( timestamp, point.getValue().getData() );
+            }
+        }
+    }
+
+    public FullResBlockSerDes getSerDes() {
+        return serDes;
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.rackspacecloud.blueflood.io.datastax;
 
+import com.rackspacecloud.blueflood.io.serializers.metrics.BufferSlab;
 import com.rackspacecloud.blueflood.io.serializers.metrics.GaugeSerDes;
 import com.rackspacecloud.blueflood.types.BluefloodGaugeRollup;
 import com.rackspacecloud.blueflood.types.Rollup;
@@ -43,7 +44,7 @@ public class DGagueIO extends DAbstractMetricIO {
             throw new IllegalArgumentException("toByteBuffer(): expecting BluefloodGaugeRollup class but got " + value.getClass().getSimpleName());
         }
         BluefloodGaugeRollup gaugeRollup = (BluefloodGaugeRollup) value;
-        return serDes.serialize(gaugeRollup);
+        return serDes.serialize(gaugeRollup, BufferSlab.forCurrentThread());
     }
 
     /**
@@ -25,7 +25,6 @@ import com.rackspacecloud.blueflood.io.CassandraModel;
 import com.rackspacecloud.blueflood.io.Instrumentation;
 import com.rackspacecloud.blueflood.io.LocatorIO;
 import com.rackspacecloud.blueflood.types.Locator;
-import com.rackspacecloud.blueflood.utils.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -88,7 +87,7 @@ public class DLocatorIO implements LocatorIO {
     }
 
     /**
-     * Insert a locator with key = shard long value calculated using Util.getShard()
+     * Insert a locator with key = shard long value calculated using Locator.getShard()
      * @param locator
      * @throws IOException
      */
@@ -97,7 +96,7 @@ public class DLocatorIO implements LocatorIO {
         Session session = DatastaxIO.getSession();
 
         // get shard this locator would belong to
-        long shard = (long) Util.getShard(locator.toString());
+        long shard = (long) locator.getShard();
 
         // bound values and execute
         BoundStatement bs = putValue.bind(shard, locator.toString(), "");
@@ -6,6 +6,7 @@ import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.Select;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
+import com.rackspacecloud.blueflood.exceptions.MetadataReadException;
 import com.rackspacecloud.blueflood.io.CassandraModel;
 import com.rackspacecloud.blueflood.io.Instrumentation;
 import com.rackspacecloud.blueflood.io.MetadataIO;
@@ -113,6 +114,8 @@ public class DMetadataIO implements MetadataIO {
             }
 
             Table<Locator, String, String> metaTable = HashBasedTable.create();
+            Set<Locator> failed = new HashSet<Locator>();
+            Exception lastError = null;
 
             for( Map.Entry<Locator, ResultSetFuture> future : futures.entrySet() ) {
 
@@ -135,9 +138,16 @@ public class DMetadataIO implements MetadataIO {
 
                     Instrumentation.markReadError();
                     LOG.error( String.format( "error accessing metadatat for %s", future.getKey() ), e );
+                    failed.add( future.getKey() );
+                    lastError = e;
                 }
             }
 
+            if ( !failed.isEmpty() ) {
+                throw new MetadataReadException( String.format( "could not read metadata for %d of %d locators",
+                        failed.size(), locators.size() ), metaTable, failed, lastError );
+            }
+
             return metaTable;
         }
         finally {
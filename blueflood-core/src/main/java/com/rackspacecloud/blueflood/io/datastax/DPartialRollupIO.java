@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.rackspacecloud.blueflood.io.datastax;
+
+import com.codahale.metrics.Meter;
+import com.datastax.driver.core.*;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.datastax.driver.core.querybuilder.Select;
+import com.rackspacecloud.blueflood.io.CassandraModel;
+import com.rackspacecloud.blueflood.io.serializers.metrics.BasicRollupSerDes;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.service.Configuration;
+import com.rackspacecloud.blueflood.service.CoreConfig;
+import com.rackspacecloud.blueflood.types.BasicRollup;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.types.Points;
+import com.rackspacecloud.blueflood.utils.Clock;
+import com.rackspacecloud.blueflood.utils.DefaultClockImpl;
+import com.rackspacecloud.blueflood.utils.Metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
+
+/**
+ * This class reads/writes the partial 5m rollups of basic metrics that ingest nodes pre-roll, from/to the
+ * metrics_5m_partials column family using the Datastax driver. A partial is the rollup of the points of one locator
+ * in one 5m slot that one ingest node saw between two flushes: its row is keyed by locator, then by the slot's start
+ * time (column1) and a partial id unique to the writer (column2).
+ *
+ * Partials are only used for slots younger than the pre-roll max age. Every partial of a slot expires at the same
+ * time, a grace period after that, so a rollup never merges a subset of them. The count of each partial is the
+ * number of points it rolled up; the partials of a slot are only used when their counts add up to the number of
+ * points of the slot in metrics_full, so that a partial lost with its ingest node, or a point sent twice, makes the
+ * rollup read the raw points instead of being silently wrong.
+ */
+public class DPartialRollupIO {
+
+    public static final String KEY = "key";
+    public static final String COLUMN1 = "column1";
+    public static final String COLUMN2 = "column2";
+    public static final String VALUE = "value";
+
+    private static final long EXPIRY_GRACE_MILLIS = TimeUnit.HOURS.toMillis( 1 );
+
+    private static final Meter incompletePartials = Metrics.meter( DPartialRollupIO.class, "Incomplete Partials" );
+
+    private static DPartialRollupIO instance;
+
+    private final PreparedStatement putPartial;
+    private final PreparedStatement getPartials;
+    private final PreparedStatement countRawPoints;
+    private final BasicRollupSerDes serDes = new BasicRollupSerDes();
+    private final Clock clock;
+    private final long maxAgeMillis;
+
+    /**
+     * @return the shared instance, or null if 5m pre-rolls are not enabled.
+     */
+    public static synchronized DPartialRollupIO getInstanceIfEnabled() {
+        if (instance == null && Configuration.getInstance().getBooleanProperty(CoreConfig.PRE_ROLLUP_5M_ENABLED)) {
+            instance = new DPartialRollupIO( new DefaultClockImpl(),
+                    Configuration.getInstance().getLongProperty( CoreConfig.PRE_ROLLUP_5M_MAX_AGE_MS ) );
+        }
+        return instance;
+    }
+
+    public DPartialRollupIO( Clock clock, long maxAgeMillis ) {
+        this.clock = clock;
+        this.maxAgeMillis = maxAgeMillis;
+
+        Session session = DatastaxIO.getSession();
+
+        Insert.Options insert = insertInto( CassandraModel.CF_METRICS_5M_PARTIALS_NAME )
+                .value( KEY, bindMarker() )
+                .value( COLUMN1, bindMarker() )
+                .value( COLUMN2, bindMarker() )
+                .value( VALUE, bindMarker() )
+                .using( ttl( bindMarker() ) );
+        putPartial = session.prepare( insert ).setConsistencyLevel( ConsistencyLevel.ONE );
+
+        Select.Where select = select()
+                .all()
+                .from( CassandraModel.CF_METRICS_5M_PARTIALS_NAME )
+                .where( eq( KEY, bindMarker() ) )
+                .and( eq( COLUMN1, bindMarker() ) );
+        getPartials = session.prepare( select );
+
+        Select.Where count = select()
+                .countAll()
+                .from( CassandraModel.CF_METRICS_FULL_NAME )
+                .where( eq( KEY, bindMarker() ) )
+                .and( gte( COLUMN1, bindMarker() ) )
+                .and( lt( COLUMN1, bindMarker() ) );
+        countRawPoints = session.prepare( count );
+    }
+
+    /**
+     * @return true if the points of a slot starting at {@code slotStart} may still be pre-rolled.
+     */
+    public boolean acceptsSlot( long slotStart ) {
+        return clock.now().getMillis() < slotStart + maxAgeMillis;
+    }
+
+    /**
+     * @return the TTL, in seconds, of a partial of the slot starting at {@code slotStart} written now.
+     */
+    public int ttlFor( long slotStart ) {
+        long expiry = slotStart + maxAgeMillis + EXPIRY_GRACE_MILLIS;
+        return (int) Math.max( 1, TimeUnit.MILLISECONDS.toSeconds( expiry - clock.now().getMillis() ) );
+    }
+
+    public ResultSetFuture putAsync( Locator locator, long slotStart, long partialId, BasicRollup rollup ) {
+        BoundStatement bound = putPartial.bind( locator.toString(), slotStart, partialId,
+                serDes.serialize( rollup ), ttlFor( slotStart ) );
+        return DatastaxIO.getSession().executeAsync( bound );
+    }
+
+    /**
+     * Merges the partials of a slot into its 5m rollup.
+     *
+     * @return the rollup, or null if the slot has no partials, is too old to have been pre-rolled, or its partials
+     * do not hold exactly the points of the slot in metrics_full; the slot must then be rolled up from metrics_full.
+     */
+    public BasicRollup getPreRolled( Locator locator, long slotStart ) throws IOException {
+        if ( !acceptsSlot( slotStart ) ) {
+            return null;
+        }
+        Session session = DatastaxIO.getSession();
+        ResultSet results = session.execute( getPartials.bind( locator.toString(), slotStart ) );
+        List<BasicRollup> partials = new ArrayList<BasicRollup>();
+        for ( Row row : results.all() ) {
+            partials.add( serDes.deserialize( row.getBytes( VALUE ) ) );
+        }
+        if ( partials.isEmpty() ) {
+            return null;
+        }
+        // counting the points only reads their cells on the replicas, rather than sending them back to be rolled up.
+        Row count = session.execute( countRawPoints.bind( locator.toString(), slotStart,
+                slotStart + Granularity.MIN_5.milliseconds() ) ).one();
+        return mergeIfComplete( slotStart, partials, count == null ? 0 : count.getLong( 0 ) );
+    }
+
+    /**
+     * @return the rollup of all the points of {@code partials}, or null if there are none or they do not hold
+     * exactly {@code rawPoints} points.
+     */
+    static BasicRollup mergeIfComplete( long slotStart, List<BasicRollup> partials, long rawPoints )
+            throws IOException {
+        BasicRollup merged = merge( slotStart, partials );
+        if ( merged != null && merged.getCount() != rawPoints ) {
+            incompletePartials.mark();
+            return null;
+        }
+        return merged;
+    }
+
+    /**
+     * @return the rollup of all the points of {@code partials}, or null if there are none.
+     */
+    static BasicRollup merge( long slotStart, List<BasicRollup> partials ) throws IOException {
+        if ( partials.isEmpty() ) {
+            return null;
+        }
+        // the timestamps only need to keep the partials apart.
+        Points<BasicRollup> points = new Points<BasicRollup>();
+        long timestamp = slotStart;
+        for ( BasicRollup partial : partials ) {
+            points.add( new Points.Point<BasicRollup>( timestamp++, partial ) );
+        }
+        return BasicRollup.buildRollupFromRollups( points );
+    }
+}
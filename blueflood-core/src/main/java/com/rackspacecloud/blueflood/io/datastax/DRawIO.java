@@ -102,6 +102,13 @@ public class DRawIO {
     }
 
     public ResultSetFuture insertAsync( IMetric metric ) {
+        return insertAsync( metric, metric.getTtlInSeconds() );
+    }
+
+    /**
+     * Inserts a metric, writing a numeric value with the given TTL instead of the metric's own.
+     */
+    public ResultSetFuture insertAsync( IMetric metric, int ttlSeconds ) {
 
         boolean stringOrBool = DataType.isStringOrBoolean( metric.getMetricValue() );
 
@@ -119,7 +126,7 @@ public class DRawIO {
             BoundStatement bound = putNumeric.bind( metric.getLocator().toString(),
                     metric.getCollectionTime(),
                     serDes.serialize( metric.getMetricValue() ),
-                    metric.getTtlInSeconds() );
+                    ttlSeconds );
 
             return DatastaxIO.getSession().executeAsync( bound );
         }
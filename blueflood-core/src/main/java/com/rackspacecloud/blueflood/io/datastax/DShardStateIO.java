@@ -23,6 +23,8 @@ import com.rackspacecloud.blueflood.io.Instrumentation;
 import com.rackspacecloud.blueflood.io.ShardStateIO;
 import com.rackspacecloud.blueflood.io.serializers.metrics.SlotStateSerDes;
 import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.service.Configuration;
+import com.rackspacecloud.blueflood.service.CoreConfig;
 import com.rackspacecloud.blueflood.service.SlotState;
 import com.rackspacecloud.blueflood.service.UpdateStamp;
 import org.slf4j.Logger;
@@ -117,40 +119,60 @@ public class DShardStateIO implements ShardStateIO {
         Timer.Context ctx = Instrumentation.getWriteTimerContext(CassandraModel.CF_METRICS_STATE_NAME);
         Session session = DatastaxIO.getSession();
 
-        Map<String, ResultSetFuture> futures = new HashMap<String, ResultSetFuture>();
+        // all slot states of a shard go to the same partition, so they are written as single partition batches.
+        int batchSize = Configuration.getInstance().getIntegerProperty(CoreConfig.SHARD_PUSH_BATCH_SIZE);
+        List<ResultSetFuture> futures = new ArrayList<ResultSetFuture>();
+        int failures = 0;
 
         try {
-            Set<Granularity> granularities = slotTimes.keySet();
-            for (Granularity gran : granularities) {
+            BatchStatement batch = newBatch();
+            for (Map.Entry<Granularity, Map<Integer, UpdateStamp>> granEntry : slotTimes.entrySet()) {
 
-                Set<Map.Entry<Integer, UpdateStamp>> entries = slotTimes.get(gran).entrySet();
-                for (Map.Entry<Integer, UpdateStamp> entry : entries) {
+                Granularity gran = granEntry.getKey();
+                for (Map.Entry<Integer, UpdateStamp> entry : granEntry.getValue().entrySet()) {
 
                     String value = serDes.serialize(gran, entry.getKey(), entry.getValue().getState());
 
-                    BoundStatement bound = putShardState.bind( (long) shard,
+                    batch.add(putShardState.bind( (long) shard,
                             value,
-                            entry.getValue().getTimestamp());
+                            entry.getValue().getTimestamp()));
 
-                    futures.put( "shard: " + shard +", " + value, session.executeAsync( bound ) );
+                    if (batch.size() >= batchSize) {
+                        futures.add( session.executeAsync( batch ) );
+                        batch = newBatch();
+                    }
                 }
             }
+            if (batch.size() > 0) {
+                futures.add( session.executeAsync( batch ) );
+            }
 
-            for( Map.Entry<String, ResultSetFuture> future : futures.entrySet() ) {
+            for( ResultSetFuture future : futures ) {
 
                 try {
-                    ResultSet result = future.getValue().getUninterruptibly();
-                    LOG.trace( "results.size=" + result.all().size() );
+                    future.getUninterruptibly();
                 }
                 catch ( Exception e ) {
 
-                    LOG.error( String.format( "error writing to metrics_state: %s", future.getKey() ), e );
+                    failures++;
+                    Instrumentation.markWriteError();
+                    LOG.error( String.format( "error writing to metrics_state: shard %d", shard ), e );
                 }
             }
 
         } finally {
             ctx.stop();
         }
+
+        if (failures > 0) {
+            throw new IOException(String.format("%d of %d batches writing to metrics_state failed for shard %d",
+                    failures, futures.size(), shard));
+        }
     }
 
+    private BatchStatement newBatch() {
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        batch.setConsistencyLevel( ConsistencyLevel.ONE );
+        return batch;
+    }
 }
@@ -1,16 +1,37 @@
 package com.rackspacecloud.blueflood.io.datastax;
 
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import com.rackspacecloud.blueflood.io.CassandraModel;
+import com.rackspacecloud.blueflood.io.Instrumentation;
 import com.rackspacecloud.blueflood.io.serializers.metrics.RawSerDes;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.types.Range;
 import com.rackspacecloud.blueflood.types.Rollup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class holds the utility methods to read/write simple numbers
  * using Datastax driver.
+ *
+ * When full resolution blocks are enabled, reads from metrics_full also read
+ * the blocks of metrics_full_blocks overlapping the range. A point written both
+ * ways reads as the metrics_full value.
  */
 public class DSimpleNumberIO extends DAbstractMetricIO {
 
+    private static final Logger LOG = LoggerFactory.getLogger( DSimpleNumberIO.class );
+
     private RawSerDes serDes = new RawSerDes();
 
     @Override
@@ -24,4 +45,54 @@ public class DSimpleNumberIO extends DAbstractMetricIO {
 
         return serDes.deserialize( byteBuffer );
     }
+
+    @Override
+    protected List<ResultSetFuture> selectForLocatorAndRange( String columnFamily, Locator locator, Range range ) {
+
+        List<ResultSetFuture> resultsFutures = super.selectForLocatorAndRange( columnFamily, locator, range );
+
+        DFullResBlockIO blockIO = DFullResBlockIO.getInstanceIfEnabled();
+        if ( blockIO != null && CassandraModel.CF_METRICS_FULL_NAME.equals( columnFamily ) ) {
+            resultsFutures.add( blockIO.selectAsync( locator, range ) );
+        }
+        return resultsFutures;
+    }
+
+    @Override
+    public <T extends Object> Table<Locator, Long, T> toLocatorTimestampValue( List<ResultSetFuture> futures,
+                                                                               Locator locator,
+                                                                               Range range,
+                                                                               Granularity granularity ) {
+        DFullResBlockIO blockIO = DFullResBlockIO.getInstanceIfEnabled();
+        if ( blockIO == null ) {
+            return toLocatorTimestampValue( futures, locator, granularity );
+        }
+
+        Table<Locator, Long, T> locatorTimestampValue = HashBasedTable.create();
+        Map<Long, Object> blockValues = new HashMap<Long, Object>();
+        for ( ResultSetFuture future : futures ) {
+            try {
+                ResultSet rs = future.getUninterruptibly();
+                String table = rs.getColumnDefinitions().getTable( DMetricsCFPreparedStatements.KEY );
+                for ( Row row : rs.all() ) {
+                    if ( CassandraModel.CF_METRICS_FULL_BLOCKS_NAME.equals( table ) ) {
+                        blockIO.decodeInto( row, range, blockValues );
+                    } else {
+                        locatorTimestampValue.put( locator, row.getLong( DMetricsCFPreparedStatements.COLUMN1 ),
+                                (T) fromByteBuffer( row.getBytes( DMetricsCFPreparedStatements.VALUE ) ) );
+                    }
+                }
+            } catch ( Exception ex ) {
+                Instrumentation.markReadError();
+                LOG.error( String.format( "error reading metric for locator %s, granularity %s",
+                        locator, granularity ), ex );
+            }
+        }
+        for ( Map.Entry<Long, Object> entry : blockValues.entrySet() ) {
+            if ( !locatorTimestampValue.contains( locator, entry.getKey() ) ) {
+                locatorTimestampValue.put( locator, entry.getKey(), (T) entry.getValue() );
+            }
+        }
+        return locatorTimestampValue;
+    }
 }
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.rackspacecloud.blueflood.io.datastax;
+
+import com.codahale.metrics.Meter;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rackspacecloud.blueflood.io.Instrumentation;
+import com.rackspacecloud.blueflood.io.serializers.metrics.FullResBlockSerDes;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.service.Configuration;
+import com.rackspacecloud.blueflood.service.CoreConfig;
+import com.rackspacecloud.blueflood.types.IMetric;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.types.Metric;
+import com.rackspacecloud.blueflood.utils.Clock;
+import com.rackspacecloud.blueflood.utils.DefaultClockImpl;
+import com.rackspacecloud.blueflood.utils.Metrics;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers the numeric full resolution points of each locator on an ingest node until the end of their 5m slot, then
+ * writes them to metrics_full_blocks as one compressed block per locator and slot ("sealing" the block).
+ *
+ * A block is sealed by the flusher thread once its slot has ended more than the seal delay ago, or as soon as it holds
+ * the maximum number of points. Points that arrive after that, and blocks whose values do not all have the same type,
+ * are written to metrics_full instead.
+ *
+ * Buffered points are also written to metrics_full as they arrive, so they survive the node dying before they are
+ * sealed; those copies only live for the raw TTL, after which the block is what remains of them. The raw TTL should
+ * be short: it only has to outlast the slot's rollup.
+ */
+public class FullResBlockBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger( FullResBlockBuffer.class );
+    private static final Meter pointsBuffered = Metrics.meter( FullResBlockBuffer.class, "Points Buffered" );
+    private static final Meter blocksSealed = Metrics.meter( FullResBlockBuffer.class, "Blocks Sealed" );
+    private static final Meter pointsWrittenRaw = Metrics.meter( FullResBlockBuffer.class, "Sealed Points Written Raw" );
+
+    private static FullResBlockBuffer instance;
+
+    private final DFullResBlockIO blockIO;
+    private final DRawIO rawIO;
+    private final Clock clock;
+    private final long sealDelayMillis;
+    private final int maxPoints;
+    private final int rawTtlSeconds;
+
+    private final ConcurrentMap<BlockKey, Block> blocks = new ConcurrentHashMap<BlockKey, Block>();
+
+    // block ids only need to be unique per locator and slot; a random base keeps the ids of different nodes apart.
+    private final AtomicLong nextBlockId = new AtomicLong( new Random().nextLong() );
+
+    /**
+     * @return the shared buffer, with its flusher started, or null if full resolution blocks are not enabled.
+     */
+    public static synchronized FullResBlockBuffer getInstanceIfEnabled() {
+        if ( instance == null && Configuration.getInstance().getBooleanProperty( CoreConfig.FULL_RES_BLOCKS_ENABLED ) ) {
+            Configuration config = Configuration.getInstance();
+            final FullResBlockBuffer buffer = new FullResBlockBuffer( DFullResBlockIO.getInstanceIfEnabled(),
+                    new DRawIO(),
+                    new DefaultClockImpl(),
+                    config.getLongProperty( CoreConfig.FULL_RES_BLOCK_SEAL_DELAY_MS ),
+                    config.getIntegerProperty( CoreConfig.FULL_RES_BLOCK_MAX_POINTS ),
+                    config.getLongProperty( CoreConfig.FULL_RES_BLOCK_RAW_TTL_MS ) );
+            long rolledUpAfter = Granularity.MIN_5.milliseconds()
+                    + config.getLongProperty( CoreConfig.FULL_RES_BLOCK_SEAL_DELAY_MS )
+                    + config.getLongProperty( CoreConfig.ROLLUP_DELAY_MILLIS );
+            if ( config.getLongProperty( CoreConfig.FULL_RES_BLOCK_RAW_TTL_MS ) < rolledUpAfter ) {
+                LOG.warn( String.format( "%s is shorter than a slot plus %s and %s; the points of a node dying before "
+                        + "it seals its blocks may expire before they are rolled up",
+                        CoreConfig.FULL_RES_BLOCK_RAW_TTL_MS, CoreConfig.FULL_RES_BLOCK_SEAL_DELAY_MS,
+                        CoreConfig.ROLLUP_DELAY_MILLIS ) );
+            }
+            buffer.startFlusher( config.getLongProperty( CoreConfig.FULL_RES_BLOCK_FLUSH_PERIOD_MS ) );
+            Runtime.getRuntime().addShutdownHook( new Thread( "Full res block buffer shutdown" ) {
+                @Override
+                public void run() {
+                    buffer.sealAll( new TimeValue( 10, TimeUnit.SECONDS ) );
+                }
+            } );
+            instance = buffer;
+        }
+        return instance;
+    }
+
+    FullResBlockBuffer( DFullResBlockIO blockIO, DRawIO rawIO, Clock clock, long sealDelayMillis, int maxPoints,
+                        long rawTtlMillis ) {
+        this.blockIO = blockIO;
+        this.rawIO = rawIO;
+        this.clock = clock;
+        this.sealDelayMillis = sealDelayMillis;
+        this.maxPoints = maxPoints;
+        this.rawTtlSeconds = (int) TimeUnit.MILLISECONDS.toSeconds( rawTtlMillis );
+    }
+
+    private void startFlusher( long periodMillis ) {
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat( "Full res block flusher" ).setDaemon( true ).build() );
+        flusher.scheduleWithFixedDelay( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sealExpired();
+                } catch ( Throwable t ) {
+                    LOG.error( "Error sealing full resolution blocks", t );
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Buffers a point.
+     *
+     * @return false if the point can not be buffered, and should be written to metrics_full.
+     */
+    public boolean add( IMetric metric ) {
+        Object value = metric.getMetricValue();
+        if ( !( value instanceof Integer || value instanceof Long || value instanceof Double ) ) {
+            return false;
+        }
+        long slotStart = Granularity.MIN_5.snapMillis( metric.getCollectionTime() );
+        if ( isExpired( slotStart, clock.now().getMillis() ) ) {
+            return false;
+        }
+
+        BlockKey key = new BlockKey( metric.getLocator(), slotStart );
+        while ( true ) {
+            Block block = blocks.get( key );
+            if ( block == null ) {
+                block = new Block();
+                Block existing = blocks.putIfAbsent( key, block );
+                if ( existing != null ) {
+                    block = existing;
+                }
+            }
+            boolean full;
+            synchronized ( block ) {
+                if ( block.sealed ) {
+                    // sealed since we got it; buffer into a new block.
+                    continue;
+                }
+                block.add( metric.getCollectionTime(), value, metric.getTtlInSeconds() );
+                full = block.size >= maxPoints;
+                if ( full ) {
+                    block.sealed = true;
+                }
+            }
+            pointsBuffered.mark();
+            if ( full ) {
+                blocks.remove( key, block );
+                write( key, block );
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return the TTL to write the metrics_full copy of a buffered point with: the metric's own TTL, capped at the
+     * raw TTL.
+     */
+    public int rawTtlSeconds( IMetric metric ) {
+        return Math.min( metric.getTtlInSeconds(), rawTtlSeconds );
+    }
+
+    /**
+     * Seals and writes every block whose slot ended more than the seal delay ago.
+     */
+    public void sealExpired() {
+        long now = clock.now().getMillis();
+        for ( Map.Entry<BlockKey, Block> entry : blocks.entrySet() ) {
+            if ( isExpired( entry.getKey().slotStart, now ) ) {
+                seal( entry.getKey(), entry.getValue() );
+            }
+        }
+    }
+
+    /**
+     * Seals and writes every block, waiting up to {@code timeout} for the writes to finish.
+     */
+    public void sealAll( TimeValue timeout ) {
+        List<ResultSetFuture> futures = new ArrayList<ResultSetFuture>();
+        for ( Map.Entry<BlockKey, Block> entry : blocks.entrySet() ) {
+            futures.addAll( seal( entry.getKey(), entry.getValue() ) );
+        }
+        long deadline = System.currentTimeMillis() + timeout.toMillis();
+        for ( ResultSetFuture future : futures ) {
+            try {
+                future.get( Math.max( deadline - System.currentTimeMillis(), 0 ), TimeUnit.MILLISECONDS );
+            } catch ( Exception e ) {
+                // already logged by the write callback; just stop waiting on it.
+            }
+        }
+    }
+
+    int size() {
+        return blocks.size();
+    }
+
+    private boolean isExpired( long slotStart, long now ) {
+        return slotStart + Granularity.MIN_5.milliseconds() + sealDelayMillis <= now;
+    }
+
+    private List<ResultSetFuture> seal( BlockKey key, Block block ) {
+        synchronized ( block ) {
+            if ( block.sealed ) {
+                return Collections.emptyList();
+            }
+            block.sealed = true;
+        }
+        blocks.remove( key, block );
+        return write( key, block );
+    }
+
+    private List<ResultSetFuture> write( final BlockKey key, Block block ) {
+        // a sealed block is no longer written to, so it can be read without its lock.
+        block.sortAndDedupe();
+        List<ResultSetFuture> futures = new ArrayList<ResultSetFuture>();
+        if ( FullResBlockSerDes.canEncode( block.values, block.size ) ) {
+            ResultSetFuture future = blockIO.putAsync( key.locator, key.slotStart, nextBlockId.incrementAndGet(),
+                    blockIO.getSerDes().serialize( block.timestamps, block.values, block.size ), block.ttl );
+            Futures.addCallback( future, new WriteCallback( key.locator ) );
+            futures.add( future );
+            blocksSealed.mark();
+        } else {
+            for ( int i = 0; i < block.size; i++ ) {
+                Metric metric = new Metric( key.locator, block.values[i], block.timestamps[i],
+                        new TimeValue( block.ttl, TimeUnit.SECONDS ), null );
+                ResultSetFuture future = rawIO.insertAsync( metric );
+                Futures.addCallback( future, new WriteCallback( key.locator ) );
+                futures.add( future );
+            }
+            pointsWrittenRaw.mark( block.size );
+        }
+        return futures;
+    }
+
+    private static class WriteCallback implements FutureCallback<ResultSet> {
+        private final Locator locator;
+
+        WriteCallback( Locator locator ) {
+            this.locator = locator;
+        }
+
+        @Override
+        public void onSuccess( ResultSet result ) {
+            Instrumentation.markFullResMetricWritten();
+        }
+
+        @Override
+        public void onFailure( Throwable t ) {
+            Instrumentation.markWriteError();
+            LOG.error( String.format( "error writing full resolution block for locator %s", locator ), t );
+        }
+    }
+
+    private static final class BlockKey {
+        private final Locator locator;
+        private final long slotStart;
+
+        BlockKey( Locator locator, long slotStart ) {
+            this.locator = locator;
+            this.slotStart = slotStart;
+        }
+
+        @Override
+        public int hashCode() {
+            return locator.hashCode() * 31 + (int) ( slotStart ^ ( slotStart >>> 32 ) );
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( !( obj instanceof BlockKey ) ) return false;
+            BlockKey other = (BlockKey) obj;
+            return slotStart == other.slotStart && locator.equals( other.locator );
+        }
+    }
+
+    private static final class Block {
+        private long[] timestamps = new long[16];
+        private Object[] values = new Object[16];
+        private int size = 0;
+        private int ttl = 0;
+        private boolean sorted = true;
+        private boolean sealed = false;
+
+        void add( long timestamp, Object value, int ttlSeconds ) {
+            if ( size == timestamps.length ) {
+                timestamps = Arrays.copyOf( timestamps, size * 2 );
+                values = Arrays.copyOf( values, size * 2 );
+            }
+            if ( size > 0 && timestamp <= timestamps[size - 1] ) {
+                sorted = false;
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+            ttl = Math.max( ttl, ttlSeconds );
+        }
+
+        // orders the points by timestamp; of points with the same timestamp, the last one added is kept.
+        void sortAndDedupe() {
+            if ( sorted ) {
+                return;
+            }
+            Integer[] order = new Integer[size];
+            for ( int i = 0; i < size; i++ ) {
+                order[i] = i;
+            }
+            Arrays.sort( order, new Comparator<Integer>() {
+                @Override
+                public int compare( Integer a, Integer b ) {
+                    int byTime = timestamps[a] < timestamps[b] ? -1 : ( timestamps[a] == timestamps[b] ? 0 : 1 );
+                    return byTime != 0 ? byTime : a.compareTo( b );
+                }
+            } );
+            long[] sortedTimestamps = new long[size];
+            Object[] sortedValues = new Object[size];
+            int n = 0;
+            for ( Integer i : order ) {
+                if ( n > 0 && sortedTimestamps[n - 1] == timestamps[i] ) {
+                    n--;
+                }
+                sortedTimestamps[n] = timestamps[i];
+                sortedValues[n] = values[i];
+                n++;
+            }
+            timestamps = sortedTimestamps;
+            values = sortedValues;
+            size = n;
+            sorted = true;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.rackspacecloud.blueflood.io.datastax;
+
+import com.codahale.metrics.Meter;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rackspacecloud.blueflood.io.Instrumentation;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.service.Configuration;
+import com.rackspacecloud.blueflood.service.CoreConfig;
+import com.rackspacecloud.blueflood.types.*;
+import com.rackspacecloud.blueflood.utils.Clock;
+import com.rackspacecloud.blueflood.utils.DefaultClockImpl;
+import com.rackspacecloud.blueflood.utils.Metrics;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-rolls the numeric points of basic metrics on an ingest node into partial 5m rollups, one per locator and slot,
+ * and writes them to metrics_5m_partials once their slot has ended more than the flush delay ago. Points that
+ * arrive after that start a new partial, which the flusher writes on its next run; the re-roll of the slot then
+ * merges it with the earlier ones.
+ *
+ * Points are folded into the partial's rollup as they arrive, so only the running statistics are kept on heap, and
+ * the rollup's count is the number of points the partial holds. A point sent again is counted again, and points that
+ * have not been flushed are lost if the node dies; either way the partials' count no longer matches metrics_full,
+ * and {@link DPartialRollupIO#getPreRolled} falls back to rolling up the raw points.
+ */
+public class PartialRollupBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger( PartialRollupBuffer.class );
+    private static final Meter pointsPreRolled = Metrics.meter( PartialRollupBuffer.class, "Points Pre-rolled" );
+    private static final Meter partialsFlushed = Metrics.meter( PartialRollupBuffer.class, "Partials Flushed" );
+
+    private static PartialRollupBuffer instance;
+
+    private final DPartialRollupIO partialIO;
+    private final Clock clock;
+    private final long flushDelayMillis;
+
+    private final ConcurrentMap<PartialKey, Partial> partials = new ConcurrentHashMap<PartialKey, Partial>();
+
+    // partial ids only need to be unique per locator and slot; a random base keeps the ids of different nodes apart.
+    private final AtomicLong nextPartialId = new AtomicLong( new Random().nextLong() );
+
+    /**
+     * @return the shared buffer, with its flusher started, or null if 5m pre-rolls are not enabled.
+     */
+    public static synchronized PartialRollupBuffer getInstanceIfEnabled() {
+        if ( instance == null && Configuration.getInstance().getBooleanProperty( CoreConfig.PRE_ROLLUP_5M_ENABLED ) ) {
+            Configuration config = Configuration.getInstance();
+            final PartialRollupBuffer buffer = new PartialRollupBuffer( DPartialRollupIO.getInstanceIfEnabled(),
+                    new DefaultClockImpl(),
+                    config.getLongProperty( CoreConfig.PRE_ROLLUP_5M_FLUSH_DELAY_MS ) );
+            buffer.startFlusher( config.getLongProperty( CoreConfig.PRE_ROLLUP_5M_FLUSH_PERIOD_MS ) );
+            Runtime.getRuntime().addShutdownHook( new Thread( "Partial rollup buffer shutdown" ) {
+                @Override
+                public void run() {
+                    buffer.flushAll( new TimeValue( 10, TimeUnit.SECONDS ) );
+                }
+            } );
+            instance = buffer;
+        }
+        return instance;
+    }
+
+    PartialRollupBuffer( DPartialRollupIO partialIO, Clock clock, long flushDelayMillis ) {
+        this.partialIO = partialIO;
+        this.clock = clock;
+        this.flushDelayMillis = flushDelayMillis;
+    }
+
+    private void startFlusher( long periodMillis ) {
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat( "Partial rollup flusher" ).setDaemon( true ).build() );
+        flusher.scheduleWithFixedDelay( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushExpired();
+                } catch ( Throwable t ) {
+                    LOG.error( "Error flushing partial rollups", t );
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Adds a point to the partial rollup of its locator and slot.
+     *
+     * @return false if the point is not numeric, or its slot is too old to be pre-rolled.
+     */
+    public boolean add( IMetric metric ) {
+        Object value = metric.getMetricValue();
+        if ( !( value instanceof Integer || value instanceof Long || value instanceof Double ) ) {
+            return false;
+        }
+        long slotStart = Granularity.MIN_5.snapMillis( metric.getCollectionTime() );
+        if ( !partialIO.acceptsSlot( slotStart ) ) {
+            return false;
+        }
+
+        PartialKey key = new PartialKey( metric.getLocator(), slotStart );
+        while ( true ) {
+            Partial partial = partials.get( key );
+            if ( partial == null ) {
+                partial = new Partial();
+                Partial existing = partials.putIfAbsent( key, partial );
+                if ( existing != null ) {
+                    partial = existing;
+                }
+            }
+            synchronized ( partial ) {
+                if ( partial.flushed ) {
+                    // flushed since we got it; start a new partial.
+                    continue;
+                }
+                partial.rollup.addRawSample( new SimpleNumber( value ) );
+            }
+            pointsPreRolled.mark();
+            return true;
+        }
+    }
+
+    /**
+     * Writes every partial whose slot ended more than the flush delay ago.
+     */
+    public void flushExpired() {
+        long now = clock.now().getMillis();
+        for ( Map.Entry<PartialKey, Partial> entry : partials.entrySet() ) {
+            if ( entry.getKey().slotStart + Granularity.MIN_5.milliseconds() + flushDelayMillis <= now ) {
+                flush( entry.getKey(), entry.getValue() );
+            }
+        }
+    }
+
+    /**
+     * Writes every partial, waiting up to {@code timeout} for the writes to finish.
+     */
+    public void flushAll( TimeValue timeout ) {
+        List<ResultSetFuture> futures = new ArrayList<ResultSetFuture>();
+        for ( Map.Entry<PartialKey, Partial> entry : partials.entrySet() ) {
+            ResultSetFuture future = flush( entry.getKey(), entry.getValue() );
+            if ( future != null ) {
+                futures.add( future );
+            }
+        }
+        long deadline = System.currentTimeMillis() + timeout.toMillis();
+        for ( ResultSetFuture future : futures ) {
+            try {
+                future.get( Math.max( deadline - System.currentTimeMillis(), 0 ), TimeUnit.MILLISECONDS );
+            } catch ( Exception e ) {
+                // already logged by the write callback; just stop waiting on it.
+            }
+        }
+    }
+
+    int size() {
+        return partials.size();
+    }
+
+    private ResultSetFuture flush( final PartialKey key, Partial partial ) {
+        synchronized ( partial ) {
+            if ( partial.flushed ) {
+                return null;
+            }
+            partial.flushed = true;
+        }
+        partials.remove( key, partial );
+
+        // a flushed partial is no longer written to, so its rollup can be read without its lock.
+        ResultSetFuture future = partialIO.putAsync( key.locator, key.slotStart, nextPartialId.incrementAndGet(),
+                partial.rollup );
+        Futures.addCallback( future, new WriteCallback( key.locator ) );
+        partialsFlushed.mark();
+        return future;
+    }
+
+    private static class WriteCallback implements FutureCallback<ResultSet> {
+        private final Locator locator;
+
+        WriteCallback( Locator locator ) {
+            this.locator = locator;
+        }
+
+        @Override
+        public void onSuccess( ResultSet result ) {
+        }
+
+        @Override
+        public void onFailure( Throwable t ) {
+            Instrumentation.markWriteError();
+            LOG.error( String.format( "error writing partial rollup for locator %s", locator ), t );
+        }
+    }
+
+    private static final class PartialKey {
+        private final Locator locator;
+        private final long slotStart;
+
+        PartialKey( Locator locator, long slotStart ) {
+            this.locator = locator;
+            this.slotStart = slotStart;
+        }
+
+        @Override
+        public int hashCode() {
+            return locator.hashCode() * 31 + (int) ( slotStart ^ ( slotStart >>> 32 ) );
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( !( obj instanceof PartialKey ) ) return false;
+            PartialKey other = (PartialKey) obj;
+            return slotStart == other.slotStart && locator.equals( other.locator );
+        }
+    }
+
+    private static final class Partial {
+        private final BasicRollup rollup = new BasicRollup();
+        private boolean flushed = false;
+    }
+}
@@ -21,6 +21,7 @@ import com.rackspacecloud.blueflood.io.Constants;
 import com.rackspacecloud.blueflood.types.*;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * This is an abstract class that most Serialization/Deserialization class
@@ -44,6 +45,17 @@ public abstract class AbstractSerDes {
         }
     }
 
+    protected void putRollupStat(AbstractRollupStat stat, ByteBuffer out) {
+        out.put(stat.getStatType());
+        out.put(stat.isFloatingPoint() ? Constants.B_DOUBLE : Constants.B_I64);
+
+        if (stat.isFloatingPoint()) {
+            BufferCodec.writeDouble(out, stat.toDouble());
+        } else {
+            BufferCodec.writeRawVarint64(out, stat.toLong());
+        }
+    }
+
     // these two sizeOf*() methods are created mainly
     // for code readability in the subclasses
 
@@ -74,6 +86,14 @@ public abstract class AbstractSerDes {
             return in.readRawVarint64();
     }
 
+    protected Number getUnversionedDoubleOrLong(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        if (type == Constants.B_DOUBLE)
+            return BufferCodec.readDouble(in);
+        else
+            return BufferCodec.readRawVarint64(in);
+    }
+
     // put out a number prefaced only by a type.
     protected void putUnversionedDoubleOrLong(Number number, CodedOutputStream out) throws IOException {
         if (number instanceof Double) {
@@ -84,4 +104,14 @@ public abstract class AbstractSerDes {
             out.writeRawVarint64(number.longValue());
         }
     }
+
+    protected void putUnversionedDoubleOrLong(Number number, ByteBuffer out) {
+        if (number instanceof Double) {
+            out.put(Constants.B_DOUBLE);
+            BufferCodec.writeDouble(out, number.doubleValue());
+        } else {
+            out.put(Constants.B_I64);
+            BufferCodec.writeRawVarint64(out, number.longValue());
+        }
+    }
 }
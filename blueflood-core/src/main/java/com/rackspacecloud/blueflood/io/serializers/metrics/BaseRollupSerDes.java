@@ -22,10 +22,12 @@ import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
 import com.rackspacecloud.blueflood.exceptions.SerializationException;
 import com.rackspacecloud.blueflood.io.Constants;
+import com.rackspacecloud.blueflood.types.AbstractRollupStat;
 import com.rackspacecloud.blueflood.types.BaseRollup;
 import com.rackspacecloud.blueflood.utils.Metrics;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * The serialization and deserialization methods for sub-metrics used by
@@ -59,7 +61,7 @@ public class BaseRollupSerDes extends AbstractSerDes {
     }
 
     /**
-     * Serialize without sum attribute.  This is used by {@link GaugeSerDes}
+     * Serialize in the version 1 rollup format, without the sum attribute.
      *
      * @param baseRollup
      * @param protobufOut
@@ -111,4 +113,59 @@ public class BaseRollupSerDes extends AbstractSerDes {
 
         }
     }
+
+    protected void serializeBaseRollupHelper( BaseRollup baseRollup, ByteBuffer out ) {
+        BufferCodec.writeRawVarint64( out, baseRollup.getCount() );
+
+        if ( baseRollup.getCount() > 0 ) {
+            putRollupStat( baseRollup.getAverage(), out );
+            putRollupStat( baseRollup.getVariance(), out );
+            putRollupStat( baseRollup.getMinValue(), out );
+            putRollupStat( baseRollup.getMaxValue(), out );
+        }
+    }
+
+    /**
+     * Reads the sub-metrics at the buffer's position into {@code baseRollup}, which may be a holder reused across
+     * cells: the stats of an empty rollup are reset rather than left over from the previous cell.
+     */
+    protected void deserializeBaseRollup( BaseRollup baseRollup, ByteBuffer in, byte version ) throws IOException {
+
+        final long count = BufferCodec.readRawVarint64( in );
+        baseRollup.setCount( count );
+
+        if ( count <= 0 ) {
+            resetStat( baseRollup.getAverage() );
+            resetStat( baseRollup.getVariance() );
+            resetStat( baseRollup.getMinValue() );
+            resetStat( baseRollup.getMaxValue() );
+            return;
+        }
+
+        for ( int i = 0; i < BaseRollup.NUM_STATS; i++ ) {
+            byte statType = in.get();
+            switch ( statType ) {
+                case Constants.AVERAGE:
+                    averageStatDeSer.deserialize( baseRollup.getAverage(), in );
+                    break;
+                case Constants.VARIANCE:
+                    varianceStatDeSer.deserialize( baseRollup.getVariance(), in );
+                    break;
+                case Constants.MIN:
+                    minStatDeSer.deserialize( baseRollup.getMinValue(), in );
+                    break;
+                case Constants.MAX:
+                    maxStatDeSer.deserialize( baseRollup.getMaxValue(), in );
+                    break;
+                default:
+                    throw new SerializationException( "invalid stat " + (int) version + " type: " + (int) statType );
+            }
+        }
+    }
+
+    private static void resetStat( AbstractRollupStat stat ) {
+        // the state of a freshly constructed stat.
+        stat.setDoubleValue( 0.0d );
+        stat.setLongValue( 0 );
+    }
 }
@@ -16,7 +16,6 @@
 package com.rackspacecloud.blueflood.io.serializers.metrics;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
 import com.rackspacecloud.blueflood.exceptions.SerializationException;
 import com.rackspacecloud.blueflood.io.Constants;
@@ -32,6 +31,9 @@ import static com.rackspacecloud.blueflood.io.Constants.VERSION_2_ROLLUP;
 /**
  * This class knows how to serialize/deserialize a BasicRollup to its byte
  * wire format.
+ *
+ * Besides the methods returning and taking a fresh {@link ByteBuffer}, rollups can be written into a caller
+ * provided buffer or a {@link BufferSlab}, and read in place from a buffer into a reused {@link BasicRollup}.
  */
 public class BasicRollupSerDes extends BaseRollupSerDes {
 
@@ -50,41 +52,75 @@ public class BasicRollupSerDes extends BaseRollupSerDes {
     }
 
     public ByteBuffer serialize(BasicRollup basicRollup) {
-        try {
-            byte[] buf = new byte[sizeOf(basicRollup, VERSION_2_ROLLUP)];
-            serializeRollup( basicRollup, buf);
-            return ByteBuffer.wrap(buf);
-        } catch(IOException e) {
-            throw new RuntimeException(e);
-        }
+        ByteBuffer buf = ByteBuffer.allocate(sizeOf(basicRollup));
+        serialize(basicRollup, buf);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Serializes into a buffer taken from {@code slab}.
+     *
+     * @return a buffer holding exactly the serialized rollup.
+     */
+    public ByteBuffer serialize(BasicRollup basicRollup, BufferSlab slab) {
+        ByteBuffer buf = slab.allocate(sizeOf(basicRollup));
+        serialize(basicRollup, buf);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Writes the rollup at the position of {@code out}, which needs {@link #sizeOf(BasicRollup)} bytes remaining,
+     * and advances it.
+     */
+    public void serialize(BasicRollup basicRollup, ByteBuffer out) {
+        rollupSize.update(sizeOf(basicRollup));
+        out.put(Constants.VERSION_2_ROLLUP);
+
+        serializeBaseRollupHelper( basicRollup, out );
+
+        // the sum is always part of the size; empty rollups carry it as zeros.
+        BufferCodec.writeDouble( out, basicRollup.getCount() > 0 ? basicRollup.getSum() : 0.0d );
     }
 
     public BasicRollup deserialize(ByteBuffer byteBuffer) {
-        CodedInputStream in = CodedInputStream.newInstance(byteBuffer.array());
+        return deserialize(byteBuffer.duplicate(), new BasicRollup());
+    }
+
+    /**
+     * Reads a rollup at the position of {@code in} into {@code into}, advancing the position past it.
+     *
+     * @return {@code into}
+     */
+    public BasicRollup deserialize(ByteBuffer in, BasicRollup into) {
         try {
-            byte version = in.readRawByte();
+            byte version = in.get();
             if (version != VERSION_1_FULL_RES && version != VERSION_1_ROLLUP && version != VERSION_2_ROLLUP) {
                 throw new SerializationException(String.format("Unexpected serialization version: %d",
                         (int)version));
             }
 
-            return deserializeRollup( in, version );
+            deserializeBaseRollup( into, in, version );
+
+            if( version == VERSION_2_ROLLUP ) {
+                into.setSum( BufferCodec.readDouble( in ) );
+            } else {
+                into.setSum( 0.0d );
+            }
+
+            return into;
 
         } catch (Exception e) {
             throw new RuntimeException("Deserialization Failure", e);
         }
     }
 
-    protected BasicRollup deserializeRollup(CodedInputStream in, byte version) throws IOException {
-        final BasicRollup basicRollup = new BasicRollup();
-
-        deserializeBaseRollup( basicRollup, in, version );
-
-        if( version == VERSION_2_ROLLUP ) {
-            basicRollup.setSum( in.readDouble() );
-        }
-
-        return basicRollup;
+    /**
+     * @return the number of bytes {@link #serialize(BasicRollup, ByteBuffer)} writes.
+     */
+    public int sizeOf(BasicRollup basicRollup) {
+        return sizeOf(basicRollup, VERSION_2_ROLLUP);
     }
 
     protected int sizeOf(BasicRollup basicRollup, byte version) {
@@ -95,16 +131,4 @@ public class BasicRollupSerDes extends BaseRollupSerDes {
 
         return sz;
     }
-
-    protected void serializeRollup(BasicRollup basicRollup, byte[] buf) throws IOException {
-        rollupSize.update(buf.length);
-        CodedOutputStream protobufOut = CodedOutputStream.newInstance(buf);
-        protobufOut.writeRawByte(Constants.VERSION_2_ROLLUP);
-
-        serializeBaseRollupHelper( basicRollup, protobufOut );
-
-        if (basicRollup.getCount() > 0) {
-            protobufOut.writeDoubleNoTag( basicRollup.getSum() );
-        }
-    }
 }
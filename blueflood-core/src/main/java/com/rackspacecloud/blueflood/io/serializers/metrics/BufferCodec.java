@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.io.serializers.metrics;
+
+import com.rackspacecloud.blueflood.exceptions.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes the protobuf primitives used by the rollup wire formats directly on a {@link ByteBuffer}, at its
+ * current position. The encoding is byte for byte the one produced by {@link com.google.protobuf.CodedOutputStream}:
+ * varints are little-endian base 128 and doubles are little-endian IEEE 754, whatever the buffer's byte order.
+ */
+final class BufferCodec {
+
+    private BufferCodec() {}
+
+    static void writeRawVarint64(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (((int) value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long readRawVarint64(ByteBuffer in) throws SerializationException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new SerializationException("Malformed varint");
+    }
+
+    static void writeDouble(ByteBuffer out, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int i = 0; i < 8; i++) {
+            out.put((byte) bits);
+            bits >>>= 8;
+        }
+    }
+
+    static double readDouble(ByteBuffer in) {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (long) (in.get() & 0xFF) << (8 * i);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.io.serializers.metrics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hands out small {@link ByteBuffer}s carved from a larger chunk, so that serializing a rollup does not allocate a
+ * byte array of its own. The returned buffers can be bound to a statement as they are; a chunk is never reused, it
+ * is simply dropped once full and collected when the last buffer sliced from it is no longer referenced, which makes
+ * it safe to hand the buffers to asynchronous writes.
+ *
+ * A slab is not thread safe. Use {@link #forCurrentThread()} to get one confined to the calling thread.
+ */
+public class BufferSlab {
+
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    private static final ThreadLocal<BufferSlab> perThread = new ThreadLocal<BufferSlab>() {
+        @Override
+        protected BufferSlab initialValue() {
+            return new BufferSlab(DEFAULT_CHUNK_SIZE);
+        }
+    };
+
+    private final int chunkSize;
+    private ByteBuffer chunk;
+
+    public BufferSlab(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive, got " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public static BufferSlab forCurrentThread() {
+        return perThread.get();
+    }
+
+    /**
+     * @return a buffer with position 0 and limit and capacity {@code size}. Requests larger than a quarter of a
+     * chunk get a buffer of their own.
+     */
+    public ByteBuffer allocate(int size) {
+        if (size > chunkSize / 4) {
+            return ByteBuffer.allocate(size);
+        }
+        if (chunk == null || chunk.remaining() < size) {
+            chunk = ByteBuffer.allocate(chunkSize);
+        }
+        int start = chunk.position();
+        chunk.limit(start + size);
+        ByteBuffer slice = chunk.slice();
+        chunk.limit(chunk.capacity());
+        chunk.position(start + size);
+        return slice;
+    }
+}
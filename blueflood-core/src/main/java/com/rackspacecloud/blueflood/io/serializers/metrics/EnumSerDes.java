@@ -21,11 +21,11 @@ import com.google.protobuf.CodedOutputStream;
 import com.rackspacecloud.blueflood.exceptions.SerializationException;
 import com.rackspacecloud.blueflood.io.Constants;
 import com.rackspacecloud.blueflood.types.BluefloodEnumRollup;
+import com.rackspacecloud.blueflood.utils.LongLongHashMap;
 import com.rackspacecloud.blueflood.utils.Metrics;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Map;
 
 import static com.rackspacecloud.blueflood.io.Constants.VERSION_1_ROLLUP;
 
@@ -63,12 +63,13 @@ public class EnumSerDes extends AbstractSerDes {
 
     private int sizeOf(BluefloodEnumRollup enumRollup) {
         int sz = sizeOfSize();
-        Map<Long, Long> enValues = enumRollup.getHashedEnumValuesWithCounts();
+        LongLongHashMap enValues = enumRollup.getHashedEnumCounts();
         sz += CodedOutputStream.computeRawVarint32Size(enumRollup.getCount());
-        for (Long enName  : enValues.keySet()) {
-            sz+=CodedOutputStream.computeRawVarint64Size(enName);
-            Long enValue = enValues.get(enName);
-            sz+= CodedOutputStream.computeRawVarint64Size(enValue);
+        for (int slot = 0; slot < enValues.capacity(); slot++) {
+            if (enValues.isUsed(slot)) {
+                sz += CodedOutputStream.computeRawVarint64Size(enValues.keyAt(slot));
+                sz += CodedOutputStream.computeRawVarint64Size(enValues.valueAt(slot));
+            }
         }
         return sz;
     }
@@ -87,10 +88,12 @@ public class EnumSerDes extends AbstractSerDes {
         enumRollupSize.update(buf.length);
         out.writeRawByte(Constants.VERSION_1_ENUM_ROLLUP);
         out.writeRawVarint32(rollup.getCount());
-        Map<Long, Long> enValues = rollup.getHashedEnumValuesWithCounts();
-        for (Long i : enValues.keySet()) {
-            out.writeRawVarint64(i);
-            out.writeRawVarint64(enValues.get(i));
+        LongLongHashMap enValues = rollup.getHashedEnumCounts();
+        for (int slot = 0; slot < enValues.capacity(); slot++) {
+            if (enValues.isUsed(slot)) {
+                out.writeRawVarint64(enValues.keyAt(slot));
+                out.writeRawVarint64(enValues.valueAt(slot));
+            }
         }
     }
 }
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.rackspacecloud.blueflood.io.serializers.metrics;
+
+import com.codahale.metrics.Histogram;
+import com.rackspacecloud.blueflood.exceptions.SerializationException;
+import com.rackspacecloud.blueflood.io.Constants;
+import com.rackspacecloud.blueflood.types.Points;
+import com.rackspacecloud.blueflood.utils.Metrics;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class knows how to serialize/deserialize a block of full resolution points of one locator, compressed the way
+ * Gorilla (Pelkonen et al, VLDB 2015) compresses time series:
+ *
+ * <ul>
+ * <li>timestamps as the delta of their delta from the previous one, in a variable number of bits, so regularly
+ * reported points take one bit each;</li>
+ * <li>values as the XOR of their 64 bits with the previous value's, written as only the meaningful bits between the
+ * leading and trailing zeros, so unchanged values take one bit and slowly changing ones a few.</li>
+ * </ul>
+ *
+ * A block holds values of one type: int, long or double. The layout is a version byte, the value type, the number of
+ * points (a varint), then the bit stream.
+ */
+public class FullResBlockSerDes extends AbstractSerDes {
+
+    private static Histogram blockSize = Metrics.histogram(FullResBlockSerDes.class, "Full Resolution Block Size");
+    private static Histogram blockPoints = Metrics.histogram(FullResBlockSerDes.class, "Full Resolution Block Points");
+
+    /**
+     * @return true if all the values are of the same type, and that type can be put in a block.
+     */
+    public static boolean canEncode(Object[] values, int count) {
+        if (count == 0 || typeOf(values[0]) < 0) {
+            return false;
+        }
+        Class<?> type = values[0].getClass();
+        for (int i = 1; i < count; i++) {
+            if (values[i].getClass() != type) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param timestamps ascending, without duplicates.
+     * @param values     see {@link #canEncode(Object[], int)}.
+     */
+    public ByteBuffer serialize(long[] timestamps, Object[] values, int count) {
+        if (!canEncode(values, count)) {
+            throw new IllegalArgumentException("A block needs at least one value, all of one numeric type");
+        }
+        BitWriter out = new BitWriter(16 + count * 2);
+        out.writeByte(Constants.VERSION_1_FULL_RES_BLOCK);
+        byte type = typeOf(values[0]);
+        out.writeByte(type);
+        out.writeVarint(count);
+
+        out.writeBits(timestamps[0], 64);
+        long previousBits = bitsOf(values[0]);
+        out.writeBits(previousBits, 64);
+
+        long previousTimestamp = timestamps[0];
+        long previousDelta = 0;
+        int previousLeading = Integer.MAX_VALUE;
+        int previousTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = timestamps[i] - previousTimestamp;
+            if (delta <= 0) {
+                throw new IllegalArgumentException("Timestamps must be ascending and unique");
+            }
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousDelta = delta;
+            previousTimestamp = timestamps[i];
+
+            long bits = bitsOf(values[i]);
+            long xor = bits ^ previousBits;
+            previousBits = bits;
+            if (xor == 0) {
+                out.writeBit(false);
+                continue;
+            }
+            out.writeBit(true);
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (leading >= previousLeading && trailing >= previousTrailing) {
+                // the meaningful bits fit in the previous window.
+                out.writeBit(false);
+                out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            } else {
+                int meaningful = 64 - leading - trailing;
+                out.writeBit(true);
+                out.writeBits(leading, 5);
+                // 64 meaningful bits are written as 0.
+                out.writeBits(meaningful & 63, 6);
+                out.writeBits(xor >>> trailing, meaningful);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+
+        byte[] bytes = out.toByteArray();
+        blockSize.update(bytes.length);
+        blockPoints.update(count);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * @return the points of the block, with values of the type they were written with.
+     */
+    public Points<Object> deserialize(ByteBuffer byteBuffer) {
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.duplicate().get(bytes);
+        try {
+            BitReader in = new BitReader(bytes);
+            byte version = in.readByte();
+            if (version != Constants.VERSION_1_FULL_RES_BLOCK) {
+                throw new SerializationException(String.format("Unexpected block serialization version: %d", (int)version));
+            }
+            byte type = in.readByte();
+            if (type != Constants.B_I32 && type != Constants.B_I64 && type != Constants.B_DOUBLE) {
+                throw new SerializationException(String.format("Unexpected block value type: %d", (int)type));
+            }
+            int count = in.readVarint();
+
+            Points<Object> points = new Points<Object>();
+            long timestamp = in.readBits(64);
+            long bits = in.readBits(64);
+            points.add(new Points.Point<Object>(timestamp, valueOf(type, bits)));
+
+            long delta = 0;
+            int leading = 0;
+            int trailing = 0;
+            for (int i = 1; i < count; i++) {
+                delta += readDeltaOfDelta(in);
+                timestamp += delta;
+                if (in.readBit()) {
+                    if (in.readBit()) {
+                        leading = (int) in.readBits(5);
+                        int meaningful = (int) in.readBits(6);
+                        if (meaningful == 0) {
+                            meaningful = 64;
+                        }
+                        trailing = 64 - leading - meaningful;
+                    }
+                    bits ^= in.readBits(64 - leading - trailing) << trailing;
+                }
+                points.add(new Points.Point<Object>(timestamp, valueOf(type, bits)));
+            }
+            return points;
+        } catch (Exception e) {
+            throw new RuntimeException("Full resolution block deserialization Failure", e);
+        }
+    }
+
+    private static byte typeOf(Object value) {
+        if (value instanceof Integer) {
+            return Constants.B_I32;
+        } else if (value instanceof Long) {
+            return Constants.B_I64;
+        } else if (value instanceof Double) {
+            return Constants.B_DOUBLE;
+        }
+        return -1;
+    }
+
+    private static long bitsOf(Object value) {
+        if (value instanceof Double) {
+            return Double.doubleToRawLongBits((Double) value);
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static Object valueOf(byte type, long bits) {
+        switch (type) {
+            case Constants.B_I32: return (int) bits;
+            case Constants.B_I64: return bits;
+            default: return Double.longBitsToDouble(bits);
+        }
+    }
+
+    // '0' for no change, then '10', '110' and '1110' for 7, 9 and 12 bit two's complement values, '1111' for 64 bits.
+    private static void writeDeltaOfDelta(BitWriter out, long dod) {
+        if (dod == 0) {
+            out.writeBit(false);
+        } else if (dod >= -64 && dod < 64) {
+            out.writeBits(0x2, 2);
+            out.writeBits(dod, 7);
+        } else if (dod >= -256 && dod < 256) {
+            out.writeBits(0x6, 3);
+            out.writeBits(dod, 9);
+        } else if (dod >= -2048 && dod < 2048) {
+            out.writeBits(0xe, 4);
+            out.writeBits(dod, 12);
+        } else {
+            out.writeBits(0xf, 4);
+            out.writeBits(dod, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader in) throws SerializationException {
+        int bits;
+        if (!in.readBit()) {
+            return 0;
+        } else if (!in.readBit()) {
+            bits = 7;
+        } else if (!in.readBit()) {
+            bits = 9;
+        } else if (!in.readBit()) {
+            bits = 12;
+        } else {
+            bits = 64;
+        }
+        long value = in.readBits(bits);
+        // sign extend.
+        return bits == 64 ? value : (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private static final class BitWriter {
+        private byte[] buf;
+        private long bitPos = 0;
+
+        BitWriter(int initialBytes) {
+            buf = new byte[Math.max(initialBytes, 16)];
+        }
+
+        void writeBit(boolean bit) {
+            ensure(1);
+            if (bit) {
+                buf[(int) (bitPos >>> 3)] |= 0x80 >>> (bitPos & 7);
+            }
+            bitPos++;
+        }
+
+        // the low numBits of value, most significant first.
+        void writeBits(long value, int numBits) {
+            ensure(numBits);
+            for (int i = numBits - 1; i >= 0; i--) {
+                if (((value >>> i) & 1) != 0) {
+                    buf[(int) (bitPos >>> 3)] |= 0x80 >>> (bitPos & 7);
+                }
+                bitPos++;
+            }
+        }
+
+        void writeByte(int value) {
+            writeBits(value, 8);
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7f) != 0) {
+                writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, (int) ((bitPos + 7) >>> 3));
+        }
+
+        private void ensure(int numBits) {
+            int needed = (int) ((bitPos + numBits + 7) >>> 3);
+            if (needed > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(needed, buf.length * 2));
+            }
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] buf;
+        private long bitPos = 0;
+
+        BitReader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        boolean readBit() throws SerializationException {
+            if (bitPos >= (long) buf.length << 3) {
+                throw new SerializationException("Truncated full resolution block");
+            }
+            boolean bit = (buf[(int) (bitPos >>> 3)] & (0x80 >>> (bitPos & 7))) != 0;
+            bitPos++;
+            return bit;
+        }
+
+        long readBits(int numBits) throws SerializationException {
+            long value = 0;
+            for (int i = 0; i < numBits; i++) {
+                value = (value << 1) | (readBit() ? 1 : 0);
+            }
+            return value;
+        }
+
+        byte readByte() throws SerializationException {
+            return (byte) readBits(8);
+        }
+
+        int readVarint() throws SerializationException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed varint in full resolution block");
+        }
+    }
+}
@@ -15,7 +15,6 @@
  */
 package com.rackspacecloud.blueflood.io.serializers.metrics;
 
-import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
 import com.rackspacecloud.blueflood.exceptions.SerializationException;
 import com.rackspacecloud.blueflood.types.BluefloodGaugeRollup;
@@ -33,19 +32,28 @@ import static com.rackspacecloud.blueflood.io.Constants.VERSION_1_ROLLUP;
 public class GaugeSerDes extends BaseRollupSerDes {
 
     public ByteBuffer serialize(BluefloodGaugeRollup gaugeRollup) {
-        try {
-            byte[] buf = new byte[sizeOf(gaugeRollup)];
-            serializeGauge(gaugeRollup, buf);
-            return ByteBuffer.wrap(buf);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        ByteBuffer buf = ByteBuffer.allocate(sizeOf(gaugeRollup));
+        serializeGauge(gaugeRollup, buf);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Serializes into a buffer taken from {@code slab}.
+     *
+     * @return a buffer holding exactly the serialized gauge.
+     */
+    public ByteBuffer serialize(BluefloodGaugeRollup gaugeRollup, BufferSlab slab) {
+        ByteBuffer buf = slab.allocate(sizeOf(gaugeRollup));
+        serializeGauge(gaugeRollup, buf);
+        buf.flip();
+        return buf;
     }
 
     public BluefloodGaugeRollup deserialize(ByteBuffer byteBuffer) {
-        CodedInputStream in = CodedInputStream.newInstance(byteBuffer.array());
+        ByteBuffer in = byteBuffer.duplicate();
         try {
-            byte version = in.readRawByte();
+            byte version = in.get();
             if (version != VERSION_1_ROLLUP)
                 throw new SerializationException(String.format("Unexpected gauge deserialization version: %d", (int)version));
             return deserializeGauge( in, version );
@@ -68,19 +76,19 @@ public class GaugeSerDes extends BaseRollupSerDes {
         return sz;
     }
 
-    private void serializeGauge(BluefloodGaugeRollup rollup, byte[] buf) throws IOException {
-        rollupSize.update(buf.length);
-        CodedOutputStream protobufOut = CodedOutputStream.newInstance(buf);
-        serializeRollupV1(rollup, protobufOut);
-        protobufOut.writeRawVarint64(rollup.getTimestamp());
-        putUnversionedDoubleOrLong(rollup.getLatestNumericValue(), protobufOut);
+    private void serializeGauge(BluefloodGaugeRollup rollup, ByteBuffer out) {
+        rollupSize.update(out.remaining());
+        out.put(VERSION_1_ROLLUP);
+        serializeBaseRollupHelper(rollup, out);
+        BufferCodec.writeRawVarint64(out, rollup.getTimestamp());
+        putUnversionedDoubleOrLong(rollup.getLatestNumericValue(), out);
     }
 
-    private BluefloodGaugeRollup deserializeGauge( CodedInputStream in, byte version ) throws IOException {
+    private BluefloodGaugeRollup deserializeGauge( ByteBuffer in, byte version ) throws IOException {
         BluefloodGaugeRollup rollup = new BluefloodGaugeRollup();
 
         deserializeBaseRollup( rollup, in, version );
-        long timestamp = in.readRawVarint64();
+        long timestamp = BufferCodec.readRawVarint64(in);
         Number lastValue = getUnversionedDoubleOrLong(in);
         rollup.setLatestValue( new Points.Point<SimpleNumber>(timestamp, new SimpleNumber(lastValue)) );
 
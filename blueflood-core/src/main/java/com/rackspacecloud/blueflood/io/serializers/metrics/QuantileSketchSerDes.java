@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.io.serializers.metrics;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.rackspacecloud.blueflood.types.QuantileSketch;
+
+import java.io.IOException;
+
+/**
+ * This class knows how to serialize/deserialize a {@link QuantileSketch}, as a part of another serialized rollup.
+ *
+ * Layout: relative accuracy (double), max buckets (varint32), zero count (varint64), number of buckets (varint32),
+ * then for every bucket its index (zigzag varint32, as a difference to the previous bucket's index) and its count
+ * (varint64).
+ */
+public class QuantileSketchSerDes {
+
+    public void serialize(QuantileSketch sketch, CodedOutputStream out) throws IOException {
+        out.writeDoubleNoTag(sketch.getRelativeAccuracy());
+        out.writeRawVarint32(sketch.getMaxBuckets());
+        out.writeRawVarint64(sketch.getZeroCount());
+        out.writeRawVarint32(sketch.getNumBuckets());
+        int previous = 0;
+        for (int i = 0; i < sketch.getNumBuckets(); i++) {
+            out.writeSInt32NoTag(sketch.getIndex(i) - previous);
+            out.writeRawVarint64(sketch.getBucketCount(i));
+            previous = sketch.getIndex(i);
+        }
+    }
+
+    public QuantileSketch deserialize(CodedInputStream in) throws IOException {
+        double relativeAccuracy = in.readDouble();
+        int maxBuckets = in.readRawVarint32();
+        long zeroCount = in.readRawVarint64();
+        int numBuckets = in.readRawVarint32();
+        if (numBuckets < 0 || numBuckets > maxBuckets) {
+            throw new IOException("Unexpected number of sketch buckets " + numBuckets);
+        }
+        int[] indexes = new int[numBuckets];
+        long[] counts = new long[numBuckets];
+        int previous = 0;
+        for (int i = 0; i < numBuckets; i++) {
+            indexes[i] = previous + in.readSInt32();
+            counts[i] = in.readRawVarint64();
+            previous = indexes[i];
+        }
+        return QuantileSketch.fromBuckets(relativeAccuracy, maxBuckets, zeroCount, indexes, counts);
+    }
+
+    public int sizeOf(QuantileSketch sketch) {
+        int sz = CodedOutputStream.computeDoubleSizeNoTag(sketch.getRelativeAccuracy());
+        sz += CodedOutputStream.computeRawVarint32Size(sketch.getMaxBuckets());
+        sz += CodedOutputStream.computeRawVarint64Size(sketch.getZeroCount());
+        sz += CodedOutputStream.computeRawVarint32Size(sketch.getNumBuckets());
+        int previous = 0;
+        for (int i = 0; i < sketch.getNumBuckets(); i++) {
+            sz += CodedOutputStream.computeSInt32SizeNoTag(sketch.getIndex(i) - previous);
+            sz += CodedOutputStream.computeRawVarint64Size(sketch.getBucketCount(i));
+            previous = sketch.getIndex(i);
+        }
+        return sz;
+    }
+}
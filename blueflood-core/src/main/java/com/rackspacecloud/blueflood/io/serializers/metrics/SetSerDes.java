@@ -21,18 +21,27 @@ import com.google.protobuf.CodedOutputStream;
 import com.rackspacecloud.blueflood.exceptions.SerializationException;
 import com.rackspacecloud.blueflood.io.Constants;
 import com.rackspacecloud.blueflood.types.BluefloodSetRollup;
+import com.rackspacecloud.blueflood.types.HyperLogLog;
 import com.rackspacecloud.blueflood.utils.Metrics;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import static com.rackspacecloud.blueflood.io.Constants.VERSION_1_SET_ROLLUP;
+import static com.rackspacecloud.blueflood.io.Constants.VERSION_2_SET_ROLLUP;
 
 /**
  * This class knows how to serialize/deserialize Set objects.
+ *
+ * Version 1 wrote every member hash. Version 2 writes the {@link HyperLogLog} of the rollup: its precision, then
+ * either its sparse entries (delta encoded) or its dense registers. Version 1 rollups are still read, by adding
+ * their hashes to a new HyperLogLog.
  */
 public class SetSerDes extends AbstractSerDes {
 
+    private static final byte SPARSE = 0;
+    private static final byte DENSE = 1;
+
     /**
      * Our own internal metric to count the number of Set rollups
      */
@@ -52,9 +61,11 @@ public class SetSerDes extends AbstractSerDes {
         CodedInputStream in = CodedInputStream.newInstance(byteBuffer.array());
         try {
             byte version = in.readRawByte();
-            if (version != VERSION_1_SET_ROLLUP)
-                throw new SerializationException(String.format("Unexpected set serialization version: %d", (int)version));
-            return deserializeV1SetRollup(in);
+            if (version == VERSION_1_SET_ROLLUP)
+                return deserializeV1SetRollup(in);
+            if (version == VERSION_2_SET_ROLLUP)
+                return deserializeV2SetRollup(in);
+            throw new SerializationException(String.format("Unexpected set serialization version: %d", (int)version));
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         }
@@ -63,10 +74,22 @@ public class SetSerDes extends AbstractSerDes {
     private void serializeSetRollup(BluefloodSetRollup rollup, byte[] buf) throws IOException {
         CodedOutputStream out = CodedOutputStream.newInstance(buf);
         setRollupSize.update(buf.length);
-        out.writeRawByte(Constants.VERSION_1_SET_ROLLUP);
-        out.writeRawVarint32(rollup.getCount());
-        for (Integer i : rollup.getHashes()) {
-            out.writeRawVarint32(i);
+        out.writeRawByte(Constants.VERSION_2_SET_ROLLUP);
+        HyperLogLog hll = rollup.getHyperLogLog();
+        out.writeRawByte(hll.getPrecision());
+        if (hll.isSparse()) {
+            out.writeRawByte(SPARSE);
+            out.writeRawVarint32(hll.getNumSparseEntries());
+            int previous = 0;
+            for (int i = 0; i < hll.getNumSparseEntries(); i++) {
+                out.writeRawVarint32(hll.getSparseEntry(i) - previous);
+                previous = hll.getSparseEntry(i);
+            }
+        } else {
+            out.writeRawByte(DENSE);
+            for (int i = 0; i < hll.getNumRegisters(); i++) {
+                out.writeRawByte(hll.getRegister(i));
+            }
         }
     }
 
@@ -79,11 +102,36 @@ public class SetSerDes extends AbstractSerDes {
         return rollup;
     }
 
+    private BluefloodSetRollup deserializeV2SetRollup(CodedInputStream in) throws IOException {
+        int precision = in.readRawByte();
+        byte format = in.readRawByte();
+        if (format == SPARSE) {
+            int[] entries = new int[in.readRawVarint32()];
+            int previous = 0;
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = previous + in.readRawVarint32();
+                previous = entries[i];
+            }
+            return new BluefloodSetRollup(HyperLogLog.fromSparseEntries(precision, entries));
+        } else if (format == DENSE) {
+            return new BluefloodSetRollup(HyperLogLog.fromRegisters(precision, in.readRawBytes(1 << precision)));
+        }
+        throw new SerializationException(String.format("Unexpected set format: %d", (int)format));
+    }
+
     private int sizeOf(BluefloodSetRollup setRollup) {
-        int sz = sizeOfSize();
-        sz += CodedOutputStream.computeRawVarint32Size(setRollup.getCount());
-        for (Integer i : setRollup.getHashes()) {
-            sz += CodedOutputStream.computeRawVarint32Size(i);
+        HyperLogLog hll = setRollup.getHyperLogLog();
+        // version, precision and format.
+        int sz = sizeOfSize() + 2;
+        if (hll.isSparse()) {
+            sz += CodedOutputStream.computeRawVarint32Size(hll.getNumSparseEntries());
+            int previous = 0;
+            for (int i = 0; i < hll.getNumSparseEntries(); i++) {
+                sz += CodedOutputStream.computeRawVarint32Size(hll.getSparseEntry(i) - previous);
+                previous = hll.getSparseEntry(i);
+            }
+        } else {
+            sz += hll.getNumRegisters();
         }
         return sz;
     }
@@ -21,6 +21,7 @@ import com.rackspacecloud.blueflood.io.Constants;
 import com.rackspacecloud.blueflood.types.AbstractRollupStat;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * This is the generics serializer for Average, Min, Max, Variance stats (aka sub-stats).
@@ -42,6 +43,24 @@ public class StatsSerDes<T extends AbstractRollupStat> {
         }
     }
 
+    /**
+     * Like {@link #deserialize(AbstractRollupStat, CodedInputStream)}, reading at the buffer's position.
+     */
+    public void deserialize(T stat, ByteBuffer in) throws IOException {
+
+        byte metricValueType = in.get();
+        switch(metricValueType) {
+            case Constants.I64:
+                stat.setLongValue(BufferCodec.readRawVarint64(in));
+                break;
+            case Constants.B_DOUBLE:
+                stat.setDoubleValue(BufferCodec.readDouble(in));
+                break;
+            default:
+                throw new IOException("Unsupported stat value type " + (int) metricValueType);
+        }
+    }
+
     public int sizeOf(T stat) {
         int sz = 1 + 1; // type + isFP.
         sz += stat.isFloatingPoint() ?
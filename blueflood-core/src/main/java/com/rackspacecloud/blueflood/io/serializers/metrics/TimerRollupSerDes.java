@@ -29,6 +29,7 @@ import java.util.Map;
 
 import static com.rackspacecloud.blueflood.io.Constants.VERSION_1_TIMER;
 import static com.rackspacecloud.blueflood.io.Constants.VERSION_2_TIMER;
+import static com.rackspacecloud.blueflood.io.Constants.VERSION_3_TIMER;
 
 /**
  * This class knows how to serialize/deserialize Timer metrics.
@@ -37,10 +38,14 @@ public class TimerRollupSerDes extends AbstractSerDes {
 
     private static Histogram timerRollupSize = Metrics.histogram(TimerRollupSerDes.class, "Timer Metric Size");
 
+    private static final QuantileSketchSerDes sketchSerDes = new QuantileSketchSerDes();
+
     public ByteBuffer serialize(BluefloodTimerRollup bluefloodTimerRollup) {
         try {
-            byte[] buf = new byte[sizeOf(bluefloodTimerRollup, VERSION_2_TIMER)];
-            serializeTimer(bluefloodTimerRollup, buf, VERSION_2_TIMER);
+            // timers without a sketch stay readable by nodes that do not know version 3.
+            byte version = bluefloodTimerRollup.getSketch() == null ? VERSION_2_TIMER : VERSION_3_TIMER;
+            byte[] buf = new byte[sizeOf(bluefloodTimerRollup, version)];
+            serializeTimer(bluefloodTimerRollup, buf, version);
             return ByteBuffer.wrap(buf);
         } catch (IOException ex) {
             throw new RuntimeException(ex);
@@ -76,7 +81,7 @@ public class TimerRollupSerDes extends AbstractSerDes {
         // sum, count, countps, avg, max, min, var
         if (timerVersion == VERSION_1_TIMER) {
             out.writeRawVarint64((long)rollup.getSum());
-        } else if (timerVersion == VERSION_2_TIMER) {
+        } else if (timerVersion == VERSION_2_TIMER || timerVersion == VERSION_3_TIMER) {
             out.writeDoubleNoTag(rollup.getSum());
         } else {
             throw new SerializationException(String.format("Unexpected timer serialization version: %d", (int)timerVersion));
@@ -97,6 +102,10 @@ public class TimerRollupSerDes extends AbstractSerDes {
             out.writeStringNoTag(entry.getKey());
             putUnversionedDoubleOrLong(entry.getValue().getMean(), out);
         }
+
+        if (timerVersion == VERSION_3_TIMER) {
+            sketchSerDes.serialize(rollup.getSketch(), out);
+        }
     }
 
     private BluefloodTimerRollup deserializeTimer(CodedInputStream in, byte timerVersion) throws IOException {
@@ -104,7 +113,7 @@ public class TimerRollupSerDes extends AbstractSerDes {
         final double sum;
         if (timerVersion == VERSION_1_TIMER) {
             sum = in.readRawVarint64();
-        } else if (timerVersion == VERSION_2_TIMER) {
+        } else if (timerVersion == VERSION_2_TIMER || timerVersion == VERSION_3_TIMER) {
             sum = in.readDouble();
         } else {
             throw new SerializationException(String.format("Unexpected timer deserialization version: %d", (int)timerVersion));
@@ -151,6 +160,10 @@ public class TimerRollupSerDes extends AbstractSerDes {
             rollup.setPercentile(name, mean);
         }
 
+        if (timerVersion == VERSION_3_TIMER) {
+            rollup.withSketch(sketchSerDes.deserialize(in));
+        }
+
         return rollup;
     }
 
@@ -160,7 +173,7 @@ public class TimerRollupSerDes extends AbstractSerDes {
 
         if (timerVersion == VERSION_1_TIMER) {
             sz += CodedOutputStream.computeRawVarint64Size((long) bluefloodTimerRollup.getSum());
-        } else if (timerVersion == VERSION_2_TIMER) {
+        } else if (timerVersion == VERSION_2_TIMER || timerVersion == VERSION_3_TIMER) {
             sz += CodedOutputStream.computeDoubleSizeNoTag(bluefloodTimerRollup.getSum());
         } else {
             throw new SerializationException(String.format("Unexpected timer serialization version: %d", (int)timerVersion));
@@ -189,6 +202,10 @@ public class TimerRollupSerDes extends AbstractSerDes {
                 }
             }
         }
+
+        if (timerVersion == VERSION_3_TIMER) {
+            sz += sketchSerDes.sizeOf(bluefloodTimerRollup.getSketch());
+        }
         return sz;
     }
 
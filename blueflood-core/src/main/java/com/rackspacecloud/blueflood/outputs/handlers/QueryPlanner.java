@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.outputs.handlers;
+
+import com.rackspacecloud.blueflood.cache.CombinedTtlProvider;
+import com.rackspacecloud.blueflood.exceptions.GranularityException;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.types.Range;
+import com.rackspacecloud.blueflood.utils.Clock;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Splits a query over {@code [from, to]} at a requested granularity into segments, each served from the finest
+ * granularity, no finer than the requested one, that still retains the data of the whole segment. Segments meet at
+ * a slot boundary of the coarser of the two granularities, so their points do not overlap.
+ */
+public class QueryPlanner {
+
+    private final CombinedTtlProvider ttlProvider;
+    private final Clock clock;
+
+    public QueryPlanner(CombinedTtlProvider ttlProvider, Clock clock) {
+        this.ttlProvider = ttlProvider;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the segments, oldest first. The last one is served from the finest granularity.
+     */
+    public List<Segment> plan(String tenantId, long from, long to, Granularity requested) {
+        LinkedList<Segment> segments = new LinkedList<Segment>();
+        long now = clock.now().getMillis();
+        long end = to;
+        Granularity gran = requested;
+
+        while (true) {
+            long retainedFrom = now - ttlProvider.getFinalTTL(tenantId, gran);
+            if (from >= retainedFrom || gran == Granularity.LAST) {
+                segments.addFirst(new Segment(gran, from, end));
+                return segments;
+            }
+
+            Granularity coarser;
+            try {
+                coarser = gran.coarser();
+            } catch (GranularityException e) {
+                throw new IllegalStateException(e);
+            }
+
+            long boundary = coarser.snapMillis(retainedFrom);
+            if (boundary < retainedFrom) {
+                boundary += coarser.milliseconds();
+            }
+            if (boundary <= end) {
+                segments.addFirst(new Segment(gran, boundary, end));
+                end = boundary - 1;
+            }
+            gran = coarser;
+        }
+    }
+
+    public static class Segment {
+        private final Granularity granularity;
+        private final long from;
+        private final long to;
+
+        Segment(Granularity granularity, long from, long to) {
+            this.granularity = granularity;
+            this.from = from;
+            this.to = to;
+        }
+
+        public Granularity getGranularity() {
+            return granularity;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        /**
+         * @return the range to read, starting at the slot that holds {@code from}.
+         */
+        public Range getReadRange() {
+            return new Range(granularity.snapMillis(from), to);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s [%d, %d]", granularity.shortName(), from, to);
+        }
+    }
+}
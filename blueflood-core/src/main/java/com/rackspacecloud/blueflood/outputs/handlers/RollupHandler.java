@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.rackspacecloud.blueflood.cache.CombinedTtlProvider;
 import com.rackspacecloud.blueflood.concurrent.ThreadPoolBuilder;
 import com.rackspacecloud.blueflood.io.*;
 import com.rackspacecloud.blueflood.outputs.formats.MetricData;
@@ -36,6 +37,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,6 +63,7 @@ public class RollupHandler {
     protected final Histogram numRollupPointsReturned = Metrics.histogram(RollupHandler.class, "Rollup points returned");
     private static final Meter exceededQueryTimeout = Metrics.meter(RollupHandler.class, "Batched Metrics Query Duration Exceeded Timeout");
     private static final Histogram queriesSizeHist = Metrics.histogram(RollupHandler.class, "Total queries");
+    private static final Meter stitchedQueries = Metrics.meter(RollupHandler.class, "Queries stitched across granularities");
 
     private static final Timer timerCassandraReadRollupOnRead = Metrics.timer( RollupHandler.class, "cassandraReadForRollupOnRead" );
     private static final Timer timerRepairRollupsOnRead = Metrics.timer( RollupHandler.class, "repairRollupsOnRead" );
@@ -71,6 +74,8 @@ public class RollupHandler {
     private ExecutorService ESUnitExecutor = null;
     private ListeningExecutorService rollupsOnReadExecutor = null;
     private ListeningExecutorService createRepairPointsExecutor = null;
+    private ListeningExecutorService stitchedReadExecutor = null;
+    private QueryPlanner queryPlanner = null;
     /*
       Timeout for rollups on read applicable only when operations are done async. for sync rollups on read
       it will be the driver operation timeout.
@@ -105,6 +110,15 @@ public class RollupHandler {
                 .withMaxPoolSize( Configuration.getInstance().getIntegerProperty( CoreConfig.ROLLUP_ON_READ_REPAIR_THREADS ) )
                 .withName( "Create Repair Points Rollups on Read Executors" ).build();
         createRepairPointsExecutor = MoreExecutors.listeningDecorator(createRepairrollupsOnReadExecutors);
+
+        if (Configuration.getInstance().getBooleanProperty(CoreConfig.QUERY_STITCHING_ENABLED)) {
+            int stitchingThreads = Configuration.getInstance().getIntegerProperty(CoreConfig.QUERY_STITCHING_THREADS);
+            stitchedReadExecutor = MoreExecutors.listeningDecorator(new ThreadPoolBuilder().withUnboundedQueue()
+                    .withCorePoolSize(stitchingThreads)
+                    .withMaxPoolSize(stitchingThreads)
+                    .withName("Stitched Query Read Executors").build());
+            queryPlanner = new QueryPlanner(CombinedTtlProvider.getInstance(), new DefaultClockImpl());
+        }
     }
 
     private enum plotTimers {
@@ -147,6 +161,15 @@ public class RollupHandler {
 
         queriesSizeHist.update(locators.size());
 
+        // the part of the range that g no longer retains is read from coarser granularities, in parallel.
+        final List<QueryPlanner.Segment> segments = queryPlanner == null
+                ? Collections.singletonList(new QueryPlanner.Segment(g, from, to))
+                : queryPlanner.plan(tenantId, from, to, g);
+        final QueryPlanner.Segment finest = segments.get(segments.size() - 1);
+        final long readFrom = finest.getFrom();
+        final Granularity readGran = finest.getGranularity();
+        List<ListenableFuture<Map<Locator, MetricData>>> olderReads = readOlderSegments(locators, segments);
+
         if (Util.shouldUseESForUnits()) {
              unitsFuture = ESUnitExecutor.submit(new Callable() {
 
@@ -167,8 +190,8 @@ public class RollupHandler {
         MetricsRWDelegator delegator = new MetricsRWDelegator();
         final Map<Locator,MetricData> metricDataMap = delegator.getDatapointsForRange(
                 locators,
-                new Range(g.snapMillis(from), to),
-                g);
+                finest.getReadRange(),
+                readGran);
 
         if (unitsFuture != null) {
             try {
@@ -188,7 +211,7 @@ public class RollupHandler {
         if (locators.size() == 1) {
             for (final Map.Entry<Locator, MetricData> metricData : metricDataMap.entrySet()) {
                 Timer.Context context = rollupsOnReadTimers.RR_SPLOT_TIMER.timer.time();
-                repairMetrics(metricData.getKey(), metricData.getValue(), from, to, g);
+                repairMetrics(metricData.getKey(), metricData.getValue(), readFrom, to, readGran);
                 context.stop();
             }
         } else if (locators.size() > 1 && Configuration.getInstance().getBooleanProperty(CoreConfig.TURN_OFF_RR_MPLOT) == false) {
@@ -199,7 +222,7 @@ public class RollupHandler {
                         rollupsOnReadExecutor.submit(new Callable<Boolean>() {
                             @Override
                             public Boolean call() {
-                                return repairMetrics(metricData.getKey(), metricData.getValue(), from, to, g);
+                                return repairMetrics(metricData.getKey(), metricData.getValue(), readFrom, to, readGran);
                             }
                         }));
             }
@@ -214,6 +237,8 @@ public class RollupHandler {
             context.stop();
         }
 
+        stitchOlderSegments(metricDataMap, olderReads, readGran);
+
         for( MetricData metricData : metricDataMap.values() ){
 
             // currently this only tracks enum queries
@@ -224,6 +249,90 @@ public class RollupHandler {
         return metricDataMap;
     }
 
+    private List<ListenableFuture<Map<Locator, MetricData>>> readOlderSegments(final List<Locator> locators,
+                                                                               List<QueryPlanner.Segment> segments) {
+        List<ListenableFuture<Map<Locator, MetricData>>> futures = new ArrayList<ListenableFuture<Map<Locator, MetricData>>>();
+        for (final QueryPlanner.Segment segment : segments.subList(0, segments.size() - 1)) {
+            futures.add(stitchedReadExecutor.submit(new Callable<Map<Locator, MetricData>>() {
+                @Override
+                public Map<Locator, MetricData> call() {
+                    return new MetricsRWDelegator().getDatapointsForRange(locators, segment.getReadRange(),
+                            segment.getGranularity());
+                }
+            }));
+        }
+        return futures;
+    }
+
+    /**
+     * Adds the points read from coarser granularities to the results. Raw points that end up next to rollups are
+     * turned into single sample rollups, so that every point of a metric reports the same stats.
+     */
+    private void stitchOlderSegments(Map<Locator, MetricData> metricDataMap,
+                                     List<ListenableFuture<Map<Locator, MetricData>>> olderReads,
+                                     Granularity finestGran) {
+        if (olderReads.isEmpty()) {
+            return;
+        }
+        stitchedQueries.mark();
+
+        ListenableFuture<List<Map<Locator, MetricData>>> aggregateFuture = Futures.allAsList(olderReads);
+        List<Map<Locator, MetricData>> olderData;
+        try {
+            olderData = aggregateFuture.get(rollupOnReadTimeout.getValue(), rollupOnReadTimeout.getUnit());
+        } catch (Exception e) {
+            aggregateFuture.cancel(true);
+            exceededQueryTimeout.mark();
+            log.warn("Exception encountered while reading coarser granularities, only the finest will be returned.", e);
+            return;
+        }
+
+        for (Map<Locator, MetricData> segmentData : olderData) {
+            for (Map.Entry<Locator, MetricData> entry : segmentData.entrySet()) {
+                MetricData target = metricDataMap.get(entry.getKey());
+                if (target == null) {
+                    metricDataMap.put(entry.getKey(), entry.getValue());
+                    continue;
+                }
+                for (Object point : entry.getValue().getData().getPoints().values()) {
+                    target.getData().add((Points.Point) point);
+                }
+            }
+        }
+
+        if (finestGran == Granularity.FULL) {
+            for (MetricData metricData : metricDataMap.values()) {
+                if (metricData.getType().equals(MetricData.Type.NUMBER.toString())) {
+                    rawSamplesToRollups(metricData.getData());
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void rawSamplesToRollups(Points points) {
+        Map<Long, Points.Point> byTime = points.getPoints();
+        boolean hasRollups = false;
+        for (Points.Point point : byTime.values()) {
+            hasRollups |= !(point.getData() instanceof SimpleNumber);
+        }
+        if (!hasRollups) {
+            return;
+        }
+        for (Points.Point point : new ArrayList<Points.Point>(byTime.values())) {
+            if (point.getData() instanceof SimpleNumber) {
+                Points<SimpleNumber> sample = new Points<SimpleNumber>();
+                sample.add(point);
+                try {
+                    points.add(new Points.Point(point.getTimestamp(), BasicRollup.buildRollupFromRawSamples(sample)));
+                } catch (IOException e) {
+                    // not thrown for a non-empty input.
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
     /**
      * Marks queries based on RollupType.
      *
@@ -20,6 +20,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.rackspacecloud.blueflood.io.AbstractMetricsRW;
 import com.rackspacecloud.blueflood.io.IOContainer;
 import com.rackspacecloud.blueflood.io.ShardStateIO;
+import com.rackspacecloud.blueflood.cache.IndexedLocatorFilter;
 import com.rackspacecloud.blueflood.cache.MetadataCache;
 import com.rackspacecloud.blueflood.utils.Metrics;
 import com.rackspacecloud.blueflood.utils.RestartGauge;
@@ -28,12 +29,9 @@ import org.apache.log4j.PropertyConfigurator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -64,7 +62,8 @@ public class BluefloodServiceStarter {
                 final ShardStateIO io = IOContainer.fromConfig().getShardStateIO();
                 final ShardStatePusher shardStatePusher = new ShardStatePusher(allShards,
                         context.getShardStateManager(),
-                        io);
+                        io,
+                        createSlotNotificationSender());
                 final ShardStatePuller shardStatePuller = new ShardStatePuller(allShards,
                         context.getShardStateManager(),
                         io);
@@ -79,11 +78,43 @@ public class BluefloodServiceStarter {
             } catch (NumberFormatException ex) {
                 log.error("Shard services not started. Probably misconfiguration", ex);
             }
+            startSlotNotificationListener(context);
         } else {
             log.info("Shard push and pull services not required");
         }
     }
 
+    private static SlotNotificationSender createSlotNotificationSender() {
+        if (!Configuration.getInstance().getBooleanProperty(CoreConfig.INGEST_MODE)) {
+            return null;
+        }
+        try {
+            SlotNotificationSender sender = SlotNotificationSender.fromConfig();
+            if (sender != null) {
+                log.info("Sending slot notifications to rollup nodes");
+            }
+            return sender;
+        } catch (Exception ex) {
+            // not fatal, rollup nodes still read the shard state from the database.
+            log.error("Slot notifications not sent. Probably misconfiguration", ex);
+            return null;
+        }
+    }
+
+    private static void startSlotNotificationListener(ScheduleContext context) {
+        Configuration config = Configuration.getInstance();
+        int port = config.getIntegerProperty(CoreConfig.SLOT_NOTIFICATION_PORT);
+        if (!config.getBooleanProperty(CoreConfig.ROLLUP_MODE) || port <= 0) {
+            return;
+        }
+        try {
+            new SlotNotificationListener(context.getShardStateManager(),
+                    new InetSocketAddress(config.getStringProperty(CoreConfig.SLOT_NOTIFICATION_HOST), port)).start();
+        } catch (Exception ex) {
+            log.error("Slot notification listener not started. Probably misconfiguration", ex);
+        }
+    }
+
     private static void startIngestServices(ScheduleContext context) {
         // start up ingestion services.
         Configuration config = Configuration.getInstance();
@@ -272,9 +303,7 @@ public class BluefloodServiceStarter {
             final File cacheLocation = new File(path);
             if (cacheLocation.exists()) {
                 try {
-                    DataInputStream in = new DataInputStream(new FileInputStream(cacheLocation));
-                    MetadataCache.getInstance().load(in);
-                    in.close();
+                    MetadataCache.getInstance().loadSnapshot(cacheLocation);
                 } catch (IOException ex) {
                     log.error(ex.getMessage(), ex);
                 }
@@ -288,9 +317,7 @@ public class BluefloodServiceStarter {
                         @Override
                         public void run() {
                             try {
-                                DataOutputStream out = new DataOutputStream(new FileOutputStream(cacheLocation, false));
-                                MetadataCache.getInstance().save(out);
-                                out.close();
+                                MetadataCache.getInstance().saveSnapshot(cacheLocation);
                             } catch (IOException ex) {
                                 log.error(ex.getMessage(), ex);
                             }
@@ -300,6 +327,45 @@ public class BluefloodServiceStarter {
                     TimeUnit.MINUTES.toMillis(savePeriodMins));
         }
 
+        // possibly load the filter of locators written before the restart
+        final IndexedLocatorFilter locatorFilter = IndexedLocatorFilter.getInstanceIfEnabled();
+        if (locatorFilter != null) {
+            String path = Configuration.getInstance().getStringProperty(CoreConfig.LOCATOR_FILTER_PERSISTENCE_PATH);
+            final File filterLocation = new File(path);
+            if (filterLocation.isFile() && filterLocation.length() > 0) {
+                try {
+                    locatorFilter.load(filterLocation);
+                } catch (IOException ex) {
+                    log.error(ex.getMessage(), ex);
+                }
+            } else {
+                log.info("Wanted to load locator filter, but it did not exist: " + path);
+            }
+
+            final TimerTask saveFilter = new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        locatorFilter.save(filterLocation);
+                    } catch (IOException ex) {
+                        log.error(ex.getMessage(), ex);
+                    }
+                }
+            };
+            Timer filterPersistenceTimer = new Timer("Locator-Filter-Persistence", true);
+            int savePeriodMins = Configuration.getInstance().getIntegerProperty(CoreConfig.LOCATOR_FILTER_PERSISTENCE_PERIOD_MINS);
+            filterPersistenceTimer.schedule(saveFilter,
+                    TimeUnit.MINUTES.toMillis(savePeriodMins),
+                    TimeUnit.MINUTES.toMillis(savePeriodMins));
+            // save once more on the way down so a rolling deploy keeps what was written since the last save.
+            Runtime.getRuntime().addShutdownHook(new Thread("Locator filter save") {
+                @Override
+                public void run() {
+                    saveFilter.run();
+                }
+            });
+        }
+
         // has the side-effect of causing static initialization of Metrics, starting instrumentation reporting.
         new RestartGauge(getRegistry(), RollupService.class);
 
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.service;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.types.Points;
+import com.rackspacecloud.blueflood.types.Range;
+import com.rackspacecloud.blueflood.types.Rollup;
+import com.rackspacecloud.blueflood.utils.Metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the rollups this node computed, by locator, granularity and slot, so that the rollup of the next coarser
+ * granularity can be computed from memory instead of reading its children back from Cassandra. A slot for which
+ * a locator had no points is kept as an empty entry, so that it does not count as missing.
+ *
+ * Entries are evicted once there are too many of them or they are older than the expiry. Another node may re-roll a
+ * slot while this node does not hold its shard, so the entries of a shard are dropped whenever this node gains or
+ * loses its lock.
+ */
+public class CascadingRollupCache {
+
+    private static final Meter childHits = Metrics.meter(CascadingRollupCache.class, "Child Rollups Read From Memory");
+    private static final Meter childMisses = Metrics.meter(CascadingRollupCache.class, "Child Rollups Missing From Memory");
+
+    private static CascadingRollupCache instance;
+
+    private final Cache<Key, Optional<Rollup>> rollups;
+
+    /**
+     * @return the shared cache, or null if cascading rollups are not enabled.
+     */
+    public static synchronized CascadingRollupCache getInstanceIfEnabled() {
+        Configuration config = Configuration.getInstance();
+        if (instance == null && config.getBooleanProperty(CoreConfig.CASCADING_ROLLUP_ENABLED)) {
+            long expiryMinutes = config.getLongProperty(CoreConfig.CASCADING_ROLLUP_EXPIRY_MINUTES);
+            if (expiryMinutes <= 0) {
+                // long enough for the first child of a slot of the coarsest granularity to be used by its rollup.
+                expiryMinutes = TimeUnit.MILLISECONDS.toMinutes(Granularity.LAST.milliseconds()
+                        + config.getLongProperty(CoreConfig.ROLLUP_DELAY_MILLIS)) + 1;
+            }
+            instance = new CascadingRollupCache(config.getIntegerProperty(CoreConfig.CASCADING_ROLLUP_MAX_ENTRIES),
+                    expiryMinutes, TimeUnit.MINUTES);
+        }
+        return instance;
+    }
+
+    CascadingRollupCache(int maxEntries, long expiry, TimeUnit unit) {
+        rollups = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(expiry, unit)
+                .concurrencyLevel(Configuration.getInstance().getIntegerProperty(CoreConfig.MAX_ROLLUP_READ_THREADS))
+                .build();
+    }
+
+    /**
+     * Keeps the rollup of {@code locator} for the slot of {@code gran} starting at {@code slotStart}, unless nothing
+     * is ever rolled up from that granularity.
+     *
+     * @param rollup the rollup, or null if the locator had no points in the slot.
+     */
+    public void put(Locator locator, Granularity gran, long slotStart, Rollup rollup) {
+        if (gran == Granularity.LAST) {
+            return;
+        }
+        rollups.put(new Key(locator, gran, slotStart), Optional.fromNullable(rollup));
+    }
+
+    /**
+     * Gets the kept rollups of the {@code childGran} slots within {@code parentRange}.
+     *
+     * @param missing gets the start of every child slot that is not kept.
+     * @return the kept rollups, by the start of their slot.
+     */
+    public Points<Rollup> getChildren(Locator locator, Granularity childGran, Range parentRange, List<Long> missing) {
+        Points<Rollup> children = new Points<Rollup>();
+        for (long slotStart = parentRange.getStart(); slotStart <= parentRange.getStop();
+             slotStart += childGran.milliseconds()) {
+            Optional<Rollup> rollup = rollups.getIfPresent(new Key(locator, childGran, slotStart));
+            if (rollup == null) {
+                missing.add(slotStart);
+                childMisses.mark();
+            } else {
+                childHits.mark();
+                if (rollup.isPresent()) {
+                    children.add(new Points.Point<Rollup>(slotStart, rollup.get()));
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Drops the kept rollups of every locator of {@code shard}.
+     */
+    public void invalidateShard(int shard) {
+        for (Key key : rollups.asMap().keySet()) {
+            if (key.locator.getShard() == shard) {
+                rollups.invalidate(key);
+            }
+        }
+    }
+
+    long size() {
+        return rollups.size();
+    }
+
+    private static final class Key {
+        private final Locator locator;
+        private final Granularity gran;
+        private final long slotStart;
+
+        Key(Locator locator, Granularity gran, long slotStart) {
+            this.locator = locator;
+            this.gran = gran;
+            this.slotStart = slotStart;
+        }
+
+        @Override
+        public int hashCode() {
+            return (locator.hashCode() * 31 + gran.hashCode()) * 31 + (int) (slotStart ^ (slotStart >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return slotStart == other.slotStart && gran.equals(other.gran) && locator.equals(other.locator);
+        }
+    }
+}
@@ -59,6 +59,10 @@ public enum CoreConfig implements ConfigDefaults {
     // Maximum threads that would access the cache concurrently
     META_CACHE_MAX_CONCURRENCY("50"),
 
+    // Setting this to true keeps the metadata cache in primitive hash tables keyed by locator fingerprint
+    // instead of a Guava cache. Uses far less heap, but its persisted snapshots only load back into a compact store.
+    META_CACHE_COMPACT_STORE("false"),
+
     // Setting this to true will enable batched meta reads and writes from db (lazy loads and writes)
     META_CACHE_BATCHED_READS("false"),
     META_CACHE_BATCHED_WRITES("false"),
@@ -73,6 +77,48 @@ public enum CoreConfig implements ConfigDefaults {
     META_CACHE_BATCHED_WRITES_PIPELINE_DEPTH("10"), // how many outstanding batches? (1 thread per batch).
     META_CACHE_BATCHED_WRITES_QUEUE_SIZE("1000"),
 
+    // Setting this to true makes a slot rollup read the metadata of all its locators in bulk before it starts.
+    META_CACHE_PREFETCH_ENABLED("true"),
+    META_CACHE_PREFETCH_BATCH_SIZE("500"), // how many rows to read at a time?
+
+    // Setting this to true makes ingest nodes buffer numeric full resolution points and write each locator's points
+    // of a 5m slot as one compressed block to metrics_full_blocks, and makes readers read those blocks along with
+    // metrics_full. Only supported by the datastax driver; set it on every node. A block is sealed
+    // FULL_RES_BLOCK_SEAL_DELAY_MS after its slot ends (keep it well below ROLLUP_DELAY_MILLIS), or once it holds
+    // FULL_RES_BLOCK_MAX_POINTS points. Points arriving for an already sealed slot are written to metrics_full.
+    // Buffered points are still written to metrics_full before they are acked, with their TTL capped at
+    // FULL_RES_BLOCK_RAW_TTL_MS, so a node dying before it seals a block loses nothing that was acked. The trade-off:
+    // every buffered point costs one metrics_full write on top of its share of a block write, and is stored twice
+    // until its raw copy expires; reads do not change, as metrics_full is read anyway for late points. Keep the raw
+    // TTL just long enough to cover the slot, the seal delay and ROLLUP_DELAY_MILLIS, so the points of a block lost
+    // with its node still get rolled up; they then only live for that TTL, not for the full resolution TTL.
+    FULL_RES_BLOCKS_ENABLED("false"),
+    FULL_RES_BLOCK_SEAL_DELAY_MS("30000"),
+    FULL_RES_BLOCK_MAX_POINTS("1024"),
+    FULL_RES_BLOCK_FLUSH_PERIOD_MS("5000"),
+    FULL_RES_BLOCK_RAW_TTL_MS("1800000"),
+
+    // Setting this to true makes ingest nodes pre-roll the numeric points of basic metrics into partial 5m rollups,
+    // written to metrics_5m_partials PRE_ROLLUP_5M_FLUSH_DELAY_MS after their slot ends (keep it well below
+    // ROLLUP_DELAY_MILLIS), and makes 5m rollups merge those partials instead of reading metrics_full. Raw points
+    // are still written, and the partials are only used when their point counts add up to the slot's points in
+    // metrics_full. Slots older than PRE_ROLLUP_5M_MAX_AGE_MS, without partials, or whose partials are incomplete
+    // or count a point twice, are rolled up from metrics_full. Only supported by the datastax driver; set it on
+    // every node.
+    PRE_ROLLUP_5M_ENABLED("false"),
+    PRE_ROLLUP_5M_FLUSH_DELAY_MS("30000"),
+    PRE_ROLLUP_5M_FLUSH_PERIOD_MS("5000"),
+    PRE_ROLLUP_5M_MAX_AGE_MS("86400000"),
+
+    // Setting this to true makes rollup nodes keep the rollups they compute in memory, up to
+    // CASCADING_ROLLUP_MAX_ENTRIES of them for CASCADING_ROLLUP_EXPIRY_MINUTES, and compute coarser rollups from
+    // them. Only the child slots that are not in memory are read from Cassandra. The rollups of a shard are dropped
+    // when the node gains or loses its lock. An expiry of 0 keeps them for a slot of the coarsest granularity plus
+    // ROLLUP_DELAY_MILLIS, the longest any of them can still be needed.
+    CASCADING_ROLLUP_ENABLED("false"),
+    CASCADING_ROLLUP_MAX_ENTRIES("500000"),
+    CASCADING_ROLLUP_EXPIRY_MINUTES("0"),
+
     // Maximum timeout waiting on exhausted connection pools in milliseconds.
     // Maps directly to Astyanax's ConnectionPoolConfiguration.setMaxTimeoutWhenExhausted
     MAX_TIMEOUT_WHEN_EXHAUSTED("2000"),
@@ -90,6 +136,25 @@ public enum CoreConfig implements ConfigDefaults {
     SHARD_PUSH_PERIOD("2000"),
     SHARD_PULL_PERIOD("20000"),
 
+    // how many slot states to write to a shard's metrics_state row in one (single partition) batch.
+    SHARD_PUSH_BATCH_SIZE("100"),
+    // the shard state puller only applies slot states written since its previous pull, and re-applies everything
+    // every SHARD_PULL_FULL_EVERY pulls. Set it to 1 to always apply everything.
+    SHARD_PULL_FULL_EVERY("30"),
+    // how far behind the newest write time already seen a slot state's write time may be and still be applied,
+    // to allow for clock differences between the nodes writing shard state.
+    SHARD_PULL_MAX_CLOCK_SKEW_MS("30000"),
+
+    // Optional, best effort UDP notifications of newly active slots from ingest nodes to rollup nodes, so rollups
+    // do not wait for the shard state push and pull. SLOT_NOTIFICATION_TARGETS is the comma list of <host>:<port>
+    // of the rollup nodes an ingest node notifies; a rollup node listens on SLOT_NOTIFICATION_HOST and
+    // SLOT_NOTIFICATION_PORT (0 disables). The listener does not authenticate its senders: anyone who can reach it
+    // can mark slots active. Set SLOT_NOTIFICATION_HOST to an address on a private network only the ingest nodes
+    // can reach, never to 0.0.0.0 or a public interface.
+    SLOT_NOTIFICATION_TARGETS(""),
+    SLOT_NOTIFICATION_HOST("127.0.0.1"),
+    SLOT_NOTIFICATION_PORT("0"),
+
     // blueflood uses zookeeper to acquire locks before working on shards
     ZOOKEEPER_CLUSTER("NONE"),
 
@@ -146,6 +211,20 @@ public enum CoreConfig implements ConfigDefaults {
     METADATA_CACHE_PERSISTENCE_ENABLED("false"),
     METADATA_CACHE_PERSISTENCE_PATH("/dev/null"),
     METADATA_CACHE_PERSISTENCE_PERIOD_MINS("10"),
+    // how many incremental saves to append to the persisted cache before it is rewritten in full.
+    METADATA_CACHE_PERSISTENCE_MAX_DELTAS("12"),
+    METADATA_CACHE_PERSISTENCE_LOAD_THREADS("4"),
+    // keep a Bloom filter of the locators indexed for discovery, persisted across restarts, so that a restarted node
+    // does not re-index every locator it sees. metrics_locator writes only trust the exact in-memory locator cache.
+    // A false positive (about LOCATOR_FILTER_FPP of new locators) delays the indexing of a locator by up to the
+    // window, partition minutes times partitions.
+    LOCATOR_FILTER_ENABLED("false"),
+    LOCATOR_FILTER_PERSISTENCE_PATH("/dev/null"),
+    LOCATOR_FILTER_PERSISTENCE_PERIOD_MINS("10"),
+    LOCATOR_FILTER_PARTITION_MINS("360"),
+    LOCATOR_FILTER_PARTITIONS("4"),
+    LOCATOR_FILTER_EXPECTED_INSERTIONS("1000000"),
+    LOCATOR_FILTER_FPP("0.0001"),
     META_CACHE_RETENTION_IN_MINUTES("10"),
     
     // how long we typically wait to schedule a rollup.
@@ -166,10 +245,20 @@ public enum CoreConfig implements ConfigDefaults {
     ROLLUP_ON_READ_REPAIR_THREADS("250"),
     ROLLUP_ON_READ_REPAIR_SIZE_PER_THREAD( "5" ),
     ROLLUP_ON_READ_TIMEOUT_IN_SECONDS("10"),
+    // Setting this to true makes queries read the part of their range that the requested granularity no longer
+    // retains from the finest coarser granularity that does, instead of returning no data for it.
+    QUERY_STITCHING_ENABLED("false"),
+    QUERY_STITCHING_THREADS("20"),
 
     ENUM_VALIDATOR_THREADS("20"),
     ENUM_UNIQUE_VALUES_THRESHOLD("100"),
     ENUM_VALIDATOR_ENABLED("true"),
+    // enum locators seen by rollups within this window are validated together; 0 validates each one on its own.
+    ENUM_VALIDATOR_BATCH_WINDOW_MS("5000"),
+    ENUM_VALIDATOR_BATCH_SIZE("100"),
+    // how many locators to remember the indexed enum values of, and for how long.
+    ENUM_VALIDATOR_CACHE_SIZE("100000"),
+    ENUM_VALIDATOR_CACHE_EXPIRY_MINUTES("60"),
     EXCESS_ENUM_READER_SLEEP("600000"),
     // 3 days - this matches the TTL for our metrics_full table, we don't accept anything older than the TTL.
     BEFORE_CURRENT_COLLECTIONTIME_MS("259200000"),
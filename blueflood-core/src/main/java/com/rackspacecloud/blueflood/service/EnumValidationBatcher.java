@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.service;
+
+import com.codahale.metrics.Histogram;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rackspacecloud.blueflood.io.EnumReaderIO;
+import com.rackspacecloud.blueflood.io.IOContainer;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.utils.Metrics;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces the enum locators seen by rollups over a short window and validates them in batches, so that each
+ * batch costs one multi-get of the enum values and one elasticsearch query per tenant instead of one of each per
+ * locator. The enum values last seen in elasticsearch are kept in memory, and locators whose values did not change
+ * are not looked up at all.
+ */
+public class EnumValidationBatcher {
+
+    private static EnumValidationBatcher instance;
+
+    private final EnumReaderIO enumReaderIO;
+    private final ScheduledExecutorService scheduler;
+    private final long windowMillis;
+    private final int batchSize;
+    private final Cache<Locator, List<String>> indexedEnumValues;
+
+    private final Set<Locator> pending = Collections.newSetFromMap(new ConcurrentHashMap<Locator, Boolean>());
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Histogram batchSizes = Metrics.histogram(EnumValidationBatcher.class, "Enum validation batch size");
+
+    /**
+     * @return the process wide batcher, or null if {@link CoreConfig#ENUM_VALIDATOR_BATCH_WINDOW_MS} is 0.
+     */
+    public static synchronized EnumValidationBatcher getInstanceIfEnabled() {
+        Configuration config = Configuration.getInstance();
+        if (instance == null && config.getLongProperty(CoreConfig.ENUM_VALIDATOR_BATCH_WINDOW_MS) > 0) {
+            instance = new EnumValidationBatcher(IOContainer.fromConfig().getEnumReaderIO(),
+                    Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                            .setNameFormat("Enum validation batcher").setDaemon(true).build()),
+                    config.getLongProperty(CoreConfig.ENUM_VALIDATOR_BATCH_WINDOW_MS),
+                    config.getIntegerProperty(CoreConfig.ENUM_VALIDATOR_BATCH_SIZE),
+                    config.getIntegerProperty(CoreConfig.ENUM_VALIDATOR_CACHE_SIZE),
+                    config.getIntegerProperty(CoreConfig.ENUM_VALIDATOR_CACHE_EXPIRY_MINUTES));
+        }
+        return instance;
+    }
+
+    EnumValidationBatcher(EnumReaderIO enumReaderIO, ScheduledExecutorService scheduler, long windowMillis,
+                          int batchSize, int cacheSize, int cacheExpiryMinutes) {
+        this.enumReaderIO = enumReaderIO;
+        this.scheduler = scheduler;
+        this.windowMillis = windowMillis;
+        this.batchSize = batchSize;
+        // entries expire so that changes made to the index behind our back are eventually noticed.
+        this.indexedEnumValues = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheExpiryMinutes, TimeUnit.MINUTES)
+                .concurrencyLevel(16)
+                .build();
+    }
+
+    /**
+     * Queues {@code locator} for validation. The validation runs on {@code executor} once the current window ends;
+     * a locator queued several times within a window is validated once.
+     */
+    public void add(Locator locator, final Executor executor) {
+        pending.add(locator);
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush(executor);
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void flush(Executor executor) {
+        // anything added from here on schedules the next window.
+        scheduled.set(false);
+        Set<Locator> batch = new HashSet<Locator>();
+        Iterator<Locator> it = pending.iterator();
+        while (it.hasNext()) {
+            batch.add(it.next());
+            it.remove();
+            if (batch.size() >= batchSize || !it.hasNext()) {
+                batchSizes.update(batch.size());
+                executor.execute(new EnumValidator(batch, enumReaderIO, indexedEnumValues));
+                batch = new HashSet<Locator>();
+            }
+        }
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+}
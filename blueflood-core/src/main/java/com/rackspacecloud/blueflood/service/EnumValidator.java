@@ -16,12 +16,15 @@
 
 package com.rackspacecloud.blueflood.service;
 
+import com.codahale.metrics.Meter;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
 import com.rackspacecloud.blueflood.io.*;
 import com.rackspacecloud.blueflood.types.BluefloodEnumRollup;
 import com.rackspacecloud.blueflood.types.IMetric;
 import com.rackspacecloud.blueflood.types.Locator;
 import com.rackspacecloud.blueflood.types.PreaggregatedMetric;
+import com.rackspacecloud.blueflood.utils.Metrics;
 import com.rackspacecloud.blueflood.utils.ModuleLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,13 +37,18 @@ import java.util.*;
  * a uniqueness count of the enum values have reached a certain threshold.  If it has, the class mark the metric
  * as bad by inserting its locator into the proper cassandra column family.  If it hasn't reached the threshold,
  * then it will create or update the elasticsearch "enums" index for the metric.
+ *
+ * Locators are looked up in elasticsearch with one query per tenant. See {@link EnumValidationBatcher} for how
+ * locators are grouped and how unchanged enum values are skipped.
  */
 public class EnumValidator implements Runnable {
 
     private static final Logger log = LoggerFactory.getLogger(EnumValidator.class);
     private static final Configuration config = Configuration.getInstance();
     private static final int ENUM_UNIQUE_VALUES_THRESHOLD = config.getIntegerProperty(CoreConfig.ENUM_UNIQUE_VALUES_THRESHOLD);
+    private static final Meter unchangedSkipped = Metrics.meter(EnumValidator.class, "Unchanged enum values skipped");
     private Set<Locator> locators;
+    private final Cache<Locator, List<String>> indexedEnumValues;
 
     private DiscoveryIO discoveryIO = null;
     private EnumReaderIO enumIO = null;
@@ -60,8 +68,20 @@ public class EnumValidator implements Runnable {
      * @param enumReaderIO
      */
     public EnumValidator(Set<Locator> locators, EnumReaderIO enumReaderIO) {
+        this(locators, enumReaderIO, null);
+    }
+
+    /**
+     * Construct an EnumValidator object that remembers the enum values it found indexed in elasticsearch, so that
+     * locators whose values did not change since are not looked up again
+     * @param locators
+     * @param enumReaderIO
+     * @param indexedEnumValues sorted enum values last seen in elasticsearch, by locator. May be null.
+     */
+    public EnumValidator(Set<Locator> locators, EnumReaderIO enumReaderIO, Cache<Locator, List<String>> indexedEnumValues) {
         this.locators = locators;
         this.enumIO = enumReaderIO;
+        this.indexedEnumValues = indexedEnumValues;
     }
 
     @Override
@@ -69,61 +89,108 @@ public class EnumValidator implements Runnable {
         if (locators == null) return;
 
         Map<Locator, List<String>> locatorEnums = enumIO.getEnumStringMappings(new ArrayList(locators));
+        List<Locator> toCompare = new ArrayList<Locator>();
         for (final Locator locator : locatorEnums.keySet()) {
-            // validate enum values count and write to index or bad metric
-            validateThresholdAndWrite(locator, locatorEnums.get(locator));
+            List<String> currentEnumValues = locatorEnums.get(locator);
+            log.debug(String.format("EnumValidator validating locator %s", locator.toString()));
+
+            // check if count of current enum values for the metric exceed a configurable threshold number
+            if ((currentEnumValues != null) && (currentEnumValues.size() > ENUM_UNIQUE_VALUES_THRESHOLD)) {
+                // count of current enum values of metric exceeded threshold, bad metric
+                // write locator to bad metric table
+                try {
+                    IOContainer.fromConfig().getExcessEnumIO().insertExcessEnumMetric(locator);
+                    // stop ingesting it here without waiting for the next read of the table
+                    ExcessEnumReader.getInstance().addExcessEnumMetric(locator);
+                } catch (IOException e) {
+                    log.error(String.format("Exception writing bad metric %s", locator.toString()), e);
+                }
+            } else if ((currentEnumValues != null) && (currentEnumValues.size() > 0)) {
+                Collections.sort(currentEnumValues);
+                // skip the elasticsearch round trip if we indexed this very set last time
+                if (indexedEnumValues != null && currentEnumValues.equals(indexedEnumValues.getIfPresent(locator))) {
+                    unchangedSkipped.mark();
+                    continue;
+                }
+                toCompare.add(locator);
+            }
         }
-    }
+        if (toCompare.isEmpty()) return;
 
-    private void validateThresholdAndWrite(Locator locator, List<String> currentEnumValues) {
-        // check if count of current enum values for the metric exceed a configurable threshold number
-        log.debug(String.format("EnumValidator validating locator %s", locator.toString()));
+        // not bad metrics, create or update enums index of metrics in elasticsearch if different from cassandra
+        Map<Locator, List<String>> elasticsearchEnums = searchIndexedEnumValues(toCompare);
+        for (Locator locator : toCompare) {
+            writeIfChanged(locator, locatorEnums.get(locator), elasticsearchEnums.get(locator));
+        }
+    }
 
-        // if exceeded, mark metric as bad, else index enum values in elasticsearch
-        if ((currentEnumValues != null) && (currentEnumValues.size() > ENUM_UNIQUE_VALUES_THRESHOLD)) {
-            // count of current enum values of metric exceeded threshold, bad metric
-            // write locator to bad metric table
-            try {
-                IOContainer.fromConfig().getExcessEnumIO().insertExcessEnumMetric(locator);
-            } catch (IOException e) {
-                log.error(String.format("Exception writing bad metric %s", locator.toString()), e);
+    /**
+     * Looks up the enum values currently in elasticsearch, with one query per tenant.
+     */
+    private Map<Locator, List<String>> searchIndexedEnumValues(List<Locator> locators) {
+        Map<String, List<Locator>> byTenant = new LinkedHashMap<String, List<Locator>>();
+        for (Locator locator : locators) {
+            List<Locator> tenantLocators = byTenant.get(locator.getTenantId());
+            if (tenantLocators == null) {
+                tenantLocators = new ArrayList<Locator>();
+                byTenant.put(locator.getTenantId(), tenantLocators);
             }
+            tenantLocators.add(locator);
         }
-        else {
-            // not bad metric, create or update enums index of metric in elasticsearch if different from cassandra
-            // search for metric from elastic search
+
+        Map<Locator, List<String>> elasticsearchEnums = new HashMap<Locator, List<String>>();
+        for (Map.Entry<String, List<Locator>> entry : byTenant.entrySet()) {
+            String tenantId = entry.getKey();
+            List<Locator> tenantLocators = entry.getValue();
+            Map<String, Locator> byMetricName = new HashMap<String, Locator>();
+            for (Locator locator : tenantLocators) {
+                byMetricName.put(locator.getMetricName(), locator);
+            }
+
             List<SearchResult> esSearchResult = null;
             try {
-                esSearchResult = getDiscoveryIO().search(locator.getTenantId(), locator.getMetricName());
+                if (tenantLocators.size() == 1) {
+                    esSearchResult = getDiscoveryIO().search(tenantId, tenantLocators.get(0).getMetricName());
+                } else {
+                    esSearchResult = getDiscoveryIO().search(tenantId, new ArrayList<String>(byMetricName.keySet()));
+                }
             }
             catch (Exception e) {
-                log.error(String.format("Exception retrieving enum values from elasticsearch for %s: %s", locator.toString(), e.getMessage()), e);
+                log.error(String.format("Exception retrieving enum values from elasticsearch for %d metrics of %s: %s",
+                        tenantLocators.size(), tenantId, e.getMessage()), e);
             }
+            if (esSearchResult == null) continue;
 
-            // get elasticsearch enum values from top search results of exact match
-            List<String> elasticsearchEnumValues = null;
-            if ((esSearchResult != null) && (esSearchResult.size() > 0)) {
-                elasticsearchEnumValues = esSearchResult.get(0).getEnumValues();
+            // get elasticsearch enum values from the top search result of an exact match
+            for (SearchResult result : esSearchResult) {
+                Locator locator = byMetricName.get(result.getMetricName());
+                if (locator != null && !elasticsearchEnums.containsKey(locator)) {
+                    elasticsearchEnums.put(locator, result.getEnumValues());
+                }
             }
+        }
+        return elasticsearchEnums;
+    }
 
-            // sort the two array lists of enum values
-            if (currentEnumValues != null) Collections.sort(currentEnumValues);
-            if (elasticsearchEnumValues != null) Collections.sort(elasticsearchEnumValues);
+    private void writeIfChanged(Locator locator, List<String> currentEnumValues, List<String> elasticsearchEnumValues) {
+        if (elasticsearchEnumValues != null) Collections.sort(elasticsearchEnumValues);
 
-            // compare two list of enum values and right if CF has enum values for the metric and it doesn't equal to the values in elasticsearch
-            if ((currentEnumValues != null) && (currentEnumValues.size() > 0) && (!currentEnumValues.equals(elasticsearchEnumValues)))
-            {
-                // if not equal, create or update enums index in elastic search
-                BluefloodEnumRollup rollupWithEnumValues = createRollupWithEnumValues(currentEnumValues);
-                IMetric enumMetric = new PreaggregatedMetric(0, locator, null, rollupWithEnumValues);
-                try {
-                    getDiscoveryIO().insertDiscovery(enumMetric);
-                }
-                catch (Exception e) {
-                    log.error(String.format("Exception writing enums index to elasticsearch for %s: %s", locator.toString(), e.getMessage()), e);
-                }
+        // compare two list of enum values and write if they differ
+        if (!currentEnumValues.equals(elasticsearchEnumValues)) {
+            // if not equal, create or update enums index in elastic search
+            BluefloodEnumRollup rollupWithEnumValues = createRollupWithEnumValues(currentEnumValues);
+            IMetric enumMetric = new PreaggregatedMetric(0, locator, null, rollupWithEnumValues);
+            try {
+                getDiscoveryIO().insertDiscovery(enumMetric);
+            }
+            catch (Exception e) {
+                log.error(String.format("Exception writing enums index to elasticsearch for %s: %s", locator.toString(), e.getMessage()), e);
+                return;
             }
         }
+        if (indexedEnumValues != null) {
+            indexedEnumValues.put(locator, currentEnumValues);
+        }
     }
 
     private BluefloodEnumRollup createRollupWithEnumValues(List<String> enumValues) {
@@ -16,13 +16,16 @@
 
 package com.rackspacecloud.blueflood.service;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.codahale.metrics.Meter;
 
 import com.rackspacecloud.blueflood.io.IOContainer;
 import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.utils.CopyOnWriteLongSet;
 import com.rackspacecloud.blueflood.utils.Metrics;
 
 import org.slf4j.Logger;
@@ -34,6 +37,8 @@ public class ExcessEnumReader implements Runnable {
                                                     "reads", "Cassandra Reads");
     private final Meter readErrMeter = Metrics.meter(ExcessEnumReader.class, 
                                                     "reads", "Cassandra Read Errors");
+    private final Meter pushMeter = Metrics.meter(ExcessEnumReader.class,
+                                                    "Excess enum metrics added between reads");
         
 
     private static final ExcessEnumReader INSTANCE = new ExcessEnumReader();
@@ -41,12 +46,46 @@ public class ExcessEnumReader implements Runnable {
         return INSTANCE;
     }
 
-    private Set<Locator> excessEnumMetrics = Collections.emptySet();
+    // fingerprints of the locators in metrics_excess_enums, probed on every enum ingested.
+    private final CopyOnWriteLongSet excessEnumMetrics = new CopyOnWriteLongSet();
+    // added since the current reload started, and so possibly missing from what it reads.
+    private final Set<Long> recentlyAdded = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
     private static final Configuration config = Configuration.getInstance();
 
     public Boolean isInExcessEnumMetrics(Locator m){
-        return excessEnumMetrics.contains(m);
+        return excessEnumMetrics.contains(m.getFingerprint());
     }
+
+    /**
+     * Blocks {@code m} right away, rather than after the next reload. Called once it was written to
+     * metrics_excess_enums.
+     */
+    public void addExcessEnumMetric(Locator m) {
+        recentlyAdded.add(m.getFingerprint());
+        if (excessEnumMetrics.add(m.getFingerprint())) {
+            pushMeter.mark();
+        }
+    }
+
+    /**
+     * Replaces the set with the locators read from metrics_excess_enums, keeping any added while they were read.
+     */
+    void reload(Set<Locator> excess) {
+        long[] fingerprints = new long[excess.size() + recentlyAdded.size()];
+        int i = 0;
+        for (Locator locator : excess) {
+            fingerprints[i++] = locator.getFingerprint();
+        }
+        for (Long fingerprint : recentlyAdded) {
+            if (i == fingerprints.length) break;
+            fingerprints[i++] = fingerprint;
+        }
+        int changes = excessEnumMetrics.retainExactly(Arrays.copyOf(fingerprints, i));
+        if (changes > 0) {
+            log.info("Excess enum metrics changed by " + changes + ", now " + excessEnumMetrics.size());
+        }
+    }
+
     final public void run() {
 
         int sleepMillis = config.getIntegerProperty(CoreConfig.EXCESS_ENUM_READER_SLEEP);
@@ -54,14 +93,20 @@ public class ExcessEnumReader implements Runnable {
         while (true)
         {
             try {
+                recentlyAdded.clear();
                 Set<Locator> excess = IOContainer.fromConfig().getExcessEnumIO().getExcessEnumMetrics();
-                excessEnumMetrics = excess;
+                reload(excess);
                 readMeter.mark();
-                Thread.sleep(sleepMillis);
             } catch (Exception e) {
                 log.error("ExcessEnumReader failed with exception " + e);
                 readErrMeter.mark();
             }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                log.info("ExcessEnumReader interrupted, stopping");
+                return;
+            }
         }
     }
 }
@@ -48,6 +48,9 @@ class LocatorFetchRunnable implements Runnable {
     private ScheduleContext scheduleCtx;
     private long serverTime;
     private static final Timer rollupLocatorExecuteTimer = Metrics.timer(RollupService.class, "Locate and Schedule Rollups for Slot");
+    private static final Timer prefetchMetadataTimer = Metrics.timer(RollupService.class, "Prefetch Metadata for Slot");
+    private static final boolean PREFETCH_METADATA = Configuration.getInstance().getBooleanProperty(
+            CoreConfig.META_CACHE_PREFETCH_ENABLED);
 
     private Range parentRange;
 
@@ -101,6 +104,7 @@ class LocatorFetchRunnable implements Runnable {
         final RollupBatchWriter rollupBatchWriter = createRollupBatchWriter(executionContext);
 
         Set<Locator> locators = getLocators(executionContext);
+        prefetchMetadata(locators);
 
         for (Locator locator : locators) {
             rollCount = processLocator(rollCount, executionContext, rollupBatchWriter, locator);
@@ -183,6 +187,21 @@ class LocatorFetchRunnable implements Runnable {
         rollupReadExecutor.execute(rollupRunnable);
     }
 
+    public void prefetchMetadata(Set<Locator> locators) {
+        if (!PREFETCH_METADATA || locators.isEmpty()) {
+            return;
+        }
+        final Timer.Context ctx = prefetchMetadataTimer.time();
+        try {
+            RollupRunnable.prefetchMetadata(locators);
+        } catch (Exception e) {
+            // not fatal; each rollup reads whatever metadata it is missing.
+            log.warn("Failed prefetching metadata for " + parentSlotKey, e);
+        } finally {
+            ctx.stop();
+        }
+    }
+
     public Set<Locator> getLocators(RollupExecutionContext executionContext) {
         Set<Locator> locators = new HashSet<Locator>();
 
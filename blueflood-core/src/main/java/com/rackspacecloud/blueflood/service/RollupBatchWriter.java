@@ -40,10 +40,16 @@ public class RollupBatchWriter {
     private static final int ROLLUP_BATCH_MAX_SIZE = Configuration.getInstance().getIntegerProperty(CoreConfig.ROLLUP_BATCH_MAX_SIZE);
 
     public RollupBatchWriter(ThreadPoolExecutor executor, RollupExecutionContext context) {
+        this(executor, context, IOContainer.fromConfig().getBasicMetricsRW(),
+                IOContainer.fromConfig().getPreAggregatedMetricsRW());
+    }
+
+    public RollupBatchWriter(ThreadPoolExecutor executor, RollupExecutionContext context,
+                             AbstractMetricsRW basicMetricsRW, AbstractMetricsRW preAggregatedRW) {
         this.executor = executor;
         this.context = context;
-        this.basicMetricsRW = IOContainer.fromConfig().getBasicMetricsRW();
-        this.preAggregatedRW = IOContainer.fromConfig().getPreAggregatedMetricsRW();
+        this.basicMetricsRW = basicMetricsRW;
+        this.preAggregatedRW = preAggregatedRW;
     }
 
 
@@ -38,11 +38,11 @@ public class RollupExecutionContext {
         return readCounter.get() == 0;
     }
 
-    boolean doneWriting() {
+    public boolean doneWriting() {
         return writeCounter.get() == 0;
     }
 
-    boolean wasSuccessful() {
+    public boolean wasSuccessful() {
         return successful.get();
     }
 
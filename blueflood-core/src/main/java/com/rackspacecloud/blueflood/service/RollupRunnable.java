@@ -19,11 +19,14 @@ package com.rackspacecloud.blueflood.service;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
 import com.rackspacecloud.blueflood.cache.MetadataCache;
+import com.rackspacecloud.blueflood.exceptions.CacheException;
 import com.rackspacecloud.blueflood.exceptions.GranularityException;
 import com.rackspacecloud.blueflood.io.AbstractMetricsRW;
 import com.rackspacecloud.blueflood.io.CassandraModel;
 import com.rackspacecloud.blueflood.io.CassandraModel.MetricColumnFamily;
+import com.rackspacecloud.blueflood.io.datastax.DPartialRollupIO;
 import com.rackspacecloud.blueflood.rollup.Granularity;
 import com.rackspacecloud.blueflood.types.*;
 import com.rackspacecloud.blueflood.utils.Metrics;
@@ -34,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import com.rackspacecloud.blueflood.eventemitter.RollupEventEmitter;
 import com.rackspacecloud.blueflood.eventemitter.RollupEvent;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -54,6 +58,7 @@ public class RollupRunnable implements Runnable {
 
     private static final Timer calcTimer = Metrics.timer(RollupRunnable.class, "Read And Calculate Rollup");
     private static final Meter noPointsToCalculateRollup = Metrics.meter(RollupRunnable.class, "No points to calculate rollup");
+    private static final Meter preRolledSlots = Metrics.meter(RollupRunnable.class, "Rollups merged from partials");
     private static HashMap<Granularity, Meter> granToMeters = new HashMap<Granularity, Meter>();
     private ExecutorService enumValidatorExecutor;
 
@@ -123,29 +128,42 @@ public class RollupRunnable implements Runnable {
                 singleRollupReadContext.getEnumMetricsMeterForGranularity(dstGran).mark();
                 //Run the validation for enums every 5 minutes, when data is being rolled up from full to 5m
                 if (dstGran.equals(Granularity.MIN_5) && Configuration.getInstance().getBooleanProperty(CoreConfig.ENUM_VALIDATOR_ENABLED) == true) {
-                    enumValidatorExecutor.execute(new EnumValidator(Sets.newHashSet(rollupLocator)));
+                    EnumValidationBatcher batcher = EnumValidationBatcher.getInstanceIfEnabled();
+                    if (batcher != null) {
+                        batcher.add(rollupLocator, enumValidatorExecutor);
+                    } else {
+                        enumValidatorExecutor.execute(new EnumValidator(Sets.newHashSet(rollupLocator)));
+                    }
                 }
             }
 
             // first, get the points.
             AbstractMetricsRW metricsRW;
+            CascadingRollupCache cascade = CascadingRollupCache.getInstanceIfEnabled();
             try {
                 metricsRW = RollupUtils.getMetricsRWForRollupType(rollupType);
 
-                input = metricsRW.getDataToRollup(
-                        singleRollupReadContext.getLocator(),
-                        rollupType,
-                        singleRollupReadContext.getRange(),
-                        srcCF.getName());
+                rollup = getPreRolled(rollupType, srcGran);
 
-                if (input.isEmpty()) {
-                    LOG.debug(String.format("No points rollup for locator %s", singleRollupReadContext.getLocator()));
-                    noPointsToCalculateRollup.mark();
-                    return;
+                if (rollup == null) {
+                    input = getInput(metricsRW, rollupType, srcGran, srcCF.getName(), cascade);
+
+                    if (input.isEmpty()) {
+                        LOG.debug(String.format("No points rollup for locator %s", singleRollupReadContext.getLocator()));
+                        noPointsToCalculateRollup.mark();
+                        if (cascade != null) {
+                            cascade.put(rollupLocator, dstGran, singleRollupReadContext.getRange().getStart(), null);
+                        }
+                        return;
+                    }
+
+                    // next, compute the rollup.
+                    rollup =  RollupRunnable.getRollupComputer(rollupType, srcGran).compute(input);
                 }
 
-                // next, compute the rollup.
-                rollup =  RollupRunnable.getRollupComputer(rollupType, srcGran).compute(input);
+                if (cascade != null) {
+                    cascade.put(rollupLocator, dstGran, singleRollupReadContext.getRange().getStart(), rollup);
+                }
             } finally {
                 calcrollupContext.stop();
             }
@@ -171,6 +189,90 @@ public class RollupRunnable implements Runnable {
         }
     }
 
+    /**
+     * Reads the points to roll up. When cascading rollups are enabled, child rollups this node computed are taken
+     * from memory, and only the span of the missing ones is read.
+     */
+    @SuppressWarnings("unchecked")
+    private Points getInput(AbstractMetricsRW metricsRW, RollupType rollupType, Granularity srcGran, String srcCF,
+                            CascadingRollupCache cascade) throws IOException {
+        Locator locator = singleRollupReadContext.getLocator();
+        Range range = singleRollupReadContext.getRange();
+        if (cascade == null || srcGran == Granularity.FULL) {
+            return metricsRW.getDataToRollup(locator, rollupType, range, srcCF);
+        }
+
+        List<Long> missing = new ArrayList<Long>();
+        Points<Rollup> children = cascade.getChildren(locator, srcGran, range, missing);
+        if (missing.isEmpty()) {
+            return children;
+        }
+
+        Range missingRange = new Range(missing.get(0), missing.get(missing.size() - 1) + srcGran.milliseconds() - 1);
+        Points read = metricsRW.getDataToRollup(locator, rollupType, missingRange, srcCF);
+        for (Object point : read.getPoints().values()) {
+            // children kept in memory win; they are what this node last computed.
+            Points.Point<Rollup> child = (Points.Point<Rollup>) point;
+            if (!children.getPoints().containsKey(child.getTimestamp())) {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @return the 5m rollup merged from the partials that ingest nodes pre-rolled, or null if the rollup has to be
+     * computed from metrics_full.
+     */
+    private Rollup getPreRolled(RollupType rollupType, Granularity srcGran) {
+        if (rollupType != RollupType.BF_BASIC || srcGran != Granularity.FULL) {
+            return null;
+        }
+        DPartialRollupIO partialIO = DPartialRollupIO.getInstanceIfEnabled();
+        if (partialIO == null) {
+            return null;
+        }
+        try {
+            BasicRollup rollup = partialIO.getPreRolled(singleRollupReadContext.getLocator(),
+                    singleRollupReadContext.getRange().getStart());
+            if (rollup != null) {
+                preRolledSlots.mark();
+            }
+            return rollup;
+        } catch (Exception e) {
+            LOG.warn(String.format("Unable to read partial rollups for locator %s, reading metrics_full instead",
+                    singleRollupReadContext.getLocator()), e);
+            return null;
+        }
+    }
+
+    /**
+     * Bulk-loads the metadata that rollups look up (rollup type, and units when they come from metrics_metadata)
+     * for the given locators, so that rolling them up does not read metadata one locator at a time on a cold cache.
+     */
+    public static void prefetchMetadata(Collection<Locator> locators) throws CacheException {
+        String rollupTypeKey = MetricMetadata.ROLLUP_TYPE.name().toLowerCase();
+        String unitKey = MetricMetadata.UNIT.name().toLowerCase();
+
+        Set<Locator> missingRollupTypes = rollupTypeCache.withoutCachedValue(locators, rollupTypeKey);
+        Set<Locator> missingUnits = MetadataCache.readsUnitsFromMetadata()
+                ? metadataCache.withoutCachedValue(locators, unitKey)
+                : new HashSet<Locator>();
+        if (missingRollupTypes.isEmpty() && missingUnits.isEmpty()) {
+            return;
+        }
+
+        Set<Locator> toRead = new HashSet<Locator>(missingRollupTypes);
+        toRead.addAll(missingUnits);
+        Set<Locator> failed = new HashSet<Locator>();
+        Table<Locator, String, String> meta = metadataCache.readAll(toRead, failed);
+        // locators that could not be read are left uncached, so rollups load them one at a time
+        missingRollupTypes.removeAll(failed);
+        missingUnits.removeAll(failed);
+        rollupTypeCache.populate(missingRollupTypes, meta, rollupTypeKey);
+        metadataCache.populate(missingUnits, meta, unitKey);
+    }
+
     // determine which DataType to use for serialization.
     public static Rollup.Type getRollupComputer(RollupType srcType, Granularity srcGran) {
         switch (srcType) {
@@ -23,11 +23,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ShardStatePuller extends ShardStateWorker {
     private static final Logger log = LoggerFactory.getLogger(ShardStatePuller.class);
-    
+
+    private final int fullPullEvery = Configuration.getInstance().getIntegerProperty(CoreConfig.SHARD_PULL_FULL_EVERY);
+    private final long maxClockSkew = Configuration.getInstance().getLongProperty(CoreConfig.SHARD_PULL_MAX_CLOCK_SKEW_MS);
+
+    // shard -> newest write time (millis) of the slot states applied from it.
+    private final ConcurrentMap<Integer, Long> lastWriteTimes = new ConcurrentHashMap<Integer, Long>();
+    private final AtomicInteger pullsSinceFullPull = new AtomicInteger(0);
 
     public ShardStatePuller(Collection<Integer> allShards, ShardStateManager stateManager, ShardStateIO io) {
         super(allShards, stateManager, new TimeValue(Configuration.getInstance().getIntegerProperty(CoreConfig.SHARD_PULL_PERIOD), TimeUnit.MILLISECONDS), io);
@@ -35,13 +44,30 @@ public class ShardStatePuller extends ShardStateWorker {
 
     public void performOperation() {
         Timer.Context ctx = timer.time();
-        for (int shard : shardStateManager.getManagedShards()) {
+        boolean fullPull = pullsSinceFullPull.incrementAndGet() >= fullPullEvery;
+        if (fullPull) {
+            pullsSinceFullPull.set(0);
+        }
+        Collection<Integer> managedShards = shardStateManager.getManagedShards();
+        lastWriteTimes.keySet().retainAll(managedShards);
+
+        for (int shard : managedShards) {
 
             try {
                 Collection<SlotState> slotStates = getIO().getShardState(shard);
+                Long lastWriteTime = lastWriteTimes.get(shard);
+                long applyFrom = (fullPull || lastWriteTime == null) ? Long.MIN_VALUE : lastWriteTime - maxClockSkew;
+                long newestWriteTime = lastWriteTime == null ? Long.MIN_VALUE : lastWriteTime;
+
                 for (SlotState slotState : slotStates) {
+                    // states that have not been rewritten since they were last applied wait for the next full pull.
+                    if (slotState.getLastUpdatedTimestamp() < applyFrom) {
+                        continue;
+                    }
                     shardStateManager.updateSlotOnRead(shard, slotState);
+                    newestWriteTime = Math.max(newestWriteTime, slotState.getLastUpdatedTimestamp());
                 }
+                lastWriteTimes.put(shard, newestWriteTime);
 
             } catch (Exception ex) {
                 log.error("Could not read shard state from the database. " + ex.getMessage(), ex);
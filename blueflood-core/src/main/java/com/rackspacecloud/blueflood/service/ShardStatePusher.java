@@ -30,9 +30,19 @@ import java.util.concurrent.TimeUnit;
 
 public class ShardStatePusher extends ShardStateWorker {
     private static final Logger log = LoggerFactory.getLogger(ShardStatePusher.class);
-    
+
+    private final SlotNotificationSender notificationSender;
+
     public ShardStatePusher(final Collection<Integer> allShards, ShardStateManager stateManager, ShardStateIO io) {
+        this(allShards, stateManager, io, null);
+    }
+
+    /**
+     * @param notificationSender if not null, rollup nodes are also notified directly of the slots that were pushed.
+     */
+    public ShardStatePusher(final Collection<Integer> allShards, ShardStateManager stateManager, ShardStateIO io, SlotNotificationSender notificationSender) {
         super(allShards, stateManager, new TimeValue(Configuration.getInstance().getIntegerProperty(CoreConfig.SHARD_PUSH_PERIOD), TimeUnit.MILLISECONDS), io);
+        this.notificationSender = notificationSender;
     }
 
     public void performOperation() {
@@ -43,8 +53,12 @@ public class ShardStatePusher extends ShardStateWorker {
                 if (slotTimes != null) {
                     try {
                         getIO().putShardState(shard, slotTimes);
+                        if (notificationSender != null) {
+                            notificationSender.send(shard, slotTimes);
+                        }
                     } catch (IOException ex) {
                         log.error("Could not put shard state to the database (shard " + shard + "). " + ex.getMessage(), ex);
+                        markDirty(slotTimes);
                     }
                 }
             }
@@ -54,5 +68,16 @@ public class ShardStatePusher extends ShardStateWorker {
             ctx.stop();
         }
     }
-    
+
+    /**
+     * Puts slots that could not be persisted back in the set of dirty slots, so that the next push retries them.
+     */
+    private static void markDirty(Map<Granularity, Map<Integer, UpdateStamp>> slotTimes) {
+        for (Map<Integer, UpdateStamp> stamps : slotTimes.values()) {
+            for (UpdateStamp stamp : stamps.values()) {
+                stamp.setDirty(true);
+            }
+        }
+    }
+
 }
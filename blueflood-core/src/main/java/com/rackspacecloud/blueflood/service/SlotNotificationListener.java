@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.service;
+
+import com.codahale.metrics.Meter;
+import com.rackspacecloud.blueflood.utils.Metrics;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Receives the slot notifications of {@link SlotNotificationSender} on a rollup node, and marks the notified slots
+ * active in the {@link ShardStateManager}, for the shards it manages. Packets are not authenticated, so bind it to
+ * an address only the ingest nodes can reach.
+ */
+public class SlotNotificationListener {
+    private static final Logger log = LoggerFactory.getLogger(SlotNotificationListener.class);
+
+    private final Meter notificationsApplied = Metrics.meter(SlotNotificationListener.class, "Notifications Applied");
+    private final Meter invalidPackets = Metrics.meter(SlotNotificationListener.class, "Invalid Packets");
+
+    private final ShardStateManager shardStateManager;
+    private final InetSocketAddress address;
+    private EventLoopGroup group;
+    private Channel channel;
+
+    public SlotNotificationListener(ShardStateManager shardStateManager, InetSocketAddress address) {
+        this.shardStateManager = shardStateManager;
+        this.address = address;
+    }
+
+    public synchronized void start() throws InterruptedException {
+        group = new NioEventLoopGroup(1);
+        channel = new Bootstrap()
+                .group(group)
+                .channel(NioDatagramChannel.class)
+                .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                        try {
+                            notificationsApplied.mark(SlotNotifications.apply(packet.content(), shardStateManager,
+                                    System.currentTimeMillis()));
+                        } catch (IllegalArgumentException ex) {
+                            invalidPackets.mark();
+                            log.debug("Dropping slot notification from " + packet.sender() + ": " + ex.getMessage());
+                        }
+                    }
+                })
+                .bind(address).sync().channel();
+        log.info("Listening for slot notifications on " + channel.localAddress());
+        if (address.getAddress() != null && address.getAddress().isAnyLocalAddress()) {
+            log.warn("Slot notifications are accepted on every interface; bind them to a private address instead");
+        }
+    }
+
+    /**
+     * @return the address the listener is bound to, or null if it is not started.
+     */
+    public synchronized InetSocketAddress getLocalAddress() {
+        return channel == null ? null : (InetSocketAddress) channel.localAddress();
+    }
+
+    public synchronized void stop() {
+        if (channel != null) {
+            channel.close().awaitUninterruptibly();
+            group.shutdownGracefully();
+            channel = null;
+        }
+    }
+}
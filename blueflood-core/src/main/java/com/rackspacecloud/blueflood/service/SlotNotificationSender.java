@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.service;
+
+import com.codahale.metrics.Meter;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.utils.Metrics;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends slot notifications over UDP to the rollup nodes listed in SLOT_NOTIFICATION_TARGETS. Delivery is best effort;
+ * the shard state in metrics_state stays the authority, and rollup nodes still pick it up through
+ * {@link ShardStatePuller}.
+ */
+public class SlotNotificationSender {
+    private static final Logger log = LoggerFactory.getLogger(SlotNotificationSender.class);
+
+    private final Meter packetsSent = Metrics.meter(SlotNotificationSender.class, "Packets Sent");
+    private final Meter sendErrors = Metrics.meter(SlotNotificationSender.class, "Send Errors");
+
+    private final List<InetSocketAddress> targets;
+    private final EventLoopGroup group;
+    private final Channel channel;
+
+    public SlotNotificationSender(List<InetSocketAddress> targets) throws InterruptedException {
+        this.targets = Collections.unmodifiableList(new ArrayList<InetSocketAddress>(targets));
+        this.group = new NioEventLoopGroup(1);
+        this.channel = new Bootstrap()
+                .group(group)
+                .channel(NioDatagramChannel.class)
+                .handler(new ChannelInboundHandlerAdapter())
+                .bind(0).sync().channel();
+    }
+
+    /**
+     * @return a sender for the configured SLOT_NOTIFICATION_TARGETS, or null if there are none.
+     */
+    public static SlotNotificationSender fromConfig() throws InterruptedException {
+        List<InetSocketAddress> targets = new ArrayList<InetSocketAddress>();
+        for (String target : Configuration.getInstance().getListProperty(CoreConfig.SLOT_NOTIFICATION_TARGETS)) {
+            String[] hostAndPort = target.split(":");
+            if (hostAndPort.length != 2) {
+                throw new IllegalArgumentException("Invalid SLOT_NOTIFICATION_TARGETS entry " + target
+                        + ", should be of the form <hostname>:<port>");
+            }
+            targets.add(new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1])));
+        }
+        return targets.isEmpty() ? null : new SlotNotificationSender(targets);
+    }
+
+    /**
+     * Notifies every target of the active slots in {@code slotTimes}.
+     */
+    public void send(int shard, Map<Granularity, Map<Integer, UpdateStamp>> slotTimes) {
+        try {
+            for (ByteBuf packet : SlotNotifications.encode(shard, slotTimes)) {
+                for (InetSocketAddress target : targets) {
+                    channel.write(new DatagramPacket(packet.duplicate().retain(), target));
+                    packetsSent.mark();
+                }
+                packet.release();
+            }
+            channel.flush();
+        } catch (RuntimeException ex) {
+            sendErrors.mark();
+            log.warn("Could not send slot notifications for shard " + shard, ex);
+        }
+    }
+
+    public void close() {
+        channel.close().awaitUninterruptibly();
+        group.shutdownGracefully();
+    }
+}
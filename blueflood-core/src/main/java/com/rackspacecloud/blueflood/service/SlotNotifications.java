@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.service;
+
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wire format of the slot notifications that ingest nodes send to rollup nodes (see {@link SlotNotificationSender}
+ * and {@link SlotNotificationListener}). A notification tells a rollup node that a slot became active, so that it
+ * can schedule the rollup without waiting for {@link ShardStatePuller} to read metrics_state.
+ *
+ * A packet is a version byte and an entry count (short), followed by entries of
+ * shard (int), granularity (byte index into {@link Granularity#granularities()}), slot (int) and timestamp (long).
+ */
+final class SlotNotifications {
+
+    static final byte VERSION = 1;
+
+    static final int HEADER_SIZE = 3;
+    static final int ENTRY_SIZE = 17;
+
+    // keeps a packet (1363 bytes) below a 1500 byte MTU.
+    static final int MAX_ENTRIES_PER_PACKET = 80;
+
+    private SlotNotifications() {}
+
+    /**
+     * @return the packets announcing the active slots of {@code slotTimes}. Other states are not sent.
+     */
+    static List<ByteBuf> encode(int shard, Map<Granularity, Map<Integer, UpdateStamp>> slotTimes) {
+        List<ByteBuf> packets = new ArrayList<ByteBuf>();
+        ByteBuf packet = null;
+        int entries = 0;
+
+        for (Map.Entry<Granularity, Map<Integer, UpdateStamp>> granEntry : slotTimes.entrySet()) {
+            int granularity = indexOf(granEntry.getKey());
+            for (Map.Entry<Integer, UpdateStamp> entry : granEntry.getValue().entrySet()) {
+                if (entry.getValue().getState() != UpdateStamp.State.Active) {
+                    continue;
+                }
+                if (packet == null) {
+                    packet = Unpooled.buffer(HEADER_SIZE + ENTRY_SIZE * MAX_ENTRIES_PER_PACKET);
+                    packet.writeByte(VERSION);
+                    packet.writeShort(0);
+                }
+                packet.writeInt(shard);
+                packet.writeByte(granularity);
+                packet.writeInt(entry.getKey());
+                packet.writeLong(entry.getValue().getTimestamp());
+
+                if (++entries == MAX_ENTRIES_PER_PACKET) {
+                    packets.add(packet.setShort(1, entries));
+                    packet = null;
+                    entries = 0;
+                }
+            }
+        }
+        if (packet != null) {
+            packets.add(packet.setShort(1, entries));
+        }
+        return packets;
+    }
+
+    /**
+     * Applies the notifications of {@code packet} for the shards that {@code shardStateManager} manages.
+     *
+     * @return the number of notifications applied.
+     * @throws IllegalArgumentException if the packet is malformed.
+     */
+    static int apply(ByteBuf packet, ShardStateManager shardStateManager, long nowMillis) {
+        if (packet.readableBytes() < HEADER_SIZE || packet.readByte() != VERSION) {
+            throw new IllegalArgumentException("Not a slot notification");
+        }
+        int entries = packet.readUnsignedShort();
+        if (packet.readableBytes() != entries * ENTRY_SIZE) {
+            throw new IllegalArgumentException("Truncated slot notification");
+        }
+
+        Granularity[] granularities = Granularity.granularities();
+        int applied = 0;
+        for (int i = 0; i < entries; i++) {
+            int shard = packet.readInt();
+            int granularity = packet.readByte();
+            int slot = packet.readInt();
+            long timestamp = packet.readLong();
+
+            if (granularity < 0 || granularity >= granularities.length) {
+                throw new IllegalArgumentException("Unknown granularity " + granularity);
+            }
+            if (!shardStateManager.contains(shard)) {
+                continue;
+            }
+            shardStateManager.updateSlotOnRead(shard,
+                    new SlotState(granularities[granularity], slot, UpdateStamp.State.Active)
+                            .withTimestamp(timestamp)
+                            .withLastUpdatedTimestamp(nowMillis));
+            applied++;
+        }
+        return applied;
+    }
+
+    private static int indexOf(Granularity granularity) {
+        Granularity[] granularities = Granularity.granularities();
+        for (int i = 0; i < granularities.length; i++) {
+            if (granularities[i] == granularity) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown granularity " + granularity);
+    }
+}
@@ -631,6 +631,13 @@ class ZKShardLockManager implements ConnectionStateListener, ShardLockManager, Z
         }
 
         synchronized void setState(LockState newState) {
+            if ((state == LockState.ACQUIRED) != (newState == LockState.ACQUIRED)) {
+                // another node may have rolled this shard up while we did not hold it, or may do so from now on.
+                CascadingRollupCache cascade = CascadingRollupCache.getInstanceIfEnabled();
+                if (cascade != null) {
+                    cascade.invalidateShard(shard);
+                }
+            }
             state = newState;
             if (newState == LockState.ERROR) {
                 if (mutex.isAcquiredInThisProcess()) {
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.tools.ops;
+
+import com.datastax.driver.core.*;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rackspacecloud.blueflood.io.CassandraModel;
+import com.rackspacecloud.blueflood.io.datastax.DatastaxIO;
+import org.apache.commons.cli.*;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copies a metrics column family to another cluster with the datastax driver. The source is the cluster blueflood
+ * is configured for ({@link DatastaxIO}).
+ *
+ * The token ring is split into a fixed number of segments that are copied in parallel. Each segment is read a page
+ * at a time and written with a bounded number of asynchronous inserts in flight, and is recorded in a
+ * {@link MigrationCheckpoint} once all its writes succeeded, so an interrupted migration can be run again with the
+ * same arguments and only copies what is left. Reads can be throttled by rows and by bytes per second.
+ *
+ * Segments are computed over the whole ring of the Murmur3 partitioner, independently of the cluster topology, so
+ * that they stay the same from one run to the next.
+ */
+public class DatastaxMigration {
+
+    private static final Options cliOptions = new Options();
+
+    private static final String DST = "dst";
+    private static final String FROM = "from";
+    private static final String TO = "to";
+    private static final String COLUMN_FAMILY = "cf";
+    private static final String TTL = "ttl";
+    private static final String SEGMENTS = "segments";
+    private static final String THREADS = "threads";
+    private static final String FETCH_SIZE = "fetchsize";
+    private static final String IN_FLIGHT = "inflight";
+    private static final String ROWS_PER_SECOND = "rate";
+    private static final String MB_PER_SECOND = "mbps";
+    private static final String CHECKPOINT = "checkpoint";
+
+    private static final String MIN_MURMUR3_TOKEN = Long.toString(Long.MIN_VALUE);
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+
+    private static final PrintStream out = System.out;
+
+    static {
+        cliOptions.addOption(OptionBuilder.isRequired().hasArg(true).withDescription("[required] Destination cassandra cluster (host:port:keyspace), port being the native protocol port.").create(DST));
+        cliOptions.addOption(OptionBuilder.isRequired().hasArg().withDescription("[required] Which column family to migrate").create(COLUMN_FAMILY));
+        cliOptions.addOption(OptionBuilder.hasArg().withDescription("[optional] ISO 6801 datetime (or millis since epoch) of when to start migrating data. defaults to one year ago.").create(FROM));
+        cliOptions.addOption(OptionBuilder.hasArg().withDescription("[optional] ISO 6801 datetime (or millis since epoch) of when to stop migrating data. defaults to right now.").create(TO));
+        cliOptions.addOption(OptionBuilder.hasArg().withDescription("[optional] ttl in seconds for new data. default=the remaining ttl of each column.").create(TTL));
+        cliOptions.addOption(OptionBuilder.hasArg().withDescription("[optional] number of token ranges to split the ring into. default=1024").create(SEGMENTS));
+        cliOptions.addOption(OptionBuilder.hasArg().withDescription("[optional] number of token ranges to copy at once. default=8").create(THREADS));
+        cliOptions.addOption(OptionBuilder.hasArg().withDescription("[optional] number of columns to read per page. default=1000").create(FETCH_SIZE));
+        cliOptions.addOption(OptionBuilder.hasArg().withDescription("[optional] maximum number of writes in flight. default=256").create(IN_FLIGHT));
+        cliOptions.addOption(OptionBuilder.hasArg().withDescription("[optional] maximum number of columns per second to transfer, 0 for no limit. default=5000").create(ROWS_PER_SECOND));
+        cliOptions.addOption(OptionBuilder.hasArg().withDescription("[optional] maximum number of megabytes per second to transfer, 0 for no limit. default=0").create(MB_PER_SECOND));
+        cliOptions.addOption(OptionBuilder.hasArg().withDescription("[optional] file recording the finished token ranges. default=bf-migrate-<cf>.checkpoint").create(CHECKPOINT));
+    }
+
+    private final Session srcSession;
+    private final Session dstSession;
+    private final PreparedStatement select;
+    private final PreparedStatement insert;
+    private final long from;
+    private final long to;
+    private final int ttl;
+    private final int fetchSize;
+    private final Semaphore inFlight;
+    private final RateLimiter rowLimiter;
+    private final RateLimiter byteLimiter;
+    private final MigrationCheckpoint checkpoint;
+
+    private final AtomicLong columnsCopied = new AtomicLong(0);
+    private final AtomicLong bytesCopied = new AtomicLong(0);
+    private final AtomicInteger segmentsFailed = new AtomicInteger(0);
+
+    /**
+     * @param ttl the ttl of the copied columns in seconds, or -1 to keep the remaining ttl of each column.
+     * @param rowsPerSecond 0 for no limit.
+     * @param bytesPerSecond 0 for no limit.
+     */
+    public DatastaxMigration(Session srcSession, Session dstSession, String columnFamily, long from, long to, int ttl,
+                             int fetchSize, int maxInFlight, double rowsPerSecond, double bytesPerSecond,
+                             MigrationCheckpoint checkpoint) {
+        this.srcSession = srcSession;
+        this.dstSession = dstSession;
+        this.select = srcSession.prepare(String.format(
+                "SELECT key, column1, value, ttl(value) FROM %s WHERE token(key) > ? AND token(key) <= ? " +
+                "AND column1 >= ? AND column1 <= ? ALLOW FILTERING", columnFamily));
+        this.insert = dstSession.prepare(String.format(
+                "INSERT INTO %s (key, column1, value) VALUES (?, ?, ?) USING TTL ?", columnFamily));
+        this.from = from;
+        this.to = to;
+        this.ttl = ttl;
+        this.fetchSize = fetchSize;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.rowLimiter = rowsPerSecond > 0 ? RateLimiter.create(rowsPerSecond) : null;
+        this.byteLimiter = bytesPerSecond > 0 ? RateLimiter.create(bytesPerSecond) : null;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return the ring split into {@code count} segments. Only depends on the partitioner and {@code count}.
+     */
+    public static List<TokenRange> segments(Metadata metadata, int count) {
+        Token min = metadata.newToken(MIN_MURMUR3_TOKEN);
+        return metadata.newTokenRange(min, min).splitEvenly(count);
+    }
+
+    static String segmentId(TokenRange segment) {
+        return segment.getStart() + ":" + segment.getEnd();
+    }
+
+    /**
+     * Copies every segment that is not checkpointed yet.
+     *
+     * @return the number of segments that failed and have to be copied again.
+     */
+    public int run(List<TokenRange> segments, int threads) throws InterruptedException {
+        final List<TokenRange> remaining = new ArrayList<TokenRange>();
+        for (TokenRange segment : segments) {
+            if (!checkpoint.isDone(segmentId(segment))) {
+                remaining.add(segment);
+            }
+        }
+        out.println(String.format("%d of %d token ranges left to copy", remaining.size(), segments.size()));
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("Migration segment copier %d").build());
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Migration progress").setDaemon(true).build());
+        final long startMillis = System.currentTimeMillis();
+        final int total = segments.size();
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report(startMillis, total);
+            }
+        }, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        for (final TokenRange segment : remaining) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String id = segmentId(segment);
+                    try {
+                        copySegment(segment);
+                        checkpoint.markDone(id);
+                    } catch (Exception ex) {
+                        segmentsFailed.incrementAndGet();
+                        out.println(String.format("Failed to copy token range %s: %s", id, ex.getMessage()));
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+            // still copying.
+        }
+        reporter.shutdownNow();
+        report(startMillis, total);
+        return segmentsFailed.get();
+    }
+
+    void copySegment(TokenRange segment) throws Exception {
+        final SegmentWrites writes = new SegmentWrites();
+        for (TokenRange range : segment.unwrap()) {
+            BoundStatement bound = select.bind()
+                    .setToken(0, range.getStart())
+                    .setToken(1, range.getEnd())
+                    .setLong(2, from)
+                    .setLong(3, to);
+            bound.setFetchSize(fetchSize);
+            ResultSet results = srcSession.execute(bound);
+            for (Row row : results) {
+                // fetch the next page while this one is written.
+                if (results.getAvailableWithoutFetching() == fetchSize / 2 && !results.isFullyFetched()) {
+                    results.fetchMoreResults();
+                }
+                writes.throwIfFailed();
+
+                String key = row.getString(0);
+                long column = row.getLong(1);
+                ByteBuffer value = row.getBytes(2);
+                int columnTtl = ttl >= 0 ? ttl : (row.isNull(3) ? 0 : row.getInt(3));
+                final int size = key.length() + 8 + (value == null ? 0 : value.remaining());
+
+                if (rowLimiter != null) {
+                    rowLimiter.acquire();
+                }
+                if (byteLimiter != null) {
+                    byteLimiter.acquire(Math.max(1, size));
+                }
+                inFlight.acquire();
+                writes.started();
+                ResultSetFuture future = dstSession.executeAsync(insert.bind(key, column, value, columnTtl));
+                Futures.addCallback(future, new FutureCallback<ResultSet>() {
+                    @Override
+                    public void onSuccess(ResultSet result) {
+                        inFlight.release();
+                        columnsCopied.incrementAndGet();
+                        bytesCopied.addAndGet(size);
+                        writes.finished(null);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        inFlight.release();
+                        writes.finished(t);
+                    }
+                });
+            }
+        }
+        writes.await();
+        writes.throwIfFailed();
+    }
+
+    private void report(long startMillis, int totalSegments) {
+        double seconds = Math.max(1, (System.currentTimeMillis() - startMillis) / 1000d);
+        out.println(String.format("%d/%d token ranges done, %d failed; %d columns (%d c/s), %.1f MB (%.2f MB/s)",
+                checkpoint.getDoneCount(), totalSegments, segmentsFailed.get(),
+                columnsCopied.get(), (long) (columnsCopied.get() / seconds),
+                bytesCopied.get() / 1048576d, bytesCopied.get() / 1048576d / seconds));
+    }
+
+    /**
+     * Tracks the writes of one segment, which is only checkpointed once all of them succeeded.
+     */
+    private static class SegmentWrites {
+        private int outstanding = 0;
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        synchronized void started() {
+            outstanding++;
+        }
+
+        synchronized void finished(Throwable t) {
+            if (t != null) {
+                failure.compareAndSet(null, t);
+            }
+            if (--outstanding == 0) {
+                notifyAll();
+            }
+        }
+
+        synchronized void await() throws InterruptedException {
+            while (outstanding > 0) {
+                wait();
+            }
+        }
+
+        void throwIfFailed() throws Exception {
+            Throwable t = failure.get();
+            if (t != null) {
+                throw new Exception("write failed: " + t.getMessage(), t);
+            }
+        }
+    }
+
+    public static void main(String args[]) throws Exception {
+        Map<String, Object> options = parseOptions(args);
+
+        String[] dstParts = options.get(DST).toString().split(":", -1);
+        Cluster dstCluster = Cluster.builder()
+                .addContactPointsWithPorts(Collections.singleton(
+                        new InetSocketAddress(dstParts[0], Integer.parseInt(dstParts[1]))))
+                .build();
+        Session dstSession = dstCluster.connect("\"" + dstParts[2] + "\"");
+        Session srcSession = DatastaxIO.getSession();
+
+        String columnFamily = (String) options.get(COLUMN_FAMILY);
+        long from = (Long) options.get(FROM);
+        long to = (Long) options.get(TO);
+        int segmentCount = (Integer) options.get(SEGMENTS);
+
+        out.println(String.format("Will copy %s from %s to %s for dates %s to %s",
+                columnFamily, CassandraModel.KEYSPACE, options.get(DST), new Date(from), new Date(to)));
+
+        MigrationCheckpoint checkpoint = new MigrationCheckpoint((File) options.get(CHECKPOINT),
+                String.format("%s %d %d %d", columnFamily, from, to, segmentCount));
+        int failed;
+        try {
+            DatastaxMigration migration = new DatastaxMigration(srcSession, dstSession, columnFamily, from, to,
+                    (Integer) options.get(TTL),
+                    (Integer) options.get(FETCH_SIZE),
+                    (Integer) options.get(IN_FLIGHT),
+                    (Double) options.get(ROWS_PER_SECOND),
+                    (Double) options.get(MB_PER_SECOND) * 1048576d,
+                    checkpoint);
+            failed = migration.run(segments(srcSession.getCluster().getMetadata(), segmentCount),
+                    (Integer) options.get(THREADS));
+        } finally {
+            checkpoint.close();
+            dstCluster.close();
+        }
+
+        if (failed > 0) {
+            out.println(String.format("%d token ranges failed, run again with the same arguments to retry them", failed));
+            System.exit(1);
+        }
+        out.println("Done");
+        System.exit(0);
+    }
+
+    // construct a well-formed options map. There should be no guesswork/checking for null after this point. All defaults
+    // should be populated.
+    private static Map<String, Object> parseOptions(String[] args) {
+        final GnuParser parser = new GnuParser();
+        final Map<String, Object> options = new HashMap<String, Object>();
+        try {
+            final long now = System.currentTimeMillis();
+            CommandLine line = parser.parse(cliOptions, args);
+
+            String dst = line.getOptionValue(DST);
+            if (dst.split(":", -1).length != 3) {
+                throw new ParseException("Destination must be host:port:keyspace");
+            }
+            options.put(DST, dst);
+
+            // default range is one year ago until now.
+            options.put(FROM, line.hasOption(FROM) ? parseDateTime(line.getOptionValue(FROM)) : now-(365L*24L*60L*60L*1000L));
+            options.put(TO, line.hasOption(TO) ? parseDateTime(line.getOptionValue(TO)) : now);
+
+            Set<String> names = new HashSet<String>();
+            for (CassandraModel.MetricColumnFamily cf : CassandraModel.getMetricColumnFamilies()) {
+                names.add(cf.getName());
+            }
+            String columnFamily = line.getOptionValue(COLUMN_FAMILY);
+            if (!names.contains(columnFamily)) {
+                throw new ParseException("Invalid column family");
+            }
+            options.put(COLUMN_FAMILY, columnFamily);
+
+            options.put(TTL, line.hasOption(TTL) ? Integer.parseInt(line.getOptionValue(TTL)) : -1);
+            options.put(SEGMENTS, line.hasOption(SEGMENTS) ? Integer.parseInt(line.getOptionValue(SEGMENTS)) : 1024);
+            options.put(THREADS, line.hasOption(THREADS) ? Integer.parseInt(line.getOptionValue(THREADS)) : 8);
+            options.put(FETCH_SIZE, line.hasOption(FETCH_SIZE) ? Integer.parseInt(line.getOptionValue(FETCH_SIZE)) : 1000);
+            options.put(IN_FLIGHT, line.hasOption(IN_FLIGHT) ? Integer.parseInt(line.getOptionValue(IN_FLIGHT)) : 256);
+            options.put(ROWS_PER_SECOND, line.hasOption(ROWS_PER_SECOND) ? Double.parseDouble(line.getOptionValue(ROWS_PER_SECOND)) : 5000d);
+            options.put(MB_PER_SECOND, line.hasOption(MB_PER_SECOND) ? Double.parseDouble(line.getOptionValue(MB_PER_SECOND)) : 0d);
+            options.put(CHECKPOINT, new File(line.hasOption(CHECKPOINT) ? line.getOptionValue(CHECKPOINT) : "bf-migrate-" + columnFamily + ".checkpoint"));
+
+        } catch (ParseException ex) {
+            HelpFormatter helpFormatter = new HelpFormatter();
+            helpFormatter.printHelp("bf-migrate-datastax", cliOptions);
+            System.exit(-1);
+        }
+
+        return options;
+    }
+
+    private static long parseDateTime(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException ex) {
+            // convert from a ISO 6801 date String.
+            return DatatypeConverter.parseDateTime(s).getTime().getTime();
+        }
+    }
+}
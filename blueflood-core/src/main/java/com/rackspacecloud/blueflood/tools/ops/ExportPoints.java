@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.tools.ops;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rackspacecloud.blueflood.io.DiscoveryIO;
+import com.rackspacecloud.blueflood.io.MetricsRWDelegator;
+import com.rackspacecloud.blueflood.io.SearchResult;
+import com.rackspacecloud.blueflood.outputs.formats.MetricData;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.service.CoreConfig;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.types.Range;
+import com.rackspacecloud.blueflood.utils.ModuleLoader;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+import org.apache.commons.cli.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Exports the points of many metrics of a tenant to a file.
+ *
+ * Usage:
+ *
+ * $JAVA -cp $CLASSPATH ExportPoints -tenantId ${tenantId} (-glob ${glob} | -metrics ${file}) -out ${file} \
+ *  [-from ${startTime}] [-to ${endTime}] [-resolution ${res}] [-format ${format}] [-batch ${n}] [-concurrency ${n}]
+ *
+ * tenantId - Tenant ID
+ * glob - Metric name glob, resolved through the configured DISCOVERY_MODULES
+ * metrics - File listing the names of the metrics to export, one per line
+ * out - File the points are written to
+ * from - Start time for the range for which you want metrics (specified as milli-seconds since epoch)
+ * to - End time for the range for which you want metrics (specified as milli-seconds since epoch)
+ * resolution - Resolution of data at which you want the points (one of full, 5m, 20m, 60m, 240m, 1440m)
+ * format - One of csv, json (one object per line) or binary (see {@link PointWriter.Binary})
+ * batch - Number of metrics read together
+ * concurrency - Number of batches read at the same time
+ */
+public class ExportPoints {
+    private static final TimeValue DEFAULT_RANGE = new TimeValue(7, TimeUnit.DAYS);
+    private static final Options cliOptions = new Options();
+    private static final GnuParser parser = new GnuParser();
+    private static final HelpFormatter helpFormatter = new HelpFormatter();
+    private static final String TENANT_ID = "tenantId";
+    private static final String GLOB = "glob";
+    private static final String METRICS = "metrics";
+    private static final String OUT = "out";
+    private static final String FROM = "from";
+    private static final String TO = "to";
+    private static final String RES = "resolution";
+    private static final String FORMAT = "format";
+    private static final String BATCH = "batch";
+    private static final String CONCURRENCY = "concurrency";
+
+    static {
+        cliOptions.addOption(OptionBuilder.isRequired().hasArg(true).withDescription("Tenant ID").create(TENANT_ID));
+        cliOptions.addOption(OptionBuilder.isRequired(false).hasArg(true)
+                .withDescription("Metric name glob, resolved through the discovery module").create(GLOB));
+        cliOptions.addOption(OptionBuilder.isRequired(false).hasArg(true)
+                .withDescription("File listing the metric names to export, one per line").create(METRICS));
+        cliOptions.addOption(OptionBuilder.isRequired().hasArg(true).withDescription("Output file").create(OUT));
+        cliOptions.addOption(OptionBuilder.isRequired(false).hasArg(true)
+                .withDescription("Start timestamp (millis since epoch)").create(FROM));
+        cliOptions.addOption(OptionBuilder.isRequired(false).hasArg(true)
+                .withDescription("End timestamp (millis since epoch)").create(TO));
+        cliOptions.addOption(OptionBuilder.isRequired(false).hasArg(true)
+                .withDescription("Resolution to use: one of 'full, '5m', '20m', '60m', '240m', '1440m'")
+                .create(RES));
+        cliOptions.addOption(OptionBuilder.isRequired(false).hasArg(true)
+                .withDescription("Output format: one of 'csv', 'json', 'binary' (default csv)").create(FORMAT));
+        cliOptions.addOption(OptionBuilder.isRequired(false).hasArg(true)
+                .withDescription("Metrics read together (default 50)").create(BATCH));
+        cliOptions.addOption(OptionBuilder.isRequired(false).hasArg(true)
+                .withDescription("Batches read at the same time (default 8)").create(CONCURRENCY));
+    }
+
+    private final MetricsRWDelegator delegator;
+    private final int batchSize;
+    private final int concurrency;
+
+    ExportPoints(MetricsRWDelegator delegator, int batchSize, int concurrency) {
+        this.delegator = delegator;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+    }
+
+    public static void main(String args[]) {
+        CommandLine line = null;
+        try {
+            line = parser.parse(cliOptions, args);
+        } catch (ParseException ex) {
+            System.err.println("Parse exception " + ex.getMessage());
+            helpFormatter.printHelp("ExportPoints", cliOptions);
+            System.exit(2);
+        }
+        if (line.hasOption(GLOB) == line.hasOption(METRICS)) {
+            System.err.println("Exactly one of -" + GLOB + " and -" + METRICS + " is required");
+            helpFormatter.printHelp("ExportPoints", cliOptions);
+            System.exit(2);
+        }
+
+        String tenantId = line.getOptionValue(TENANT_ID);
+        long to = line.hasOption(TO) ? Long.parseLong(line.getOptionValue(TO)) : System.currentTimeMillis();
+        long from = line.hasOption(FROM) ? Long.parseLong(line.getOptionValue(FROM)) : to - DEFAULT_RANGE.toMillis();
+        if (from >= to) {
+            System.err.println("End time " + to + " has to be greater than start time " + from);
+            System.exit(2);
+        }
+        Granularity gran = Granularity.FULL;
+        if (line.hasOption(RES)) {
+            try {
+                gran = Granularity.fromString(line.getOptionValue(RES).toLowerCase());
+            } catch (Exception ex) {
+                gran = null;
+            }
+            if (gran == null) {
+                System.err.println("Unknown resolution " + line.getOptionValue(RES));
+                System.exit(2);
+            }
+        }
+        String format = line.getOptionValue(FORMAT, PointWriter.CSV).toLowerCase();
+        int batchSize = Integer.parseInt(line.getOptionValue(BATCH, "50"));
+        int concurrency = Integer.parseInt(line.getOptionValue(CONCURRENCY, "8"));
+
+        try {
+            List<String> metrics = line.hasOption(GLOB)
+                    ? resolveGlob(tenantId, line.getOptionValue(GLOB))
+                    : readMetricNames(new File(line.getOptionValue(METRICS)));
+            List<Locator> locators = new ArrayList<Locator>();
+            for (String metric : metrics) {
+                locators.add(Locator.createLocatorFromPathComponents(tenantId, metric));
+            }
+            System.out.println(String.format("Exporting %d metrics from %d to %d at %s resolution as %s",
+                    locators.size(), from, to, gran.shortName(), format));
+
+            long startMillis = System.currentTimeMillis();
+            PointWriter writer = PointWriter.create(format, new FileOutputStream(line.getOptionValue(OUT)));
+            long points;
+            try {
+                points = new ExportPoints(new MetricsRWDelegator(), batchSize, concurrency)
+                        .export(locators, new Range(from, to), gran, writer);
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            double seconds = Math.max(1, (System.currentTimeMillis() - startMillis) / 1000d);
+            System.out.println(String.format("Exported %d points in %.1f seconds (%d points/s)",
+                    points, seconds, (long) (points / seconds)));
+            System.exit(0);
+        } catch (Exception ex) {
+            System.err.println("Export failed: " + ex.getMessage());
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the points of {@code locators}, {@code batchSize} metrics at a time with up to {@code concurrency} reads in
+     * flight, and writes them as the reads complete. At most twice as many batches as there are reads in flight are
+     * held in memory.
+     *
+     * @return the number of points written
+     */
+    long export(List<Locator> locators, final Range range, final Granularity gran, PointWriter writer)
+            throws IOException, InterruptedException {
+        ExecutorService readers = Executors.newFixedThreadPool(concurrency,
+                new ThreadFactoryBuilder().setNameFormat("Export reader %d").setDaemon(true).build());
+        CompletionService<Map<Locator, MetricData>> reads = new ExecutorCompletionService<Map<Locator, MetricData>>(readers);
+        long points = 0;
+        try {
+            int next = 0;
+            int pending = 0;
+            while (next < locators.size() || pending > 0) {
+                while (next < locators.size() && pending < concurrency * 2) {
+                    final List<Locator> batch = locators.subList(next, Math.min(next + batchSize, locators.size()));
+                    reads.submit(new Callable<Map<Locator, MetricData>>() {
+                        @Override
+                        public Map<Locator, MetricData> call() throws Exception {
+                            return delegator.getDatapointsForRange(batch, range, gran);
+                        }
+                    });
+                    next += batch.size();
+                    pending++;
+                }
+
+                Map<Locator, MetricData> read;
+                try {
+                    read = reads.take().get();
+                } catch (ExecutionException ex) {
+                    throw new IOException("Could not read points", ex.getCause());
+                }
+                pending--;
+                for (Map.Entry<Locator, MetricData> metric : read.entrySet()) {
+                    writer.write(metric.getKey(), metric.getValue());
+                    points += metric.getValue().getData().getPoints().size();
+                }
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+        return points;
+    }
+
+    private static List<String> resolveGlob(String tenantId, String glob) throws Exception {
+        DiscoveryIO discoveryIO = (DiscoveryIO) ModuleLoader.getInstance(DiscoveryIO.class, CoreConfig.DISCOVERY_MODULES);
+        if (discoveryIO == null) {
+            throw new IOException("No discovery module found to resolve " + glob + ". Please check DISCOVERY_MODULES");
+        }
+        Set<String> metrics = new TreeSet<String>();
+        for (SearchResult result : discoveryIO.search(tenantId, glob)) {
+            metrics.add(result.getMetricName());
+        }
+        return new ArrayList<String>(metrics);
+    }
+
+    static List<String> readMetricNames(File file) throws IOException {
+        List<String> metrics = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0 && !line.startsWith("#")) {
+                    metrics.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return metrics;
+    }
+}
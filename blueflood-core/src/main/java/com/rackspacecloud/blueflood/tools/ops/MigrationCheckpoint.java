@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.tools.ops;
+
+import java.io.*;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Records the segments a {@link DatastaxMigration} has finished copying, one per line, so that a restarted
+ * migration skips them. The first line describes the migration the file belongs to; resuming with a different
+ * column family, time range or segment count is refused rather than silently skipping the wrong segments.
+ */
+public class MigrationCheckpoint implements Closeable {
+
+    private static final String HEADER_PREFIX = "# ";
+
+    private final Set<String> done = new HashSet<String>();
+    private final Writer writer;
+
+    public MigrationCheckpoint(File file, String description) throws IOException {
+        boolean exists = file.isFile() && file.length() > 0;
+        if (exists) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String header = reader.readLine();
+                if (!(HEADER_PREFIX + description).equals(header)) {
+                    throw new IOException(String.format("%s belongs to another migration (%s)", file, header));
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // a line cut short by a crash is not followed by a newline; reading it back is harmless.
+                    if (line.length() > 0) {
+                        done.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        boolean endsWithNewline = !exists || lastByte(file) == '\n';
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+        if (!exists) {
+            writer.write(HEADER_PREFIX + description + "\n");
+            writer.flush();
+        } else if (!endsWithNewline) {
+            // terminate the cut short line so it does not run into the next one.
+            writer.write("\n");
+            writer.flush();
+        }
+    }
+
+    private static int lastByte(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(raf.length() - 1);
+            return raf.read();
+        } finally {
+            raf.close();
+        }
+    }
+
+    public synchronized boolean isDone(String segment) {
+        return done.contains(segment);
+    }
+
+    public synchronized int getDoneCount() {
+        return done.size();
+    }
+
+    public synchronized void markDone(String segment) throws IOException {
+        if (done.add(segment)) {
+            writer.write(segment + "\n");
+            writer.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.tools.ops;
+
+import com.google.gson.Gson;
+import com.rackspacecloud.blueflood.outputs.formats.MetricData;
+import com.rackspacecloud.blueflood.types.*;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the points exported by {@link ExportPoints}, one metric at a time. Every point is written as the subset of
+ * {@link #FIELDS} that applies to its type: raw numbers only have a value, basic, gauge and timer rollups have stats,
+ * counter rollups have a count, rate and number of samples. Points that are not numeric get their string form as
+ * the value.
+ */
+abstract class PointWriter implements Closeable {
+
+    static final String CSV = "csv";
+    static final String JSON = "json";
+    static final String BINARY = "binary";
+
+    static final String[] FIELDS = {"value", "count", "average", "min", "max", "variance", "rate", "samples"};
+
+    static PointWriter create(String format, OutputStream out) throws IOException {
+        if (CSV.equals(format)) {
+            return new Csv(out);
+        } else if (JSON.equals(format)) {
+            return new JsonLines(out);
+        } else if (BINARY.equals(format)) {
+            return new Binary(out);
+        }
+        throw new IllegalArgumentException("Unknown format " + format);
+    }
+
+    abstract void write(Locator locator, MetricData data) throws IOException;
+
+    /**
+     * Marks the export as complete, for the formats that can tell a complete file from a truncated one. Only call it
+     * once every metric was written; {@link #close()} alone leaves the file without its end marker.
+     */
+    void finish() throws IOException {
+    }
+
+    static Map<String, Object> fieldsOf(Object data) {
+        Map<String, Object> fields = new LinkedHashMap<String, Object>();
+        if (data instanceof SimpleNumber) {
+            data = ((SimpleNumber) data).getValue();
+        }
+        if (data instanceof Number) {
+            fields.put("value", data);
+        } else if (data instanceof IBaseRollup) {
+            IBaseRollup rollup = (IBaseRollup) data;
+            fields.put("count", rollup.getCount());
+            fields.put("average", toNumber(rollup.getAverage()));
+            fields.put("min", toNumber(rollup.getMinValue()));
+            fields.put("max", toNumber(rollup.getMaxValue()));
+            fields.put("variance", toNumber(rollup.getVariance()));
+        } else if (data instanceof BluefloodCounterRollup) {
+            BluefloodCounterRollup rollup = (BluefloodCounterRollup) data;
+            fields.put("count", rollup.getCount());
+            fields.put("rate", rollup.getRate());
+            fields.put("samples", rollup.getSampleCount());
+        } else {
+            fields.put("value", String.valueOf(data));
+        }
+        return fields;
+    }
+
+    private static Number toNumber(AbstractRollupStat stat) {
+        if (stat.isFloatingPoint()) {
+            return stat.toDouble();
+        }
+        return stat.toLong();
+    }
+
+    /**
+     * One row per point: metric, timestamp, unit and then {@link #FIELDS}, empty where they do not apply.
+     */
+    static class Csv extends PointWriter {
+        private final Writer out;
+
+        Csv(OutputStream out) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            this.out.write("metric,timestamp,unit");
+            for (String field : FIELDS) {
+                this.out.write(",");
+                this.out.write(field);
+            }
+            this.out.write("\n");
+        }
+
+        @Override
+        void write(Locator locator, MetricData data) throws IOException {
+            String metric = escape(locator.getMetricName());
+            String unit = escape(data.getUnit() == null ? "" : data.getUnit());
+            for (Object object : data.getData().getPoints().values()) {
+                Points.Point point = (Points.Point) object;
+                Map<String, Object> fields = fieldsOf(point.getData());
+                out.write(metric);
+                out.write(",");
+                out.write(Long.toString(point.getTimestamp()));
+                out.write(",");
+                out.write(unit);
+                for (String field : FIELDS) {
+                    out.write(",");
+                    Object value = fields.get(field);
+                    if (value != null) {
+                        out.write(escape(value.toString()));
+                    }
+                }
+                out.write("\n");
+            }
+        }
+
+        static String escape(String value) {
+            // metric names may well contain commas.
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * One JSON object per point and line, with the metric, timestamp, unit and the fields that apply.
+     */
+    static class JsonLines extends PointWriter {
+        private static final Gson gson = new Gson();
+        private final Writer out;
+
+        JsonLines(OutputStream out) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        }
+
+        @Override
+        void write(Locator locator, MetricData data) throws IOException {
+            for (Object object : data.getData().getPoints().values()) {
+                Points.Point point = (Points.Point) object;
+                Map<String, Object> line = new LinkedHashMap<String, Object>();
+                line.put("metric", locator.getMetricName());
+                line.put("timestamp", point.getTimestamp());
+                if (data.getUnit() != null) {
+                    line.put("unit", data.getUnit());
+                }
+                line.putAll(fieldsOf(point.getData()));
+                out.write(gson.toJson(line));
+                out.write("\n");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * The name and unit of a metric are written once, followed by its points. The format is:
+     * <pre>
+     * file   := MAGIC VERSION metric* 0:byte
+     * metric := 1:byte name:utf unit:utf count:int point{count}
+     * point  := timestamp:long mask:short double* [value:utf]
+     * </pre>
+     * Bit i of the mask is set when {@code FIELDS[i]} is a number, which follows as a double, in field order. Bit 8
+     * is set when the value is not a number, in which case it follows as a string.
+     */
+    static class Binary extends PointWriter {
+        static final int MAGIC = 0x42464558; // "BFEX"
+        static final int VERSION = 1;
+        static final int STRING_VALUE = 0x100;
+
+        private final DataOutputStream out;
+
+        Binary(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+        }
+
+        @Override
+        void write(Locator locator, MetricData data) throws IOException {
+            Map<Long, Points.Point> points = data.getData().getPoints();
+            out.writeByte(1);
+            out.writeUTF(locator.getMetricName());
+            out.writeUTF(data.getUnit() == null ? "" : data.getUnit());
+            out.writeInt(points.size());
+            for (Points.Point point : points.values()) {
+                Map<String, Object> fields = fieldsOf(point.getData());
+                int mask = 0;
+                for (int i = 0; i < FIELDS.length; i++) {
+                    Object value = fields.get(FIELDS[i]);
+                    if (value instanceof Number) {
+                        mask |= 1 << i;
+                    } else if (value != null) {
+                        mask |= STRING_VALUE;
+                    }
+                }
+                out.writeLong(point.getTimestamp());
+                out.writeShort(mask);
+                for (int i = 0; i < FIELDS.length; i++) {
+                    if ((mask & (1 << i)) != 0) {
+                        out.writeDouble(((Number) fields.get(FIELDS[i])).doubleValue());
+                    }
+                }
+                if ((mask & STRING_VALUE) != 0) {
+                    out.writeUTF((String) fields.get("value"));
+                }
+            }
+        }
+
+        @Override
+        void finish() throws IOException {
+            out.writeByte(0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -139,15 +139,19 @@ public abstract class BaseRollup implements Rollup {
 
         Map<Long, Points.Point<SimpleNumber>> points = input.getPoints();
         for (Map.Entry<Long, Points.Point<SimpleNumber>> item : points.entrySet()) {
-            this.count += 1;
-            SimpleNumber numericMetric = item.getValue().getData();
-            average.handleFullResMetric(numericMetric.getValue());
-            variance.handleFullResMetric(numericMetric.getValue());
-            minValue.handleFullResMetric(numericMetric.getValue());
-            maxValue.handleFullResMetric(numericMetric.getValue());
+            computeFromSimpleMetric(item.getValue().getData());
         }
     }
 
+    // merge a single simple number with this rollup.
+    protected void computeFromSimpleMetric(SimpleNumber numericMetric) {
+        this.count += 1;
+        average.handleFullResMetric(numericMetric.getValue());
+        variance.handleFullResMetric(numericMetric.getValue());
+        minValue.handleFullResMetric(numericMetric.getValue());
+        maxValue.handleFullResMetric(numericMetric.getValue());
+    }
+
     // merge rollups into this rollup.
     protected void computeFromRollupsHelper(Points<? extends IBaseRollup> input) throws IOException {
         if (input == null) {
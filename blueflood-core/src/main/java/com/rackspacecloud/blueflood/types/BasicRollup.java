@@ -75,6 +75,12 @@ public class BasicRollup extends BaseRollup implements IBaseRollup {
         }
     }
 
+    // merge a single simple number with this rollup, so that points can be rolled up as they arrive.
+    public void addRawSample(SimpleNumber sample) {
+        computeFromSimpleMetric(sample);
+        sum += sample.getValue().doubleValue();
+    }
+
     // merge rollups into this rollup.
     protected void computeFromRollups(Points<BasicRollup> input) throws IOException {
 
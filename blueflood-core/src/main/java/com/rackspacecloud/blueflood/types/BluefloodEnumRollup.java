@@ -1,11 +1,13 @@
 package com.rackspacecloud.blueflood.types;
 
+import com.rackspacecloud.blueflood.utils.LongLongHashMap;
+
 import java.io.IOException;
 import java.util.*;
 
 public class BluefloodEnumRollup implements Rollup {
     private Map<String, Long> stringEnumValues2Count = new HashMap<String, Long>();
-    private Map<Long,Long> hashedEnumValues2Count = new HashMap<Long, Long>();
+    private LongLongHashMap hashedEnumValues2Count = new LongLongHashMap();
 
     public BluefloodEnumRollup withEnumValue(String valueName) {
         return this.withEnumValue(valueName, 1L);
@@ -21,13 +23,8 @@ public class BluefloodEnumRollup implements Rollup {
         return this.withHashedEnumValue((long)valueName.hashCode(), incomingCount);
     }
 
-    public BluefloodEnumRollup withHashedEnumValue(Long hashedEnumValue, Long incomingCount) {
-        long existingHashcount = 0;
-        if (this.hashedEnumValues2Count.containsKey(hashedEnumValue)) {
-            existingHashcount = this.hashedEnumValues2Count.get(hashedEnumValue);
-        }
-        this.hashedEnumValues2Count.put((long) hashedEnumValue, incomingCount+existingHashcount);
-
+    public BluefloodEnumRollup withHashedEnumValue(long hashedEnumValue, long incomingCount) {
+        this.hashedEnumValues2Count.addTo(hashedEnumValue, incomingCount);
         return this;
     }
 
@@ -47,16 +44,34 @@ public class BluefloodEnumRollup implements Rollup {
 
     public int getNumPoints() {
         int enumCount = 0;
-        for (long count : hashedEnumValues2Count.values()) {
-            enumCount += count;
+        for (int slot = 0; slot < hashedEnumValues2Count.capacity(); slot++) {
+            if (hashedEnumValues2Count.isUsed(slot)) {
+                enumCount += hashedEnumValues2Count.valueAt(slot);
+            }
         }
         return enumCount;
     }
 
-    public Map<Long, Long> getHashedEnumValuesWithCounts() {
+    /**
+     * @return the counts of the enum values, keyed by hash.
+     */
+    public LongLongHashMap getHashedEnumCounts() {
         return this.hashedEnumValues2Count;
     }
 
+    /**
+     * @return a copy of {@link #getHashedEnumCounts()} as a map.
+     */
+    public Map<Long, Long> getHashedEnumValuesWithCounts() {
+        Map<Long, Long> map = new HashMap<Long, Long>();
+        for (int slot = 0; slot < hashedEnumValues2Count.capacity(); slot++) {
+            if (hashedEnumValues2Count.isUsed(slot)) {
+                map.put(hashedEnumValues2Count.keyAt(slot), hashedEnumValues2Count.valueAt(slot));
+            }
+        }
+        return map;
+    }
+
     public Map<String,Long> getStringEnumValuesWithCounts() {
         return this.stringEnumValues2Count;
     }
@@ -74,6 +89,11 @@ public class BluefloodEnumRollup implements Rollup {
         return hashedEnumValues2Count.equals(other.hashedEnumValues2Count);
     }
 
+    @Override
+    public int hashCode() {
+        return hashedEnumValues2Count.hashCode();
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder()
@@ -85,19 +105,8 @@ public class BluefloodEnumRollup implements Rollup {
 
     public static BluefloodEnumRollup buildRollupFromEnumRollups(Points<BluefloodEnumRollup> input) throws IOException {
         BluefloodEnumRollup enumRollup = new BluefloodEnumRollup();
-        Map<Long, Long> currentHashedEnums = enumRollup.getHashedEnumValuesWithCounts();
-
         for (Points.Point<BluefloodEnumRollup> point : input.getPoints().values()) {
-            BluefloodEnumRollup pointData = point.getData();
-            Map<Long, Long> incomingHashedEnums = pointData.getHashedEnumValuesWithCounts();
-            for (Long hash : incomingHashedEnums.keySet()) {
-                long incomingCount = incomingHashedEnums.get(hash);
-                if (currentHashedEnums.containsKey(hash)) {
-                    long currentCount = currentHashedEnums.get(hash);
-                    incomingCount+=currentCount;
-                }
-                currentHashedEnums.put(hash, incomingCount);
-            }
+            enumRollup.hashedEnumValues2Count.addAll(point.getData().hashedEnumValues2Count);
         }
 
         return enumRollup;
@@ -78,6 +78,17 @@ public class BluefloodGaugeRollup extends BaseRollup implements IBaseRollup {
         return rollup;
     }
     
+    /**
+     * Like {@link #buildFromRawSamples(Points)} for a single sample, without building a {@link Points} for it.
+     */
+    public static BluefloodGaugeRollup buildFromRawSample(long timestamp, Number value) {
+        SimpleNumber sample = new SimpleNumber(value);
+        BluefloodGaugeRollup rollup = new BluefloodGaugeRollup();
+        rollup.computeFromSimpleMetric(sample);
+        rollup.latestValue = new Points.Point<SimpleNumber>(timestamp, sample);
+        return rollup;
+    }
+
     public static BluefloodGaugeRollup buildFromGaugeRollups(Points<BluefloodGaugeRollup> input) throws IOException {
         BluefloodGaugeRollup rollup = new BluefloodGaugeRollup();
         
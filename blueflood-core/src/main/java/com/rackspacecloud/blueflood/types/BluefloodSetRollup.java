@@ -17,33 +17,42 @@
 package com.rackspacecloud.blueflood.types;
 
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
 
+/**
+ * A rollup of the distinct members of a set metric. Members are counted by a {@link HyperLogLog} over their hash
+ * codes, so a rollup takes bounded memory (and storage) however many members it has, and rolling up coarser
+ * granularities is a register-wise merge.
+ */
 public class BluefloodSetRollup implements Rollup {
     
-    private Set<Integer> hashes = new HashSet<Integer>();
+    private final HyperLogLog hll;
     
-    public BluefloodSetRollup() {}
+    public BluefloodSetRollup() {
+        this(new HyperLogLog());
+    }
+
+    public BluefloodSetRollup(HyperLogLog hll) {
+        this.hll = hll;
+    }
     
     public BluefloodSetRollup withObject(Object o) {
-        hashes.add(o.hashCode());
+        hll.offer(o.hashCode());
         return this;
     }
     
     public static BluefloodSetRollup buildRollupFromSetRollups(Points<BluefloodSetRollup> input) throws IOException {
         BluefloodSetRollup rollup = new BluefloodSetRollup();
         for (Points.Point<BluefloodSetRollup> point : input.getPoints().values()) {
-            for (Integer i : point.getData().getHashes()) {
-                rollup.hashes.add(i);
-            }
+            rollup.hll.merge(point.getData().hll);
         }
         return rollup;
     }
     
+    /**
+     * @return false if {@code obj} is definitely not a member; true if it probably is.
+     */
     public boolean contains(Object obj) {
-        return hashes.contains(obj.hashCode());
+        return hll.mayContain(obj.hashCode());
     }
 
     @Override
@@ -52,12 +61,17 @@ public class BluefloodSetRollup implements Rollup {
             return false;
         }
         BluefloodSetRollup other = (BluefloodSetRollup)obj;
-        return hashes.equals(other.hashes);
+        return hll.equals(other.hll);
+    }
+
+    @Override
+    public int hashCode() {
+        return hll.hashCode();
     }
 
     @Override
     public Boolean hasData() {
-        return hashes.size() > 0;
+        return !hll.isEmpty();
     }
 
     @Override
@@ -65,38 +79,14 @@ public class BluefloodSetRollup implements Rollup {
         return RollupType.SET;
     }
 
+    /**
+     * @return the estimated number of distinct members.
+     */
     public int getCount() {
-        return hashes.size();
-    }
-    
-    public Iterable<Integer> getHashes() {
-        return new Iterable<Integer>() {
-            @Override
-            public Iterator<Integer> iterator() {
-                return new ReadOnlyIterator<Integer>(hashes.iterator());
-            }
-        };
+        return (int) Math.min(hll.cardinality(), Integer.MAX_VALUE);
     }
-    
-    private class ReadOnlyIterator<K> implements Iterator<K> {
-        private final Iterator<K> composed;
-        public ReadOnlyIterator(Iterator<K> composed) {
-            this.composed = composed;
-        }
-
-        @Override
-        public boolean hasNext() {
-            return composed.hasNext();
-        }
-
-        @Override
-        public K next() {
-            return composed.next();
-        }
 
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException("Not allowed");
-        }
+    public HyperLogLog getHyperLogLog() {
+        return hll;
     }
 }
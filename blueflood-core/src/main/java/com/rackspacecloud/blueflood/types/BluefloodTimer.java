@@ -33,6 +33,8 @@ public class BluefloodTimer {
     private Number std;
     private Map<String, Percentile> percentiles;
     private Map<String, Number> histogram;
+    // timing -> number of times it was seen. Keys are numbers, JSON only has string keys.
+    private Map<String, Number> distribution;
 
     public String getName() {
         return name;
@@ -78,6 +80,10 @@ public class BluefloodTimer {
         return safeUnmodifiableMap(histogram);
     }
 
+    public Map<String, Number> getDistribution() {
+        return safeUnmodifiableMap(distribution);
+    }
+
     public static <K,V> Map<K,V> safeUnmodifiableMap(Map<? extends K, ? extends V> m) {
         if (m == null)
             return Collections.unmodifiableMap(new HashMap<K, V>());
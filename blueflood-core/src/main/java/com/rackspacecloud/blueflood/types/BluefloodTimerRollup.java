@@ -45,6 +45,9 @@ public class BluefloodTimerRollup implements Rollup, IBaseRollup {
     
     // to support percentiles, we will overload the count and treat it as sum.
     private Map<String, Percentile> percentiles = new HashMap<String, Percentile>();
+
+    // the distribution of the timings, if the timer was sent with one. null otherwise.
+    private QuantileSketch sketch = null;
     
     public BluefloodTimerRollup() {
         super();
@@ -110,6 +113,11 @@ public class BluefloodTimerRollup implements Rollup, IBaseRollup {
         return this;
     }
     
+    public BluefloodTimerRollup withSketch(QuantileSketch sketch) {
+        this.sketch = sketch;
+        return this;
+    }
+
     public Average getAverage() { return average; }
     public MaxValue getMaxValue() { return max; }
     public MinValue getMinValue() { return min; }
@@ -119,6 +127,19 @@ public class BluefloodTimerRollup implements Rollup, IBaseRollup {
         percentiles.put(label, new Percentile(mean));
     }
 
+    public QuantileSketch getSketch() { return sketch; }
+
+    /**
+     * @param quantile in [0, 1]
+     * @return the value at the given quantile, or null if the timer has no sketch (or no timings).
+     */
+    public Double getQuantile(double quantile) {
+        if (sketch == null || sketch.getCount() == 0) {
+            return null;
+        }
+        return sketch.getQuantile(quantile);
+    }
+
     @Override
     public Boolean hasData() {
         return sampleCount > 0;
@@ -174,9 +195,10 @@ public class BluefloodTimerRollup implements Rollup, IBaseRollup {
     public int getSampleCount() { return sampleCount; }
     
     public String toString() {
-        return String.format("sum:%s, rate:%s, count:%s, min:%s, max:%s, avg:%s, var:%s, sample_cnt:%s, %s",
+        return String.format("sum:%s, rate:%s, count:%s, min:%s, max:%s, avg:%s, var:%s, sample_cnt:%s, %s%s",
                 sum, rate, count, min, max, average, variance, sampleCount,
-                Joiner.on(", ").withKeyValueSeparator(": ").join(percentiles.entrySet()));
+                Joiner.on(", ").withKeyValueSeparator(": ").join(percentiles.entrySet()),
+                sketch == null ? "" : ", sketch:" + sketch);
     }
 
     @Override
@@ -196,7 +218,7 @@ public class BluefloodTimerRollup implements Rollup, IBaseRollup {
         if (!other.min.equals(this.min)) return false;
         if (!other.max.equals(this.max)) return false;
         if (other.count != this.count) return false;
-
+        if (other.sketch == null ? this.sketch != null : !other.sketch.equals(this.sketch)) return false;
         
         Map<String, Percentile> otherPct = other.getPercentiles();
         Set<String> allKeys = Sets.union(otherPct.keySet(), this.getPercentiles().keySet());
@@ -219,6 +241,9 @@ public class BluefloodTimerRollup implements Rollup, IBaseRollup {
         Multimap<String, Number> pctMeans = LinkedListMultimap.create();
         Multimap<String, Number> pctUppers = LinkedListMultimap.create();
         Multimap<String, Number> pctSums = LinkedListMultimap.create();
+        // a sketch is only kept if every input has one; a partial one would misplace the quantiles.
+        QuantileSketch mergedSketch = null;
+        boolean allHaveSketches = true;
 
         for (Map.Entry<Long, Points.Point<BluefloodTimerRollup>> item : points.entrySet()) {
             BluefloodTimerRollup rollup = item.getValue().getData();
@@ -245,16 +270,49 @@ public class BluefloodTimerRollup implements Rollup, IBaseRollup {
                 Percentile percentile = percentilesToMerge.get(label);
                 pctMeans.get(label).add(percentile.getMean());
             }
+
+            if (rollup.getSketch() == null) {
+                allHaveSketches = false;
+            } else if (allHaveSketches) {
+                mergedSketch = mergedSketch == null ? rollup.getSketch().copy() : mergedSketch.merge(rollup.getSketch());
+            }
+        }
+        if (allHaveSketches) {
+            this.sketch = mergedSketch;
         }
         
-        // now go through the percentiles and calculate!
+        // now go through the percentiles and calculate! the sketch gives the exact percentile where it can,
+        // averaging the means is only an approximation.
         for (String label : labels) {
-            Number mean = BluefloodTimerRollup.avg(pctMeans.get(label));
-            this.setPercentile(label, mean);
+            Double quantile = quantileOfLabel(label);
+            if (quantile != null && getQuantile(quantile) != null) {
+                this.setPercentile(label, getQuantile(quantile));
+            } else {
+                Number mean = BluefloodTimerRollup.avg(pctMeans.get(label));
+                this.setPercentile(label, mean);
+            }
         }
         // wooo!
     }
     
+    /**
+     * @return the quantile of a percentile label such as "99" or "99.9", or null if the label is not a number.
+     * statsd drops the decimal point from its labels ("99.9" is sent as "999" or "99_9"), so the point of a label
+     * of more than two digits, other than "100", is put back after the second digit.
+     */
+    static Double quantileOfLabel(String label) {
+        String pctString = label.replace('_', '.');
+        if (pctString.length() > 2 && pctString.matches("[0-9]+") && !pctString.equals("100")) {
+            pctString = pctString.substring(0, 2) + "." + pctString.substring(2);
+        }
+        try {
+            double pct = Double.parseDouble(pctString);
+            return pct >= 0 && pct <= 100 ? pct / 100d : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
     public static Number sum(Collection<Number> numbers) {
         long longSum = 0;
         double doubleSum = 0d;
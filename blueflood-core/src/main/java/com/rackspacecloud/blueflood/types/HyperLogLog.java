@@ -0,0 +1,357 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.types;
+
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog++ cardinality estimator over 32 bit member hashes. Each hash is mixed into 64 bits; the first
+ * {@code precision} bits pick one of m = 2^precision registers, which keeps the longest run of leading zeros seen in
+ * the remaining bits. Merging two estimators takes the per-register maximum, so it is exact and order independent.
+ *
+ * Small sets are kept in a sparse representation: a sorted list of (index, run length) entries at a precision of
+ * {@link #SPARSE_PRECISION} bits, estimated by linear counting, which is close to exact for them. Once the sparse list
+ * would take more memory than the m dense registers, it is converted to the dense representation, so an estimator
+ * never takes more than m bytes regardless of the cardinality.
+ *
+ * No empirical bias correction is applied to the dense estimate; linear counting is used below the HLL++ thresholds
+ * instead, which keeps the error within the usual 1.04 / sqrt(m).
+ */
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 14;
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+    public static final int SPARSE_PRECISION = 25;
+
+    // linear counting thresholds from the HLL++ paper, for precisions 4 to 18.
+    private static final int[] LINEAR_COUNTING_THRESHOLDS = {
+            10, 20, 40, 80, 220, 400, 900, 1800, 3100, 6500, 11500, 20000, 50000, 120000, 350000 };
+
+    private static final int RHO_BITS = 6;
+    private static final int RHO_MASK = (1 << RHO_BITS) - 1;
+
+    private final int precision;
+    private final int m;
+
+    // sparse entries, (sparse index << RHO_BITS) | rho, sorted and with one entry per sparse index.
+    private int[] sparse;
+    private int sparseSize = 0;
+
+    // dense registers, null while sparse.
+    private byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(String.format("Precision must be in [%d, %d]: %d",
+                    MIN_PRECISION, MAX_PRECISION, precision));
+        }
+        this.precision = precision;
+        this.m = 1 << precision;
+        this.sparse = new int[4];
+    }
+
+    /**
+     * Creates a sparse estimator from its entries, as returned by {@link #getSparseEntry(int)}.
+     */
+    public static HyperLogLog fromSparseEntries(int precision, int[] entries) {
+        HyperLogLog hll = new HyperLogLog(precision);
+        for (int i = 1; i < entries.length; i++) {
+            if ((entries[i] >>> RHO_BITS) <= (entries[i - 1] >>> RHO_BITS)) {
+                throw new IllegalArgumentException("Sparse entries are not sorted by index");
+            }
+        }
+        hll.sparse = Arrays.copyOf(entries, Math.max(entries.length, 4));
+        hll.sparseSize = entries.length;
+        if (hll.sparseSize > hll.sparseLimit()) {
+            hll.toDense();
+        }
+        return hll;
+    }
+
+    /**
+     * Creates a dense estimator from its registers, as returned by {@link #getRegister(int)}.
+     */
+    public static HyperLogLog fromRegisters(int precision, byte[] registers) {
+        HyperLogLog hll = new HyperLogLog(precision);
+        if (registers.length != hll.m) {
+            throw new IllegalArgumentException(String.format("Expected %d registers, got %d", hll.m, registers.length));
+        }
+        hll.sparse = null;
+        hll.registers = Arrays.copyOf(registers, registers.length);
+        return hll;
+    }
+
+    /**
+     * Adds a member, given its 32 bit hash.
+     */
+    public HyperLogLog offer(int memberHash) {
+        long hash = mix(memberHash);
+        if (registers != null) {
+            int index = (int) (hash >>> (64 - precision));
+            byte rho = rho(hash);
+            if (registers[index] < rho) {
+                registers[index] = rho;
+            }
+        } else {
+            addSparse(sparseEntry(hash));
+        }
+        return this;
+    }
+
+    /**
+     * @return false if the member with the given hash was definitely not added; true if it may have been.
+     */
+    public boolean mayContain(int memberHash) {
+        long hash = mix(memberHash);
+        if (registers != null) {
+            return registers[(int) (hash >>> (64 - precision))] >= rho(hash);
+        }
+        int entry = sparseEntry(hash);
+        int pos = findSparse(entry >>> RHO_BITS);
+        return pos >= 0 && (sparse[pos] & RHO_MASK) >= (entry & RHO_MASK);
+    }
+
+    /**
+     * Adds the members of {@code other} to this estimator.
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException(String.format("Can not merge estimators of precision %d and %d",
+                    precision, other.precision));
+        }
+        if (registers == null && other.registers == null) {
+            mergeSparse(other);
+            return this;
+        }
+        if (registers == null) {
+            toDense();
+        }
+        if (other.registers != null) {
+            for (int i = 0; i < m; i++) {
+                if (registers[i] < other.registers[i]) {
+                    registers[i] = other.registers[i];
+                }
+            }
+        } else {
+            for (int i = 0; i < other.sparseSize; i++) {
+                setRegisterFromSparse(other.sparse[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the estimated number of distinct members.
+     */
+    public long cardinality() {
+        if (registers == null) {
+            return Math.round(linearCounting(1 << SPARSE_PRECISION, (1 << SPARSE_PRECISION) - sparseSize));
+        }
+        int zeros = 0;
+        double sum = 0;
+        for (int i = 0; i < m; i++) {
+            if (registers[i] == 0) {
+                zeros++;
+            }
+            sum += 1d / (1L << registers[i]);
+        }
+        if (zeros > 0) {
+            double estimate = linearCounting(m, zeros);
+            if (estimate <= LINEAR_COUNTING_THRESHOLDS[precision - MIN_PRECISION]) {
+                return Math.round(estimate);
+            }
+        }
+        return Math.round(alpha() * m * m / sum);
+    }
+
+    public boolean isEmpty() {
+        if (registers == null) {
+            return sparseSize == 0;
+        }
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getPrecision() { return precision; }
+    public boolean isSparse() { return registers == null; }
+    public int getNumSparseEntries() { return sparseSize; }
+    public int getSparseEntry(int i) { return sparse[i]; }
+    public int getNumRegisters() { return m; }
+    public byte getRegister(int i) { return registers[i]; }
+
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog(precision);
+        if (registers != null) {
+            copy.sparse = null;
+            copy.registers = Arrays.copyOf(registers, m);
+        } else {
+            copy.sparse = Arrays.copyOf(sparse, Math.max(sparseSize, 4));
+            copy.sparseSize = sparseSize;
+        }
+        return copy;
+    }
+
+    // the murmur3 finalizer, to spread a 32 bit hashCode over 64 bits.
+    private static long mix(int memberHash) {
+        long h = memberHash & 0xffffffffL;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // the position of the first 1 bit after the index bits, which is at most 64 - precision + 1.
+    private byte rho(long hash) {
+        return (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+    }
+
+    private int sparseEntry(long hash) {
+        return ((int) (hash >>> (64 - SPARSE_PRECISION)) << RHO_BITS) | rho(hash);
+    }
+
+    private int sparseLimit() {
+        // past this, the sparse entries take more memory than the registers.
+        return m / 4;
+    }
+
+    private int findSparse(int sparseIndex) {
+        int pos = Arrays.binarySearch(sparse, 0, sparseSize, sparseIndex << RHO_BITS);
+        // rho is never 0, so the search never hits; the insertion point is the entry for this index, if any.
+        pos = -pos - 1;
+        return pos < sparseSize && (sparse[pos] >>> RHO_BITS) == sparseIndex ? pos : -pos - 1;
+    }
+
+    private void addSparse(int entry) {
+        int pos = findSparse(entry >>> RHO_BITS);
+        if (pos >= 0) {
+            if ((sparse[pos] & RHO_MASK) < (entry & RHO_MASK)) {
+                sparse[pos] = entry;
+            }
+            return;
+        }
+        pos = -pos - 1;
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, sparseSize * 2);
+        }
+        System.arraycopy(sparse, pos, sparse, pos + 1, sparseSize - pos);
+        sparse[pos] = entry;
+        sparseSize++;
+        if (sparseSize > sparseLimit()) {
+            toDense();
+        }
+    }
+
+    private void mergeSparse(HyperLogLog other) {
+        int[] merged = new int[sparseSize + other.sparseSize];
+        int i = 0, j = 0, n = 0;
+        while (i < sparseSize || j < other.sparseSize) {
+            int a = i < sparseSize ? sparse[i] >>> RHO_BITS : Integer.MAX_VALUE;
+            int b = j < other.sparseSize ? other.sparse[j] >>> RHO_BITS : Integer.MAX_VALUE;
+            if (a < b) {
+                merged[n++] = sparse[i++];
+            } else if (b < a) {
+                merged[n++] = other.sparse[j++];
+            } else {
+                merged[n++] = Math.max(sparse[i++], other.sparse[j++]);
+            }
+        }
+        sparse = merged.length > 0 ? merged : new int[4];
+        sparseSize = n;
+        if (sparseSize > sparseLimit()) {
+            toDense();
+        }
+    }
+
+    private void toDense() {
+        registers = new byte[m];
+        for (int i = 0; i < sparseSize; i++) {
+            setRegisterFromSparse(sparse[i]);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private void setRegisterFromSparse(int entry) {
+        int index = entry >>> (RHO_BITS + SPARSE_PRECISION - precision);
+        byte rho = (byte) (entry & RHO_MASK);
+        if (registers[index] < rho) {
+            registers[index] = rho;
+        }
+    }
+
+    private double alpha() {
+        switch (m) {
+            case 16: return 0.673;
+            case 32: return 0.697;
+            case 64: return 0.709;
+            default: return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    private static double linearCounting(int buckets, int emptyBuckets) {
+        return buckets * Math.log((double) buckets / emptyBuckets);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof HyperLogLog)) return false;
+        HyperLogLog other = (HyperLogLog)obj;
+        if (other.precision != precision) {
+            return false;
+        }
+        if (registers != null || other.registers != null) {
+            return Arrays.equals(registers, other.registers);
+        }
+        if (other.sparseSize != sparseSize) {
+            return false;
+        }
+        for (int i = 0; i < sparseSize; i++) {
+            if (other.sparse[i] != sparse[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        if (registers != null) {
+            return Arrays.hashCode(registers);
+        }
+        int hash = precision;
+        for (int i = 0; i < sparseSize; i++) {
+            hash = 31 * hash + sparse[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{precision:%d, %s, cardinality:%d}", precision, isSparse() ? "sparse" : "dense", cardinality());
+    }
+}
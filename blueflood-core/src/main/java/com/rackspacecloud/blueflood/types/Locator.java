@@ -16,24 +16,39 @@
 
 package com.rackspacecloud.blueflood.types;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import com.rackspacecloud.blueflood.service.Configuration;
 import com.rackspacecloud.blueflood.service.CoreConfig;
+import com.rackspacecloud.blueflood.utils.Util;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Locators built by the static factories are interned: equal locators share one canonical instance, which carries
+ * its tenant, metric name offset, fingerprint and shard so they are only worked out once per series.
+ */
 public class Locator implements Comparable<Locator> {
     private static final String metricTokenSeparator;
-    private static final String metricTokenSeparatorRegex;
     private static final Logger log = LoggerFactory.getLogger(Locator.class);
+    private static final Interner<Locator> locators = Interners.newWeakInterner();
+    private static final Interner<String> tenants = Interners.newWeakInterner();
+    private static final HashFunction FINGERPRINT = Hashing.murmur3_128();
+    private static final int NO_SHARD = -1;
+
     private String stringRep = null;
     private String tenantId = null;
-    private String metricName = null;
+    private int metricNameOffset;
+    private long fingerprint;
+    private volatile boolean hasFingerprint = false;
+    private int shard = NO_SHARD;
 
     static {
         metricTokenSeparator = (Configuration.getInstance().getBooleanProperty(CoreConfig.USE_LEGACY_METRIC_SEPARATOR) ? "," : ".");
-        // ugh.
-        metricTokenSeparatorRegex = (Configuration.getInstance().getBooleanProperty(CoreConfig.USE_LEGACY_METRIC_SEPARATOR) ? "," : "\\.");
         if (metricTokenSeparator.equals(",")) {
             log.warn("Deprecation warning! Use of 'USE_LEGACY_METRIC_SEPARATOR' is deprecated and will be removed in v3.0");
         }
@@ -49,9 +64,12 @@ public class Locator implements Comparable<Locator> {
 
     protected void setStringRep(String rep) throws IllegalArgumentException {
         // todo: null check and throw IllegalArgumentException?
+        int separator = rep.indexOf(metricTokenSeparator);
         this.stringRep = rep;
-        tenantId = this.stringRep.split(metricTokenSeparatorRegex)[0];
-        metricName = this.stringRep.substring(this.stringRep.indexOf(metricTokenSeparator)+1);
+        this.tenantId = tenants.intern(separator < 0 ? rep : rep.substring(0, separator));
+        this.metricNameOffset = separator + 1;
+        this.hasFingerprint = false;
+        this.shard = NO_SHARD;
     }
 
     protected boolean isValidDBKey(String dbKey, String delim) {
@@ -65,7 +83,14 @@ public class Locator implements Comparable<Locator> {
 
     @Override
     public boolean equals(Object obj) {
-        return obj != null && obj instanceof Locator && obj.hashCode() == this.hashCode();
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Locator)) {
+            return false;
+        }
+        String otherRep = ((Locator) obj).stringRep;
+        return stringRep == null ? otherRep == null : stringRep.equals(otherRep);
     }
 
     public String toString() {
@@ -77,7 +102,30 @@ public class Locator implements Comparable<Locator> {
     }
 
     public String getMetricName() {
-        return this.metricName;
+        return stringRep == null ? null : stringRep.substring(metricNameOffset);
+    }
+
+    /**
+     * @return a 64-bit murmur3 fingerprint of the locator string, computed once per instance.
+     */
+    public long getFingerprint() {
+        if (!hasFingerprint) {
+            fingerprint = FINGERPRINT.hashString(stringRep, Charsets.UTF_8).asLong();
+            hasFingerprint = true;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return the shard this locator belongs to, as {@link Util#computeShard(String)}, computed once per instance.
+     */
+    public int getShard() {
+        int s = shard;
+        if (s == NO_SHARD) {
+            s = Util.computeShard(stringRep);
+            shard = s;
+        }
+        return s;
     }
 
     public boolean equals(Locator other) {
@@ -85,11 +133,11 @@ public class Locator implements Comparable<Locator> {
     }
 
     public static Locator createLocatorFromPathComponents(String tenantId, String... parts) throws IllegalArgumentException {
-        return new Locator(tenantId + metricTokenSeparator + StringUtils.join(parts, metricTokenSeparator));
+        return locators.intern(new Locator(tenantId + metricTokenSeparator + StringUtils.join(parts, metricTokenSeparator)));
     }
 
     public static Locator createLocatorFromDbKey(String fullyQualifiedMetricName) throws IllegalArgumentException {
-        return new Locator(fullyQualifiedMetricName);
+        return locators.intern(new Locator(fullyQualifiedMetricName));
     }
 
     @Override
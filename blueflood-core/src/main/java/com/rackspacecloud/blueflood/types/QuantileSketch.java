@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.types;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable quantile sketch with bounded relative error. Values are counted in logarithmic buckets: bucket i holds
+ * the values in (gamma^(i-1), gamma^i], where gamma = (1 + a) / (1 - a) for a relative accuracy a. Any quantile is
+ * then answered within a relative error of a, and merging two sketches (adding their bucket counts) is exact, so
+ * quantiles of coarse rollups are as accurate as those of the finest ones.
+ *
+ * Values at or below {@link #MIN_INDEXABLE_VALUE}, including negative values, are counted as zero. When more than
+ * maxBuckets buckets are used, the lowest buckets are collapsed into one, which only affects the accuracy of the
+ * lowest quantiles.
+ */
+public class QuantileSketch {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    public static final int DEFAULT_MAX_BUCKETS = 2048;
+    public static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final int maxBuckets;
+    private final double gamma;
+    private final double logGamma;
+
+    private long zeroCount = 0;
+    private long count = 0;
+
+    // buckets, sorted by index.
+    private int[] indexes;
+    private long[] counts;
+    private int size = 0;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BUCKETS);
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxBuckets) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be in (0, 1): " + relativeAccuracy);
+        }
+        if (maxBuckets < 2) {
+            throw new IllegalArgumentException("A sketch needs at least 2 buckets: " + maxBuckets);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBuckets = maxBuckets;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.indexes = new int[8];
+        this.counts = new long[8];
+    }
+
+    /**
+     * Creates a sketch from its buckets, as written by {@link #getIndex(int)} and {@link #getBucketCount(int)}.
+     */
+    public static QuantileSketch fromBuckets(double relativeAccuracy, int maxBuckets, long zeroCount,
+                                             int[] indexes, long[] counts) {
+        QuantileSketch sketch = new QuantileSketch(relativeAccuracy, maxBuckets);
+        sketch.zeroCount = zeroCount;
+        sketch.count = zeroCount;
+        for (int i = 0; i < indexes.length; i++) {
+            sketch.addToBucket(indexes[i], counts[i]);
+        }
+        return sketch;
+    }
+
+    public QuantileSketch add(double value) {
+        return add(value, 1);
+    }
+
+    public QuantileSketch add(double value, long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative count " + count);
+        }
+        if (Double.isNaN(value) || count == 0) {
+            return this;
+        }
+        if (value <= MIN_INDEXABLE_VALUE) {
+            zeroCount += count;
+            this.count += count;
+        } else {
+            addToBucket((int) Math.ceil(Math.log(value) / logGamma), count);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the counts of {@code other} to this sketch.
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException(String.format("Can not merge sketches of accuracy %s and %s",
+                    relativeAccuracy, other.relativeAccuracy));
+        }
+        int[] mergedIndexes = new int[size + other.size];
+        long[] mergedCounts = new long[size + other.size];
+        int i = 0, j = 0, n = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && indexes[i] < other.indexes[j])) {
+                mergedIndexes[n] = indexes[i];
+                mergedCounts[n++] = counts[i++];
+            } else if (i == size || other.indexes[j] < indexes[i]) {
+                mergedIndexes[n] = other.indexes[j];
+                mergedCounts[n++] = other.counts[j++];
+            } else {
+                mergedIndexes[n] = indexes[i];
+                mergedCounts[n++] = counts[i++] + other.counts[j++];
+            }
+        }
+        indexes = mergedIndexes;
+        counts = mergedCounts;
+        size = n;
+        zeroCount += other.zeroCount;
+        count += other.count;
+        collapseIfNeeded();
+        return this;
+    }
+
+    /**
+     * @param quantile in [0, 1]
+     * @return the value at the given quantile, or NaN if the sketch is empty.
+     */
+    public double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]: " + quantile);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double rank = quantile * (count - 1);
+        long seen = zeroCount;
+        if (seen > rank) {
+            return 0d;
+        }
+        for (int i = 0; i < size; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return valueOf(indexes[i]);
+            }
+        }
+        return valueOf(indexes[size - 1]);
+    }
+
+    public long getCount() { return count; }
+    public long getZeroCount() { return zeroCount; }
+    public double getRelativeAccuracy() { return relativeAccuracy; }
+    public int getMaxBuckets() { return maxBuckets; }
+
+    /**
+     * @return the number of non-empty buckets.
+     */
+    public int getNumBuckets() { return size; }
+    public int getIndex(int bucket) { return indexes[bucket]; }
+    public long getBucketCount(int bucket) { return counts[bucket]; }
+
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(relativeAccuracy, maxBuckets);
+        copy.indexes = Arrays.copyOf(indexes, Math.max(size, 1));
+        copy.counts = Arrays.copyOf(counts, Math.max(size, 1));
+        copy.size = size;
+        copy.zeroCount = zeroCount;
+        copy.count = count;
+        return copy;
+    }
+
+    // the value in the middle (relative to the error) of the bucket.
+    private double valueOf(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private void addToBucket(int index, long bucketCount) {
+        int pos = Arrays.binarySearch(indexes, 0, size, index);
+        if (pos >= 0) {
+            counts[pos] += bucketCount;
+        } else {
+            pos = -pos - 1;
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            System.arraycopy(indexes, pos, indexes, pos + 1, size - pos);
+            System.arraycopy(counts, pos, counts, pos + 1, size - pos);
+            indexes[pos] = index;
+            counts[pos] = bucketCount;
+            size++;
+        }
+        count += bucketCount;
+        collapseIfNeeded();
+    }
+
+    private void collapseIfNeeded() {
+        if (size <= maxBuckets) {
+            return;
+        }
+        int excess = size - maxBuckets;
+        long collapsed = 0;
+        for (int i = 0; i <= excess; i++) {
+            collapsed += counts[i];
+        }
+        System.arraycopy(indexes, excess, indexes, 0, maxBuckets);
+        System.arraycopy(counts, excess, counts, 0, maxBuckets);
+        counts[0] = collapsed;
+        size = maxBuckets;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof QuantileSketch)) return false;
+        QuantileSketch other = (QuantileSketch)obj;
+        if (other.relativeAccuracy != relativeAccuracy || other.zeroCount != zeroCount || other.size != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (other.indexes[i] != indexes[i] || other.counts[i] != counts[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = (int) (zeroCount ^ (zeroCount >>> 32));
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + indexes[i];
+            hash = 31 * hash + (int) (counts[i] ^ (counts[i] >>> 32));
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{count:%d, buckets:%d, p50:%s, p99:%s}", count, size, getQuantile(0.5), getQuantile(0.99));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.utils;
+
+/**
+ * A set of primitive longs for read-mostly use. Readers probe an open addressing (linear probing) table without
+ * locking; every change builds a new table and publishes it, so writes are expensive and should be rare.
+ */
+public class CopyOnWriteLongSet {
+
+    private static final int MIN_CAPACITY = 4;
+
+    private volatile Table table = new Table(new long[0]);
+
+    public boolean contains(long key) {
+        return table.contains(key);
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    /**
+     * @return false if {@code key} was already in the set.
+     */
+    public synchronized boolean add(long key) {
+        Table current = table;
+        if (current.contains(key)) {
+            return false;
+        }
+        long[] keys = current.toArray(1);
+        keys[keys.length - 1] = key;
+        table = new Table(keys);
+        return true;
+    }
+
+    /**
+     * Makes the set hold exactly {@code keys}. Nothing is published if the contents do not change.
+     *
+     * @return the number of keys added plus the number of keys removed.
+     */
+    public synchronized int retainExactly(long[] keys) {
+        Table current = table;
+        Table next = new Table(keys);
+        int added = 0;
+        for (long key : next.toArray(0)) {
+            if (!current.contains(key)) {
+                added++;
+            }
+        }
+        int removed = current.size - (next.size - added);
+        int changes = added + removed;
+        if (changes > 0) {
+            table = next;
+        }
+        return changes;
+    }
+
+    public long[] toArray() {
+        return table.toArray(0);
+    }
+
+    private static class Table {
+        private final long[] keys;
+        private final boolean[] used;
+        private final int size;
+
+        private Table(long[] members) {
+            int capacity = MIN_CAPACITY;
+            while (capacity * 3 / 4 < members.length) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            used = new boolean[capacity];
+            int count = 0;
+            for (long key : members) {
+                int slot = find(key);
+                if (!used[slot]) {
+                    used[slot] = true;
+                    keys[slot] = key;
+                    count++;
+                }
+            }
+            size = count;
+        }
+
+        private boolean contains(long key) {
+            return used[find(key)];
+        }
+
+        // the slot holding key, or the empty slot where it would go.
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private long[] toArray(int extra) {
+            long[] members = new long[size + extra];
+            int i = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (used[slot]) {
+                    members[i++] = keys[slot];
+                }
+            }
+            return members;
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.utils;
+
+/**
+ * An open addressing (linear probing) hash map of primitive long keys to long values, so counting does not box.
+ * Entries are never removed. Iterate with {@link #capacity()}, {@link #isUsed(int)}, {@link #keyAt(int)} and
+ * {@link #valueAt(int)}:
+ *
+ * <pre>
+ * for (int slot = 0; slot &lt; map.capacity(); slot++) {
+ *     if (map.isUsed(slot)) { ... map.keyAt(slot), map.valueAt(slot) ... }
+ * }
+ * </pre>
+ *
+ * Not thread safe.
+ */
+public class LongLongHashMap {
+
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size = 0;
+    private int resizeAt;
+
+    public LongLongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map should hold without resizing.
+     */
+    public LongLongHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * @return the value for {@code key}, or {@code defaultValue} if there is none.
+     */
+    public long get(long key, long defaultValue) {
+        int slot = find(key);
+        return used[slot] ? values[slot] : defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        return used[find(key)];
+    }
+
+    public void put(long key, long value) {
+        int slot = find(key);
+        if (!used[slot]) {
+            slot = insert(slot, key);
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Adds {@code delta} to the value for {@code key}, which starts at 0.
+     *
+     * @return the new value.
+     */
+    public long addTo(long key, long delta) {
+        int slot = find(key);
+        if (!used[slot]) {
+            slot = insert(slot, key);
+        }
+        values[slot] += delta;
+        return values[slot];
+    }
+
+    /**
+     * Adds the value of every entry of {@code other} to this map.
+     */
+    public void addAll(LongLongHashMap other) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            if (other.used[slot]) {
+                addTo(other.keys[slot], other.values[slot]);
+            }
+        }
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int capacity() { return keys.length; }
+    public boolean isUsed(int slot) { return used[slot]; }
+    public long keyAt(int slot) { return keys[slot]; }
+    public long valueAt(int slot) { return values[slot]; }
+
+    // the slot holding key, or the empty slot where it would go.
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int insert(int slot, long key) {
+        if (size >= resizeAt) {
+            rehash(keys.length << 1);
+            slot = find(key);
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = 0;
+        size++;
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldUsed[slot]) {
+                int newSlot = find(oldKeys[slot]);
+                used[newSlot] = true;
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        resizeAt = capacity * 3 / 4;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof LongLongHashMap)) return false;
+        LongLongHashMap other = (LongLongHashMap)obj;
+        if (other.size != size) {
+            return false;
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                int otherSlot = other.find(keys[slot]);
+                if (!other.used[otherSlot] || other.values[otherSlot] != values[slot]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // order independent, since equal maps may have different capacities.
+        int hash = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                hash += (int) (keys[slot] ^ (keys[slot] >>> 32)) ^ (int) (values[slot] ^ (values[slot] >>> 32));
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(keys[slot]).append('=').append(values[slot]);
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -45,7 +45,8 @@ public class Util {
     }
 
     public static int computeShard(String s) {
-        return (int)Long.parseLong(DigestUtils.md5Hex(s).substring(30), 16) % Constants.NUMBER_OF_SHARDS;
+        // the last byte of the md5 digest, i.e. the last two hex digits of md5Hex(s).
+        return (DigestUtils.md5(s)[15] & 0xff) % Constants.NUMBER_OF_SHARDS;
     }
     
     public static Collection<Integer> parseShards(String s) {
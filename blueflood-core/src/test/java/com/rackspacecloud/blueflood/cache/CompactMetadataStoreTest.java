@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.cache;
+
+import com.google.common.base.Ticker;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CompactMetadataStoreTest {
+
+    private FakeTicker ticker;
+    private CompactMetadataStore store;
+
+    @Before
+    public void setUp() {
+        ticker = new FakeTicker();
+        store = new CompactMetadataStore(new TimeValue(10, TimeUnit.MINUTES), 4, ticker, new MetadataStringTable());
+    }
+
+    @Test
+    public void testPutAndGet() {
+        Locator locator = Locator.createLocatorFromPathComponents("tenant", "a", "b");
+        store.put(locator, "unit", "ms");
+        store.put(locator, "type", "counter");
+
+        Assert.assertEquals("ms", store.getIfPresent(locator, "unit"));
+        Assert.assertEquals("counter", store.getIfPresent(locator, "type"));
+        Assert.assertNull(store.getIfPresent(locator, "rollup_type"));
+        Assert.assertNull(store.getIfPresent(Locator.createLocatorFromPathComponents("tenant", "a", "c"), "unit"));
+        Assert.assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testOverwrite() {
+        Locator locator = Locator.createLocatorFromPathComponents("tenant", "a");
+        store.put(locator, "unit", "ms");
+        store.put(locator, "unit", "bytes");
+
+        Assert.assertEquals("bytes", store.getIfPresent(locator, "unit"));
+        Assert.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testManyEntriesSurviveGrowthAndRemoval() {
+        for (int i = 0; i < 10000; i++) {
+            store.put(Locator.createLocatorFromPathComponents("tenant", "metric" + i), "unit", "u" + (i % 7));
+        }
+        Assert.assertEquals(10000, store.size());
+
+        for (int i = 0; i < 10000; i += 2) {
+            store.invalidate(Locator.createLocatorFromPathComponents("tenant", "metric" + i), "unit");
+        }
+        Assert.assertEquals(5000, store.size());
+
+        for (int i = 0; i < 10000; i++) {
+            String value = store.getIfPresent(Locator.createLocatorFromPathComponents("tenant", "metric" + i), "unit");
+            if (i % 2 == 0) {
+                Assert.assertNull(value);
+            } else {
+                Assert.assertEquals("u" + (i % 7), value);
+            }
+        }
+    }
+
+    @Test
+    public void testEntriesExpireAfterWrite() {
+        Locator locator = Locator.createLocatorFromPathComponents("tenant", "a");
+        store.put(locator, "unit", "ms");
+
+        ticker.advance(9, TimeUnit.MINUTES);
+        Assert.assertEquals("ms", store.getIfPresent(locator, "unit"));
+
+        ticker.advance(2, TimeUnit.MINUTES);
+        Assert.assertNull(store.getIfPresent(locator, "unit"));
+        Assert.assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testGetLoadsOnMissAndRecordsStats() throws Exception {
+        Locator locator = Locator.createLocatorFromPathComponents("tenant", "a");
+        final AtomicInteger loads = new AtomicInteger();
+        Callable<String> loader = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                loads.incrementAndGet();
+                return "gauge";
+            }
+        };
+
+        Assert.assertEquals("gauge", store.get(locator, "type", loader));
+        Assert.assertEquals("gauge", store.get(locator, "type", loader));
+        Assert.assertEquals(1, loads.get());
+
+        Assert.assertEquals(1, store.stats().hitCount());
+        Assert.assertEquals(1, store.stats().missCount());
+        Assert.assertEquals(1, store.stats().loadSuccessCount());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testLoaderFailureIsWrapped() throws Exception {
+        store.get(Locator.createLocatorFromPathComponents("tenant", "a"), "type", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new RuntimeException("boom");
+            }
+        });
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        Locator locator = Locator.createLocatorFromPathComponents("tenant", "a");
+        store.put(locator, "unit", "ms");
+        store.invalidateAll();
+
+        Assert.assertNull(store.getIfPresent(locator, "unit"));
+        Assert.assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testStringTableInternsOnce() {
+        MetadataStringTable table = new MetadataStringTable();
+        int code = table.intern("counter");
+
+        Assert.assertTrue(code > 0);
+        Assert.assertEquals(code, table.intern("counter"));
+        Assert.assertEquals(code, table.codeOf("counter"));
+        Assert.assertEquals(0, table.codeOf("gauge"));
+        Assert.assertEquals("counter", table.valueOf(code));
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.cache;
+
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.utils.Clock;
+import org.joda.time.Instant;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IndexedLocatorFilterTest {
+
+    private static final long HOUR = 3600000L;
+
+    private Clock clock;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        clock = mock(Clock.class);
+        setTime(0);
+        file = File.createTempFile("locators", ".filter");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testMembership() {
+        IndexedLocatorFilter filter = new IndexedLocatorFilter(clock, HOUR, 4, 1000, 0.0001);
+        for (int i = 0; i < 500; i++) {
+            filter.put(locator(i));
+        }
+        for (int i = 0; i < 500; i++) {
+            Assert.assertTrue(filter.mightContain(locator(i)));
+        }
+        int falsePositives = 0;
+        for (int i = 500; i < 10500; i++) {
+            if (filter.mightContain(locator(i))) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("too many false positives: " + falsePositives, falsePositives < 10);
+    }
+
+    @Test
+    public void testGrowsPastExpectedInsertions() {
+        IndexedLocatorFilter filter = new IndexedLocatorFilter(clock, HOUR, 4, 100, 0.0001);
+        for (int i = 0; i < 350; i++) {
+            filter.put(locator(i));
+        }
+        Assert.assertEquals(4, filter.getPartitionCount());
+        for (int i = 0; i < 350; i++) {
+            Assert.assertTrue(filter.mightContain(locator(i)));
+        }
+    }
+
+    @Test
+    public void testPartitionsExpireAfterWindow() {
+        IndexedLocatorFilter filter = new IndexedLocatorFilter(clock, HOUR, 2, 1000, 0.0001);
+        filter.put(locator(1));
+        setTime(HOUR);
+        filter.put(locator(2));
+        Assert.assertEquals(2, filter.getPartitionCount());
+
+        // the first partition was last written to two hours ago.
+        setTime(2 * HOUR);
+        Assert.assertFalse(filter.mightContain(locator(1)));
+        Assert.assertTrue(filter.mightContain(locator(2)));
+
+        setTime(3 * HOUR);
+        Assert.assertFalse(filter.mightContain(locator(2)));
+        Assert.assertEquals(0, filter.getPartitionCount());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        IndexedLocatorFilter source = new IndexedLocatorFilter(clock, HOUR, 2, 1000, 0.0001);
+        source.put(locator(1));
+        setTime(HOUR);
+        source.put(locator(2));
+        source.save(file);
+
+        IndexedLocatorFilter target = new IndexedLocatorFilter(clock, HOUR, 2, 1000, 0.0001);
+        target.load(file);
+        Assert.assertTrue(target.mightContain(locator(1)));
+        Assert.assertTrue(target.mightContain(locator(2)));
+        Assert.assertFalse(target.mightContain(locator(3)));
+
+        // partitions that expired while the node was down are not loaded.
+        setTime(2 * HOUR);
+        target = new IndexedLocatorFilter(clock, HOUR, 2, 1000, 0.0001);
+        target.load(file);
+        Assert.assertEquals(1, target.getPartitionCount());
+        Assert.assertFalse(target.mightContain(locator(1)));
+        Assert.assertTrue(target.mightContain(locator(2)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadRejectsOtherFiles() throws IOException {
+        new IndexedLocatorFilter(clock, HOUR, 2, 1000, 0.0001).load(file);
+    }
+
+    private void setTime(long millis) {
+        when(clock.now()).thenReturn(new Instant(millis));
+    }
+
+    private static Locator locator(int i) {
+        return Locator.createLocatorFromPathComponents("tenant", "metric" + i);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.cache;
+
+import com.google.common.collect.Table;
+import com.rackspacecloud.blueflood.exceptions.CacheException;
+import com.rackspacecloud.blueflood.exceptions.MetadataReadException;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.utils.InMemoryMetadataIO;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class MetadataCacheReadAllTest {
+
+    private static final String KEY = "rollup_type";
+
+    private final Locator good = Locator.createLocatorFromPathComponents("tenant", "readall", "good");
+    private final Locator bad = Locator.createLocatorFromPathComponents("tenant", "readall", "bad");
+    private final Locator missing = Locator.createLocatorFromPathComponents("tenant", "readall", "missing");
+    private final List<Locator> locators = Arrays.asList(good, bad, missing);
+
+    private FailingMetadataIO io;
+    private MetadataCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        io = new FailingMetadataIO();
+        io.put(good, KEY, "timer");
+        io.put(bad, KEY, "enum");
+        io.failing.add(bad);
+
+        cache = MetadataCache.createLoadingCacheInstance(new TimeValue(5, TimeUnit.MINUTES), 1);
+        cache.setIO(io);
+    }
+
+    @Test
+    public void testReadAllReportsFailedLocators() throws CacheException {
+        Set<Locator> failed = new HashSet<Locator>();
+        Table<Locator, String, String> meta = cache.readAll(locators, failed);
+
+        Assert.assertEquals(Collections.singleton(bad), failed);
+        Assert.assertEquals("timer", meta.get(good, KEY));
+        Assert.assertFalse(meta.containsRow(bad));
+        Assert.assertFalse(meta.containsRow(missing));
+    }
+
+    @Test(expected = CacheException.class)
+    public void testStrictReadAllThrowsOnFailedLocator() throws CacheException {
+        cache.readAll(locators);
+    }
+
+    @Test
+    public void testFailedLocatorIsNotCachedAsMissing() throws CacheException {
+        // what RollupRunnable.prefetchMetadata does.
+        Set<Locator> failed = new HashSet<Locator>();
+        Table<Locator, String, String> meta = cache.readAll(locators, failed);
+        Set<Locator> succeeded = new HashSet<Locator>(locators);
+        succeeded.removeAll(failed);
+        cache.populate(succeeded, meta, KEY);
+
+        Assert.assertEquals(Collections.singleton(bad), cache.withoutCachedValue(locators, KEY));
+        Assert.assertEquals("timer", cache.get(good, KEY));
+        Assert.assertNull(cache.get(missing, KEY));
+
+        // the failed locator is loaded on its own once the database answers again.
+        io.failing.clear();
+        Assert.assertEquals("enum", cache.get(bad, KEY));
+    }
+
+    private static class FailingMetadataIO extends InMemoryMetadataIO {
+        final Set<Locator> failing = new HashSet<Locator>();
+
+        @Override
+        public Table<Locator, String, String> getAllValues(Set<Locator> locators) throws IOException {
+            Set<Locator> toRead = new HashSet<Locator>(locators);
+            toRead.removeAll(failing);
+            Table<Locator, String, String> result = super.getAllValues(toRead);
+            Set<Locator> failed = new HashSet<Locator>(locators);
+            failed.removeAll(toRead);
+            if (!failed.isEmpty()) {
+                throw new MetadataReadException("read failed", result, failed, new IOException("timed out"));
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String, String> getAllValues(Locator locator) throws IOException {
+            if (failing.contains(locator)) {
+                throw new IOException("timed out");
+            }
+            return super.getAllValues(locator);
+        }
+    }
+}
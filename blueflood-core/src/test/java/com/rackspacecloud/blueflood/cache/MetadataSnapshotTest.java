@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.cache;
+
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+public class MetadataSnapshotTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("metadata", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRoundTripWithLocators() throws IOException {
+        GuavaMetadataStore source = new GuavaMetadataStore(new TimeValue(10, TimeUnit.MINUTES), 1);
+        for (int i = 0; i < 100; i++) {
+            source.put(locator(i), "type", "counter");
+            source.put(locator(i), "unit", "ms" + (i % 3));
+        }
+        writeFull(source, 1000);
+
+        Assert.assertTrue(MetadataSnapshot.isSnapshot(file));
+        GuavaMetadataStore target = new GuavaMetadataStore(new TimeValue(10, TimeUnit.MINUTES), 1);
+        Assert.assertEquals(200, MetadataSnapshot.read(file, 1, restoreInto(target)));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("counter", target.peek(locator(i), "type"));
+            Assert.assertEquals("ms" + (i % 3), target.peek(locator(i), "unit"));
+        }
+    }
+
+    @Test
+    public void testRoundTripWithFingerprintsOnly() throws IOException {
+        CompactMetadataStore source = new CompactMetadataStore(new TimeValue(10, TimeUnit.MINUTES), 4);
+        for (int i = 0; i < 1000; i++) {
+            source.put(locator(i), "unit", "u" + (i % 5));
+        }
+        writeFull(source, 64);
+
+        CompactMetadataStore target = new CompactMetadataStore(new TimeValue(10, TimeUnit.MINUTES), 4);
+        Assert.assertEquals(1000, MetadataSnapshot.read(file, 4, restoreInto(target)));
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("u" + (i % 5), target.peek(locator(i), "unit"));
+        }
+
+        // a backend that needs locators cannot use these entries.
+        GuavaMetadataStore guava = new GuavaMetadataStore(new TimeValue(10, TimeUnit.MINUTES), 1);
+        MetadataSnapshot.read(file, 1, restoreInto(guava));
+        Assert.assertEquals(0, guava.size());
+    }
+
+    @Test
+    public void testDeltasOverrideAndRemove() throws IOException {
+        MetadataSnapshot.Writer full = new MetadataSnapshot.Writer(file, false, MetadataSnapshot.FULL);
+        full.add(0, locator(1), "unit", "ms");
+        full.add(0, locator(2), "unit", "bytes");
+        full.close();
+
+        MetadataSnapshot.Writer delta = new MetadataSnapshot.Writer(file, true, MetadataSnapshot.DELTA);
+        delta.add(0, locator(1), "unit", "seconds");
+        delta.add(0, locator(2), "unit", null);
+        delta.close();
+
+        GuavaMetadataStore target = new GuavaMetadataStore(new TimeValue(10, TimeUnit.MINUTES), 1);
+        target.put(locator(2), "unit", "stale");
+        MetadataSnapshot.read(file, 1, restoreInto(target));
+
+        Assert.assertEquals("seconds", target.peek(locator(1), "unit"));
+        Assert.assertNull(target.peek(locator(2), "unit"));
+    }
+
+    @Test
+    public void testEmptyDeltaWritesNothing() throws IOException {
+        new MetadataSnapshot.Writer(file, false, MetadataSnapshot.FULL).close();
+        long length = file.length();
+        Assert.assertTrue(length > 0);
+
+        new MetadataSnapshot.Writer(file, true, MetadataSnapshot.DELTA).close();
+        Assert.assertEquals(length, file.length());
+    }
+
+    @Test
+    public void testCorruptTailIsIgnored() throws IOException {
+        MetadataSnapshot.Writer full = new MetadataSnapshot.Writer(file, false, MetadataSnapshot.FULL);
+        full.add(0, locator(1), "unit", "ms");
+        full.close();
+        long validLength = file.length();
+
+        MetadataSnapshot.Writer delta = new MetadataSnapshot.Writer(file, true, MetadataSnapshot.DELTA);
+        delta.add(0, locator(1), "unit", "seconds");
+        delta.close();
+
+        // flip a byte in the delta's body.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(file.length() - 1);
+        byte last = raf.readByte();
+        raf.seek(file.length() - 1);
+        raf.writeByte(last ^ 0xff);
+        raf.close();
+
+        GuavaMetadataStore target = new GuavaMetadataStore(new TimeValue(10, TimeUnit.MINUTES), 1);
+        Assert.assertEquals(1, MetadataSnapshot.read(file, 1, restoreInto(target)));
+        Assert.assertEquals("ms", target.peek(locator(1), "unit"));
+
+        // and a truncated tail.
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(validLength + 10);
+        raf.close();
+        Assert.assertEquals(1, MetadataSnapshot.read(file, 1, restoreInto(target)));
+    }
+
+    @Test
+    public void testLegacyFileIsNotASnapshot() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(1);
+        out.writeUTF(locator(1).toString());
+        out.writeInt(1);
+        out.writeUTF("unit");
+        out.writeUTF("ms");
+        out.close();
+
+        Assert.assertFalse(MetadataSnapshot.isSnapshot(file));
+    }
+
+    private void writeFull(MetadataStore store, int entriesPerSegment) throws IOException {
+        final MetadataSnapshot.Writer writer = new MetadataSnapshot.Writer(file, false, MetadataSnapshot.FULL, entriesPerSegment);
+        store.visit(new MetadataStore.EntryVisitor() {
+            @Override
+            public void visit(long fingerprint, Locator locator, String key, String value) throws IOException {
+                writer.add(fingerprint, locator, key, value);
+            }
+        });
+        writer.close();
+    }
+
+    private static MetadataStore.EntryVisitor restoreInto(final MetadataStore store) {
+        return new MetadataStore.EntryVisitor() {
+            @Override
+            public void visit(long fingerprint, Locator locator, String key, String value) {
+                if (value == null) {
+                    store.invalidate(locator, key);
+                } else {
+                    store.restore(fingerprint, locator, key, value);
+                }
+            }
+        };
+    }
+
+    private static Locator locator(int i) {
+        return Locator.createLocatorFromPathComponents("tenant", "metric" + i);
+    }
+}
@@ -17,19 +17,26 @@
 package com.rackspacecloud.blueflood.inputs.processors;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import com.rackspacecloud.blueflood.cache.IndexedLocatorFilter;
 import com.rackspacecloud.blueflood.concurrent.ThreadPoolBuilder;
+import com.rackspacecloud.blueflood.io.AsyncDiscoveryIO;
 import com.rackspacecloud.blueflood.io.DiscoveryIO;
+import com.rackspacecloud.blueflood.io.DiscoveryListener;
 import com.rackspacecloud.blueflood.types.IMetric;
 import com.rackspacecloud.blueflood.types.Locator;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ThreadPoolExecutor;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.stub;
 
@@ -118,4 +125,81 @@ public class DiscoveryWriterTest {
         verify(discovererA).insertDiscovery(flatTestData);
         verify(discovererB).insertDiscovery(flatTestData);
     }
+
+    @Test
+    public void testAsynchronousIOsReportToTheWriter() {
+        DiscoveryWriter discWriter =
+                new DiscoveryWriter(new ThreadPoolBuilder()
+                        .withName("Metric Discovery Writing")
+                        .withUnboundedQueue()
+                        .build());
+
+        AsyncDiscoveryIO discoverer = mock(AsyncDiscoveryIO.class);
+        discWriter.registerIO(discoverer);
+
+        verify(discoverer).setDiscoveryListener(any(DiscoveryListener.class));
+    }
+
+    @Test
+    public void testFilterOnlyHoldsLocatorsEveryIOIndexed() throws Exception {
+        final IndexedLocatorFilter filter = mock(IndexedLocatorFilter.class);
+        DiscoveryWriter discWriter =
+                new DiscoveryWriter(new ThreadPoolBuilder()
+                        .withName("Metric Discovery Writing")
+                        .withUnboundedQueue()
+                        .build()) {
+                    @Override
+                    IndexedLocatorFilter locatorFilter() {
+                        return filter;
+                    }
+                };
+
+        AsyncDiscoveryIO asyncDiscoverer = mock(AsyncDiscoveryIO.class);
+        DiscoveryIO syncDiscoverer = mock(DiscoveryIO.class);
+        discWriter.registerIO(asyncDiscoverer);
+        discWriter.registerIO(syncDiscoverer);
+        ArgumentCaptor<DiscoveryListener> listener = ArgumentCaptor.forClass(DiscoveryListener.class);
+        verify(asyncDiscoverer).setDiscoveryListener(listener.capture());
+
+        List<List<IMetric>> testdata = createTestData();
+        Locator indexed = testdata.get(0).get(0).getLocator();
+        Locator dropped = testdata.get(0).get(1).getLocator();
+        Locator queued = testdata.get(0).get(2).getLocator();
+        Assert.assertTrue(discWriter.processMetrics(testdata).get());
+
+        // queued by the asynchronous io is not indexed yet.
+        verify(filter, never()).put(any(Locator.class));
+
+        listener.getValue().indexed(indexed);
+        listener.getValue().notIndexed(dropped);
+        listener.getValue().indexed(dropped);
+        verify(filter).put(indexed);
+        verify(filter, never()).put(dropped);
+        verify(filter, never()).put(queued);
+    }
+
+    @Test
+    public void testFilterIsNotFedWhenAnIOFails() throws Exception {
+        final IndexedLocatorFilter filter = mock(IndexedLocatorFilter.class);
+        DiscoveryWriter discWriter =
+                new DiscoveryWriter(new ThreadPoolBuilder()
+                        .withName("Metric Discovery Writing")
+                        .withUnboundedQueue()
+                        .build()) {
+                    @Override
+                    IndexedLocatorFilter locatorFilter() {
+                        return filter;
+                    }
+                };
+
+        DiscoveryIO good = mock(DiscoveryIO.class);
+        DiscoveryIO bad = mock(DiscoveryIO.class);
+        discWriter.registerIO(good);
+        discWriter.registerIO(bad);
+        doThrow(new RuntimeException("down")).when(bad).insertDiscovery(any(List.class));
+
+        Assert.assertFalse(discWriter.processMetrics(createTestData()).get());
+
+        verify(filter, never()).put(any(Locator.class));
+    }
 }
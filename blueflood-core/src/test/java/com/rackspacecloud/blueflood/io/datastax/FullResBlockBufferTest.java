@@ -0,0 +1,127 @@
+package com.rackspacecloud.blueflood.io.datastax;
+
+import com.datastax.driver.core.ResultSetFuture;
+import com.rackspacecloud.blueflood.io.serializers.metrics.FullResBlockSerDes;
+import com.rackspacecloud.blueflood.types.IMetric;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.types.Metric;
+import com.rackspacecloud.blueflood.types.Points;
+import com.rackspacecloud.blueflood.utils.Clock;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+import org.joda.time.Instant;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class FullResBlockBufferTest {
+
+    private static final long SLOT_START = 1451606400000L; // a 5m boundary
+    private static final long SEAL_DELAY = 30000;
+    private static final long RAW_TTL = 600000;
+
+    private final Locator locator = Locator.createLocatorFromPathComponents("tenant", "a", "metric");
+    private final FullResBlockSerDes serDes = new FullResBlockSerDes();
+
+    private DFullResBlockIO blockIO;
+    private DRawIO rawIO;
+    private Clock clock;
+    private FullResBlockBuffer buffer;
+
+    @Before
+    public void setUp() {
+        blockIO = mock(DFullResBlockIO.class);
+        rawIO = mock(DRawIO.class);
+        clock = mock(Clock.class);
+        when(blockIO.getSerDes()).thenReturn(serDes);
+        when(blockIO.putAsync(any(Locator.class), anyLong(), anyLong(), any(ByteBuffer.class), anyInt()))
+                .thenReturn(mock(ResultSetFuture.class));
+        when(rawIO.insertAsync(any(IMetric.class))).thenReturn(mock(ResultSetFuture.class));
+        setNow(SLOT_START + 1000);
+        buffer = new FullResBlockBuffer(blockIO, rawIO, clock, SEAL_DELAY, 100, RAW_TTL);
+    }
+
+    @Test
+    public void testBlockIsSealedAfterItsSlotEnds() {
+        // out of order, with a duplicate timestamp.
+        Assert.assertTrue(buffer.add(metric(SLOT_START + 30000, 2.0)));
+        Assert.assertTrue(buffer.add(metric(SLOT_START, 1.0)));
+        Assert.assertTrue(buffer.add(metric(SLOT_START + 30000, 3.0)));
+
+        buffer.sealExpired();
+        verifyZeroInteractions(rawIO);
+        verify(blockIO, never()).putAsync(any(Locator.class), anyLong(), anyLong(), any(ByteBuffer.class), anyInt());
+
+        setNow(SLOT_START + 300000 + SEAL_DELAY);
+        buffer.sealExpired();
+
+        ArgumentCaptor<ByteBuffer> block = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(blockIO).putAsync(eq(locator), eq(SLOT_START), anyLong(), block.capture(), eq(3600));
+        Points<Object> points = serDes.deserialize(block.getValue());
+        Assert.assertEquals(2, points.getPoints().size());
+        Assert.assertEquals(1.0, points.getPoints().get(SLOT_START).getData());
+        Assert.assertEquals(3.0, points.getPoints().get(SLOT_START + 30000).getData());
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testLatePointsAreNotBuffered() {
+        setNow(SLOT_START + 300000 + SEAL_DELAY);
+        Assert.assertFalse(buffer.add(metric(SLOT_START + 1000, 1.0)));
+        Assert.assertTrue(buffer.add(metric(SLOT_START + 300000, 1.0)));
+    }
+
+    @Test
+    public void testNonNumericPointsAreNotBuffered() {
+        Assert.assertFalse(buffer.add(metric(SLOT_START, "string")));
+        Assert.assertFalse(buffer.add(metric(SLOT_START, true)));
+    }
+
+    @Test
+    public void testFullBlockIsSealedAtOnce() {
+        for (int i = 0; i < 100; i++) {
+            buffer.add(metric(SLOT_START + i, (long) i));
+        }
+        verify(blockIO).putAsync(eq(locator), eq(SLOT_START), anyLong(), any(ByteBuffer.class), anyInt());
+        Assert.assertEquals(0, buffer.size());
+
+        // the next points start a new block, with a different id.
+        buffer.add(metric(SLOT_START + 100, 100L));
+        buffer.sealAll(new TimeValue(1, TimeUnit.SECONDS));
+        ArgumentCaptor<Long> ids = ArgumentCaptor.forClass(Long.class);
+        verify(blockIO, times(2)).putAsync(eq(locator), eq(SLOT_START), ids.capture(), any(ByteBuffer.class), anyInt());
+        Assert.assertNotEquals(ids.getAllValues().get(0), ids.getAllValues().get(1));
+    }
+
+    @Test
+    public void testMixedTypesAreWrittenRaw() {
+        buffer.add(metric(SLOT_START, 1));
+        buffer.add(metric(SLOT_START + 1000, 1.5));
+        buffer.sealAll(new TimeValue(1, TimeUnit.SECONDS));
+
+        verify(rawIO, times(2)).insertAsync(any(IMetric.class));
+        verify(blockIO, never()).putAsync(any(Locator.class), anyLong(), anyLong(), any(ByteBuffer.class), anyInt());
+    }
+
+    @Test
+    public void testRawTtlIsCappedAtTheMetricTtl() {
+        Assert.assertEquals(600, buffer.rawTtlSeconds(metric(SLOT_START, 1.0)));
+
+        FullResBlockBuffer longRawTtl = new FullResBlockBuffer(blockIO, rawIO, clock, SEAL_DELAY, 100, 86400000);
+        Assert.assertEquals(3600, longRawTtl.rawTtlSeconds(metric(SLOT_START, 1.0)));
+    }
+
+    private IMetric metric(long timestamp, Object value) {
+        return new Metric(locator, value, timestamp, new TimeValue(1, TimeUnit.HOURS), null);
+    }
+
+    private void setNow(long millis) {
+        when(clock.now()).thenReturn(new Instant(millis));
+    }
+}
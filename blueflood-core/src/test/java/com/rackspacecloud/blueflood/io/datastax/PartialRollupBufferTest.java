@@ -0,0 +1,156 @@
+package com.rackspacecloud.blueflood.io.datastax;
+
+import com.datastax.driver.core.ResultSetFuture;
+import com.rackspacecloud.blueflood.types.*;
+import com.rackspacecloud.blueflood.utils.Clock;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+import org.joda.time.Instant;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class PartialRollupBufferTest {
+
+    private static final long SLOT_START = 1451606400000L; // a 5m boundary
+    private static final long FLUSH_DELAY = 30000;
+
+    private final Locator locator = Locator.createLocatorFromPathComponents("tenant", "a", "metric");
+
+    private DPartialRollupIO partialIO;
+    private Clock clock;
+    private PartialRollupBuffer buffer;
+
+    @Before
+    public void setUp() {
+        partialIO = mock(DPartialRollupIO.class);
+        clock = mock(Clock.class);
+        when(partialIO.acceptsSlot(anyLong())).thenReturn(true);
+        when(partialIO.putAsync(any(Locator.class), anyLong(), anyLong(), any(BasicRollup.class)))
+                .thenReturn(mock(ResultSetFuture.class));
+        setNow(SLOT_START + 1000);
+        buffer = new PartialRollupBuffer(partialIO, clock, FLUSH_DELAY);
+    }
+
+    @Test
+    public void testPartialIsFlushedAfterItsSlotEnds() {
+        // out of order, with a repeated timestamp; every point that arrives is folded in.
+        Assert.assertTrue(buffer.add(metric(SLOT_START + 30000, 2.0)));
+        Assert.assertTrue(buffer.add(metric(SLOT_START, 1.0)));
+        Assert.assertTrue(buffer.add(metric(SLOT_START + 30000, 3.0)));
+
+        buffer.flushExpired();
+        verify(partialIO, never()).putAsync(any(Locator.class), anyLong(), anyLong(), any(BasicRollup.class));
+
+        setNow(SLOT_START + 300000 + FLUSH_DELAY);
+        buffer.flushExpired();
+
+        ArgumentCaptor<BasicRollup> rollup = ArgumentCaptor.forClass(BasicRollup.class);
+        verify(partialIO).putAsync(eq(locator), eq(SLOT_START), anyLong(), rollup.capture());
+        Assert.assertEquals(3, rollup.getValue().getCount());
+        Assert.assertEquals(6.0, rollup.getValue().getSum(), 0);
+        Assert.assertEquals(2.0, rollup.getValue().getAverage().toDouble(), 0);
+        Assert.assertEquals(1.0, rollup.getValue().getMinValue().toDouble(), 0);
+        Assert.assertEquals(3.0, rollup.getValue().getMaxValue().toDouble(), 0);
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testLatePointsStartANewPartial() {
+        buffer.add(metric(SLOT_START, 1L));
+        setNow(SLOT_START + 300000 + FLUSH_DELAY);
+        buffer.flushExpired();
+
+        Assert.assertTrue(buffer.add(metric(SLOT_START + 1000, 5L)));
+        buffer.flushExpired();
+
+        ArgumentCaptor<Long> ids = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<BasicRollup> rollups = ArgumentCaptor.forClass(BasicRollup.class);
+        verify(partialIO, times(2)).putAsync(eq(locator), eq(SLOT_START), ids.capture(), rollups.capture());
+        Assert.assertNotEquals(ids.getAllValues().get(0), ids.getAllValues().get(1));
+        Assert.assertEquals(5.0, rollups.getAllValues().get(1).getSum(), 0);
+    }
+
+    @Test
+    public void testPointsThatCanNotBePreRolled() {
+        Assert.assertFalse(buffer.add(metric(SLOT_START, "string")));
+        Assert.assertFalse(buffer.add(metric(SLOT_START, true)));
+
+        when(partialIO.acceptsSlot(SLOT_START)).thenReturn(false);
+        Assert.assertFalse(buffer.add(metric(SLOT_START, 1.0)));
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testFlushAllWritesOpenPartials() {
+        buffer.add(metric(SLOT_START, 1));
+        buffer.add(metric(SLOT_START + 300000, 2));
+        buffer.flushAll(new TimeValue(1, TimeUnit.SECONDS));
+
+        verify(partialIO).putAsync(eq(locator), eq(SLOT_START), anyLong(), any(BasicRollup.class));
+        verify(partialIO).putAsync(eq(locator), eq(SLOT_START + 300000), anyLong(), any(BasicRollup.class));
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testMergedPartialsMatchRollupOfAllPoints() throws Exception {
+        Points<SimpleNumber> all = new Points<SimpleNumber>();
+        Points<SimpleNumber> first = new Points<SimpleNumber>();
+        Points<SimpleNumber> second = new Points<SimpleNumber>();
+        for (int i = 0; i < 10; i++) {
+            Points.Point<SimpleNumber> point = new Points.Point<SimpleNumber>(SLOT_START + i, new SimpleNumber(i * 1.5));
+            all.add(point);
+            (i < 6 ? first : second).add(point);
+        }
+
+        BasicRollup merged = DPartialRollupIO.merge(SLOT_START, Arrays.asList(
+                BasicRollup.buildRollupFromRawSamples(first), BasicRollup.buildRollupFromRawSamples(second)));
+        BasicRollup expected = BasicRollup.buildRollupFromRawSamples(all);
+
+        Assert.assertEquals(expected.getCount(), merged.getCount());
+        Assert.assertEquals(expected.getSum(), merged.getSum(), 1e-9);
+        Assert.assertEquals(expected.getAverage().toDouble(), merged.getAverage().toDouble(), 1e-9);
+        Assert.assertEquals(expected.getVariance().toDouble(), merged.getVariance().toDouble(), 1e-9);
+        Assert.assertEquals(expected.getMinValue().toDouble(), merged.getMinValue().toDouble(), 0);
+        Assert.assertEquals(expected.getMaxValue().toDouble(), merged.getMaxValue().toDouble(), 0);
+        Assert.assertNull(DPartialRollupIO.merge(SLOT_START, Arrays.<BasicRollup>asList()));
+    }
+
+    @Test
+    public void testPartialsAreOnlyUsedWhenTheyHoldEveryRawPoint() throws Exception {
+        List<BasicRollup> partials = Arrays.asList(rollupOf(1.0, 2.0), rollupOf(3.0));
+
+        BasicRollup merged = DPartialRollupIO.mergeIfComplete(SLOT_START, partials, 3);
+        Assert.assertNotNull(merged);
+        Assert.assertEquals(6.0, merged.getSum(), 0);
+
+        // a partial lost with its ingest node.
+        Assert.assertNull(DPartialRollupIO.mergeIfComplete(SLOT_START, partials, 4));
+        // a point sent again after its partial was flushed.
+        Assert.assertNull(DPartialRollupIO.mergeIfComplete(SLOT_START, partials, 2));
+        Assert.assertNull(DPartialRollupIO.mergeIfComplete(SLOT_START, Arrays.<BasicRollup>asList(), 0));
+    }
+
+    private BasicRollup rollupOf(double... values) {
+        BasicRollup rollup = new BasicRollup();
+        for (double value : values) {
+            rollup.addRawSample(new SimpleNumber(value));
+        }
+        return rollup;
+    }
+
+    private IMetric metric(long timestamp, Object value) {
+        return new Metric(locator, value, timestamp, new TimeValue(1, TimeUnit.HOURS), null);
+    }
+
+    private void setNow(long millis) {
+        when(clock.now()).thenReturn(new Instant(millis));
+    }
+}
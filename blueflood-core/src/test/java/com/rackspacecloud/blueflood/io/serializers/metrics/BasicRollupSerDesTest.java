@@ -1,5 +1,7 @@
 package com.rackspacecloud.blueflood.io.serializers.metrics;
 
+import com.google.protobuf.CodedOutputStream;
+import com.rackspacecloud.blueflood.io.Constants;
 import com.rackspacecloud.blueflood.io.serializers.Serializers;
 import com.rackspacecloud.blueflood.types.BasicRollup;
 import com.rackspacecloud.blueflood.types.Points;
@@ -40,4 +42,99 @@ public class BasicRollupSerDesTest {
         ByteBuffer bb = Serializers.serializerFor(BasicRollup.class).toByteBuffer(r);
         Assert.assertEquals(r, Serializers.serializerFor(BasicRollup.class).fromByteBuffer(bb));
     }
+
+    @Test
+    public void testBufferSerializationMatchesCodedOutputStream() throws IOException {
+        LegacySerDes serDes = new LegacySerDes();
+        for (BasicRollup rollup : new BasicRollup[] { new BasicRollup(), longRollup(), doubleRollup() }) {
+            ByteBuffer expected = ByteBuffer.wrap(serDes.legacySerialize(rollup));
+            Assert.assertEquals(expected, serDes.serialize(rollup));
+            Assert.assertEquals(expected, serDes.serialize(rollup, new BufferSlab(1024)));
+        }
+    }
+
+    @Test
+    public void testDeserializeInPlaceWithReusedHolder() throws IOException {
+        BasicRollupSerDes serDes = new BasicRollupSerDes();
+        BasicRollup longRollup = longRollup();
+        BasicRollup doubleRollup = doubleRollup();
+        BasicRollup empty = new BasicRollup();
+
+        // three rollups back to back in one buffer, starting at a non-zero offset.
+        ByteBuffer buf = ByteBuffer.allocate(3 + serDes.sizeOf(longRollup) + serDes.sizeOf(doubleRollup) + serDes.sizeOf(empty));
+        buf.position(3);
+        serDes.serialize(longRollup, buf);
+        serDes.serialize(doubleRollup, buf);
+        serDes.serialize(empty, buf);
+        Assert.assertFalse(buf.hasRemaining());
+        buf.position(3);
+
+        BasicRollup holder = new BasicRollup();
+        Assert.assertSame(holder, serDes.deserialize(buf, holder));
+        Assert.assertEquals(longRollup, holder);
+        Assert.assertEquals(longRollup.getSum(), holder.getSum(), 0.0d);
+        serDes.deserialize(buf, holder);
+        Assert.assertEquals(doubleRollup, holder);
+        Assert.assertEquals(doubleRollup.getSum(), holder.getSum(), 0.0d);
+        serDes.deserialize(buf, holder);
+        // the stats left over from the previous rollup are reset.
+        Assert.assertEquals(0, holder.getCount());
+        Assert.assertFalse(holder.getAverage().isFloatingPoint());
+        Assert.assertEquals(0, holder.getAverage().toLong());
+        Assert.assertEquals(0, holder.getMinValue().toLong());
+        Assert.assertEquals(0, holder.getMaxValue().toLong());
+        Assert.assertEquals(0.0d, holder.getVariance().toDouble(), 0.0d);
+        Assert.assertEquals(0.0d, holder.getSum(), 0.0d);
+        Assert.assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    public void testBufferSlabHandsOutDisjointBuffers() {
+        BufferSlab slab = new BufferSlab(64);
+        ByteBuffer first = slab.allocate(16);
+        ByteBuffer second = slab.allocate(16);
+        Assert.assertEquals(16, first.remaining());
+        Assert.assertEquals(16, second.capacity());
+
+        while (first.hasRemaining()) first.put((byte) 1);
+        while (second.hasRemaining()) second.put((byte) 2);
+        first.flip();
+        while (first.hasRemaining()) Assert.assertEquals(1, first.get());
+
+        // larger than a quarter of the chunk: a buffer of its own.
+        Assert.assertEquals(17, slab.allocate(17).capacity());
+        // the rest of the chunk is too small, so a new one is started.
+        Assert.assertEquals(16, slab.allocate(16).remaining());
+        Assert.assertEquals(16, slab.allocate(16).remaining());
+    }
+
+    private static BasicRollup longRollup() throws IOException {
+        Points<SimpleNumber> input = new Points<SimpleNumber>();
+        for (int i = 0; i < 10; i++) {
+            input.add(new Points.Point<SimpleNumber>(1000L + i, new SimpleNumber((long) i * 1000)));
+        }
+        return BasicRollup.buildRollupFromRawSamples(input);
+    }
+
+    private static BasicRollup doubleRollup() throws IOException {
+        Points<SimpleNumber> input = new Points<SimpleNumber>();
+        for (int i = 0; i < 10; i++) {
+            input.add(new Points.Point<SimpleNumber>(1000L + i, new SimpleNumber(i * -1.5d)));
+        }
+        return BasicRollup.buildRollupFromRawSamples(input);
+    }
+
+    private static class LegacySerDes extends BasicRollupSerDes {
+        // the byte[] and CodedOutputStream based serialization the buffer based one replaced.
+        byte[] legacySerialize(BasicRollup rollup) throws IOException {
+            byte[] buf = new byte[sizeOf(rollup, Constants.VERSION_2_ROLLUP)];
+            CodedOutputStream out = CodedOutputStream.newInstance(buf);
+            out.writeRawByte(Constants.VERSION_2_ROLLUP);
+            serializeBaseRollupHelper(rollup, out);
+            if (rollup.getCount() > 0) {
+                out.writeDoubleNoTag(rollup.getSum());
+            }
+            return buf;
+        }
+    }
 }
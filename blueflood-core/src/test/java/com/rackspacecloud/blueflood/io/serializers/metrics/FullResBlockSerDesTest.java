@@ -0,0 +1,97 @@
+package com.rackspacecloud.blueflood.io.serializers.metrics;
+
+import com.rackspacecloud.blueflood.io.Constants;
+import com.rackspacecloud.blueflood.types.Points;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class FullResBlockSerDesTest {
+
+    private final FullResBlockSerDes serDes = new FullResBlockSerDes();
+
+    @Test
+    public void testRegularDoublesCompressWell() {
+        int count = 300;
+        long[] timestamps = new long[count];
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = 1451606400000L + i * 1000;
+            values[i] = 20.0 + (i % 10) * 0.5;
+        }
+
+        ByteBuffer block = serDes.serialize(timestamps, values, count);
+        assertRoundTrip(timestamps, values, count, block);
+
+        int rawSize = 0;
+        for (int i = 0; i < count; i++) {
+            rawSize += 8 + new RawSerDes().serialize(values[i]).limit();
+        }
+        Assert.assertTrue(block.limit() * 4 < rawSize);
+    }
+
+    @Test
+    public void testIrregularTimestampsAndValues() {
+        Random random = new Random(17);
+        for (Object type : new Object[] { 0, 0L, 0d }) {
+            int count = 500;
+            long[] timestamps = new long[count];
+            Object[] values = new Object[count];
+            long timestamp = 1451606400000L;
+            for (int i = 0; i < count; i++) {
+                // mostly small jitter, sometimes large gaps.
+                timestamp += i % 50 == 0 ? 1 + random.nextInt(100000000) : 29000 + random.nextInt(2000);
+                timestamps[i] = timestamp;
+                if (type instanceof Integer) {
+                    values[i] = random.nextInt();
+                } else if (type instanceof Long) {
+                    values[i] = i % 3 == 0 ? Long.MIN_VALUE : random.nextLong() >> random.nextInt(64);
+                } else {
+                    values[i] = i % 7 == 0 ? Double.NaN : random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+                }
+            }
+            assertRoundTrip(timestamps, values, count, serDes.serialize(timestamps, values, count));
+        }
+    }
+
+    @Test
+    public void testSinglePoint() {
+        long[] timestamps = { 1234L };
+        Object[] values = { 42L };
+        ByteBuffer block = serDes.serialize(timestamps, values, 1);
+        Assert.assertEquals(Constants.VERSION_1_FULL_RES_BLOCK, block.get(0));
+        assertRoundTrip(timestamps, values, 1, block);
+    }
+
+    @Test
+    public void testCanEncode() {
+        Assert.assertTrue(FullResBlockSerDes.canEncode(new Object[] { 1, 2, 3 }, 3));
+        Assert.assertFalse(FullResBlockSerDes.canEncode(new Object[] { 1, 2L }, 2));
+        Assert.assertFalse(FullResBlockSerDes.canEncode(new Object[] { 1.0, 2 }, 2));
+        Assert.assertFalse(FullResBlockSerDes.canEncode(new Object[] { "string" }, 1));
+        Assert.assertFalse(FullResBlockSerDes.canEncode(new Object[0], 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsortedTimestampsAreRejected() {
+        serDes.serialize(new long[] { 2, 1 }, new Object[] { 1, 2 }, 2);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testTruncatedBlockIsRejected() {
+        ByteBuffer block = serDes.serialize(new long[] { 1, 2, 3 }, new Object[] { 1.5, 2.5, 3.5 }, 3);
+        serDes.deserialize(ByteBuffer.wrap(block.array(), 0, block.limit() - 3));
+    }
+
+    private void assertRoundTrip(long[] timestamps, Object[] values, int count, ByteBuffer block) {
+        Points<Object> points = serDes.deserialize(block);
+        Assert.assertEquals(count, points.getPoints().size());
+        for (int i = 0; i < count; i++) {
+            Points.Point<Object> point = points.getPoints().get(timestamps[i]);
+            Assert.assertNotNull(point);
+            Assert.assertEquals(values[i], point.getData());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.rackspacecloud.blueflood.io.serializers.metrics;
+
+import com.rackspacecloud.blueflood.io.Constants;
+import com.rackspacecloud.blueflood.types.BluefloodTimerRollup;
+import com.rackspacecloud.blueflood.types.QuantileSketch;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class TimerRollupSerDesTest {
+
+    private final TimerRollupSerDes serDes = new TimerRollupSerDes();
+
+    @Test
+    public void testTimerWithoutSketchKeepsVersion2() {
+        BluefloodTimerRollup timer = timer();
+
+        ByteBuffer bb = serDes.serialize(timer);
+
+        Assert.assertEquals(Constants.VERSION_2_TIMER, bb.get(0));
+        Assert.assertEquals(timer, serDes.deserialize(bb));
+    }
+
+    @Test
+    public void testTimerWithSketchRoundTrips() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 0; i < 500; i++) {
+            sketch.add(i * 1.5, 2);
+        }
+        sketch.add(0, 3);
+        BluefloodTimerRollup timer = timer().withSketch(sketch);
+
+        ByteBuffer bb = serDes.serialize(timer);
+
+        Assert.assertEquals(Constants.VERSION_3_TIMER, bb.get(0));
+        BluefloodTimerRollup read = serDes.deserialize(bb);
+        Assert.assertEquals(timer, read);
+        Assert.assertEquals(sketch.getQuantile(0.99), read.getQuantile(0.99), 0d);
+    }
+
+    private static BluefloodTimerRollup timer() {
+        BluefloodTimerRollup timer = new BluefloodTimerRollup()
+                .withSum(1234.5d)
+                .withCount(1003)
+                .withCountPS(3.3d)
+                .withSampleCount(1)
+                .withAverage(1.23d)
+                .withMaxValue(748.5d)
+                .withMinValue(0)
+                .withVariance(4.5d);
+        timer.setPercentile("99", 740.2d);
+        return timer;
+    }
+}
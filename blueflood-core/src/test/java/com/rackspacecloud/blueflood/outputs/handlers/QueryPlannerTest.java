@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.outputs.handlers;
+
+import com.rackspacecloud.blueflood.cache.CombinedTtlProvider;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.types.Range;
+import com.rackspacecloud.blueflood.utils.Clock;
+import org.joda.time.Instant;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class QueryPlannerTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long NOW = 1451606400000L + 123456; // not on a slot boundary
+
+    private QueryPlanner planner;
+
+    @Before
+    public void setUp() {
+        CombinedTtlProvider ttlProvider = mock(CombinedTtlProvider.class);
+        when(ttlProvider.getFinalTTL(anyString(), eq(Granularity.FULL))).thenReturn(1 * DAY);
+        when(ttlProvider.getFinalTTL(anyString(), eq(Granularity.MIN_5))).thenReturn(10 * DAY);
+        when(ttlProvider.getFinalTTL(anyString(), eq(Granularity.MIN_20))).thenReturn(20 * DAY);
+        when(ttlProvider.getFinalTTL(anyString(), eq(Granularity.MIN_60))).thenReturn(30 * DAY);
+        when(ttlProvider.getFinalTTL(anyString(), eq(Granularity.MIN_240))).thenReturn(60 * DAY);
+        when(ttlProvider.getFinalTTL(anyString(), eq(Granularity.MIN_1440))).thenReturn(365 * DAY);
+        Clock clock = mock(Clock.class);
+        when(clock.now()).thenReturn(new Instant(NOW));
+        planner = new QueryPlanner(ttlProvider, clock);
+    }
+
+    @Test
+    public void testRetainedRangeIsOneSegment() {
+        List<QueryPlanner.Segment> segments = planner.plan("t", NOW - DAY / 2, NOW, Granularity.FULL);
+
+        Assert.assertEquals(1, segments.size());
+        Assert.assertEquals(Granularity.FULL, segments.get(0).getGranularity());
+        Assert.assertEquals(new Range(NOW - DAY / 2, NOW), segments.get(0).getReadRange());
+    }
+
+    @Test
+    public void testOlderPartIsReadFromCoarserGranularities() {
+        long from = NOW - 15 * DAY;
+        List<QueryPlanner.Segment> segments = planner.plan("t", from, NOW, Granularity.FULL);
+
+        Assert.assertEquals(3, segments.size());
+        Assert.assertEquals(Granularity.MIN_20, segments.get(0).getGranularity());
+        Assert.assertEquals(Granularity.MIN_5, segments.get(1).getGranularity());
+        Assert.assertEquals(Granularity.FULL, segments.get(2).getGranularity());
+
+        // contiguous, each within its granularity's retention, and meeting at slot boundaries.
+        Assert.assertEquals(from, segments.get(0).getFrom());
+        Assert.assertEquals(NOW, segments.get(2).getTo());
+        for (int i = 1; i < segments.size(); i++) {
+            QueryPlanner.Segment older = segments.get(i - 1);
+            QueryPlanner.Segment newer = segments.get(i);
+            Assert.assertEquals(newer.getFrom() - 1, older.getTo());
+            Assert.assertEquals(0, newer.getFrom() % older.getGranularity().milliseconds());
+        }
+        Assert.assertTrue(segments.get(1).getFrom() >= NOW - 10 * DAY);
+        Assert.assertTrue(segments.get(2).getFrom() >= NOW - DAY);
+    }
+
+    @Test
+    public void testRangeOlderThanRequestedRetentionUsesCoarserGranularity() {
+        List<QueryPlanner.Segment> segments = planner.plan("t", NOW - 12 * DAY, NOW - 11 * DAY, Granularity.FULL);
+
+        Assert.assertEquals(1, segments.size());
+        Assert.assertEquals(Granularity.MIN_20, segments.get(0).getGranularity());
+    }
+
+    @Test
+    public void testCoarsestGranularityServesWhateverIsLeft() {
+        List<QueryPlanner.Segment> segments = planner.plan("t", NOW - 400 * DAY, NOW - 380 * DAY, Granularity.MIN_60);
+
+        Assert.assertEquals(1, segments.size());
+        Assert.assertEquals(Granularity.LAST, segments.get(0).getGranularity());
+    }
+}
@@ -18,6 +18,7 @@ package com.rackspacecloud.blueflood.rollup;
 
 import com.rackspacecloud.blueflood.io.Constants;
 import com.rackspacecloud.blueflood.utils.Util;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -42,6 +43,15 @@ public class UtilTest {
         }
     }
     
+    @Test
+    public void testComputeShardMatchesHexDigest() {
+        for (int i = 0; i < 1000; i++) {
+            String s = randomString(rand.nextInt(100) + 1);
+            int expected = (int)Long.parseLong(DigestUtils.md5Hex(s).substring(30), 16) % Constants.NUMBER_OF_SHARDS;
+            Assert.assertEquals(expected, Util.computeShard(s));
+        }
+    }
+
     @Test
     public void testParseShards() {
         Assert.assertEquals(128, Util.parseShards("ALL").size());
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.service;
+
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.types.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class CascadingRollupCacheTest {
+
+    private static final long SLOT_START = 1451606400000L; // a 1440m boundary
+
+    private final Locator locator = Locator.createLocatorFromPathComponents("tenant", "a", "metric");
+    private final Range parentRange = new Range(SLOT_START, SLOT_START + Granularity.MIN_20.milliseconds() - 1);
+
+    @Test
+    public void testAllChildrenKept() {
+        CascadingRollupCache cache = new CascadingRollupCache(100, 1, TimeUnit.HOURS);
+        BasicRollup first = rollup(1.0);
+        BasicRollup third = rollup(3.0);
+        cache.put(locator, Granularity.MIN_5, SLOT_START, first);
+        cache.put(locator, Granularity.MIN_5, SLOT_START + 300000, null);
+        cache.put(locator, Granularity.MIN_5, SLOT_START + 600000, third);
+        cache.put(locator, Granularity.MIN_5, SLOT_START + 900000, null);
+
+        List<Long> missing = new ArrayList<Long>();
+        Points<Rollup> children = cache.getChildren(locator, Granularity.MIN_5, parentRange, missing);
+
+        Assert.assertTrue(missing.isEmpty());
+        Assert.assertEquals(2, children.getPoints().size());
+        Assert.assertSame(first, children.getPoints().get(SLOT_START).getData());
+        Assert.assertSame(third, children.getPoints().get(SLOT_START + 600000).getData());
+    }
+
+    @Test
+    public void testMissingChildren() {
+        CascadingRollupCache cache = new CascadingRollupCache(100, 1, TimeUnit.HOURS);
+        cache.put(locator, Granularity.MIN_5, SLOT_START + 300000, rollup(1.0));
+        // other locators and granularities do not count.
+        cache.put(Locator.createLocatorFromPathComponents("tenant", "b"), Granularity.MIN_5, SLOT_START, rollup(1.0));
+        cache.put(locator, Granularity.MIN_20, SLOT_START, rollup(1.0));
+
+        List<Long> missing = new ArrayList<Long>();
+        Points<Rollup> children = cache.getChildren(locator, Granularity.MIN_5, parentRange, missing);
+
+        Assert.assertEquals(1, children.getPoints().size());
+        Assert.assertEquals(Arrays.asList(SLOT_START, SLOT_START + 600000, SLOT_START + 900000), missing);
+    }
+
+    @Test
+    public void testCoarsestGranularityIsNotKept() {
+        CascadingRollupCache cache = new CascadingRollupCache(100, 1, TimeUnit.HOURS);
+        cache.put(locator, Granularity.LAST, SLOT_START, rollup(1.0));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEntriesAreBounded() {
+        CascadingRollupCache cache = new CascadingRollupCache(10, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 100; i++) {
+            cache.put(locator, Granularity.MIN_5, SLOT_START + i * 300000L, rollup(i));
+        }
+        Assert.assertTrue(cache.size() <= 10);
+    }
+
+    @Test
+    public void testInvalidateShard() {
+        CascadingRollupCache cache = new CascadingRollupCache(100, 1, TimeUnit.HOURS);
+        Locator other = Locator.createLocatorFromPathComponents("tenant", "b");
+        for (int i = 0; other.getShard() == locator.getShard(); i++) {
+            other = Locator.createLocatorFromPathComponents("tenant", "b" + i);
+        }
+        cache.put(locator, Granularity.MIN_5, SLOT_START, rollup(1.0));
+        cache.put(locator, Granularity.MIN_20, SLOT_START, rollup(1.0));
+        cache.put(other, Granularity.MIN_5, SLOT_START, rollup(1.0));
+
+        cache.invalidateShard(locator.getShard());
+
+        Assert.assertEquals(1, cache.size());
+        List<Long> missing = new ArrayList<Long>();
+        cache.getChildren(other, Granularity.MIN_5, parentRange, missing);
+        Assert.assertFalse(missing.contains(SLOT_START));
+    }
+
+    private static BasicRollup rollup(double value) {
+        Points<SimpleNumber> points = new Points<SimpleNumber>();
+        points.add(new Points.Point<SimpleNumber>(SLOT_START, new SimpleNumber(value)));
+        try {
+            return BasicRollup.buildRollupFromRawSamples(points);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
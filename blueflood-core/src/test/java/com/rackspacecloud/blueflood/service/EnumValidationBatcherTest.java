@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.service;
+
+import com.rackspacecloud.blueflood.io.EnumReaderIO;
+import com.rackspacecloud.blueflood.types.Locator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class EnumValidationBatcherTest {
+
+    private ScheduledExecutorService scheduler;
+    private Executor executor;
+    private EnumValidationBatcher batcher;
+
+    @Before
+    public void setUp() {
+        scheduler = mock(ScheduledExecutorService.class);
+        executor = mock(Executor.class);
+        batcher = new EnumValidationBatcher(mock(EnumReaderIO.class), scheduler, 5000, 2, 100, 60);
+    }
+
+    @Test
+    public void testOneFlushIsScheduledPerWindow() {
+        batcher.add(locator(1), executor);
+        batcher.add(locator(2), executor);
+        batcher.add(locator(1), executor);
+
+        verify(scheduler, times(1)).schedule(any(Runnable.class), eq(5000L), eq(TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, batcher.getPendingCount());
+
+        batcher.flush(executor);
+        Assert.assertEquals(0, batcher.getPendingCount());
+
+        // the next locator opens a new window.
+        batcher.add(locator(3), executor);
+        verify(scheduler, times(2)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void testFlushSplitsIntoBatches() {
+        for (int i = 0; i < 5; i++) {
+            batcher.add(locator(i), executor);
+        }
+        batcher.flush(executor);
+
+        verify(executor, times(3)).execute(any(EnumValidator.class));
+    }
+
+    @Test
+    public void testEmptyFlushDoesNothing() {
+        batcher.flush(executor);
+
+        verifyZeroInteractions(executor);
+    }
+
+    private static Locator locator(int i) {
+        return Locator.createLocatorFromPathComponents("tenant", "metric" + i);
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.rackspacecloud.blueflood.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.rackspacecloud.blueflood.concurrent.ThreadPoolBuilder;
 import com.rackspacecloud.blueflood.io.*;
 import com.rackspacecloud.blueflood.io.astyanax.AEnumIO;
@@ -35,8 +37,10 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.*;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
@@ -144,6 +148,7 @@ public class EnumValidatorTest {
 
         // verify writes to CF_METRICS_EXCESS_ENUMS and no writes elasticsearch
         verify(excessEnumIO, times(1)).insertExcessEnumMetric(locator1);
+        assertTrue(ExcessEnumReader.getInstance().isInExcessEnumMetrics(locator1));
         verify(discoveryIOMock, never()).search(tenant_id, metric_name);
         verify(discoveryIOMock, never()).insertDiscovery(any(IMetric.class));
     }
@@ -201,6 +206,57 @@ public class EnumValidatorTest {
         verify(discoveryIOMock, times(1)).insertDiscovery(any(IMetric.class));
     }
 
+    @Test
+    public void testUnchangedEnumsAreNotSearchedAgain() throws Exception {
+        Map<Locator, List<String>> locatorEnumsMock = new HashMap<Locator, List<String>>();
+        locatorEnumsMock.put(locator1, new ArrayList<String>(Arrays.asList("value2", "value1")));
+        when(readerMock.getEnumStringMappings(anyList())).thenReturn(locatorEnumsMock);
+        when(discoveryIOMock.search(tenant_id, metric_name)).thenReturn(new ArrayList<SearchResult>());
+
+        Cache<Locator, List<String>> indexed = CacheBuilder.newBuilder().build();
+        EnumValidator validator = new EnumValidator(locators, readerMock, indexed);
+        validator.setDiscoveryIO(discoveryIOMock);
+        validator.run();
+
+        verify(discoveryIOMock, times(1)).search(tenant_id, metric_name);
+        verify(discoveryIOMock, times(1)).insertDiscovery(any(IMetric.class));
+        assertEquals(Arrays.asList("value1", "value2"), indexed.getIfPresent(locator1));
+
+        // same values again: no elasticsearch round trip.
+        locatorEnumsMock.put(locator1, new ArrayList<String>(Arrays.asList("value1", "value2")));
+        validator = new EnumValidator(locators, readerMock, indexed);
+        validator.setDiscoveryIO(discoveryIOMock);
+        validator.run();
+
+        verify(discoveryIOMock, times(1)).search(tenant_id, metric_name);
+        verify(discoveryIOMock, times(1)).insertDiscovery(any(IMetric.class));
+    }
+
+    @Test
+    public void testLocatorsOfATenantAreSearchedTogether() throws Exception {
+        Locator locator2 = Locator.createLocatorFromPathComponents(tenant_id, "metric2");
+        Locator locator3 = Locator.createLocatorFromPathComponents("tenant2", "metric3");
+        Map<Locator, List<String>> locatorEnumsMock = new HashMap<Locator, List<String>>();
+        locatorEnumsMock.put(locator1, new ArrayList<String>(Arrays.asList("value1")));
+        locatorEnumsMock.put(locator2, new ArrayList<String>(Arrays.asList("value2")));
+        locatorEnumsMock.put(locator3, new ArrayList<String>(Arrays.asList("value3")));
+        when(readerMock.getEnumStringMappings(anyList())).thenReturn(locatorEnumsMock);
+
+        // metric1 is already indexed with the same values, metric2 is not indexed.
+        List<SearchResult> tenant1Results = new ArrayList<SearchResult>();
+        tenant1Results.add(new SearchResult(tenant_id, metric_name, null, new ArrayList<String>(Arrays.asList("value1"))));
+        when(discoveryIOMock.search(eq(tenant_id), anyListOf(String.class))).thenReturn(tenant1Results);
+        when(discoveryIOMock.search("tenant2", "metric3")).thenReturn(new ArrayList<SearchResult>());
+
+        EnumValidator validator = setupEnumValidatorWithMock(new HashSet<Locator>(locatorEnumsMock.keySet()));
+        validator.run();
+
+        verify(discoveryIOMock, times(1)).search(eq(tenant_id), anyListOf(String.class));
+        verify(discoveryIOMock, never()).search(tenant_id, metric_name);
+        verify(discoveryIOMock, times(1)).search("tenant2", "metric3");
+        verify(discoveryIOMock, times(2)).insertDiscovery(any(IMetric.class));
+    }
+
     @Test
     public void getReaderUninitializedReturnsDefaultInstance() {
 
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.service;
+
+import com.google.common.collect.Sets;
+import com.rackspacecloud.blueflood.types.Locator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class ExcessEnumReaderTest {
+
+    private final ExcessEnumReader reader = new ExcessEnumReader();
+
+    @Test
+    public void testReloadReplacesTheSet() {
+        reader.reload(Sets.newHashSet(locator(1), locator(2)));
+        Assert.assertTrue(reader.isInExcessEnumMetrics(locator(1)));
+        Assert.assertTrue(reader.isInExcessEnumMetrics(locator(2)));
+
+        reader.reload(Sets.newHashSet(locator(2)));
+        Assert.assertFalse(reader.isInExcessEnumMetrics(locator(1)));
+        Assert.assertTrue(reader.isInExcessEnumMetrics(locator(2)));
+    }
+
+    @Test
+    public void testAddedLocatorsAreBlockedBeforeTheNextRead() {
+        reader.addExcessEnumMetric(locator(3));
+        Assert.assertTrue(reader.isInExcessEnumMetrics(locator(3)));
+
+        // a read that started before the locator was written does not drop it.
+        reader.reload(Collections.<Locator>emptySet());
+        Assert.assertTrue(reader.isInExcessEnumMetrics(locator(3)));
+    }
+
+    private static Locator locator(int i) {
+        return Locator.createLocatorFromPathComponents("tenant", "enum" + i);
+    }
+}
@@ -136,6 +136,7 @@ public class LocatorFetchRunnableRunTest {
         verify(lfr).createRollupExecutionContext();
         verify(lfr).createRollupBatchWriter(Matchers.<RollupExecutionContext>any());
         verify(lfr).getLocators(Matchers.<RollupExecutionContext>any());
+        verify(lfr).prefetchMetadata(Matchers.<Set<Locator>>any());
 
         verify(lfr, never()).processLocator(anyInt(),
                 Matchers.<RollupExecutionContext>any(),
@@ -181,6 +182,7 @@ public class LocatorFetchRunnableRunTest {
         verify(lfr).createRollupExecutionContext();
         verify(lfr).createRollupBatchWriter(Matchers.<RollupExecutionContext>any());
         verify(lfr).getLocators(Matchers.<RollupExecutionContext>any());
+        verify(lfr).prefetchMetadata(Matchers.<Set<Locator>>any());
 
         verify(lfr, times(1)).processLocator(anyInt(),
                 Matchers.<RollupExecutionContext>any(),
@@ -226,6 +228,7 @@ public class LocatorFetchRunnableRunTest {
         verify(lfr).createRollupExecutionContext();
         verify(lfr).createRollupBatchWriter(Matchers.<RollupExecutionContext>any());
         verify(lfr).getLocators(Matchers.<RollupExecutionContext>any());
+        verify(lfr).prefetchMetadata(Matchers.<Set<Locator>>any());
 
         verify(lfr, times(3)).processLocator(anyInt(),
                 Matchers.<RollupExecutionContext>any(),
@@ -0,0 +1,75 @@
+package com.rackspacecloud.blueflood.service;
+
+import com.rackspacecloud.blueflood.io.ShardStateIO;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+public class ShardStatePullerTest {
+
+    private static final int SHARD = 0;
+
+    private ShardStateManager manager;
+    private ShardStateIO io;
+    private ShardStatePuller puller;
+    private List<SlotState> states;
+
+    @Before
+    public void setUp() throws Exception {
+        manager = mock(ShardStateManager.class);
+        doReturn(Collections.singletonList(SHARD)).when(manager).getManagedShards();
+        states = new ArrayList<SlotState>();
+        io = mock(ShardStateIO.class);
+        when(io.getShardState(SHARD)).thenReturn(states);
+        puller = new ShardStatePuller(Collections.singletonList(SHARD), manager, io);
+    }
+
+    @Test
+    public void testOnlyStatesWrittenSinceLastPullAreApplied() {
+        SlotState old = slotState(1, 100000L);
+        SlotState recent = slotState(2, 200000L);
+        states.add(old);
+        states.add(recent);
+
+        puller.performOperation();
+        verify(manager).updateSlotOnRead(SHARD, old);
+        verify(manager).updateSlotOnRead(SHARD, recent);
+
+        // the recent state is within the allowed clock skew of the newest write time, so it is applied again.
+        puller.performOperation();
+        verify(manager, times(1)).updateSlotOnRead(SHARD, old);
+        verify(manager, times(2)).updateSlotOnRead(SHARD, recent);
+
+        SlotState newer = slotState(3, 300000L);
+        states.add(newer);
+        puller.performOperation();
+        verify(manager, times(1)).updateSlotOnRead(SHARD, old);
+        verify(manager, times(1)).updateSlotOnRead(SHARD, newer);
+    }
+
+    @Test
+    public void testEverythingIsReappliedOnFullPull() {
+        SlotState old = slotState(1, 100000L);
+        SlotState recent = slotState(2, 200000L);
+        states.add(old);
+        states.add(recent);
+
+        int fullPullEvery = Configuration.getInstance().getIntegerProperty(CoreConfig.SHARD_PULL_FULL_EVERY);
+        for (int i = 0; i < fullPullEvery; i++) {
+            puller.performOperation();
+        }
+        verify(manager, times(2)).updateSlotOnRead(SHARD, old);
+    }
+
+    private static SlotState slotState(int slot, long writeTime) {
+        return new SlotState(Granularity.MIN_5, slot, UpdateStamp.State.Active)
+                .withTimestamp(1234L)
+                .withLastUpdatedTimestamp(writeTime);
+    }
+}
@@ -0,0 +1,59 @@
+package com.rackspacecloud.blueflood.service;
+
+import com.rackspacecloud.blueflood.io.ShardStateIO;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.*;
+
+public class ShardStatePusherTest {
+
+    private static final int SHARD = 0;
+
+    private ShardStateManager manager;
+    private ShardStateIO io;
+    private ShardStatePusher pusher;
+    private UpdateStamp stamp;
+
+    @Before
+    public void setUp() {
+        // the manager hands out dirty stamps after marking them clean.
+        stamp = new UpdateStamp(1234L, UpdateStamp.State.Active, false);
+        Map<Integer, UpdateStamp> stamps = new HashMap<Integer, UpdateStamp>();
+        stamps.put(1, stamp);
+        Map<Granularity, Map<Integer, UpdateStamp>> slotTimes = new HashMap<Granularity, Map<Integer, UpdateStamp>>();
+        slotTimes.put(Granularity.MIN_5, stamps);
+
+        manager = mock(ShardStateManager.class);
+        when(manager.getDirtySlotsToPersist(SHARD)).thenReturn(slotTimes);
+        io = mock(ShardStateIO.class);
+        pusher = new ShardStatePusher(Collections.singletonList(SHARD), manager, io);
+    }
+
+    @Test
+    public void testPushedStampsStayClean() throws Exception {
+        pusher.performOperation();
+
+        verify(io).putShardState(anyInt(), anyMap());
+        assertFalse(stamp.isDirty());
+    }
+
+    @Test
+    public void testStampsAreRetriedWhenPushFails() throws Exception {
+        doThrow(new IOException("write failed")).when(io).putShardState(anyInt(), anyMap());
+
+        pusher.performOperation();
+
+        assertTrue(stamp.isDirty());
+    }
+}
@@ -0,0 +1,116 @@
+package com.rackspacecloud.blueflood.service;
+
+import com.google.common.base.Ticker;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SlotNotificationsTest {
+
+    private static final int MANAGED_SHARD = 1;
+    private static final int OTHER_SHARD = 2;
+
+    private ShardStateManager manager;
+
+    @Before
+    public void setUp() {
+        manager = new ShardStateManager(Arrays.asList(MANAGED_SHARD), Ticker.systemTicker());
+    }
+
+    @Test
+    public void testActiveSlotsAreApplied() {
+        Map<Granularity, Map<Integer, UpdateStamp>> slotTimes = new HashMap<Granularity, Map<Integer, UpdateStamp>>();
+        slotTimes.put(Granularity.MIN_5, stamps(3, 1234L, UpdateStamp.State.Active));
+        slotTimes.put(Granularity.MIN_20, stamps(5, 4321L, UpdateStamp.State.Rolled));
+
+        List<ByteBuf> packets = SlotNotifications.encode(MANAGED_SHARD, slotTimes);
+        assertEquals(1, packets.size());
+        assertEquals(1, SlotNotifications.apply(packets.get(0), manager, 99L));
+
+        UpdateStamp stamp = manager.getSlotStateManager(MANAGED_SHARD, Granularity.MIN_5).getSlotStamps().get(3);
+        assertEquals(1234L, stamp.getTimestamp());
+        assertEquals(UpdateStamp.State.Active, stamp.getState());
+        assertFalse(stamp.isDirty());
+        // rolled slots are not sent.
+        assertNull(manager.getSlotStateManager(MANAGED_SHARD, Granularity.MIN_20).getSlotStamps().get(5));
+    }
+
+    @Test
+    public void testUnmanagedShardsAreIgnored() {
+        Map<Granularity, Map<Integer, UpdateStamp>> slotTimes = new HashMap<Granularity, Map<Integer, UpdateStamp>>();
+        slotTimes.put(Granularity.MIN_5, stamps(3, 1234L, UpdateStamp.State.Active));
+
+        ByteBuf packet = SlotNotifications.encode(OTHER_SHARD, slotTimes).get(0);
+        assertEquals(0, SlotNotifications.apply(packet, manager, 99L));
+    }
+
+    @Test
+    public void testLargeUpdatesAreSplitIntoPackets() {
+        Map<Integer, UpdateStamp> stamps = new HashMap<Integer, UpdateStamp>();
+        for (int slot = 0; slot < SlotNotifications.MAX_ENTRIES_PER_PACKET + 1; slot++) {
+            stamps.put(slot, new UpdateStamp(1000L + slot, UpdateStamp.State.Active, false));
+        }
+        List<ByteBuf> packets = SlotNotifications.encode(MANAGED_SHARD,
+                Collections.<Granularity, Map<Integer, UpdateStamp>>singletonMap(Granularity.MIN_5, stamps));
+
+        assertEquals(2, packets.size());
+        int applied = 0;
+        for (ByteBuf packet : packets) {
+            applied += SlotNotifications.apply(packet, manager, 99L);
+        }
+        assertEquals(SlotNotifications.MAX_ENTRIES_PER_PACKET + 1, applied);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedPacketIsRejected() {
+        Map<Granularity, Map<Integer, UpdateStamp>> slotTimes = new HashMap<Granularity, Map<Integer, UpdateStamp>>();
+        slotTimes.put(Granularity.MIN_5, stamps(3, 1234L, UpdateStamp.State.Active));
+        ByteBuf packet = SlotNotifications.encode(MANAGED_SHARD, slotTimes).get(0);
+
+        SlotNotifications.apply(packet.slice(0, packet.readableBytes() - 1), manager, 99L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGarbageIsRejected() {
+        SlotNotifications.apply(Unpooled.wrappedBuffer(new byte[] { 42, 0, 0 }), manager, 99L);
+    }
+
+    @Test
+    public void testSendAndListen() throws Exception {
+        SlotNotificationListener listener = new SlotNotificationListener(manager, new InetSocketAddress("127.0.0.1", 0));
+        listener.start();
+        SlotNotificationSender sender = new SlotNotificationSender(Arrays.asList(listener.getLocalAddress()));
+        try {
+            Map<Granularity, Map<Integer, UpdateStamp>> slotTimes = new HashMap<Granularity, Map<Integer, UpdateStamp>>();
+            slotTimes.put(Granularity.MIN_5, stamps(7, 5678L, UpdateStamp.State.Active));
+            sender.send(MANAGED_SHARD, slotTimes);
+
+            Map<Integer, UpdateStamp> received = manager.getSlotStateManager(MANAGED_SHARD, Granularity.MIN_5).getSlotStamps();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!received.containsKey(7) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(5678L, received.get(7).getTimestamp());
+        } finally {
+            sender.close();
+            listener.stop();
+        }
+    }
+
+    private static Map<Integer, UpdateStamp> stamps(int slot, long timestamp, UpdateStamp.State state) {
+        Map<Integer, UpdateStamp> stamps = new HashMap<Integer, UpdateStamp>();
+        stamps.put(slot, new UpdateStamp(timestamp, state, false));
+        return stamps;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.tools.ops;
+
+import com.rackspacecloud.blueflood.io.MetricsRWDelegator;
+import com.rackspacecloud.blueflood.outputs.formats.MetricData;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.types.*;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.*;
+import java.util.*;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class ExportPointsTest {
+
+    private static final Range RANGE = new Range(0, 100000);
+
+    @Test
+    public void testExportReadsInBatches() throws Exception {
+        MetricsRWDelegator delegator = mock(MetricsRWDelegator.class);
+        when(delegator.getDatapointsForRange(anyList(), any(Range.class), any(Granularity.class))).thenAnswer(
+                new Answer<Map<Locator, MetricData>>() {
+                    @Override
+                    public Map<Locator, MetricData> answer(InvocationOnMock invocation) {
+                        Map<Locator, MetricData> read = new HashMap<Locator, MetricData>();
+                        for (Object locator : (List) invocation.getArguments()[0]) {
+                            read.put((Locator) locator, numbers(1000, 2000));
+                        }
+                        return read;
+                    }
+                });
+
+        List<Locator> locators = new ArrayList<Locator>();
+        for (int i = 0; i < 7; i++) {
+            locators.add(Locator.createLocatorFromPathComponents("tenant", "metric" + i));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PointWriter writer = PointWriter.create(PointWriter.CSV, out);
+        long points = new ExportPoints(delegator, 3, 2).export(locators, RANGE, Granularity.FULL, writer);
+        writer.close();
+
+        Assert.assertEquals(14, points);
+        verify(delegator, times(3)).getDatapointsForRange(anyList(), eq(RANGE), eq(Granularity.FULL));
+        String[] lines = out.toString("UTF-8").split("\n");
+        Assert.assertEquals(15, lines.length);
+        Assert.assertEquals("metric,timestamp,unit,value,count,average,min,max,variance,rate,samples", lines[0]);
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        Points points = new Points();
+        points.add(new Points.Point<SimpleNumber>(1000, new SimpleNumber(5)));
+        points.add(new Points.Point<String>(2000, "up"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PointWriter writer = PointWriter.create(PointWriter.CSV, out);
+        writer.write(Locator.createLocatorFromPathComponents("tenant", "a,b"), new MetricData(points, "ms", MetricData.Type.NUMBER));
+        writer.close();
+
+        String[] lines = out.toString("UTF-8").split("\n");
+        Assert.assertEquals("\"a,b\",1000,ms,5,,,,,,,", lines[1]);
+        Assert.assertEquals("\"a,b\",2000,ms,up,,,,,,,", lines[2]);
+    }
+
+    @Test
+    public void testJsonLines() throws IOException {
+        Points<SimpleNumber> raw = new Points<SimpleNumber>();
+        raw.add(new Points.Point<SimpleNumber>(1000, new SimpleNumber(2)));
+        raw.add(new Points.Point<SimpleNumber>(1001, new SimpleNumber(4)));
+        Points points = new Points();
+        points.add(new Points.Point<BasicRollup>(1000, BasicRollup.buildRollupFromRawSamples(raw)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PointWriter writer = PointWriter.create(PointWriter.JSON, out);
+        writer.write(Locator.createLocatorFromPathComponents("tenant", "metric"), new MetricData(points, null, MetricData.Type.NUMBER));
+        writer.close();
+
+        Assert.assertEquals("{\"metric\":\"metric\",\"timestamp\":1000,\"count\":2,\"average\":3,\"min\":2,\"max\":4,\"variance\":1.0}\n",
+                out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        Points points = new Points();
+        points.add(new Points.Point<SimpleNumber>(1000, new SimpleNumber(1.5)));
+        points.add(new Points.Point<String>(2000, "up"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PointWriter writer = PointWriter.create(PointWriter.BINARY, out);
+        writer.write(Locator.createLocatorFromPathComponents("tenant", "metric"), new MetricData(points, "ms", MetricData.Type.NUMBER));
+        writer.finish();
+        writer.close();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(PointWriter.Binary.MAGIC, in.readInt());
+        Assert.assertEquals(PointWriter.Binary.VERSION, in.readInt());
+        Assert.assertEquals(1, in.readByte());
+        Assert.assertEquals("metric", in.readUTF());
+        Assert.assertEquals("ms", in.readUTF());
+        Assert.assertEquals(2, in.readInt());
+        Assert.assertEquals(1000, in.readLong());
+        Assert.assertEquals(1, in.readShort());
+        Assert.assertEquals(1.5, in.readDouble(), 0);
+        Assert.assertEquals(2000, in.readLong());
+        Assert.assertEquals(PointWriter.Binary.STRING_VALUE, in.readShort());
+        Assert.assertEquals("up", in.readUTF());
+        Assert.assertEquals(0, in.readByte());
+        Assert.assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testBinaryWithoutFinishHasNoEndMarker() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PointWriter writer = PointWriter.create(PointWriter.BINARY, out);
+        writer.write(Locator.createLocatorFromPathComponents("tenant", "metric"), numbers(1000));
+        writer.close();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(PointWriter.Binary.MAGIC, in.readInt());
+        Assert.assertEquals(PointWriter.Binary.VERSION, in.readInt());
+        Assert.assertEquals(1, in.readByte());
+        Assert.assertEquals("metric", in.readUTF());
+        Assert.assertEquals("unknown", in.readUTF());
+        Assert.assertEquals(1, in.readInt());
+        Assert.assertEquals(1000, in.readLong());
+        Assert.assertEquals(1, in.readShort());
+        Assert.assertEquals(1000, in.readDouble(), 0);
+        Assert.assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testReadMetricNames() throws IOException {
+        File file = File.createTempFile("metrics", ".txt");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write("# cpu\none.cpu\n\n  two.cpu  \n");
+            writer.close();
+            Assert.assertEquals(Arrays.asList("one.cpu", "two.cpu"), ExportPoints.readMetricNames(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static MetricData numbers(long... timestamps) {
+        Points<SimpleNumber> points = new Points<SimpleNumber>();
+        for (long timestamp : timestamps) {
+            points.add(new Points.Point<SimpleNumber>(timestamp, new SimpleNumber(timestamp)));
+        }
+        return new MetricData(points, "unknown", MetricData.Type.NUMBER);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.tools.ops;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class MigrationCheckpointTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("migration", ".checkpoint");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testResumeSkipsFinishedSegments() throws IOException {
+        MigrationCheckpoint checkpoint = new MigrationCheckpoint(file, "metrics_full 0 100 4");
+        checkpoint.markDone("1:2");
+        checkpoint.markDone("2:3");
+        checkpoint.markDone("2:3");
+        checkpoint.close();
+
+        checkpoint = new MigrationCheckpoint(file, "metrics_full 0 100 4");
+        Assert.assertEquals(2, checkpoint.getDoneCount());
+        Assert.assertTrue(checkpoint.isDone("1:2"));
+        Assert.assertTrue(checkpoint.isDone("2:3"));
+        Assert.assertFalse(checkpoint.isDone("3:4"));
+        checkpoint.markDone("3:4");
+        checkpoint.close();
+
+        checkpoint = new MigrationCheckpoint(file, "metrics_full 0 100 4");
+        Assert.assertEquals(3, checkpoint.getDoneCount());
+        checkpoint.close();
+    }
+
+    @Test
+    public void testTruncatedLastLineIsHarmless() throws IOException {
+        MigrationCheckpoint checkpoint = new MigrationCheckpoint(file, "metrics_full 0 100 4");
+        checkpoint.markDone("1:2");
+        checkpoint.close();
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("2:".getBytes("UTF-8"));
+        out.close();
+
+        checkpoint = new MigrationCheckpoint(file, "metrics_full 0 100 4");
+        Assert.assertTrue(checkpoint.isDone("1:2"));
+        Assert.assertFalse(checkpoint.isDone("2:3"));
+        checkpoint.markDone("2:3");
+        checkpoint.close();
+
+        checkpoint = new MigrationCheckpoint(file, "metrics_full 0 100 4");
+        Assert.assertTrue(checkpoint.isDone("2:3"));
+        checkpoint.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testCheckpointOfAnotherMigrationIsRefused() throws IOException {
+        new MigrationCheckpoint(file, "metrics_full 0 100 4").close();
+        new MigrationCheckpoint(file, "metrics_5m 0 100 4");
+    }
+}
@@ -81,7 +81,7 @@ public class BluefloodSetRollupTest {
         }
         
         if (System.getProperty("GENERATE_SET_SERIALIZATION") != null) {
-            OutputStream os = new FileOutputStream("src/test/resources/serializations/set_version_" + Constants.VERSION_1_SET_ROLLUP + ".bin", false);
+            OutputStream os = new FileOutputStream("src/test/resources/serializations/set_version_" + Constants.VERSION_2_SET_ROLLUP + ".bin", false);
             os.write(Base64.encodeBase64(Serializers.setRollupInstance.toByteBuffer(s0).array()));
             os.write("\n".getBytes());
             os.write(Base64.encodeBase64(Serializers.setRollupInstance.toByteBuffer(s1).array()));
@@ -93,7 +93,7 @@ public class BluefloodSetRollupTest {
                 
         int count = 0;
         int version = 0;
-        final int maxVersion = Constants.VERSION_1_SET_ROLLUP;
+        final int maxVersion = Constants.VERSION_2_SET_ROLLUP;
         while (version <= maxVersion) {
             BufferedReader reader = new BufferedReader(new FileReader("src/test/resources/serializations/set_version_" + version + ".bin"));
             
@@ -126,4 +126,26 @@ public class BluefloodSetRollupTest {
         
         Assert.assertTrue(count > 0);
     }
+
+    @Test
+    public void testCountIsBoundedAndMergeable() throws IOException {
+        final BluefloodSetRollup rollup0 = new BluefloodSetRollup();
+        final BluefloodSetRollup rollup1 = new BluefloodSetRollup();
+        for (int i = 0; i < 100000; i++) {
+            rollup0.withObject("member-" + i);
+            rollup1.withObject("member-" + (i + 50000));
+        }
+        Assert.assertFalse(rollup0.getHyperLogLog().isSparse());
+        Assert.assertEquals(100000, rollup0.getCount(), 3000);
+
+        BluefloodSetRollup rollup2 = BluefloodSetRollup.buildRollupFromSetRollups(new Points<BluefloodSetRollup>() {{
+            add(new Point<BluefloodSetRollup>(0, rollup0));
+            add(new Point<BluefloodSetRollup>(3, rollup1));
+        }});
+        Assert.assertEquals(150000, rollup2.getCount(), 4500);
+
+        int size = Serializers.setRollupInstance.toByteBuffer(rollup2).array().length;
+        Assert.assertTrue(size <= 3 + rollup2.getHyperLogLog().getNumRegisters());
+        Assert.assertEquals(rollup2, Serializers.setRollupInstance.fromByteBuffer(Serializers.setRollupInstance.toByteBuffer(rollup2)));
+    }
 }
@@ -193,6 +193,77 @@ public class BluefloodTimerRollupTest {
         Assert.assertTrue(Math.abs(expectedMean98 - cumulative.getPercentiles().get("98").getMean().doubleValue()) < ACCEPTABLE_SKEW);
     }
     
+    @Test
+    public void testSketchesMergeIntoExactPercentiles() throws IOException {
+        final BluefloodTimerRollup fast = new BluefloodTimerRollup().withCount(900).withSampleCount(1);
+        final BluefloodTimerRollup slow = new BluefloodTimerRollup().withCount(100).withSampleCount(1);
+        QuantileSketch fastSketch = new QuantileSketch();
+        QuantileSketch slowSketch = new QuantileSketch();
+        for (int i = 0; i < 900; i++) {
+            fastSketch.add(10);
+        }
+        for (int i = 0; i < 100; i++) {
+            slowSketch.add(1000);
+        }
+        fast.withSketch(fastSketch).setPercentile("99", 10);
+        slow.withSketch(slowSketch).setPercentile("99", 1000);
+
+        BluefloodTimerRollup cumulative = BluefloodTimerRollup.buildRollupFromTimerRollups(new Points<BluefloodTimerRollup>() {{
+            add(new Point<BluefloodTimerRollup>(0, fast));
+            add(new Point<BluefloodTimerRollup>(100, slow));
+        }});
+
+        Assert.assertEquals(1000, cumulative.getSketch().getCount());
+        // averaging would say 505.
+        Assert.assertEquals(1000d, cumulative.getPercentiles().get("99").getMean().doubleValue(), 1000d * QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+        Assert.assertEquals(10d, cumulative.getQuantile(0.5), 10d * QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    @Test
+    public void testSketchIsDroppedIfAnInputHasNone() throws IOException {
+        final BluefloodTimerRollup withSketch = new BluefloodTimerRollup().withCount(1).withSketch(new QuantileSketch().add(5));
+        final BluefloodTimerRollup withoutSketch = new BluefloodTimerRollup().withCount(1);
+
+        BluefloodTimerRollup cumulative = BluefloodTimerRollup.buildRollupFromTimerRollups(new Points<BluefloodTimerRollup>() {{
+            add(new Point<BluefloodTimerRollup>(0, withSketch));
+            add(new Point<BluefloodTimerRollup>(100, withoutSketch));
+        }});
+
+        Assert.assertNull(cumulative.getSketch());
+        Assert.assertNull(cumulative.getQuantile(0.5));
+    }
+
+    @Test
+    public void testQuantileOfStatsdLabels() {
+        Assert.assertEquals(0.5d, BluefloodTimerRollup.quantileOfLabel("50"), 0);
+        Assert.assertEquals(1d, BluefloodTimerRollup.quantileOfLabel("100"), 0);
+        Assert.assertEquals(0.999d, BluefloodTimerRollup.quantileOfLabel("99.9"), 1e-12);
+        Assert.assertEquals(0.999d, BluefloodTimerRollup.quantileOfLabel("999"), 1e-12);
+        Assert.assertEquals(0.999d, BluefloodTimerRollup.quantileOfLabel("99_9"), 1e-12);
+        Assert.assertEquals(0.9999d, BluefloodTimerRollup.quantileOfLabel("9999"), 1e-12);
+        Assert.assertNull(BluefloodTimerRollup.quantileOfLabel("upper"));
+        Assert.assertNull(BluefloodTimerRollup.quantileOfLabel("-1"));
+    }
+
+    @Test
+    public void testStatsd999LabelIsComputedFromTheSketch() throws IOException {
+        final BluefloodTimerRollup first = new BluefloodTimerRollup().withCount(1000)
+                .withSketch(new QuantileSketch().add(10, 999).add(1000, 1));
+        first.setPercentile("999", 10);
+        final BluefloodTimerRollup second = new BluefloodTimerRollup().withCount(1000)
+                .withSketch(new QuantileSketch().add(10, 990).add(1000, 10));
+        second.setPercentile("999", 1000);
+
+        BluefloodTimerRollup cumulative = BluefloodTimerRollup.buildRollupFromTimerRollups(new Points<BluefloodTimerRollup>() {{
+            add(new Point<BluefloodTimerRollup>(0, first));
+            add(new Point<BluefloodTimerRollup>(100, second));
+        }});
+
+        // 11 of the 2000 timings are 1000, so the 99.9th percentile is 1000 rather than the average of the labels.
+        Assert.assertEquals(1000d, cumulative.getPercentiles().get("999").getMean().doubleValue(),
+                1000d * QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
     @Test
     public void tesLinedListMultimapAllowsDuplicates() {
         // NOTE: HashMultimap behaves differently. duplicates are not allowed.
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.types;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testSmallSetsAreNearlyExact() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            hll.offer(i);
+            hll.offer(i);
+        }
+        Assert.assertTrue(hll.isSparse());
+        Assert.assertEquals(1000, hll.cardinality());
+    }
+
+    @Test
+    public void testLargeSetsStayWithinError() {
+        for (int n : new int[] { 5000, 50000, 1000000 }) {
+            HyperLogLog hll = new HyperLogLog();
+            for (int i = 0; i < n; i++) {
+                hll.offer(("member" + i).hashCode());
+            }
+            Assert.assertFalse(hll.isSparse());
+            // 1.04 / sqrt(2^14) is 0.8%; allow about 3 standard errors.
+            Assert.assertEquals(n, hll.cardinality(), n * 0.025);
+        }
+    }
+
+    @Test
+    public void testSparseBecomesDense() {
+        HyperLogLog hll = new HyperLogLog(10);
+        int i = 0;
+        while (hll.isSparse()) {
+            hll.offer(i++);
+        }
+        Assert.assertEquals(hll.getNumRegisters() / 4 + 1, i);
+        Assert.assertEquals(i, hll.cardinality(), i * 0.1);
+    }
+
+    @Test
+    public void testMergeIsAUnion() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        HyperLogLog all = new HyperLogLog();
+        for (int i = 0; i < 30000; i++) {
+            (i % 2 == 0 ? a : b).offer(i);
+            all.offer(i);
+        }
+        HyperLogLog merged = a.copy().merge(b);
+        Assert.assertEquals(all, merged);
+        Assert.assertEquals(merged, b.copy().merge(a));
+
+        // a sparse estimator merged into a dense one, and the other way around.
+        HyperLogLog small = new HyperLogLog();
+        for (int i = 100000; i < 100010; i++) {
+            small.offer(i);
+            all.offer(i);
+        }
+        Assert.assertTrue(small.isSparse());
+        Assert.assertEquals(all, merged.copy().merge(small));
+        Assert.assertEquals(all, small.copy().merge(merged));
+    }
+
+    @Test
+    public void testSparseMergeIsExact() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        HyperLogLog all = new HyperLogLog();
+        for (int i = 0; i < 300; i++) {
+            a.offer(i);
+            b.offer(i + 150);
+            all.offer(i);
+            all.offer(i + 150);
+        }
+        a.merge(b);
+        Assert.assertTrue(a.isSparse());
+        Assert.assertEquals(all, a);
+        Assert.assertEquals(450, a.cardinality());
+    }
+
+    @Test
+    public void testMayContain() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 20000; i++) {
+            hll.offer(i);
+            Assert.assertTrue(hll.mayContain(i));
+        }
+        for (int i = 0; i < 20000; i++) {
+            Assert.assertTrue(hll.mayContain(i));
+        }
+    }
+
+    @Test
+    public void testFromEntriesAndRegisters() {
+        HyperLogLog sparse = new HyperLogLog().offer(1).offer(2).offer(3);
+        int[] entries = new int[sparse.getNumSparseEntries()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = sparse.getSparseEntry(i);
+        }
+        Assert.assertEquals(sparse, HyperLogLog.fromSparseEntries(sparse.getPrecision(), entries));
+
+        HyperLogLog dense = new HyperLogLog(8);
+        for (int i = 0; i < 1000; i++) {
+            dense.offer(i);
+        }
+        byte[] registers = new byte[dense.getNumRegisters()];
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = dense.getRegister(i);
+        }
+        Assert.assertEquals(dense, HyperLogLog.fromRegisters(8, registers));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsortedEntriesAreRejected() {
+        HyperLogLog.fromSparseEntries(HyperLogLog.DEFAULT_PRECISION, new int[] { 2 << 6 | 1, 1 << 6 | 1 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergingDifferentPrecisionsIsRejected() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+}
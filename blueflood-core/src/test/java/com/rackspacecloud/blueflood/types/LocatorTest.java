@@ -1,5 +1,6 @@
 package com.rackspacecloud.blueflood.types;
 
+import com.rackspacecloud.blueflood.utils.Util;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -438,4 +439,79 @@ public class LocatorTest {
         // then
         assertEquals(-1, comparison);
     }
+
+    @Test
+    public void equalsSameHashCodeDifferentStringReturnsFalse() {
+
+        // given
+        Locator locator = Locator.createLocatorFromDbKey("t.Aa");
+        Locator other = Locator.createLocatorFromDbKey("t.BB");
+
+        // expect
+        assertEquals(locator.hashCode(), other.hashCode());
+        assertFalse(locator.equals((Object)other));
+    }
+
+    @Test
+    public void factoriesReturnCanonicalInstance() {
+
+        // when
+        Locator locator = Locator.createLocatorFromDbKey(fullyQualifiedName);
+        Locator other = Locator.createLocatorFromPathComponents(tenant, "some", "metric", "name");
+
+        // then
+        assertSame(locator, other);
+    }
+
+    @Test
+    public void undelimitedStringIsTenantAndMetricName() {
+
+        // when
+        Locator locator = Locator.createLocatorFromDbKey("abc");
+
+        // then
+        assertEquals("abc", locator.getTenantId());
+        assertEquals("abc", locator.getMetricName());
+    }
+
+    @Test
+    public void fingerprintIsStableAndDistinguishesLocators() {
+
+        // given
+        Locator locator = Locator.createLocatorFromDbKey("a.b.c");
+        Locator same = new Locator();
+        same.setStringRep("a.b.c");
+        Locator other = Locator.createLocatorFromDbKey("a.b.d");
+
+        // expect
+        assertEquals(locator.getFingerprint(), same.getFingerprint());
+        assertNotEquals(locator.getFingerprint(), other.getFingerprint());
+    }
+
+    @Test
+    public void shardMatchesComputedShard() {
+
+        // given
+        Locator locator = Locator.createLocatorFromDbKey(fullyQualifiedName);
+
+        // expect
+        assertEquals(Util.computeShard(fullyQualifiedName), locator.getShard());
+    }
+
+    @Test
+    public void setStringRepResetsFingerprintAndShard() {
+
+        // given
+        Locator locator = new Locator();
+        locator.setStringRep("a.b.c");
+        long fingerprint = locator.getFingerprint();
+        locator.getShard();
+
+        // when
+        locator.setStringRep(fullyQualifiedName);
+
+        // then
+        assertNotEquals(fingerprint, locator.getFingerprint());
+        assertEquals(Locator.createLocatorFromDbKey(fullyQualifiedName).getShard(), locator.getShard());
+    }
 }
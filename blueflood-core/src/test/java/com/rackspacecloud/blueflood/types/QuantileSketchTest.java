@@ -0,0 +1,78 @@
+package com.rackspacecloud.blueflood.types;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+    private static final double ACCURACY = QuantileSketch.DEFAULT_RELATIVE_ACCURACY;
+
+    @Test
+    public void testQuantilesAreWithinRelativeAccuracy() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 1; i <= 10000; i++) {
+            sketch.add(i);
+        }
+
+        Assert.assertEquals(10000, sketch.getCount());
+        assertClose(5000, sketch.getQuantile(0.5));
+        assertClose(9900, sketch.getQuantile(0.99));
+        assertClose(9990, sketch.getQuantile(0.999));
+        assertClose(1, sketch.getQuantile(0));
+        assertClose(10000, sketch.getQuantile(1));
+    }
+
+    @Test
+    public void testMergeIsExact() {
+        QuantileSketch all = new QuantileSketch();
+        QuantileSketch low = new QuantileSketch();
+        QuantileSketch high = new QuantileSketch();
+        for (int i = 1; i <= 1000; i++) {
+            all.add(i * 0.37);
+            (i % 3 == 0 ? low : high).add(i * 0.37);
+        }
+
+        Assert.assertEquals(all, low.copy().merge(high));
+        Assert.assertEquals(all, high.copy().merge(low));
+    }
+
+    @Test
+    public void testWeightedValuesAndZeros() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(0, 50);
+        sketch.add(-3, 10);
+        sketch.add(100, 40);
+
+        Assert.assertEquals(100, sketch.getCount());
+        Assert.assertEquals(60, sketch.getZeroCount());
+        Assert.assertEquals(0d, sketch.getQuantile(0.5), 0d);
+        assertClose(100, sketch.getQuantile(0.9));
+    }
+
+    @Test
+    public void testBucketsAreBounded() {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 100);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add(Math.pow(1.1, i % 300));
+        }
+
+        Assert.assertEquals(100, sketch.getNumBuckets());
+        Assert.assertEquals(1000, sketch.getCount());
+        // the highest quantiles are unaffected by collapsing.
+        assertClose(Math.pow(1.1, 299), sketch.getQuantile(1));
+    }
+
+    @Test
+    public void testEmptySketch() {
+        Assert.assertTrue(Double.isNaN(new QuantileSketch().getQuantile(0.5)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergingDifferentAccuraciesFails() {
+        new QuantileSketch(0.01, 100).merge(new QuantileSketch(0.02, 100));
+    }
+
+    private static void assertClose(double expected, double actual) {
+        Assert.assertEquals(expected, actual, expected * ACCURACY);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class CopyOnWriteLongSetTest {
+
+    @Test
+    public void testAgreesWithHashSet() {
+        Random random = new Random(42);
+        CopyOnWriteLongSet set = new CopyOnWriteLongSet();
+        Set<Long> expected = new HashSet<Long>();
+        for (int i = 0; i < 2000; i++) {
+            // include 0 and negative keys, and plenty of repeats.
+            long key = random.nextInt(1000) - 500;
+            Assert.assertEquals(expected.add(key), set.add(key));
+        }
+        Assert.assertEquals(expected.size(), set.size());
+        for (long key = -600; key < 600; key++) {
+            Assert.assertEquals(expected.contains(key), set.contains(key));
+        }
+    }
+
+    @Test
+    public void testRetainExactlyCountsChanges() {
+        CopyOnWriteLongSet set = new CopyOnWriteLongSet();
+        Assert.assertEquals(3, set.retainExactly(new long[] {1, 2, 3, 3}));
+        Assert.assertEquals(3, set.size());
+
+        // unchanged.
+        Assert.assertEquals(0, set.retainExactly(new long[] {3, 2, 1}));
+
+        // 1 removed, 4 and 5 added.
+        Assert.assertEquals(3, set.retainExactly(new long[] {2, 3, 4, 5}));
+        Assert.assertFalse(set.contains(1));
+        Assert.assertTrue(set.contains(4));
+        Assert.assertEquals(4, set.size());
+
+        Assert.assertEquals(4, set.retainExactly(new long[0]));
+        Assert.assertEquals(0, set.size());
+        Assert.assertEquals(0, set.toArray().length);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongLongHashMapTest {
+
+    @Test
+    public void testAgreesWithHashMap() {
+        Random random = new Random(42);
+        LongLongHashMap map = new LongLongHashMap();
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        for (int i = 0; i < 10000; i++) {
+            // include 0 and negative keys, and plenty of repeats.
+            long key = random.nextInt(2000) - 1000;
+            long delta = random.nextInt(10);
+            map.addTo(key, delta);
+            Long current = expected.get(key);
+            expected.put(key, (current == null ? 0 : current) + delta);
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            Assert.assertTrue(map.containsKey(entry.getKey()));
+            Assert.assertEquals((long) entry.getValue(), map.get(entry.getKey(), -1));
+        }
+        Assert.assertEquals(-1, map.get(5000, -1));
+        Assert.assertFalse(map.containsKey(5000));
+    }
+
+    @Test
+    public void testSlotIteration() {
+        LongLongHashMap map = new LongLongHashMap(2);
+        for (long key = 0; key < 100; key++) {
+            map.put(key * 1000003, key);
+        }
+        int seen = 0;
+        long sum = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.isUsed(slot)) {
+                Assert.assertEquals(map.valueAt(slot) * 1000003, map.keyAt(slot));
+                seen++;
+                sum += map.valueAt(slot);
+            }
+        }
+        Assert.assertEquals(100, seen);
+        Assert.assertEquals(99 * 100 / 2, sum);
+    }
+
+    @Test
+    public void testAddAllAndEquals() {
+        LongLongHashMap a = new LongLongHashMap();
+        LongLongHashMap b = new LongLongHashMap(100);
+        a.put(1, 10);
+        a.put(2, 20);
+        b.put(2, 5);
+        b.put(3, 7);
+        a.addAll(b);
+
+        LongLongHashMap expected = new LongLongHashMap(1000);
+        expected.put(3, 7);
+        expected.put(2, 25);
+        expected.put(1, 10);
+        Assert.assertEquals(expected, a);
+        Assert.assertEquals(expected.hashCode(), a.hashCode());
+
+        expected.put(1, 11);
+        Assert.assertFalse(expected.equals(a));
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.io;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rackspacecloud.blueflood.service.Configuration;
+import com.rackspacecloud.blueflood.service.ElasticIOConfig;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.utils.Metrics;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Indexes discovery documents asynchronously through an Elasticsearch {@link BulkProcessor}, which sends a bulk once
+ * it holds enough documents or bytes, or once the flush interval passes, with a bounded number of bulks in flight.
+ *
+ * A document already pending, or indexed recently, is not indexed again. Items that Elasticsearch rejects because it
+ * is overloaded, and whole bulks that fail, are retried with an exponential backoff. When too many documents are
+ * pending, new ones are rejected rather than queued. Buffered documents are sent at shutdown; retries still waiting
+ * for their backoff are dropped.
+ *
+ * The documents queued with a locator are reported to the {@link DiscoveryListener} once they are indexed, given up
+ * on, or dropped.
+ */
+public class DiscoveryBulkIndexer implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(DiscoveryBulkIndexer.class);
+
+    private final Meter deduplicated = Metrics.meter(DiscoveryBulkIndexer.class, "Documents Deduplicated");
+    private final Meter rejected = Metrics.meter(DiscoveryBulkIndexer.class, "Documents Rejected When Full");
+    private final Meter retried = Metrics.meter(DiscoveryBulkIndexer.class, "Documents Retried");
+    private final Meter failed = Metrics.meter(DiscoveryBulkIndexer.class, "Documents Failed");
+    private final Timer bulkLatency = Metrics.timer(DiscoveryBulkIndexer.class, "Bulk Latency");
+
+    private final BulkProcessor processor;
+    private final ScheduledExecutorService retryScheduler;
+    private final int maxPending;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+
+    // ids of the documents added and not yet indexed or given up on, with their number of attempts so far.
+    private final ConcurrentMap<String, Integer> pending = new ConcurrentHashMap<String, Integer>();
+    private final Cache<String, Boolean> recentlyIndexed;
+    private final ConcurrentMap<Long, Long> bulkStartNanos = new ConcurrentHashMap<Long, Long>();
+    // locators of the pending documents queued with one, by document id.
+    private final ConcurrentMap<String, Locator> locators = new ConcurrentHashMap<String, Locator>();
+    private volatile DiscoveryListener listener;
+
+    /**
+     * What became of a document given to {@link #index(IndexRequest, Locator)}.
+     */
+    public enum Outcome {
+        QUEUED,
+        // an earlier copy is queued already, and will be reported instead.
+        PENDING,
+        INDEXED_RECENTLY,
+        // too many documents are pending.
+        REJECTED
+    }
+
+    /**
+     * @return an indexer with the configured settings, which sends what it holds when the process shuts down.
+     */
+    public static DiscoveryBulkIndexer fromConfig(Client client) {
+        Configuration config = Configuration.getInstance();
+        final DiscoveryBulkIndexer indexer = new DiscoveryBulkIndexer(client,
+                config.getIntegerProperty(ElasticIOConfig.ELASTICSEARCH_BULK_ACTIONS),
+                config.getIntegerProperty(ElasticIOConfig.ELASTICSEARCH_BULK_SIZE_MB),
+                config.getLongProperty(ElasticIOConfig.ELASTICSEARCH_BULK_FLUSH_INTERVAL_MS),
+                config.getIntegerProperty(ElasticIOConfig.ELASTICSEARCH_BULK_CONCURRENT_REQUESTS),
+                config.getIntegerProperty(ElasticIOConfig.ELASTICSEARCH_BULK_MAX_PENDING),
+                config.getIntegerProperty(ElasticIOConfig.ELASTICSEARCH_BULK_MAX_RETRIES),
+                config.getLongProperty(ElasticIOConfig.ELASTICSEARCH_BULK_RETRY_BACKOFF_MS),
+                config.getIntegerProperty(ElasticIOConfig.ELASTICSEARCH_BULK_DEDUP_SIZE),
+                config.getLongProperty(ElasticIOConfig.ELASTICSEARCH_BULK_DEDUP_EXPIRY_MINUTES));
+        Runtime.getRuntime().addShutdownHook(new Thread("Discovery bulk indexer shutdown") {
+            @Override
+            public void run() {
+                try {
+                    if (!indexer.awaitClose(10, TimeUnit.SECONDS)) {
+                        log.warn("Discovery bulks still in flight at shutdown");
+                    }
+                } catch (InterruptedException e) {
+                    log.warn("Interrupted while sending the buffered discovery documents");
+                }
+            }
+        });
+        return indexer;
+    }
+
+    DiscoveryBulkIndexer(Client client, int bulkActions, int bulkSizeMb, long flushIntervalMillis,
+                         int concurrentRequests, int maxPending, int maxRetries, long retryBackoffMillis,
+                         int dedupSize, long dedupExpiryMinutes) {
+        this.maxPending = maxPending;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.recentlyIndexed = CacheBuilder.newBuilder()
+                .maximumSize(dedupSize)
+                .expireAfterWrite(dedupExpiryMinutes, TimeUnit.MINUTES)
+                .build();
+        this.processor = BulkProcessor.builder(client, new Listener())
+                .setName("discovery")
+                .setBulkActions(bulkActions)
+                .setBulkSize(new ByteSizeValue(bulkSizeMb, ByteSizeUnit.MB))
+                .setFlushInterval(org.elasticsearch.common.unit.TimeValue.timeValueMillis(flushIntervalMillis))
+                .setConcurrentRequests(concurrentRequests)
+                .build();
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Discovery bulk retries").setDaemon(true).build());
+
+        try {
+            Metrics.getRegistry().register(MetricRegistry.name(DiscoveryBulkIndexer.class, "Pending Documents"),
+                    new Gauge<Integer>() {
+                        @Override
+                        public Integer getValue() {
+                            return pending.size();
+                        }
+                    });
+        } catch (Exception e) {
+            // pass; another indexer registered it already.
+        }
+    }
+
+    public void setListener(DiscoveryListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues a document for indexing.
+     *
+     * @return false if the document was not queued, because it is pending or was indexed recently, or because too
+     * many documents are pending.
+     */
+    public boolean index(IndexRequest request) {
+        return index(request, null) == Outcome.QUEUED;
+    }
+
+    /**
+     * Queues the document of {@code locator} for indexing. If it is queued, its locator is reported to the listener
+     * once it has been indexed or dropped; otherwise the caller has to deal with the outcome.
+     */
+    public Outcome index(IndexRequest request, Locator locator) {
+        String id = request.id();
+        if (recentlyIndexed.getIfPresent(id) != null) {
+            deduplicated.mark();
+            return Outcome.INDEXED_RECENTLY;
+        }
+        if (pending.containsKey(id)) {
+            deduplicated.mark();
+            return Outcome.PENDING;
+        }
+        if (pending.size() >= maxPending) {
+            rejected.mark();
+            return Outcome.REJECTED;
+        }
+        if (pending.putIfAbsent(id, 0) != null) {
+            deduplicated.mark();
+            return Outcome.PENDING;
+        }
+        if (locator != null) {
+            locators.put(id, locator);
+        }
+        processor.add(request);
+        return Outcome.QUEUED;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public void flush() {
+        processor.flush();
+    }
+
+    /**
+     * Sends what is buffered and waits up to {@code timeout} for the bulks in flight. Pending retries are dropped.
+     */
+    public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+        retryScheduler.shutdownNow();
+        return processor.awaitClose(timeout, unit);
+    }
+
+    @Override
+    public void close() {
+        retryScheduler.shutdownNow();
+        processor.close();
+    }
+
+    void handleResponse(BulkRequest request, BulkResponse response) {
+        List<ActionRequest> requests = request.requests();
+        for (BulkItemResponse item : response.getItems()) {
+            IndexRequest itemRequest = (IndexRequest) requests.get(item.getItemId());
+            if (!item.isFailed() || item.getFailure().getStatus() == RestStatus.CONFLICT) {
+                // a conflict means the document exists already.
+                indexed(itemRequest.id());
+            } else if (isRetryable(item.getFailure().getStatus())) {
+                retry(itemRequest, item.getFailureMessage());
+            } else {
+                giveUp(itemRequest.id(), item.getFailureMessage());
+            }
+        }
+    }
+
+    void handleFailure(BulkRequest request, Throwable failure) {
+        for (ActionRequest itemRequest : request.requests()) {
+            retry((IndexRequest) itemRequest, failure.getMessage());
+        }
+    }
+
+    private static boolean isRetryable(RestStatus status) {
+        return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE;
+    }
+
+    private void indexed(String id) {
+        recentlyIndexed.put(id, Boolean.TRUE);
+        pending.remove(id);
+        Locator locator = locators.remove(id);
+        DiscoveryListener listener = this.listener;
+        if (locator != null && listener != null) {
+            listener.indexed(locator);
+        }
+    }
+
+    private void giveUp(String id, String reason) {
+        failed.mark();
+        dropped(id);
+        log.warn(String.format("Failed to index discovery document %s: %s", id, reason));
+    }
+
+    private void dropped(String id) {
+        pending.remove(id);
+        Locator locator = locators.remove(id);
+        DiscoveryListener listener = this.listener;
+        if (locator != null && listener != null) {
+            listener.notIndexed(locator);
+        }
+    }
+
+    private void retry(final IndexRequest request, String reason) {
+        String id = request.id();
+        Integer attempts = pending.get(id);
+        int attempt = attempts == null ? 1 : attempts + 1;
+        if (attempt > maxRetries) {
+            giveUp(id, reason);
+            return;
+        }
+        pending.put(id, attempt);
+        retried.mark();
+        try {
+            retryScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        processor.add(request);
+                    } catch (Exception e) {
+                        // closed.
+                        dropped(request.id());
+                    }
+                }
+            }, retryBackoffMillis << (attempt - 1), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            dropped(id);
+        }
+    }
+
+    private class Listener implements BulkProcessor.Listener {
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            bulkStartNanos.put(executionId, System.nanoTime());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            recordLatency(executionId);
+            handleResponse(request, response);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            recordLatency(executionId);
+            log.warn("Discovery bulk failed, retrying its documents", failure);
+            handleFailure(request, failure);
+        }
+
+        private void recordLatency(long executionId) {
+            Long start = bulkStartNanos.remove(executionId);
+            if (start != null) {
+                bulkLatency.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
@@ -27,9 +27,12 @@ import com.rackspacecloud.blueflood.types.Locator;
 import com.rackspacecloud.blueflood.types.Metric;
 
 import com.codahale.metrics.Timer;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,12 +40,16 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.*;
 
-public class ElasticIO extends AbstractElasticIO {
+public class ElasticIO extends AbstractElasticIO implements AsyncDiscoveryIO {
 
     public static final String ES_DOCUMENT_TYPE = "metrics";
 
     private static final Logger log = LoggerFactory.getLogger(DiscoveryIO.class);;
 
+    private static final boolean BULK_INDEXING = Configuration.getInstance().getBooleanProperty(ElasticIOConfig.ELASTICSEARCH_BULK_INDEXING_ENABLED);
+    private DiscoveryBulkIndexer bulkIndexer;
+    private volatile DiscoveryListener listener;
+
     public ElasticIO() {
         this(RemoteElasticSearchServer.getInstance());
     }
@@ -68,36 +75,112 @@ public class ElasticIO extends AbstractElasticIO {
             return;
         }
         
-        // TODO: check bulk insert result and retry
+        if (BULK_INDEXING) {
+            DiscoveryBulkIndexer indexer = getBulkIndexer();
+            int rejected = 0;
+            for (Object obj : batch) {
+                if (!(obj instanceof IMetric)) {
+                    classCastExceptionMeter.mark();
+                    continue;
+                }
+                Locator locator = ((IMetric) obj).getLocator();
+                DiscoveryBulkIndexer.Outcome outcome =
+                        indexer.index(createSingleRequest(createDiscovery((IMetric) obj)).request(), locator);
+                if (outcome == DiscoveryBulkIndexer.Outcome.REJECTED) {
+                    rejected++;
+                    notIndexed(locator);
+                } else if (outcome == DiscoveryBulkIndexer.Outcome.INDEXED_RECENTLY) {
+                    indexed(locator);
+                }
+            }
+            if (rejected > 0) {
+                throw new IOException(String.format("%d discovery documents rejected, too many are pending", rejected));
+            }
+            return;
+        }
+
         Timer.Context ctx = writeTimer.time();
         try {
             BulkRequestBuilder bulk = client.prepareBulk();
+            List<Locator> locators = new ArrayList<Locator>();
             for (Object obj : batch) {
                 if (!(obj instanceof IMetric)) {
                     classCastExceptionMeter.mark();
                     continue;
                 }
 
-                IMetric metric = (IMetric)obj;
-                Locator locator = metric.getLocator();
-                Discovery discovery = new Discovery(locator.getTenantId(), locator.getMetricName());
-
-                Map<String, Object> fields = new HashMap<String, Object>();
-
-
-                if (obj instanceof  Metric && getUnit((Metric)metric) != null) { // metric units may be null
-                    fields.put(ESFieldLabel.unit.toString(), getUnit((Metric) metric));
+                bulk.add(createSingleRequest(createDiscovery((IMetric) obj)));
+                locators.add(((IMetric) obj).getLocator());
+            }
+            BulkResponse response;
+            try {
+                response = bulk.execute().actionGet();
+            } catch (RuntimeException e) {
+                for (Locator locator : locators) {
+                    notIndexed(locator);
+                }
+                throw e;
+            }
+            for (BulkItemResponse item : response.getItems()) {
+                // a conflict means the document exists already.
+                if (!item.isFailed() || item.getFailure().getStatus() == RestStatus.CONFLICT) {
+                    indexed(locators.get(item.getItemId()));
+                } else {
+                    notIndexed(locators.get(item.getItemId()));
                 }
-
-                discovery.withSourceFields(fields);
-                bulk.add(createSingleRequest(discovery));
             }
-            bulk.execute().actionGet();
         } finally {
             ctx.stop();
         }
     }
 
+    @Override
+    public void setDiscoveryListener(DiscoveryListener listener) {
+        this.listener = listener;
+        synchronized (this) {
+            if (bulkIndexer != null) {
+                bulkIndexer.setListener(listener);
+            }
+        }
+    }
+
+    private void indexed(Locator locator) {
+        DiscoveryListener listener = this.listener;
+        if (listener != null) {
+            listener.indexed(locator);
+        }
+    }
+
+    private void notIndexed(Locator locator) {
+        DiscoveryListener listener = this.listener;
+        if (listener != null) {
+            listener.notIndexed(locator);
+        }
+    }
+
+    private synchronized DiscoveryBulkIndexer getBulkIndexer() {
+        if (bulkIndexer == null) {
+            bulkIndexer = DiscoveryBulkIndexer.fromConfig(client);
+            bulkIndexer.setListener(listener);
+        }
+        return bulkIndexer;
+    }
+
+    private Discovery createDiscovery(IMetric metric) {
+        Locator locator = metric.getLocator();
+        Discovery discovery = new Discovery(locator.getTenantId(), locator.getMetricName());
+
+        Map<String, Object> fields = new HashMap<String, Object>();
+
+
+        if (metric instanceof  Metric && getUnit((Metric)metric) != null) { // metric units may be null
+            fields.put(ESFieldLabel.unit.toString(), getUnit((Metric) metric));
+        }
+
+        discovery.withSourceFields(fields);
+        return discovery;
+    }
+
     private String getUnit(Metric metric) {
         return metric.getUnit();
     }
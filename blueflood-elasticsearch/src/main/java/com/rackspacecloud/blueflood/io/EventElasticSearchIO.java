@@ -16,70 +16,158 @@
 
 package com.rackspacecloud.blueflood.io;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.Resources;
+import com.rackspacecloud.blueflood.service.Configuration;
 import com.rackspacecloud.blueflood.service.ElasticClientManager;
+import com.rackspacecloud.blueflood.service.ElasticIOConfig;
 import com.rackspacecloud.blueflood.service.RemoteElasticSearchServer;
 import com.rackspacecloud.blueflood.types.Event;
 import com.rackspacecloud.blueflood.utils.Metrics;
+import org.elasticsearch.action.admin.indices.alias.Alias;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.search.SearchHit;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 
+/**
+ * Stores events (annotations) in elasticsearch.
+ *
+ * By default all events go to the events index. With {@link ElasticIOConfig#ELASTICSEARCH_EVENTS_PARTITIONED}
+ * set, each event goes to the monthly index (events_yyyy_MM, UTC) of its "when" field instead. The monthly indices
+ * are created from an index template that applies the events mapping and adds them to an alias. A search with both
+ * "from" and "until" only reads the months they span, a search without either reads the alias, and old months can
+ * be dropped by deleting their index.
+ */
 public class EventElasticSearchIO implements EventsIO {
     private final Timer eventSearchTimer = Metrics.timer(EventElasticSearchIO.class,
             "Search time for events");
     private final Timer eventInsertTimer = Metrics.timer(EventElasticSearchIO.class,
             "Insertion time for events");
+    private final Meter cachedSearchMeter = Metrics.meter(EventElasticSearchIO.class,
+            "Event searches served from cache");
     public static final String EVENT_INDEX = "events";
     public static final String ES_TYPE = "graphite_event";
+    static final String EVENT_TEMPLATE = "events_monthly";
+    static final String EVENT_BUCKET_PREFIX = EVENT_INDEX + "_";
+    private static final DateTimeFormatter BUCKET_FORMAT = DateTimeFormat.forPattern("yyyy_MM").withZoneUTC();
+    // past this many months a search reads the alias rather than listing them.
+    static final int MAX_BUCKETS_PER_SEARCH = 36;
+    // "when", "from" and "until" below this are taken to be seconds rather than milliseconds (1973 vs 5138 AD).
+    private static final long SECONDS_CUTOFF = 100000000000L;
+
     private final Client client;
+    private final boolean partitioned;
+    private final String alias;
+    private final boolean searchLegacyIndex;
+    private final Cache<List<String>, List<Map<String, Object>>> recentSearches;
+    private volatile boolean templateReady = false;
 
     public EventElasticSearchIO() {
         this(RemoteElasticSearchServer.getInstance());
     }
     public EventElasticSearchIO(Client client) {
-        this.client = client;
+        this(client,
+                Configuration.getInstance().getBooleanProperty(ElasticIOConfig.ELASTICSEARCH_EVENTS_PARTITIONED),
+                Configuration.getInstance().getStringProperty(ElasticIOConfig.ELASTICSEARCH_EVENTS_ALIAS),
+                Configuration.getInstance().getBooleanProperty(ElasticIOConfig.ELASTICSEARCH_EVENTS_SEARCH_LEGACY_INDEX),
+                Configuration.getInstance().getIntegerProperty(ElasticIOConfig.ELASTICSEARCH_EVENTS_SEARCH_CACHE_SECONDS),
+                Configuration.getInstance().getIntegerProperty(ElasticIOConfig.ELASTICSEARCH_EVENTS_SEARCH_CACHE_SIZE));
     }
     public EventElasticSearchIO(ElasticClientManager manager) {
         this(manager.getClient());
     }
 
+    EventElasticSearchIO(Client client, boolean partitioned, String alias, boolean searchLegacyIndex,
+                         int cacheSeconds, int cacheSize) {
+        this.client = client;
+        this.partitioned = partitioned;
+        this.alias = alias;
+        this.searchLegacyIndex = searchLegacyIndex;
+        this.recentSearches = cacheSeconds <= 0 ? null : CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheSeconds, TimeUnit.SECONDS)
+                .maximumSize(cacheSize)
+                .<List<String>, List<Map<String, Object>>>build();
+    }
+
     @Override
     public void insert(String tenant, List<Map<String, Object>> events) throws Exception {
         final Timer.Context eventInsertTimerContext = eventInsertTimer.time();
+        if (partitioned) {
+            ensureTemplate();
+        }
         BulkRequestBuilder bulk = client.prepareBulk();
 
         for (Map<String, Object> event : events) {
             event.put(Event.FieldLabels.tenantId.toString(), tenant);
-            IndexRequestBuilder requestBuilder = client.prepareIndex(EVENT_INDEX, ES_TYPE)
+            String index = partitioned ? bucketFor(event.get(Event.FieldLabels.when.toString())) : EVENT_INDEX;
+            IndexRequestBuilder requestBuilder = client.prepareIndex(index, ES_TYPE)
                     .setSource(event)
                     .setRouting(tenant);
             bulk.add(requestBuilder);
         }
         bulk.execute().actionGet();
         eventInsertTimerContext.stop();
+
+        if (recentSearches != null) {
+            for (List<String> key : recentSearches.asMap().keySet()) {
+                if (key.get(0).equals(tenant)) {
+                    recentSearches.invalidate(key);
+                }
+            }
+        }
     }
 
     @Override
     public List<Map<String, Object>> search(String tenant, Map<String, List<String>> query) throws Exception {
+        String tagsQuery = "";
+        String untilQuery = "";
+        String fromQuery = "";
+        if (query != null) {
+            tagsQuery = extractFieldFromQuery(Event.FieldLabels.tags.toString(), query);
+            untilQuery = extractFieldFromQuery(Event.untilParameterName, query);
+            fromQuery = extractFieldFromQuery(Event.fromParameterName, query);
+        }
+
+        List<String> cacheKey = Arrays.asList(tenant, tagsQuery, fromQuery, untilQuery);
+        if (recentSearches != null) {
+            List<Map<String, Object>> cached = recentSearches.getIfPresent(cacheKey);
+            if (cached != null) {
+                cachedSearchMeter.mark();
+                return cached;
+            }
+        }
+
         final Timer.Context eventSearchTimerContext = eventSearchTimer.time();
         BoolQueryBuilder qb = boolQuery()
                 .must(termQuery(Event.FieldLabels.tenantId.toString(), tenant));
+        qb = addQueryParameters(tagsQuery, fromQuery, untilQuery, qb);
 
-        if (query != null) {
-            qb = extractQueryParameters(query, qb);
+        SearchRequestBuilder searchBuilder = client.prepareSearch(indicesFor(fromQuery, untilQuery));
+        if (partitioned) {
+            // months without events have no index.
+            searchBuilder.setIndicesOptions(IndicesOptions.lenientExpandOpen());
         }
-
-        SearchResponse response = client.prepareSearch(EVENT_INDEX)
+        SearchResponse response = searchBuilder
                 .setRouting(tenant)
                 .setSize(100000)
                 .setVersion(true)
@@ -94,14 +182,90 @@ public class EventElasticSearchIO implements EventsIO {
             events.add(hit.getSource());
         }
 
+        if (recentSearches != null) {
+            // the same results are handed to every caller until they expire, so none of them may change them.
+            List<Map<String, Object>> frozen = new ArrayList<Map<String, Object>>(events.size());
+            for (Map<String, Object> event : events) {
+                frozen.add(Collections.unmodifiableMap(new HashMap<String, Object>(event)));
+            }
+            events = Collections.unmodifiableList(frozen);
+            recentSearches.put(cacheKey, events);
+        }
         return events;
     }
 
-    private BoolQueryBuilder extractQueryParameters(Map<String, List<String>> query, BoolQueryBuilder qb) {
-        String tagsQuery = extractFieldFromQuery(Event.FieldLabels.tags.toString(), query);
-        String untilQuery = extractFieldFromQuery(Event.untilParameterName, query);
-        String fromQuery = extractFieldFromQuery(Event.fromParameterName, query);
+    /**
+     * @return the indices a search with these bounds has to read.
+     */
+    String[] indicesFor(String fromQuery, String untilQuery) {
+        if (!partitioned) {
+            return new String[] { EVENT_INDEX };
+        }
+        List<String> indices = new ArrayList<String>();
+        if (searchLegacyIndex) {
+            indices.add(EVENT_INDEX);
+        }
+        if (fromQuery.equals("") || untilQuery.equals("")) {
+            indices.add(alias);
+            return indices.toArray(new String[indices.size()]);
+        }
+
+        DateTime month = new DateTime(toMillis(Long.parseLong(fromQuery)), DateTimeZone.UTC)
+                .withDayOfMonth(1).withTimeAtStartOfDay();
+        long until = toMillis(Long.parseLong(untilQuery));
+        List<String> buckets = new ArrayList<String>();
+        while (month.getMillis() <= until && buckets.size() <= MAX_BUCKETS_PER_SEARCH) {
+            buckets.add(EVENT_BUCKET_PREFIX + BUCKET_FORMAT.print(month));
+            month = month.plusMonths(1);
+        }
+        if (buckets.size() > MAX_BUCKETS_PER_SEARCH) {
+            indices.add(alias);
+        } else {
+            indices.addAll(buckets);
+        }
+        if (indices.isEmpty()) {
+            // until before from; nothing can match, but an empty list would mean every index.
+            indices.add(EVENT_BUCKET_PREFIX + BUCKET_FORMAT.print(until));
+        }
+        return indices.toArray(new String[indices.size()]);
+    }
+
+    static String bucketFor(Object when) {
+        long millis;
+        if (when instanceof Number) {
+            millis = toMillis(((Number) when).longValue());
+        } else if (when != null) {
+            millis = toMillis(Long.parseLong(when.toString()));
+        } else {
+            millis = System.currentTimeMillis();
+        }
+        return EVENT_BUCKET_PREFIX + BUCKET_FORMAT.print(millis);
+    }
+
+    private static long toMillis(long time) {
+        return Math.abs(time) < SECONDS_CUTOFF ? time * 1000 : time;
+    }
+
+    private void ensureTemplate() throws IOException {
+        if (templateReady) {
+            return;
+        }
+        synchronized (this) {
+            if (templateReady) {
+                return;
+            }
+            String mapping = Resources.toString(Resources.getResource("events_mapping.json"), Charsets.UTF_8);
+            client.admin().indices().preparePutTemplate(EVENT_TEMPLATE)
+                    .setTemplate(EVENT_BUCKET_PREFIX + "*")
+                    .addMapping(ES_TYPE, mapping)
+                    .addAlias(new Alias(alias))
+                    .execute()
+                    .actionGet();
+            templateReady = true;
+        }
+    }
 
+    private BoolQueryBuilder addQueryParameters(String tagsQuery, String fromQuery, String untilQuery, BoolQueryBuilder qb) {
         if (!tagsQuery.equals(""))
             qb = qb.must(termQuery(Event.FieldLabels.tags.toString(), tagsQuery));
 
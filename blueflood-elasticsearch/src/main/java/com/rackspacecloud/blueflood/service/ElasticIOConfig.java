@@ -22,7 +22,30 @@ public enum ElasticIOConfig implements ConfigDefaults {
     ELASTICSEARCH_INDEX_NAME_WRITE("metric_metadata"),
     ELASTICSEARCH_INDEX_NAME_READ("metric_metadata"),
     ELASTICSEARCH_ENUMS_INDEX_NAME_WRITE("enums"),
-    ELASTICSEARCH_ENUMS_INDEX_NAME_READ("enums");
+    ELASTICSEARCH_ENUMS_INDEX_NAME_READ("enums"),
+
+    // Setting this to true makes discovery documents be indexed asynchronously by a DiscoveryBulkIndexer.
+    ELASTICSEARCH_BULK_INDEXING_ENABLED("false"),
+    ELASTICSEARCH_BULK_ACTIONS("1000"),
+    ELASTICSEARCH_BULK_SIZE_MB("5"),
+    ELASTICSEARCH_BULK_FLUSH_INTERVAL_MS("1000"),
+    ELASTICSEARCH_BULK_CONCURRENT_REQUESTS("2"),
+    ELASTICSEARCH_BULK_MAX_PENDING("100000"),
+    ELASTICSEARCH_BULK_MAX_RETRIES("5"),
+    ELASTICSEARCH_BULK_RETRY_BACKOFF_MS("500"),
+    ELASTICSEARCH_BULK_DEDUP_SIZE("1000000"),
+    ELASTICSEARCH_BULK_DEDUP_EXPIRY_MINUTES("1440"),
+
+    // Setting this to true writes events into monthly indices (events_yyyy_MM) instead of the single events index,
+    // and searches only the months a query covers. Searches also read the events index until it is dropped.
+    ELASTICSEARCH_EVENTS_PARTITIONED("false"),
+    ELASTICSEARCH_EVENTS_ALIAS("events_all"),
+    ELASTICSEARCH_EVENTS_SEARCH_LEGACY_INDEX("true"),
+    // how long event search results are reused for an identical query; 0 disables. The cache is per node and only
+    // an insert on the same node clears it, so other nodes can serve results up to this old. Meant for partitioned
+    // events, where a search can span many indices.
+    ELASTICSEARCH_EVENTS_SEARCH_CACHE_SECONDS("0"),
+    ELASTICSEARCH_EVENTS_SEARCH_CACHE_SIZE("1000");
 
     static {
         Configuration.getInstance().loadDefaults(ElasticIOConfig.values());
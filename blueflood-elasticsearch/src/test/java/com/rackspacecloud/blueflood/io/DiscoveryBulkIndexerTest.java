@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.io;
+
+import com.github.tlrx.elasticsearch.test.EsSetup;
+import com.rackspacecloud.blueflood.types.Locator;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class DiscoveryBulkIndexerTest {
+
+    private static final String TENANT = "bulk-tenant";
+
+    private EsSetup esSetup;
+    private ElasticIO elasticIO;
+
+    @Before
+    public void setup() throws IOException {
+        esSetup = new EsSetup();
+        esSetup.execute(EsSetup.deleteAll());
+        esSetup.execute(EsSetup.createIndex(ElasticIO.ELASTICSEARCH_INDEX_NAME_WRITE)
+                .withSettings(EsSetup.fromClassPath("index_settings.json"))
+                .withMapping("metrics", EsSetup.fromClassPath("metrics_mapping.json")));
+        elasticIO = new ElasticIO(esSetup.client());
+    }
+
+    @After
+    public void tearDown() {
+        esSetup.terminate();
+    }
+
+    @Test
+    public void testDocumentsAreIndexedOnce() throws Exception {
+        DiscoveryBulkIndexer indexer = newIndexer(100, 5, 100);
+        for (int i = 0; i < 25; i++) {
+            Assert.assertTrue(indexer.index(request("metric." + i)));
+        }
+        // still pending.
+        Assert.assertFalse(indexer.index(request("metric.0")));
+
+        Assert.assertTrue(indexer.awaitClose(10, TimeUnit.SECONDS));
+        esSetup.client().admin().indices().prepareRefresh().execute().actionGet();
+
+        Assert.assertEquals(25, elasticIO.search(TENANT, "metric.*").size());
+        Assert.assertEquals(0, indexer.getPendingCount());
+        // indexed recently.
+        Assert.assertFalse(indexer.index(request("metric.0")));
+    }
+
+    @Test
+    public void testNewDocumentsAreRejectedWhenFull() throws IOException {
+        DiscoveryBulkIndexer indexer = newIndexer(2, 5, 3600000);
+        Assert.assertTrue(indexer.index(request("a")));
+        Assert.assertTrue(indexer.index(request("b")));
+        Assert.assertFalse(indexer.index(request("c")));
+        indexer.close();
+    }
+
+    @Test
+    public void testFailedItems() throws IOException {
+        DiscoveryBulkIndexer indexer = newIndexer(100, 1, 3600000);
+        BulkRequest bulk = new BulkRequest();
+        for (String name : new String[] {"ok", "exists", "rejected", "bad"}) {
+            IndexRequest request = request(name);
+            indexer.index(request);
+            bulk.add(request);
+        }
+        Assert.assertEquals(4, indexer.getPendingCount());
+
+        indexer.handleResponse(bulk, new BulkResponse(new BulkItemResponse[] {
+                new BulkItemResponse(0, "create", new IndexResponse()),
+                failure(1, RestStatus.CONFLICT),
+                failure(2, RestStatus.TOO_MANY_REQUESTS),
+                failure(3, RestStatus.BAD_REQUEST)}, 1));
+
+        // only the rejected item is retried.
+        Assert.assertEquals(1, indexer.getPendingCount());
+        Assert.assertFalse(indexer.index(request("ok")));
+        Assert.assertFalse(indexer.index(request("exists")));
+        Assert.assertTrue(indexer.index(request("bad")));
+
+        // and given up on after its retries, so that it can be queued again.
+        BulkRequest retry = new BulkRequest().add(request("rejected"));
+        indexer.handleFailure(retry, new RuntimeException("unavailable"));
+        Assert.assertEquals(1, indexer.getPendingCount());
+        Assert.assertTrue(indexer.index(request("rejected")));
+        indexer.close();
+    }
+
+    @Test
+    public void testListenerIsToldWhatBecameOfQueuedDocuments() throws IOException {
+        final List<String> indexed = new ArrayList<String>();
+        final List<String> notIndexed = new ArrayList<String>();
+        DiscoveryBulkIndexer indexer = newIndexer(2, 1, 3600000);
+        indexer.setListener(new DiscoveryListener() {
+            @Override
+            public void indexed(Locator locator) {
+                indexed.add(locator.getMetricName());
+            }
+
+            @Override
+            public void notIndexed(Locator locator) {
+                notIndexed.add(locator.getMetricName());
+            }
+        });
+
+        BulkRequest bulk = new BulkRequest();
+        for (String name : new String[] {"ok", "bad"}) {
+            IndexRequest request = request(name);
+            Assert.assertEquals(DiscoveryBulkIndexer.Outcome.QUEUED, indexer.index(request, locator(name)));
+            Assert.assertEquals(DiscoveryBulkIndexer.Outcome.PENDING, indexer.index(request(name), locator(name)));
+            bulk.add(request);
+        }
+        // left to the caller to report.
+        Assert.assertEquals(DiscoveryBulkIndexer.Outcome.REJECTED, indexer.index(request("full"), locator("full")));
+
+        indexer.handleResponse(bulk, new BulkResponse(new BulkItemResponse[] {
+                new BulkItemResponse(0, "create", new IndexResponse()),
+                failure(1, RestStatus.BAD_REQUEST)}, 1));
+
+        Assert.assertEquals(Arrays.asList("ok"), indexed);
+        Assert.assertEquals(Arrays.asList("bad"), notIndexed);
+        Assert.assertEquals(DiscoveryBulkIndexer.Outcome.INDEXED_RECENTLY, indexer.index(request("ok"), locator("ok")));
+        indexer.close();
+    }
+
+    private DiscoveryBulkIndexer newIndexer(int maxPending, int maxRetries, long flushIntervalMillis) {
+        return new DiscoveryBulkIndexer(esSetup.client(), 10, 5, flushIntervalMillis, 1, maxPending, maxRetries,
+                60000, 1000, 60);
+    }
+
+    private IndexRequest request(String metricName) throws IOException {
+        return elasticIO.createSingleRequest(new Discovery(TENANT, metricName)).request();
+    }
+
+    private static Locator locator(String metricName) {
+        return Locator.createLocatorFromPathComponents(TENANT, metricName);
+    }
+
+    private static BulkItemResponse failure(int itemId, RestStatus status) {
+        return new BulkItemResponse(itemId, "create", new BulkItemResponse.Failure(
+                ElasticIO.ELASTICSEARCH_INDEX_NAME_WRITE, ElasticIO.ES_DOCUMENT_TYPE, "id", status.name(), status));
+    }
+}
@@ -201,6 +201,33 @@ public class ElasticIOTest extends BaseElasticTest {
         }
     }
 
+    @Test
+    public void testListenerIsToldWhatWasIndexed() throws Exception {
+        final List<Locator> indexed = new ArrayList<Locator>();
+        final List<Locator> notIndexed = new ArrayList<Locator>();
+        elasticIO.setDiscoveryListener(new DiscoveryListener() {
+            @Override
+            public void indexed(Locator locator) {
+                indexed.add(locator);
+            }
+
+            @Override
+            public void notIndexed(Locator locator) {
+                notIndexed.add(locator);
+            }
+        });
+
+        // one document that exists already, and a new one.
+        List<IMetric> metrics = new ArrayList<IMetric>();
+        metrics.add(new Metric(createTestLocator(TENANT_A, 0, "A", 0), "blarg", 0, new TimeValue(1, TimeUnit.DAYS), UNIT));
+        metrics.add(new Metric(Locator.createLocatorFromPathComponents(TENANT_A, "new", "metric"), "blarg", 0,
+                new TimeValue(1, TimeUnit.DAYS), UNIT));
+        elasticIO.insertDiscovery(metrics);
+
+        Assert.assertEquals(Arrays.asList(metrics.get(0).getLocator(), metrics.get(1).getLocator()), indexed);
+        Assert.assertTrue(notIndexed.isEmpty());
+    }
+
     @Test
     public void testDeDupMetrics() throws Exception {
         // New index name and the locator to be written to it
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.io;
+
+import com.github.tlrx.elasticsearch.test.EsSetup;
+import com.rackspacecloud.blueflood.types.Event;
+import junit.framework.Assert;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+public class EventElasticSearchIOPartitionedTest {
+    private static final String ALIAS = "events_all";
+    private static final String TENANT = "tenant-id_id#id";
+    private static final DateTime JANUARY = new DateTime(2016, 1, 15, 12, 0, DateTimeZone.UTC);
+    private static final DateTime MARCH = new DateTime(2016, 3, 15, 12, 0, DateTimeZone.UTC);
+
+    private EventElasticSearchIO searchIO;
+    private EsSetup esSetup;
+
+    @Test
+    public void testEventsAreWrittenToMonthlyIndices() throws Exception {
+        Assert.assertTrue(indexExists("events_2016_01"));
+        Assert.assertTrue(indexExists("events_2016_03"));
+        Assert.assertFalse(indexExists("events_2016_02"));
+        Assert.assertFalse(indexExists(EventElasticSearchIO.EVENT_INDEX));
+    }
+
+    @Test
+    public void testRangeSearchReadsOnlyCoveredMonths() throws Exception {
+        Map<String, List<String>> query = new HashMap<String, List<String>>();
+        query.put(Event.fromParameterName, Arrays.asList(Long.toString(JANUARY.minusDays(1).getMillis())));
+        query.put(Event.untilParameterName, Arrays.asList(Long.toString(JANUARY.plusDays(1).getMillis())));
+        Assert.assertEquals(2, searchIO.search(TENANT, query).size());
+
+        // a range spanning the month without an index.
+        query.put(Event.untilParameterName, Arrays.asList(Long.toString(MARCH.plusDays(1).getMillis())));
+        Assert.assertEquals(3, searchIO.search(TENANT, query).size());
+
+        Assert.assertEquals(Arrays.asList("events_2016_01", "events_2016_02", "events_2016_03"),
+                Arrays.asList(searchIO.indicesFor(Long.toString(JANUARY.getMillis()), Long.toString(MARCH.getMillis()))));
+    }
+
+    @Test
+    public void testOpenEndedSearchReadsAlias() throws Exception {
+        Map<String, List<String>> query = new HashMap<String, List<String>>();
+        query.put(Event.tagsParameterName, Arrays.asList("deploy"));
+        Assert.assertEquals(3, searchIO.search(TENANT, query).size());
+        Assert.assertEquals(0, searchIO.search("othertenant", query).size());
+
+        Assert.assertEquals(Arrays.asList(ALIAS), Arrays.asList(searchIO.indicesFor("", "")));
+    }
+
+    @Test
+    public void testSecondsAndMillisPickTheSameBucket() {
+        Assert.assertEquals("events_2016_03", EventElasticSearchIO.bucketFor(MARCH.getMillis()));
+        Assert.assertEquals("events_2016_03", EventElasticSearchIO.bucketFor(MARCH.getMillis() / 1000));
+        Assert.assertEquals("events_2016_03", EventElasticSearchIO.bucketFor(Long.toString(MARCH.getMillis())));
+    }
+
+    @Test
+    public void testInsertInvalidatesCachedSearches() throws Exception {
+        Map<String, List<String>> query = new HashMap<String, List<String>>();
+        query.put(Event.tagsParameterName, Arrays.asList("deploy"));
+        Assert.assertEquals(3, searchIO.search(TENANT, query).size());
+
+        insert(TENANT, MARCH.plusDays(2));
+        refresh();
+        Assert.assertEquals(4, searchIO.search(TENANT, query).size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCachedSearchesCanNotBeChanged() throws Exception {
+        Map<String, List<String>> query = new HashMap<String, List<String>>();
+        query.put(Event.tagsParameterName, Arrays.asList("deploy"));
+        searchIO.search(TENANT, query).get(0).put("what", "changed");
+    }
+
+    @Before
+    public void setup() throws Exception {
+        esSetup = new EsSetup();
+        esSetup.execute(EsSetup.deleteAll());
+        searchIO = new EventElasticSearchIO(esSetup.client(), true, ALIAS, false, 10, 100);
+
+        insert(TENANT, JANUARY);
+        insert(TENANT, JANUARY.plusHours(1));
+        insert(TENANT, MARCH);
+        refresh();
+    }
+
+    private void insert(String tenant, DateTime when) throws Exception {
+        Event event = new Event();
+        event.setWhat("deployed");
+        event.setWhen(when.getMillis());
+        event.setData("build " + when.getMillis());
+        event.setTags("deploy");
+        searchIO.insert(tenant, new ArrayList<Map<String, Object>>(Arrays.asList(event.toMap())));
+    }
+
+    private void refresh() {
+        esSetup.client().admin().indices().prepareRefresh().execute().actionGet();
+    }
+
+    private boolean indexExists(String index) {
+        return esSetup.client().admin().indices().prepareExists(index).execute().actionGet().isExists();
+    }
+
+    @After
+    public void tearDown() {
+        esSetup.terminate();
+    }
+}
@@ -0,0 +1,560 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.inputs.handlers;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.rackspacecloud.blueflood.inputs.formats.AggregatedPayload;
+import com.rackspacecloud.blueflood.types.BluefloodTimerRollup;
+import com.rackspacecloud.blueflood.types.IMetric;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A streaming parser for the payloads of /ingest/aggregated and /ingest/aggregated/multi. It accepts what
+ * {@link AggregatedPayload#create(String)} accepts, but reads the fields of each counter, gauge, timer, set and enum
+ * straight off the stream, instead of binding the whole payload to objects by reflection.
+ *
+ * Metrics are turned into {@link com.rackspacecloud.blueflood.types.PreaggregatedMetric}s only when their bundle is
+ * validated, so a bundle that is rejected is never converted, and a malformed metric is reported as a validation
+ * error of its bundle rather than failing the whole request.
+ */
+public class AggregatedPayloadReader {
+
+    private static final String TENANT_ID = "tenantId";
+    private static final String TIMESTAMP = "timestamp";
+    private static final String FLUSH_INTERVAL = "flushInterval";
+
+    public static Bundle read(String json) {
+        return read(new StringReader(json));
+    }
+
+    /**
+     * Reads a single bundle, i.e. the body of /ingest/aggregated.
+     */
+    public static Bundle read(Reader json) {
+        JsonReader in = new JsonReader(json);
+        in.setLenient(true);
+        try {
+            Bundle bundle = readBundle(in);
+            assertFullyConsumed(in);
+            return bundle;
+        } catch (IllegalStateException ex) {
+            throw new JsonSyntaxException(ex);
+        } catch (IOException ex) {
+            throw new JsonSyntaxException(ex);
+        }
+    }
+
+    public static List<Bundle> readMulti(String json) {
+        return readMulti(new StringReader(json));
+    }
+
+    /**
+     * Reads an array of bundles, i.e. the body of /ingest/aggregated/multi.
+     *
+     * @throws IllegalStateException if the document is not an array.
+     */
+    public static List<Bundle> readMulti(Reader json) {
+        JsonReader in = new JsonReader(json);
+        in.setLenient(true);
+        try {
+            if (in.peek() != JsonToken.BEGIN_ARRAY) {
+                throw new IllegalStateException("Not a JSON Array: " + in.peek());
+            }
+            List<Bundle> bundles = new ArrayList<Bundle>();
+            in.beginArray();
+            while (in.hasNext()) {
+                try {
+                    bundles.add(readBundle(in));
+                } catch (IllegalStateException ex) {
+                    throw new JsonSyntaxException(ex);
+                }
+            }
+            in.endArray();
+            assertFullyConsumed(in);
+            return bundles;
+        } catch (IOException ex) {
+            throw new JsonSyntaxException(ex);
+        }
+    }
+
+    private static void assertFullyConsumed(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonSyntaxException("JSON document was not fully consumed.");
+        }
+    }
+
+    private static Bundle readBundle(JsonReader in) throws IOException {
+        BundleBuilder builder = new BundleBuilder();
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (field.equals(TENANT_ID)) {
+                builder.tenantId = readString(in);
+            } else if (field.equals(TIMESTAMP)) {
+                Long timestamp = readLong(in);
+                if (timestamp != null) {
+                    builder.timestamp = timestamp;
+                }
+            } else if (field.equals(FLUSH_INTERVAL)) {
+                Long flushInterval = readLong(in);
+                if (flushInterval != null) {
+                    builder.flushInterval = flushInterval;
+                }
+            } else if (field.equals("gauges")) {
+                readArray(in, builder, GAUGE);
+            } else if (field.equals("counters")) {
+                readArray(in, builder, COUNTER);
+            } else if (field.equals("timers")) {
+                readArray(in, builder, TIMER);
+            } else if (field.equals("sets")) {
+                readArray(in, builder, SET);
+            } else if (field.equals("enums")) {
+                readArray(in, builder, ENUM);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return builder.build();
+    }
+
+    private static void readArray(JsonReader in, BundleBuilder builder, MetricReader reader) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+            } else {
+                in.beginObject();
+                reader.read(in, builder);
+                in.endObject();
+            }
+        }
+        in.endArray();
+    }
+
+    // the readers below follow the type adapters Gson uses for the fields of the payload classes.
+
+    private static String readString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    private static Number readNumber(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.NUMBER) {
+            return new LazilyParsedNumber(in.nextString());
+        }
+        throw new JsonSyntaxException("Expecting number, got: " + token);
+    }
+
+    /**
+     * @return null for a null field, which Gson leaves at its default value.
+     */
+    private static Long readLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            return in.nextLong();
+        } catch (NumberFormatException ex) {
+            throw new JsonSyntaxException(ex);
+        }
+    }
+
+    private interface MetricReader {
+        /**
+         * Reads the fields of one metric object, whose opening brace has been consumed.
+         */
+        void read(JsonReader in, BundleBuilder builder) throws IOException;
+    }
+
+    private static final MetricReader GAUGE = new MetricReader() {
+        @Override
+        public void read(JsonReader in, BundleBuilder builder) throws IOException {
+            String name = null;
+            Number value = null;
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if (field.equals("name")) {
+                    name = readString(in);
+                } else if (field.equals("value")) {
+                    value = readNumber(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            final Number gaugeValue = value;
+            builder.add(new PendingMetric("gauge", name) {
+                @Override
+                IMetric build(AggregatedPayload header) {
+                    return PreaggregateConversions.buildGauge(header.getTenantId(), header.getTimestamp(), name, gaugeValue);
+                }
+            });
+        }
+    };
+
+    private static final MetricReader COUNTER = new MetricReader() {
+        @Override
+        public void read(JsonReader in, BundleBuilder builder) throws IOException {
+            String name = null;
+            Number value = null;
+            Number rate = null;
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if (field.equals("name")) {
+                    name = readString(in);
+                } else if (field.equals("value")) {
+                    value = readNumber(in);
+                } else if (field.equals("rate")) {
+                    rate = readNumber(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            final Number counterValue = value;
+            final Number counterRate = rate;
+            builder.add(new PendingMetric("counter", name) {
+                @Override
+                IMetric build(AggregatedPayload header) {
+                    return PreaggregateConversions.buildCounter(header.getTenantId(), header.getTimestamp(),
+                            header.getFlushIntervalMillis(), name, counterValue, counterRate);
+                }
+            });
+        }
+    };
+
+    private static final MetricReader TIMER = new MetricReader() {
+        @Override
+        public void read(JsonReader in, BundleBuilder builder) throws IOException {
+            String name = null;
+            final Number[] fields = new Number[7];
+            Map<String, Number> percentiles = null;
+            Map<String, Number> distribution = null;
+            while (in.hasNext()) {
+                String field = in.nextName();
+                int index = TIMER_FIELDS.indexOf(field);
+                if (field.equals("name")) {
+                    name = readString(in);
+                } else if (index >= 0) {
+                    fields[index] = readNumber(in);
+                } else if (field.equals("median")) {
+                    readNumber(in);
+                } else if (field.equals("percentiles")) {
+                    percentiles = readPercentileAverages(in);
+                } else if (field.equals("distribution")) {
+                    distribution = readNumberMap(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+
+            final Map<String, Number> timerPercentiles = percentiles;
+            final Map<String, Number> timerDistribution = distribution;
+            builder.add(new PendingMetric("timer", name) {
+                @Override
+                IMetric build(AggregatedPayload header) {
+                    BluefloodTimerRollup rollup = PreaggregateConversions.buildTimerRollup(
+                            fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], fields[6]);
+                    if (timerPercentiles != null) {
+                        for (Map.Entry<String, Number> entry : timerPercentiles.entrySet()) {
+                            rollup.setPercentile(entry.getKey(), PreaggregateConversions.resolveNumber(entry.getValue()));
+                        }
+                    }
+                    if (timerDistribution != null && !timerDistribution.isEmpty()) {
+                        rollup.withSketch(PreaggregateConversions.toSketch(timerDistribution));
+                    }
+                    return PreaggregateConversions.buildTimer(header.getTenantId(), header.getTimestamp(), name, rollup);
+                }
+            });
+        }
+    };
+
+    // the numeric fields of a timer, in the order buildTimerRollup takes them.
+    private static final List<String> TIMER_FIELDS = Arrays.asList("count", "rate", "min", "max", "sum", "avg", "std");
+
+    private static final MetricReader SET = new MetricReader() {
+        @Override
+        public void read(JsonReader in, BundleBuilder builder) throws IOException {
+            String name = null;
+            List<String> values = null;
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if (field.equals("name")) {
+                    name = readString(in);
+                } else if (field.equals("values")) {
+                    values = readStrings(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            final List<String> setValues = values;
+            builder.add(new PendingMetric("set", name) {
+                @Override
+                IMetric build(AggregatedPayload header) {
+                    return PreaggregateConversions.buildSet(header.getTenantId(), header.getTimestamp(), name, setValues);
+                }
+            });
+        }
+    };
+
+    private static final MetricReader ENUM = new MetricReader() {
+        @Override
+        public void read(JsonReader in, BundleBuilder builder) throws IOException {
+            String name = null;
+            String value = null;
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if (field.equals("name")) {
+                    name = readString(in);
+                } else if (field.equals("value")) {
+                    value = readString(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            final String enumValue = value;
+            builder.addEnum(new PendingMetric("enum", name) {
+                @Override
+                IMetric build(AggregatedPayload header) {
+                    return PreaggregateConversions.buildEnum(header.getTenantId(), header.getTimestamp(), name, enumValue);
+                }
+            });
+        }
+    };
+
+    private static List<String> readStrings(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<String> values = new ArrayList<String>();
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(readString(in));
+        }
+        in.endArray();
+        return values;
+    }
+
+    private static Map<String, Number> readNumberMap(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<String, Number> map = new LinkedHashMap<String, Number>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            map.put(key, readNumber(in));
+        }
+        in.endObject();
+        return map;
+    }
+
+    /**
+     * @return the averages of the percentiles that have one; their max and sum are not kept.
+     */
+    private static Map<String, Number> readPercentileAverages(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<String, Number> averages = new LinkedHashMap<String, Number>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String key = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            Number avg = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String field = in.nextName();
+                if (field.equals("avg")) {
+                    avg = readNumber(in);
+                } else if (field.equals("max") || field.equals("sum")) {
+                    readNumber(in);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            if (avg != null) {
+                averages.put(key, avg);
+            }
+        }
+        in.endObject();
+        return averages;
+    }
+
+    /**
+     * A metric as it was read, converted only once its bundle has been validated.
+     */
+    private static abstract class PendingMetric {
+        final String kind;
+        final String name;
+
+        PendingMetric(String kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+
+        /**
+         * @return the metric, or null if it is to be dropped.
+         * @throws RuntimeException if the metric is malformed.
+         */
+        abstract IMetric build(AggregatedPayload header);
+    }
+
+    private static class BundleBuilder {
+        private String tenantId;
+        private long timestamp;
+        private long flushInterval;
+
+        private final List<PendingMetric> pending = new ArrayList<PendingMetric>();
+        // converted last, so that a bundle rejected for another metric does not go through the excess enum check.
+        private final List<PendingMetric> pendingEnums = new ArrayList<PendingMetric>(0);
+        private final List<String> metricNames = new ArrayList<String>();
+
+        private void add(PendingMetric metric) {
+            pending.add(metric);
+            metricNames.add(metric.name);
+        }
+
+        private void addEnum(PendingMetric metric) {
+            pendingEnums.add(metric);
+            metricNames.add(metric.name);
+        }
+
+        private Bundle build() {
+            pending.addAll(pendingEnums);
+            return new Bundle(new AggregatedPayload(tenantId, timestamp, flushInterval), pending, metricNames);
+        }
+    }
+
+    /**
+     * One parsed bundle: its header, as an {@link AggregatedPayload} without metrics, and its metrics as they were
+     * read. The metrics are converted by {@link #getValidationErrors()}, and only if the header is valid; a metric
+     * that cannot be converted makes the whole bundle invalid.
+     */
+    public static class Bundle {
+        private final AggregatedPayload header;
+        private final List<PendingMetric> pending;
+        private final List<String> metricNames;
+        private List<String> errors;
+        private List<IMetric> metrics;
+
+        private Bundle(AggregatedPayload header, List<PendingMetric> pending, List<String> metricNames) {
+            this.header = header;
+            this.pending = pending;
+            this.metricNames = metricNames;
+        }
+
+        public String getTenantId() {
+            return header.getTenantId();
+        }
+
+        public long getTimestamp() {
+            return header.getTimestamp();
+        }
+
+        public long getFlushIntervalMillis() {
+            return header.getFlushIntervalMillis();
+        }
+
+        public List<String> getValidationErrors() {
+            if (errors == null) {
+                errors = header.getValidationErrors();
+                metrics = errors.isEmpty() ? convert(errors) : new ArrayList<IMetric>(0);
+            }
+            return errors;
+        }
+
+        private List<IMetric> convert(List<String> errors) {
+            List<IMetric> converted = new ArrayList<IMetric>(pending.size());
+            for (PendingMetric metric : pending) {
+                try {
+                    IMetric built = metric.build(header);
+                    if (built != null) {
+                        converted.add(built);
+                    }
+                } catch (RuntimeException ex) {
+                    errors.add(String.format("Invalid %s '%s': %s", metric.kind, metric.name,
+                            ex.getMessage() == null ? "missing or null field" : ex.getMessage()));
+                    return new ArrayList<IMetric>(0);
+                }
+            }
+            return converted;
+        }
+
+        public boolean hasDelayedMetrics(long ingestTime) {
+            return header.hasDelayedMetrics(ingestTime);
+        }
+
+        public long getDelayTime(long ingestTime) {
+            return header.getDelayTime(ingestTime);
+        }
+
+        public void markDelayMetricsReceived(long ingestTime) {
+            header.markDelayMetricsReceived(ingestTime);
+        }
+
+        /**
+         * @return the names of all metrics in the bundle, as sent.
+         */
+        public List<String> getAllMetricNames() {
+            return metricNames;
+        }
+
+        /**
+         * @return the converted metrics; empty if the bundle is not valid.
+         */
+        public Collection<IMetric> getMetrics() {
+            getValidationErrors();
+            return metrics;
+        }
+    }
+}
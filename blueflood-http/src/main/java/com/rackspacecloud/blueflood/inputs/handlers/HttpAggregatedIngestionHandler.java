@@ -22,7 +22,6 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.JsonParseException;
 import com.rackspacecloud.blueflood.http.DefaultHandler;
 import com.rackspacecloud.blueflood.http.HttpRequestHandler;
-import com.rackspacecloud.blueflood.inputs.formats.AggregatedPayload;
 import com.rackspacecloud.blueflood.io.Constants;
 import com.rackspacecloud.blueflood.tracker.Tracker;
 import com.rackspacecloud.blueflood.types.MetricsCollection;
@@ -30,12 +29,15 @@ import com.rackspacecloud.blueflood.utils.Clock;
 import com.rackspacecloud.blueflood.utils.DefaultClockImpl;
 import com.rackspacecloud.blueflood.utils.Metrics;
 import com.rackspacecloud.blueflood.utils.TimeValue;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
 
@@ -63,14 +65,13 @@ public class HttpAggregatedIngestionHandler implements HttpRequestHandler {
 
         final Timer.Context timerContext = handlerTimer.time();
 
-        // this is all JSON.
-        final String body = request.content().toString(Constants.DEFAULT_CHARSET);
         try {
             // block until things get ingested.
             requestCount.inc();
             MetricsCollection collection = new MetricsCollection();
 
-            AggregatedPayload payload = AggregatedPayload.create( body );
+            // this is all JSON, parsed straight off the request buffer.
+            AggregatedPayloadReader.Bundle payload = AggregatedPayloadReader.read( contentReader( request ) );
 
             long ingestTime = clock.now().getMillis();
             if (payload.hasDelayedMetrics(ingestTime)) {
@@ -84,7 +85,7 @@ public class HttpAggregatedIngestionHandler implements HttpRequestHandler {
             List<String> errors = payload.getValidationErrors();
             if ( errors.isEmpty() ) {
                 // no validation errors, process bundle
-                collection.add( PreaggregateConversions.buildMetricsCollection( payload ) );
+                collection.add( payload.getMetrics() );
                 ListenableFuture<List<Boolean>> futures = processor.apply( collection );
                 List<Boolean> persisteds = futures.get( timeout.getValue(), timeout.getUnit() );
                 for ( Boolean persisted : persisteds ) {
@@ -104,13 +105,13 @@ public class HttpAggregatedIngestionHandler implements HttpRequestHandler {
             }
 
         } catch (JsonParseException ex) {
-            log.debug(String.format("BAD JSON: %s", body));
+            log.debug(String.format("BAD JSON: %s", request.content().toString(Constants.DEFAULT_CHARSET)));
             log.error(ex.getMessage(), ex);
             DefaultHandler.sendResponse(ctx, request, ex.getMessage(), HttpResponseStatus.BAD_REQUEST);
         } catch (TimeoutException ex) {
             DefaultHandler.sendResponse(ctx, request, "Timed out persisting metrics", HttpResponseStatus.ACCEPTED);
         } catch (Exception ex) {
-            log.debug(String.format("JSON request payload: %s", body));
+            log.debug(String.format("JSON request payload: %s", request.content().toString(Constants.DEFAULT_CHARSET)));
             log.error("Error saving data", ex);
             DefaultHandler.sendResponse(ctx, request, "Internal error saving data", HttpResponseStatus.INTERNAL_SERVER_ERROR);
         } finally {
@@ -118,4 +119,11 @@ public class HttpAggregatedIngestionHandler implements HttpRequestHandler {
             timerContext.stop();
         }
     }
+
+    /**
+     * @return a reader over the request content that leaves the content itself unread.
+     */
+    static Reader contentReader(FullHttpRequest request) {
+        return new InputStreamReader(new ByteBufInputStream(request.content().duplicate()), Constants.DEFAULT_CHARSET);
+    }
 }
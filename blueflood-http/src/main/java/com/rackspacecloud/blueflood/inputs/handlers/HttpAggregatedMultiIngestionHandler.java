@@ -65,12 +65,12 @@ public class HttpAggregatedMultiIngestionHandler implements HttpRequestHandler {
         final Timer.Context timerContext = handlerTimer.time();
         long ingestTime = clock.now().getMillis();
 
-        // this is all JSON.
-        final String body = request.content().toString(Constants.DEFAULT_CHARSET);
         try {
             // block until things get ingested.
             requestCount.inc();
-            List<AggregatedPayload> bundleList = createBundleList(body);
+            // this is all JSON, parsed straight off the request buffer.
+            List<AggregatedPayloadReader.Bundle> bundleList = AggregatedPayloadReader.readMulti(
+                    HttpAggregatedIngestionHandler.contentReader(request));
 
             if (bundleList.size() > 0) {
                 // has aggregated metric bundle in body
@@ -79,12 +79,12 @@ public class HttpAggregatedMultiIngestionHandler implements HttpRequestHandler {
                 List<String> errors = new ArrayList<String>();
 
                 // for each metric bundle
-                for (AggregatedPayload bundle : bundleList) {
+                for (AggregatedPayloadReader.Bundle bundle : bundleList) {
                     // validate, convert, and add to collection
                     List<String> bundleValidationErrors = bundle.getValidationErrors();
                     if (bundleValidationErrors.isEmpty()) {
                         // no validation error, add to collection
-                        collection.add(PreaggregateConversions.buildMetricsCollection(bundle));
+                        collection.add(bundle.getMetrics());
                     }
                     else {
                         // failed validation, add to error
@@ -138,13 +138,13 @@ public class HttpAggregatedMultiIngestionHandler implements HttpRequestHandler {
                 return;
             }
         } catch (JsonParseException ex) {
-            log.debug(String.format("BAD JSON: %s", body));
+            log.debug(String.format("BAD JSON: %s", request.content().toString(Constants.DEFAULT_CHARSET)));
             log.error(ex.getMessage(), ex);
             DefaultHandler.sendResponse(ctx, request, ex.getMessage(), HttpResponseStatus.BAD_REQUEST);
         } catch (TimeoutException ex) {
             DefaultHandler.sendResponse(ctx, request, "Timed out persisting metrics", HttpResponseStatus.ACCEPTED);
         } catch (Exception ex) {
-            log.debug(String.format("BAD JSON: %s", body));
+            log.debug(String.format("BAD JSON: %s", request.content().toString(Constants.DEFAULT_CHARSET)));
             log.error("Other exception while trying to parse content", ex);
             DefaultHandler.sendResponse(ctx, request, "Failed parsing content", HttpResponseStatus.INTERNAL_SERVER_ERROR);
         } finally {
@@ -25,13 +25,13 @@ import com.rackspacecloud.blueflood.types.*;
 import com.rackspacecloud.blueflood.utils.Metrics;
 import com.rackspacecloud.blueflood.utils.TimeValue;
 
-import java.io.IOError;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +42,7 @@ public class PreaggregateConversions {
     
     // todo: punt on TTL
     private static final TimeValue DEFAULT_TTL = new TimeValue(48, TimeUnit.HOURS);
-    private static final String NAME_DELIMITER = "//.";
+    private static final Pattern NAME_DELIMITER = Pattern.compile("//.");
 
     // NOTE: when you create objects from gson-converted json, you need to make sure to resolve numbers that
     // are not accessed via `doubleValue()` or `longValue()`, i.e., they are treated as `Number` instances.
@@ -63,17 +63,7 @@ public class PreaggregateConversions {
     public static Collection<PreaggregatedMetric> convertCounters(String tenant, long timestamp, long flushIntervalMillis, Collection<BluefloodCounter> counters) {
         List<PreaggregatedMetric> list = new ArrayList<PreaggregatedMetric>(counters.size());
         for (BluefloodCounter counter : counters) {
-            Locator locator = Locator.createLocatorFromPathComponents(tenant, counter.getName().split(NAME_DELIMITER, -1));
-            // flushIntervalMillis could be zero (if not specified in the statsD config).
-            long sampleCount = flushIntervalMillis > 0
-                    ? (long)(counter.getRate().doubleValue() * ((double)flushIntervalMillis/1000d))
-                    : 1;
-            Rollup rollup = new BluefloodCounterRollup()
-                    .withCount(resolveNumber(counter.getValue()))
-                    .withRate(counter.getRate().doubleValue())
-                    .withSampleCount((int)sampleCount);
-            PreaggregatedMetric metric = new PreaggregatedMetric(timestamp, locator, DEFAULT_TTL, rollup);
-            list.add(metric);
+            list.add(buildCounter(tenant, timestamp, flushIntervalMillis, counter.getName(), counter.getValue(), counter.getRate()));
         }
         return list;
     }
@@ -81,16 +71,7 @@ public class PreaggregateConversions {
     public static Collection<PreaggregatedMetric> convertGauges(String tenant, long timestamp, Collection<BluefloodGauge> gauges) {
         List<PreaggregatedMetric> list = new ArrayList<PreaggregatedMetric>(gauges.size());
         for (BluefloodGauge gauge : gauges) {
-            Locator locator = Locator.createLocatorFromPathComponents(tenant, gauge.getName().split(NAME_DELIMITER, -1));
-            Points<SimpleNumber> points = new Points<SimpleNumber>();
-            points.add(new Points.Point<SimpleNumber>(timestamp, new SimpleNumber(resolveNumber(gauge.getValue()))));
-            try {
-                Rollup rollup = BluefloodGaugeRollup.buildFromRawSamples(points);
-                PreaggregatedMetric metric = new PreaggregatedMetric(timestamp, locator, DEFAULT_TTL, rollup);
-                list.add(metric);
-            } catch (IOException ex) {
-                throw new IOError(ex);
-            }   
+            list.add(buildGauge(tenant, timestamp, gauge.getName(), gauge.getValue()));
         }
         return list;
     }
@@ -98,38 +79,26 @@ public class PreaggregateConversions {
     public static Collection<PreaggregatedMetric> convertTimers(String tenant, long timestamp, Collection<BluefloodTimer> timers) {
         List<PreaggregatedMetric> list = new ArrayList<PreaggregatedMetric>(timers.size());
         for (BluefloodTimer timer : timers) {
-            Locator locator = Locator.createLocatorFromPathComponents(tenant, timer.getName().split(NAME_DELIMITER, -1));
-            BluefloodTimerRollup rollup = new BluefloodTimerRollup()
-                    .withCount(timer.getCount().longValue())
-                    .withSampleCount(1)
-                    .withAverage(resolveNumber(timer.getAvg() == null ? 0.0d : timer.getAvg()))
-                    .withMaxValue(resolveNumber(timer.getMax() == null ? 0.0d : timer.getMax()))
-                    .withMinValue(resolveNumber(timer.getMin() == null ? 0.0d : timer.getMin()))
-                    .withCountPS(timer.getRate() == null ? 0.0d : timer.getRate().doubleValue())
-                    .withSum(timer.getSum() == null ? 0L : timer.getSum().doubleValue())
-                    .withVariance(Math.pow(timer.getStd() == null ? 0.0d : timer.getStd().doubleValue(), 2d));
+            BluefloodTimerRollup rollup = buildTimerRollup(timer.getCount(), timer.getRate(), timer.getMin(),
+                    timer.getMax(), timer.getSum(), timer.getAvg(), timer.getStd());
             for (Map.Entry<String, Percentile> entry : timer.getPercentiles().entrySet()) {
                 // throw away max and sum.
                 if (entry.getValue().getAvg() != null) {
                     rollup.setPercentile(entry.getKey(), resolveNumber(entry.getValue().getAvg()));
                 }
             }
-            PreaggregatedMetric metric = new PreaggregatedMetric(timestamp, locator, DEFAULT_TTL, rollup);
-            list.add(metric);
+            if (!timer.getDistribution().isEmpty()) {
+                rollup.withSketch(toSketch(timer.getDistribution()));
+            }
+            list.add(buildTimer(tenant, timestamp, timer.getName(), rollup));
         }
         return list;
     }
-    
+
     public static Collection<PreaggregatedMetric> convertSets(String tenant, long timestamp, Collection<BluefloodSet> sets) {
         List<PreaggregatedMetric> list = new ArrayList<PreaggregatedMetric>(sets.size());
         for (BluefloodSet set : sets) {
-            Locator locator = Locator.createLocatorFromPathComponents(tenant, set.getName().split(NAME_DELIMITER, -1));
-            BluefloodSetRollup rollup = new BluefloodSetRollup();
-            for (String value : set.getValues()) {
-                rollup = rollup.withObject(value);
-            }
-            PreaggregatedMetric metric = new PreaggregatedMetric(timestamp, locator, DEFAULT_TTL, rollup);
-            list.add(metric);
+            list.add(buildSet(tenant, timestamp, set.getName(), Arrays.asList(set.getValues())));
         }
         return list;
     }
@@ -137,19 +106,112 @@ public class PreaggregateConversions {
     public static Collection<PreaggregatedMetric> convertEnums(String tenant, long timestamp, Collection<BluefloodEnum> enums) {
         List<PreaggregatedMetric> list = new ArrayList<PreaggregatedMetric>(enums.size());
         for (BluefloodEnum en : enums) {
-            Locator locator = Locator.createLocatorFromPathComponents(tenant, en.getName().split(NAME_DELIMITER, -1));
-            if (!ExcessEnumReader.getInstance().isInExcessEnumMetrics(locator)) {
-                BluefloodEnumRollup rollup = new BluefloodEnumRollup();
-                rollup = rollup.withEnumValue(en.getValue(), 1L);
-                PreaggregatedMetric metric = new PreaggregatedMetric(timestamp, locator, DEFAULT_TTL, rollup);
+            PreaggregatedMetric metric = buildEnum(tenant, timestamp, en.getName(), en.getValue());
+            if (metric != null) {
                 list.add(metric);
-            } else {
-                log.warn("Skipping Ingest of Excess Enum Metric " + locator);
-                excessEnumIngestedMeter.mark();
             }
         }
         return list;
     }
+
+    // the single metric conversions below are shared by the convert*() methods and AggregatedPayloadReader, which
+    // calls them while parsing.
+
+    /**
+     * @return the locator of a statsd metric name. Each "//" and the character following it separate path
+     * components; most names contain none, and are used as they are.
+     */
+    static Locator locatorFor(String tenant, String name) {
+        if (name.indexOf("//") < 0) {
+            return Locator.createLocatorFromPathComponents(tenant, name);
+        }
+        return Locator.createLocatorFromPathComponents(tenant, NAME_DELIMITER.split(name, -1));
+    }
+
+    static PreaggregatedMetric buildCounter(String tenant, long timestamp, long flushIntervalMillis, String name, Number value, Number rate) {
+        Locator locator = locatorFor(tenant, name);
+        // flushIntervalMillis could be zero (if not specified in the statsD config).
+        long sampleCount = flushIntervalMillis > 0
+                ? (long)(rate.doubleValue() * ((double)flushIntervalMillis/1000d))
+                : 1;
+        Rollup rollup = new BluefloodCounterRollup()
+                .withCount(resolveNumber(value))
+                .withRate(rate.doubleValue())
+                .withSampleCount((int)sampleCount);
+        return new PreaggregatedMetric(timestamp, locator, DEFAULT_TTL, rollup);
+    }
+
+    static PreaggregatedMetric buildGauge(String tenant, long timestamp, String name, Number value) {
+        Locator locator = locatorFor(tenant, name);
+        Rollup rollup = BluefloodGaugeRollup.buildFromRawSample(timestamp, resolveNumber(value));
+        return new PreaggregatedMetric(timestamp, locator, DEFAULT_TTL, rollup);
+    }
+
+    /**
+     * @return a timer rollup without percentiles or sketch, which the caller adds.
+     */
+    static BluefloodTimerRollup buildTimerRollup(Number count, Number rate, Number min, Number max, Number sum, Number avg, Number std) {
+        return new BluefloodTimerRollup()
+                .withCount(count.longValue())
+                .withSampleCount(1)
+                .withAverage(resolveNumber(avg == null ? 0.0d : avg))
+                .withMaxValue(resolveNumber(max == null ? 0.0d : max))
+                .withMinValue(resolveNumber(min == null ? 0.0d : min))
+                .withCountPS(rate == null ? 0.0d : rate.doubleValue())
+                .withSum(sum == null ? 0L : sum.doubleValue())
+                .withVariance(Math.pow(std == null ? 0.0d : std.doubleValue(), 2d));
+    }
+
+    static PreaggregatedMetric buildTimer(String tenant, long timestamp, String name, BluefloodTimerRollup rollup) {
+        return new PreaggregatedMetric(timestamp, locatorFor(tenant, name), DEFAULT_TTL, rollup);
+    }
+
+    // an invalid distribution throws IllegalArgumentException, which AggregatedPayloadReader reports as a validation
+    // error of the bundle.
+    static QuantileSketch toSketch(Map<String, Number> distribution) {
+        QuantileSketch sketch = new QuantileSketch();
+        for (Map.Entry<String, Number> entry : distribution.entrySet()) {
+            double timing;
+            try {
+                timing = Double.parseDouble(entry.getKey());
+            } catch (NumberFormatException ex) {
+                timing = Double.NaN;
+            }
+            // also rejects NaN.
+            if (!(timing >= 0) || Double.isInfinite(timing)) {
+                throw new IllegalArgumentException("Invalid timing in timer distribution: " + entry.getKey());
+            }
+            if (entry.getValue() == null) {
+                throw new IllegalArgumentException("Missing count in timer distribution for timing " + entry.getKey());
+            }
+            sketch.add(timing, resolveNumber(entry.getValue()).longValue());
+        }
+        return sketch;
+    }
+
+    static PreaggregatedMetric buildSet(String tenant, long timestamp, String name, Iterable<String> values) {
+        Locator locator = locatorFor(tenant, name);
+        BluefloodSetRollup rollup = new BluefloodSetRollup();
+        for (String value : values) {
+            rollup = rollup.withObject(value);
+        }
+        return new PreaggregatedMetric(timestamp, locator, DEFAULT_TTL, rollup);
+    }
+
+    /**
+     * @return the enum metric, or null if the locator is known to have too many enum values.
+     */
+    static PreaggregatedMetric buildEnum(String tenant, long timestamp, String name, String value) {
+        Locator locator = locatorFor(tenant, name);
+        if (ExcessEnumReader.getInstance().isInExcessEnumMetrics(locator)) {
+            log.warn("Skipping Ingest of Excess Enum Metric " + locator);
+            excessEnumIngestedMeter.mark();
+            return null;
+        }
+        BluefloodEnumRollup rollup = new BluefloodEnumRollup();
+        rollup = rollup.withEnumValue(value, 1L);
+        return new PreaggregatedMetric(timestamp, locator, DEFAULT_TTL, rollup);
+    }
     
     // resolve a number to a Long or double.
     public static Number resolveNumber(Number n) {
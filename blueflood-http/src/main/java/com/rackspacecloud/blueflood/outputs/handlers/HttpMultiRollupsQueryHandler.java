@@ -111,7 +111,7 @@ public class HttpMultiRollupsQueryHandler extends RollupHandler implements HttpR
         try {
             RollupsQueryParams params = PlotRequestParser.parseParams(requestWithParams.getQueryParams());
             Map<Locator, MetricData> results = getRollupByGranularity(tenantId, locators, params.getRange().getStart(), params.getRange().getStop(), params.getGranularity(tenantId));
-            JSONObject metrics = serializer.transformRollupData(results, params.getStats());
+            JSONObject metrics = serializer.transformRollupData(results, params.getStats(), params.getQuantiles());
             final JsonElement element = parser.parse(metrics.toString());
             final String jsonStringRep = gson.toJson(element);
             sendResponse(ctx, request, jsonStringRep, HttpResponseStatus.OK);
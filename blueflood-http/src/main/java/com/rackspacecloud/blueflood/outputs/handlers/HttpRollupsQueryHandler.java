@@ -68,8 +68,9 @@ public class HttpRollupsQueryHandler extends RollupHandler
                                       long from,
                                       long to,
                                       int points,
-                                      Set<MetricStat> stats) throws SerializationException {
-        return serializer.transformRollupData(GetDataByPoints(tenantId, metric, from, to, points), stats);
+                                      Set<MetricStat> stats,
+                                      List<Double> quantiles) throws SerializationException {
+        return serializer.transformRollupData(GetDataByPoints(tenantId, metric, from, to, points), stats, quantiles);
     }
 
     private JSONObject GetDataByResolution(String tenantId,
@@ -77,8 +78,10 @@ public class HttpRollupsQueryHandler extends RollupHandler
                                       long from,
                                       long to,
                                       Resolution resolution,
-                                      Set<MetricStat> stats) throws SerializationException {
-        return serializer.transformRollupData(GetDataByResolution(tenantId, metric, from, to, resolution), stats);
+                                      Set<MetricStat> stats,
+                                      List<Double> quantiles) throws SerializationException {
+        return serializer.transformRollupData(GetDataByResolution(tenantId, metric, from, to, resolution), stats,
+                quantiles);
     }
 
     @Override
@@ -129,10 +132,11 @@ public class HttpRollupsQueryHandler extends RollupHandler
             JSONObject metricData;
             if (params.isGetByPoints()) {
                 metricData = GetDataByPoints(tenantId, metricName, params.getRange().getStart(),
-                        params.getRange().getStop(), params.getPoints(), params.getStats());
+                        params.getRange().getStop(), params.getPoints(), params.getStats(), params.getQuantiles());
             } else if (params.isGetByResolution()) {
                 metricData = GetDataByResolution(tenantId, metricName, params.getRange().getStart(),
-                        params.getRange().getStop(), params.getResolution(), params.getStats());
+                        params.getRange().getStop(), params.getResolution(), params.getStats(),
+                        params.getQuantiles());
             } else {
                 throw new InvalidRequestException("Invalid rollups query. Neither points nor resolution specified.");
             }
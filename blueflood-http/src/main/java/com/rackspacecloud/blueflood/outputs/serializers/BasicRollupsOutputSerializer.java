@@ -29,6 +29,13 @@ import java.util.Set;
 public interface BasicRollupsOutputSerializer<T> {
     public T transformRollupData(MetricData metricData, Set<MetricStat> filterStats) throws SerializationException;
 
+    /**
+     * Like {@link #transformRollupData(MetricData, Set)}, and also returns the given quantiles of timers that carry
+     * a sketch.
+     */
+    public T transformRollupData(MetricData metricData, Set<MetricStat> filterStats, List<Double> quantiles)
+            throws SerializationException;
+
     public static enum MetricStat {
         AVERAGE("average") {
             @Override
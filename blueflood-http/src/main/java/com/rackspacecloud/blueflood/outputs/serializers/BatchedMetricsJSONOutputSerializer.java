@@ -24,6 +24,8 @@ import com.rackspacecloud.blueflood.utils.Util;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,6 +35,12 @@ public class BatchedMetricsJSONOutputSerializer extends JSONBasicRollupsOutputSe
     @Override
     public JSONObject transformRollupData(Map<Locator, MetricData> metricData, Set<MetricStat> filterStats)
             throws SerializationException {
+        return transformRollupData(metricData, filterStats, Collections.<Double>emptyList());
+    }
+
+    @Override
+    public JSONObject transformRollupData(Map<Locator, MetricData> metricData, Set<MetricStat> filterStats,
+                                          List<Double> quantiles) throws SerializationException {
         final JSONObject globalJSON = new JSONObject();
         final JSONArray metricsArray = new JSONArray();
 
@@ -43,7 +51,7 @@ public class BatchedMetricsJSONOutputSerializer extends JSONBasicRollupsOutputSe
             singleMetricJSON.put("unit", one.getValue().getUnit() == null ? Util.UNKNOWN : one.getValue().getUnit());
             singleMetricJSON.put("type", one.getValue().getType());
             Set<MetricStat> oneFilterStats = fixFilterStats(one.getValue(), filterStats);
-            JSONArray values = transformDataToJSONArray(one.getValue(), oneFilterStats);
+            JSONArray values = transformDataToJSONArray(one.getValue(), oneFilterStats, quantiles);
             singleMetricJSON.put("data", values);
             metricsArray.add(singleMetricJSON);
         }
@@ -20,10 +20,14 @@ import com.rackspacecloud.blueflood.exceptions.SerializationException;
 import com.rackspacecloud.blueflood.outputs.formats.MetricData;
 import com.rackspacecloud.blueflood.types.Locator;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public interface BatchedMetricsOutputSerializer<T> extends BasicRollupsOutputSerializer<T> {
     public T transformRollupData(Map<Locator, MetricData> metricData, Set<MetricStat> filterStats)
             throws SerializationException;
+
+    public T transformRollupData(Map<Locator, MetricData> metricData, Set<MetricStat> filterStats,
+                                 List<Double> quantiles) throws SerializationException;
 }
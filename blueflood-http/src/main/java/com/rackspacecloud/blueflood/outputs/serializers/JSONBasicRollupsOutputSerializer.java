@@ -26,6 +26,8 @@ import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -57,11 +59,17 @@ public class JSONBasicRollupsOutputSerializer implements BasicRollupsOutputSeria
     @Override
     public JSONObject transformRollupData(MetricData metricData, Set<MetricStat> filterStats)
             throws SerializationException {
+        return transformRollupData(metricData, filterStats, Collections.<Double>emptyList());
+    }
+
+    @Override
+    public JSONObject transformRollupData(MetricData metricData, Set<MetricStat> filterStats, List<Double> quantiles)
+            throws SerializationException {
         final JSONObject globalJSON = new JSONObject();
         final JSONObject metaObject = new JSONObject();
         filterStats = fixFilterStats(metricData, filterStats);
 
-        final JSONArray valuesArray = transformDataToJSONArray(metricData, filterStats);
+        final JSONArray valuesArray = transformDataToJSONArray(metricData, filterStats, quantiles);
 
         metaObject.put("count", valuesArray.size());
         metaObject.put("limit", null);
@@ -74,20 +82,20 @@ public class JSONBasicRollupsOutputSerializer implements BasicRollupsOutputSeria
         return globalJSON;
     }
 
-    protected JSONArray transformDataToJSONArray(MetricData metricData, Set<MetricStat> filterStats)
-            throws SerializationException {
+    protected JSONArray transformDataToJSONArray(MetricData metricData, Set<MetricStat> filterStats,
+                                                 List<Double> quantiles) throws SerializationException {
         Points points = metricData.getData();
         final JSONArray data = new JSONArray();
         final Set<Map.Entry<Long, Points.Point>> dataPoints = points.getPoints().entrySet();
         for (Map.Entry<Long, Points.Point> point : dataPoints) {
-            data.add(toJSON(point.getKey(), point.getValue(), metricData.getUnit(), filterStats));
+            data.add(toJSON(point.getKey(), point.getValue(), metricData.getUnit(), filterStats, quantiles));
         }
 
         return data;
     }
 
-    private JSONObject toJSON(long timestamp, Points.Point point, String unit, Set<MetricStat> filterStats)
-            throws SerializationException {
+    private JSONObject toJSON(long timestamp, Points.Point point, String unit, Set<MetricStat> filterStats,
+                              List<Double> quantiles) throws SerializationException {
         final JSONObject  object = new JSONObject();
         object.put("timestamp", timestamp);
 
@@ -120,6 +128,9 @@ public class JSONBasicRollupsOutputSerializer implements BasicRollupsOutputSeria
             BluefloodTimerRollup rollup = (BluefloodTimerRollup)point.getData();
             numPoints += rollup.getCount();
             filterStatsObject = getFilteredStatsForRollup(rollup, filterStats);
+            if (!quantiles.isEmpty()) {
+                filterStatsObject.put("quantiles", getQuantiles(rollup, quantiles));
+            }
         } else if (point.getData() instanceof BluefloodCounterRollup) {
             BluefloodCounterRollup rollup = (BluefloodCounterRollup)point.getData();
             numPoints += rollup.getCount().longValue();
@@ -176,6 +187,15 @@ public class JSONBasicRollupsOutputSerializer implements BasicRollupsOutputSeria
         return filteredObject;
     }
     
+    // a quantile is null if the timer has no sketch to compute it from.
+    private JSONObject getQuantiles(BluefloodTimerRollup rollup, List<Double> quantiles) {
+        final JSONObject quantilesObject = new JSONObject();
+        for (Double quantile : quantiles) {
+            quantilesObject.put(quantile.toString(), rollup.getQuantile(quantile));
+        }
+        return quantilesObject;
+    }
+
     private JSONObject getFilteredStatsForFullRes(Object rawSample, Set<MetricStat> filterStats) {
         final JSONObject filteredObject = new JSONObject();
         if (rawSample instanceof String || rawSample instanceof Boolean) {
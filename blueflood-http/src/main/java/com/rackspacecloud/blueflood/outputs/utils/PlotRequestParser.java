@@ -74,6 +74,7 @@ public class PlotRequestParser {
         List<String> from = params.get("from");
         List<String> to = params.get("to");
         List<String> select = params.get("select");
+        List<String> quantile = params.get("quantile");
 
         if (points == null && res == null) {
             throw new InvalidRequestException("Either 'points' or 'resolution' is required.");
@@ -97,18 +98,48 @@ public class PlotRequestParser {
         }
 
         Set<BasicRollupsOutputSerializer.MetricStat> stats = getStatsToFilter(select);
+        List<Double> quantiles = getQuantiles(quantile);
 
         if (points != null) {
             try {
-                return new RollupsQueryParams(fromTime, toTime, Integer.parseInt(points.get(0)), stats);
+                return new RollupsQueryParams(fromTime, toTime, Integer.parseInt(points.get(0)), stats)
+                        .withQuantiles(quantiles);
             } catch (NumberFormatException ex) {
                 throw new InvalidRequestException("'points' param must be a valid integer");
             }
         } else {
-            return new RollupsQueryParams(fromTime, toTime, Resolution.fromString(res.get(0)), stats);
+            return new RollupsQueryParams(fromTime, toTime, Resolution.fromString(res.get(0)), stats)
+                    .withQuantiles(quantiles);
         }
     }
 
+    /**
+     * @return the quantiles of quantile=0.5,0.999 (or quantile=0.5&quantile=0.999), in the order given.
+     */
+    public static List<Double> getQuantiles(List<String> quantile) throws InvalidRequestException {
+        if (quantile == null || quantile.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Double> quantiles = new ArrayList<Double>();
+        for (String param : quantile) {
+            for (String value : param.split(",")) {
+                double q;
+                try {
+                    q = Double.parseDouble(value.trim());
+                } catch (NumberFormatException ex) {
+                    throw new InvalidRequestException("Invalid parameter: quantile=" + value);
+                }
+                if (!(q >= 0 && q <= 1)) {
+                    throw new InvalidRequestException("'quantile' param must be between 0 and 1: " + value);
+                }
+                if (!quantiles.contains(q)) {
+                    quantiles.add(q);
+                }
+            }
+        }
+        return quantiles;
+    }
+
     public static Set<BasicRollupsOutputSerializer.MetricStat> getStatsToFilter(List<String> select) {
         if (select == null || select.isEmpty()) {
             return DEFAULT_STATS;
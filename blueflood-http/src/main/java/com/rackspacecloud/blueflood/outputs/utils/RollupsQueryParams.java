@@ -21,6 +21,8 @@ import com.rackspacecloud.blueflood.rollup.Granularity;
 import com.rackspacecloud.blueflood.types.Range;
 import com.rackspacecloud.blueflood.types.Resolution;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 public class RollupsQueryParams {
@@ -29,6 +31,7 @@ public class RollupsQueryParams {
     private final Range range;
     private final Set<BasicRollupsOutputSerializer.MetricStat> stats;
     private boolean isPoints = false;
+    private List<Double> quantiles = Collections.emptyList();
 
     private RollupsQueryParams(long from, long to, Set<BasicRollupsOutputSerializer.MetricStat> stats) {
         if (from >= to) {
@@ -52,6 +55,14 @@ public class RollupsQueryParams {
         this.isPoints = false;
     }
 
+    /**
+     * @param quantiles the quantiles, in [0, 1], to return for timers that carry a sketch.
+     */
+    public RollupsQueryParams withQuantiles(List<Double> quantiles) {
+        this.quantiles = quantiles;
+        return this;
+    }
+
     public boolean isGetByPoints() {
         return isPoints;
     }
@@ -83,4 +94,8 @@ public class RollupsQueryParams {
     public Set<BasicRollupsOutputSerializer.MetricStat> getStats() {
         return stats;
     }
+
+    public List<Double> getQuantiles() {
+        return quantiles;
+    }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.inputs.handlers;
+
+import com.google.gson.JsonSyntaxException;
+import com.rackspacecloud.blueflood.inputs.formats.AggregatedPayload;
+import com.rackspacecloud.blueflood.types.BluefloodCounterRollup;
+import com.rackspacecloud.blueflood.types.IMetric;
+import com.rackspacecloud.blueflood.types.Locator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.rackspacecloud.blueflood.TestUtils.getJsonFromFile;
+import static org.junit.Assert.*;
+
+public class AggregatedPayloadReaderTest {
+
+    private final String postfix = ".post";
+    // bundles are only converted once their timestamp has been validated.
+    private final long now = System.currentTimeMillis();
+
+    @Test
+    public void testMatchesGsonConversion() throws IOException {
+        String json = getJsonFromFile("sample_payload.json", postfix);
+        AggregatedPayload payload = AggregatedPayload.create(json);
+        AggregatedPayloadReader.Bundle bundle = AggregatedPayloadReader.read(json);
+
+        assertEquals(payload.getTenantId(), bundle.getTenantId());
+        assertEquals(payload.getTimestamp(), bundle.getTimestamp());
+        assertEquals(payload.getFlushIntervalMillis(), bundle.getFlushIntervalMillis());
+        assertEquals(payload.getAllMetricNames().size(), bundle.getAllMetricNames().size());
+        assertSameMetrics(PreaggregateConversions.buildMetricsCollection(payload), bundle.getMetrics());
+    }
+
+    @Test
+    public void testMultiMatchesGsonConversion() throws IOException {
+        String json = getJsonFromFile("sample_multi_aggregated_payload.json", postfix);
+        List<AggregatedPayload> payloads = HttpAggregatedMultiIngestionHandler.createBundleList(json);
+        List<AggregatedPayloadReader.Bundle> bundles = AggregatedPayloadReader.readMulti(json);
+
+        assertEquals(3, bundles.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            assertEquals(payloads.get(i).getTenantId(), bundles.get(i).getTenantId());
+            assertSameMetrics(PreaggregateConversions.buildMetricsCollection(payloads.get(i)), bundles.get(i).getMetrics());
+        }
+    }
+
+    @Test
+    public void testHeaderAfterMetrics() {
+        String json = "{\"counters\":[{\"name\":\"c\",\"value\":10,\"rate\":2}]," +
+                "\"gauges\":[{\"name\":\"g\",\"value\":1.5}]," +
+                "\"tenantId\":\"t\",\"timestamp\":" + now + ",\"flushInterval\":15000}";
+        AggregatedPayloadReader.Bundle bundle = AggregatedPayloadReader.read(json);
+
+        Map<String, IMetric> metrics = byKey(bundle.getMetrics());
+        assertEquals(2, metrics.size());
+        IMetric counter = metrics.get("BluefloodCounterRollup:t.c");
+        assertEquals(now, counter.getCollectionTime());
+        assertEquals(30, ((BluefloodCounterRollup) counter.getMetricValue()).getSampleCount());
+        assertNotNull(metrics.get("BluefloodGaugeRollup:t.g"));
+    }
+
+    @Test
+    public void testNameDelimiter() {
+        String json = "{\"tenantId\":\"t\",\"timestamp\":" + now + ",\"gauges\":[" +
+                "{\"name\":\"a.b\",\"value\":1},{\"name\":\"a//.b//xc\",\"value\":1}]}";
+        AggregatedPayloadReader.Bundle bundle = AggregatedPayloadReader.read(json);
+
+        Map<String, IMetric> metrics = byKey(bundle.getMetrics());
+        assertNotNull(metrics.get("BluefloodGaugeRollup:t.a.b"));
+        assertNotNull(metrics.get("BluefloodGaugeRollup:t.a.b.c"));
+        assertEquals(Locator.createLocatorFromPathComponents("t", "a", "b", "c"),
+                PreaggregateConversions.locatorFor("t", "a//.b//xc"));
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testMalformedJson() {
+        AggregatedPayloadReader.read("{\"tenantId\":\"t\",\"gauges\":[{\"name\":\"a\"");
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testWrongFieldType() {
+        AggregatedPayloadReader.read("{\"tenantId\":\"t\",\"timestamp\":1000,\"gauges\":[{\"name\":\"a\",\"value\":\"x\"}]}");
+    }
+
+    @Test
+    public void testMalformedMetricsInvalidateOnlyTheirBundle() {
+        String json = "[" +
+                "{\"tenantId\":\"good\",\"timestamp\":" + now + ",\"gauges\":[{\"name\":\"g\",\"value\":1}]}," +
+                "{\"tenantId\":\"nullgauge\",\"timestamp\":" + now + ",\"gauges\":[{\"name\":\"g\",\"value\":null}]}," +
+                "{\"tenantId\":\"notimings\",\"timestamp\":" + now + ",\"timers\":[{\"name\":\"t\",\"count\":1," +
+                        "\"distribution\":{\"fast\":1}}]}," +
+                "{\"tenantId\":\"nocount\",\"timestamp\":" + now + ",\"timers\":[{\"name\":\"t\"}]}" +
+                "]";
+        List<AggregatedPayloadReader.Bundle> bundles = AggregatedPayloadReader.readMulti(json);
+        assertEquals(4, bundles.size());
+
+        assertTrue(bundles.get(0).getValidationErrors().isEmpty());
+        assertEquals(1, bundles.get(0).getMetrics().size());
+        for (AggregatedPayloadReader.Bundle bad : bundles.subList(1, 4)) {
+            assertEquals(bad.getTenantId(), 1, bad.getValidationErrors().size());
+            assertTrue(bad.getMetrics().isEmpty());
+        }
+        assertTrue(bundles.get(1).getValidationErrors().get(0).startsWith("Invalid gauge 'g'"));
+        assertEquals("Invalid timer 't': Invalid timing in timer distribution: fast",
+                bundles.get(2).getValidationErrors().get(0));
+    }
+
+    @Test
+    public void testRejectedBundleIsNotConverted() {
+        String json = "{\"tenantId\":\"t\",\"timestamp\":1000,\"gauges\":[{\"name\":\"g\",\"value\":null}]}";
+        AggregatedPayloadReader.Bundle bundle = AggregatedPayloadReader.read(json);
+
+        // only the timestamp is reported; the malformed gauge is never looked at.
+        assertEquals(1, bundle.getValidationErrors().size());
+        assertTrue(bundle.getValidationErrors().get(0).startsWith("'timestamp'"));
+        assertTrue(bundle.getMetrics().isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMultiRequiresArray() {
+        AggregatedPayloadReader.readMulti("{\"tenantId\":\"t\"}");
+    }
+
+    private static void assertSameMetrics(Collection<IMetric> expected, Collection<IMetric> actual) {
+        Map<String, IMetric> expectedByKey = byKey(expected);
+        Map<String, IMetric> actualByKey = byKey(actual);
+        assertEquals(expectedByKey.keySet(), actualByKey.keySet());
+        for (Map.Entry<String, IMetric> entry : expectedByKey.entrySet()) {
+            IMetric metric = actualByKey.get(entry.getKey());
+            assertEquals(entry.getValue().getCollectionTime(), metric.getCollectionTime());
+            assertEquals(entry.getKey(), entry.getValue().getMetricValue(), metric.getMetricValue());
+        }
+    }
+
+    private static Map<String, IMetric> byKey(Collection<IMetric> metrics) {
+        Map<String, IMetric> map = new HashMap<String, IMetric>();
+        for (IMetric metric : metrics) {
+            map.put(metric.getMetricValue().getClass().getSimpleName() + ":" + metric.getLocator(), metric);
+        }
+        return map;
+    }
+}
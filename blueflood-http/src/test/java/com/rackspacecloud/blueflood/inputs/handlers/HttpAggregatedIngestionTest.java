@@ -20,6 +20,7 @@ import com.google.gson.internal.LazilyParsedNumber;
 import com.netflix.astyanax.serializers.AbstractSerializer;
 import com.rackspacecloud.blueflood.inputs.formats.AggregatedPayload;
 import com.rackspacecloud.blueflood.io.serializers.Serializers;
+import com.rackspacecloud.blueflood.types.BluefloodTimerRollup;
 import com.rackspacecloud.blueflood.types.PreaggregatedMetric;
 import org.junit.Before;
 import org.junit.Test;
@@ -87,6 +88,21 @@ public class HttpAggregatedIngestionTest {
         ensureSerializability(timers);
     }
 
+    @Test
+    public void testTimerDistributionBecomesSketch() {
+        Collection<PreaggregatedMetric> timers = PreaggregateConversions.convertTimers("1", 1, payload.getTimers());
+        BluefloodTimerRollup withSketch = null;
+        for (PreaggregatedMetric timer : timers) {
+            if (((BluefloodTimerRollup) timer.getMetricValue()).getSketch() != null) {
+                withSketch = (BluefloodTimerRollup) timer.getMetricValue();
+            }
+        }
+        assertNotNull( withSketch );
+        assertEquals( 74, withSketch.getSketch().getCount() );
+        assertEquals( 120.5d, withSketch.getQuantile(0.5), 120.5d * 0.01d );
+        assertEquals( 491d, withSketch.getQuantile(0.99), 491d * 0.01d );
+    }
+
     @Test
     public void testEnums() {
         Collection<PreaggregatedMetric> enums = PreaggregateConversions.convertEnums("1", 1, payload.getEnums());
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.inputs.handlers;
+
+import com.google.common.util.concurrent.Futures;
+import com.rackspacecloud.blueflood.http.HttpRequestWithDecodedQueryParams;
+import com.rackspacecloud.blueflood.types.IMetric;
+import com.rackspacecloud.blueflood.types.MetricsCollection;
+import com.rackspacecloud.blueflood.utils.TimeValue;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class HttpAggregatedMultiIngestionHandlerTest {
+
+    private HttpAggregatedMultiIngestionHandler handler;
+    private HttpMetricsIngestionServer.Processor processor;
+
+    private ChannelHandlerContext context;
+    private Channel channel;
+
+    private final long now = System.currentTimeMillis();
+
+    @Before
+    public void setup() throws Exception {
+        processor = mock(HttpMetricsIngestionServer.Processor.class);
+        when(processor.apply(any(MetricsCollection.class)))
+                .thenReturn(Futures.immediateFuture(Arrays.asList(true)));
+        handler = new HttpAggregatedMultiIngestionHandler(processor, new TimeValue(5, TimeUnit.SECONDS));
+
+        channel = mock(Channel.class);
+        context = mock(ChannelHandlerContext.class);
+        when(context.channel()).thenReturn(channel);
+        when(channel.write(anyString())).thenReturn(mock(ChannelFuture.class));
+    }
+
+    @Test
+    public void testMalformedBundleNextToGoodOnes() throws Exception {
+        String body = "[" +
+                gaugeBundle("good1", "1") + "," +
+                gaugeBundle("bad", "null") + "," +
+                "{\"tenantId\":\"badtimer\",\"timestamp\":" + now + ",\"timers\":[{\"name\":\"t\",\"count\":1," +
+                        "\"distribution\":{\"x\":1}}]}," +
+                gaugeBundle("good2", "2") +
+                "]";
+
+        FullHttpResponse response = handle(body);
+
+        assertEquals(HttpResponseStatus.MULTI_STATUS, response.getStatus());
+        ArgumentCaptor<MetricsCollection> collection = ArgumentCaptor.forClass(MetricsCollection.class);
+        verify(processor).apply(collection.capture());
+        List<IMetric> ingested = new ArrayList<IMetric>(collection.getValue().toMetrics());
+        assertEquals(2, ingested.size());
+        assertEquals("good1", ingested.get(0).getLocator().getTenantId());
+        assertEquals("good2", ingested.get(1).getLocator().getTenantId());
+    }
+
+    @Test
+    public void testOnlyMalformedBundlesIsBadRequest() throws Exception {
+        FullHttpResponse response = handle("[" + gaugeBundle("bad", "null") + "]");
+
+        assertEquals(HttpResponseStatus.BAD_REQUEST, response.getStatus());
+        assertTrue(response.content().toString(Charset.defaultCharset()).contains("Invalid gauge 'g'"));
+        verify(processor, never()).apply(any(MetricsCollection.class));
+    }
+
+    @Test
+    public void testInvalidTimerDistributionIsBadRequest() throws Exception {
+        FullHttpResponse response = handle("[" +
+                timerBundle("negativetiming", "{\"-5\":1}") + "," +
+                timerBundle("negativecount", "{\"5\":-1}") + "]");
+
+        assertEquals(HttpResponseStatus.BAD_REQUEST, response.getStatus());
+        String content = response.content().toString(Charset.defaultCharset());
+        assertTrue(content.contains("Invalid timer 't': Invalid timing in timer distribution: -5"));
+        assertTrue(content.contains("Invalid timer 't': Negative count -1"));
+        verify(processor, never()).apply(any(MetricsCollection.class));
+    }
+
+    private String timerBundle(String tenantId, String distribution) {
+        return "{\"tenantId\":\"" + tenantId + "\",\"timestamp\":" + now + "," +
+                "\"timers\":[{\"name\":\"t\",\"count\":1,\"distribution\":" + distribution + "}]}";
+    }
+
+    private String gaugeBundle(String tenantId, String value) {
+        return "{\"tenantId\":\"" + tenantId + "\",\"timestamp\":" + now + "," +
+                "\"gauges\":[{\"name\":\"g\",\"value\":" + value + "}]}";
+    }
+
+    private FullHttpResponse handle(String body) {
+        DefaultFullHttpRequest rawRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST,
+                "/v2.0/tenant/ingest/aggregated/multi");
+        rawRequest.content().writeBytes(Unpooled.copiedBuffer(body.getBytes()));
+        handler.handle(context, HttpRequestWithDecodedQueryParams.create(rawRequest));
+
+        ArgumentCaptor<FullHttpResponse> response = ArgumentCaptor.forClass(FullHttpResponse.class);
+        verify(channel).write(response.capture());
+        return response.getValue();
+    }
+}
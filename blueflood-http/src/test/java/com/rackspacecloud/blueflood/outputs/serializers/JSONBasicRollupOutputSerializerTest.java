@@ -21,7 +21,9 @@ import com.rackspacecloud.blueflood.outputs.formats.MetricData;
 import com.rackspacecloud.blueflood.outputs.serializers.BasicRollupsOutputSerializer.MetricStat;
 import com.rackspacecloud.blueflood.outputs.utils.PlotRequestParser;
 import com.rackspacecloud.blueflood.types.BasicRollup;
+import com.rackspacecloud.blueflood.types.BluefloodTimerRollup;
 import com.rackspacecloud.blueflood.types.Points;
+import com.rackspacecloud.blueflood.types.QuantileSketch;
 import com.rackspacecloud.blueflood.exceptions.SerializationException;
 import com.rackspacecloud.blueflood.types.SimpleNumber;
 import org.json.simple.JSONArray;
@@ -29,6 +31,7 @@ import org.json.simple.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Map;
@@ -267,6 +270,34 @@ public class JSONBasicRollupOutputSerializerTest {
             // bah. I'm too lazy to check equals.
         }
     }
+
+    @Test
+    public void testTimerQuantiles() throws Exception {
+        final JSONBasicRollupsOutputSerializer serializer = new JSONBasicRollupsOutputSerializer();
+        Points<BluefloodTimerRollup> points = new Points<BluefloodTimerRollup>();
+        points.add(new Points.Point<BluefloodTimerRollup>(1234567L, new BluefloodTimerRollup().withCount(1000)
+                .withSampleCount(1).withSketch(new QuantileSketch().add(10, 998).add(1000, 2))));
+        points.add(new Points.Point<BluefloodTimerRollup>(1235567L, new BluefloodTimerRollup().withCount(5)
+                .withSampleCount(1)));
+        final MetricData metricData = new MetricData(points, "unknown", MetricData.Type.NUMBER);
+
+        JSONObject metricDataJSON = serializer.transformRollupData(metricData, PlotRequestParser.DEFAULT_TIMER,
+                Arrays.asList(0.5, 0.999));
+        final JSONArray data = (JSONArray)metricDataJSON.get("values");
+
+        JSONObject quantiles = (JSONObject)((JSONObject)data.get(0)).get("quantiles");
+        Assert.assertEquals(10d, (Double)quantiles.get("0.5"), 10d * QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+        Assert.assertEquals(1000d, (Double)quantiles.get("0.999"), 1000d * QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+
+        // a timer without a sketch has no quantiles to return.
+        quantiles = (JSONObject)((JSONObject)data.get(1)).get("quantiles");
+        Assert.assertTrue(quantiles.containsKey("0.999"));
+        Assert.assertNull(quantiles.get("0.999"));
+
+        // and none are returned unless asked for.
+        metricDataJSON = serializer.transformRollupData(metricData, PlotRequestParser.DEFAULT_TIMER);
+        Assert.assertFalse(((JSONObject)((JSONArray)metricDataJSON.get("values")).get(0)).containsKey("quantiles"));
+    }
     
     
 }
@@ -16,6 +16,7 @@
 
 package com.rackspacecloud.blueflood.utils;
 
+import com.rackspacecloud.blueflood.exceptions.InvalidRequestException;
 import com.rackspacecloud.blueflood.outputs.serializers.BasicRollupsOutputSerializer;
 import com.rackspacecloud.blueflood.outputs.utils.PlotRequestParser;
 import junit.framework.Assert;
@@ -48,6 +49,30 @@ public class PlotRequestParserTest {
         Assert.assertTrue(filters.contains(BasicRollupsOutputSerializer.MetricStat.SUM));
     }
     
+    @Test
+    public void testQuantileParams() throws Exception {
+        Assert.assertTrue(PlotRequestParser.getQuantiles(null).isEmpty());
+        Assert.assertEquals(Arrays.asList(0.5, 0.999, 1.0),
+                PlotRequestParser.getQuantiles(Arrays.asList("0.5,0.999", "1", "0.5")));
+
+        Map<String, List<String>> params = new HashMap<String, List<String>>();
+        params.put("from", Arrays.asList("1000"));
+        params.put("to", Arrays.asList("2000"));
+        params.put("resolution", Arrays.asList("full"));
+        params.put("quantile", Arrays.asList("0.99"));
+        Assert.assertEquals(Arrays.asList(0.99), PlotRequestParser.parseParams(params).getQuantiles());
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void testQuantileMustBeANumber() throws Exception {
+        PlotRequestParser.getQuantiles(Arrays.asList("p99"));
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void testQuantileMustBeAtMostOne() throws Exception {
+        PlotRequestParser.getQuantiles(Arrays.asList("99.9"));
+    }
+
     @Test
     public void testDefaultStatsAreNotEmpty() {
         Assert.assertTrue(PlotRequestParser.DEFAULT_BASIC.size() > 0);
@@ -40,8 +40,10 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -59,7 +61,8 @@ public class CloudFilesManager implements FileManager {
     private final List<NewFileListener> listeners = new ArrayList<NewFileListener>();
     
     private String lastMarker = MarkerUtils.readLastMarker();
-    private ExecutorService downloadWorkers = Executors.newFixedThreadPool(5);
+    private ExecutorService downloadWorkers = Executors.newFixedThreadPool(
+            Configuration.getInstance().getIntegerProperty(BackFillerConfig.DOWNLOAD_THREADS));
 
     public static final long START_TIME = Configuration.getInstance().getLongProperty(BackFillerConfig.REPLAY_PERIOD_START);
     public static final long STOP_TIME = Configuration.getInstance().getLongProperty(BackFillerConfig.REPLAY_PERIOD_STOP);;
@@ -169,6 +172,7 @@ public class CloudFilesManager implements FileManager {
                 }
             } catch (IOException ex) {
                 tempFile.delete();
+                throw ex;
             } finally {
                 payload.release();
                 downloadContext.stop();
@@ -195,15 +199,26 @@ public class CloudFilesManager implements FileManager {
         //Gets key within the time range specified
         NavigableMap<Long, String> mapWithinRange = getBlobsWithinRange(pages);
 
-        //Download only for keys within that range
+        //Download only for keys within that range, all at once
+        List<Future<String>> downloads = new ArrayList<Future<String>>();
         for(Map.Entry<Long, String> blobMeta : mapWithinRange.entrySet()) {
             log.info("Downloading file: " + blobMeta.getValue());
-            downloadWorkers.submit(new BlobDownload(downloadDir, store, container, blobMeta.getValue()));
-            lastMarker = blobMeta.getValue();
-            synchronized (CloudFilesManager.this) {
-                // this is where we resume from.
-                MarkerUtils.writeLastMarker(blobMeta.getValue());
+            downloads.add(downloadWorkers.submit(new BlobDownload(downloadDir, store, container, blobMeta.getValue())));
+        }
+        // Only move the marker past files that have been downloaded, in order, so that a restart does not skip any
+        try {
+            for (Future<String> download : downloads) {
+                String name = download.get();
+                lastMarker = name;
+                synchronized (CloudFilesManager.this) {
+                    // this is where we resume from.
+                    MarkerUtils.writeLastMarker(name);
+                }
             }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Could not download files after " + lastMarker, ex.getCause());
         }
         log.info("Updated the last marker value as " + lastMarker);
     }
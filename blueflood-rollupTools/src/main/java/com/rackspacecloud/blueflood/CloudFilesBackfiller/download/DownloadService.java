@@ -20,6 +20,8 @@
 package com.rackspacecloud.blueflood.CloudFilesBackfiller.download;
 
 import com.codahale.metrics.Timer;
+import com.rackspacecloud.blueflood.CloudFilesBackfiller.service.BackFillerConfig;
+import com.rackspacecloud.blueflood.service.Configuration;
 import com.rackspacecloud.blueflood.utils.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +36,7 @@ public class DownloadService {
     private static final Logger log = LoggerFactory.getLogger(DownloadService.class);
     private static final int MAX_FILES = 5;
     private static final int MAX_UNEXPECTED_ERRORS = 5;
+    private static final int maxPendingFiles = Configuration.getInstance().getIntegerProperty(BackFillerConfig.MAX_PENDING_FILES);
     private final File downloadDir;
     private final Thread thread;
     private final Lock downloadLock = new ReentrantLock(true);
@@ -132,10 +135,15 @@ public class DownloadService {
         }
 
         Timer.Context waitTimerContext = waitingTimer.time();
-        // Possible infinite thread sleep? This will make sure we fire downloading only when are the files are consumed/merged
-        while (downloadDir.listFiles().length != 0) {
-            log.debug("Waiting for files in download directory to clear up. Sleeping for 1 min. If you see this persistently, it means the downloaded files are not getting merged properly/timely");
-            try { Thread.sleep(60000); } catch (Exception ex) {}
+        // Possible infinite thread sleep? This will make sure we keep downloading only while the files already downloaded are getting consumed/merged
+        FilenameFilter downloaded = new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".json.gz");
+            }
+        };
+        while (downloadDir.listFiles(downloaded).length >= maxPendingFiles) {
+            log.debug("Waiting for files in download directory to clear up. Sleeping for 5 secs. If you see this persistently, it means the downloaded files are not getting merged properly/timely");
+            try { Thread.sleep(5000); } catch (Exception ex) {}
         }
         waitTimerContext.stop();
         if (downloadLock.tryLock()) {
@@ -17,7 +17,10 @@ package com.rackspacecloud.blueflood.CloudFilesBackfiller.rollup.handlers;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Meter;
+import com.google.common.base.Charsets;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.rackspacecloud.blueflood.CloudFilesBackfiller.download.CloudFilesManager;
 import com.rackspacecloud.blueflood.CloudFilesBackfiller.exceptions.OutOFBandException;
 import com.rackspacecloud.blueflood.CloudFilesBackfiller.gson.CheckFromJson;
@@ -26,77 +29,120 @@ import com.rackspacecloud.blueflood.CloudFilesBackfiller.service.BackFillerConfi
 import com.rackspacecloud.blueflood.CloudFilesBackfiller.service.OutOFBandRollup;
 import com.rackspacecloud.blueflood.rollup.Granularity;
 import com.rackspacecloud.blueflood.service.Configuration;
+import com.rackspacecloud.blueflood.tools.ops.MigrationCheckpoint;
 import com.rackspacecloud.blueflood.types.*;
 import com.rackspacecloud.blueflood.utils.Metrics;
 import com.rackspacecloud.blueflood.utils.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class BuildStore {
     private static final BuildStore buildStore = new BuildStore();
     private static final Logger log = LoggerFactory.getLogger(BuildStore.class);
     // number of metrics coming in for ranges which we have already rolled up that can be tolerated
     private static final int OUT_OF_RANGE_TOLERATION_THRESHOLD = 10;
-    // please getEligibleData for better understanding of what is this parameter
+    // please awaitCompletedRanges for better understanding of what is this parameter
     private static final int RANGE_BUFFER = Configuration.getInstance().getIntegerProperty(BackFillerConfig.NUMBER_OF_BUFFERED_SLOTS);
-    private static int outOfRangeToleration = 0;
-    // Specifies the sorting order in TreeMap
+    private static final AtomicInteger outOfRangeToleration = new AtomicInteger(0);
+    // Gson instances are thread safe, and building one per file is not free
+    private static final Gson gson = new Gson();
+    // Specifies the sorting order of the buffered ranges
     private static Comparator<Range> rangeComparator = new Comparator<Range>() {
         @Override public int compare(Range r1, Range r2) {
-            return (int) (r1.getStart() - r2.getStart());
+            return r1.getStart() < r2.getStart() ? -1 : (r1.getStart() == r2.getStart() ? 0 : 1);
         }
     };
+    private static final Collection<Integer> shardsToBackfill = Collections.unmodifiableCollection(
+            Util.parseShards(Configuration.getInstance().getStringProperty(BackFillerConfig.SHARDS)));
     /*
-     * This is a concurrent version of TreeMap.
-     * Reason behind using a TreeMap : We want to keep the mapping from ranges to metrics sorted
-     * Reason for using concurrent version : We do not want to block on simultaneous read(happens in RollupGenerator), write(happens here). Both these operations should not overlap
-     * due to the range buffer
+     * Parsed points are partitioned by shard. Every parser thread locks only the shard it is adding to, and the rollup
+     * generator drains a range one shard at a time, so neither has to wait for the whole store.
      */
-    private static ConcurrentSkipListMap<Range, ConcurrentHashMap<Locator, Points>> locatorToTimestampToPoint = new ConcurrentSkipListMap<Range, ConcurrentHashMap<Locator, Points>>(rangeComparator);
-    // Fixed list of ranges within the replay period to rollup
-    private static List<Range> rangesToRollup = new ArrayList<Range>();
-    //Only one thread will be calling this. No need to make this thread safe. Shrinking subset of ranges within replay period
-    public static List<Range> rangesStillApplicable = new LinkedList<Range>();
+    private static final Map<Integer, ShardBuffer> shardBuffers = new HashMap<Integer, ShardBuffer>();
+    // Ranges which have points buffered in at least one shard, in time order
+    private static final ConcurrentSkipListSet<Range> bufferedRanges = new ConcurrentSkipListSet<Range>(rangeComparator);
+    // Signalled whenever a new range shows up in bufferedRanges, which is what makes the older ranges complete
+    private static final Lock rangesLock = new ReentrantLock();
+    private static final Condition rangeAdded = rangesLock.newCondition();
+    // Fixed set of ranges within the replay period to rollup
+    private static final Set<Range> rangesToRollup = new HashSet<Range>();
+    // Shrinking subset of ranges within replay period
+    private static final Set<Range> rangesStillApplicable = Collections.newSetFromMap(new ConcurrentHashMap<Range, Boolean>());
+    // Ranges that an earlier run has already rolled up and written
+    private static final Set<Range> rangesCompletedEarlier = Collections.newSetFromMap(new ConcurrentHashMap<Range, Boolean>());
+    private static volatile MigrationCheckpoint checkpoint;
     private static Meter completedRangesReturned = Metrics.meter(BuildStore.class, "Number of Ranges filled up meter");
     private static Meter metricsParsedAndMergedMeter = Metrics.meter(BuildStore.class, "Number of metrics parsed per unit time");
     private static Counter invalidMetricsCounter = Metrics.counter(BuildStore.class, "Invalid metrics found while parsing");
     private static Meter metricCannotBeParsed = Metrics.meter(BuildStore.class, "Unable to parse metrics");
-    private static final Collection<Integer> shardsToBackfill = Collections.unmodifiableCollection(
-            Util.parseShards(Configuration.getInstance().getStringProperty(BackFillerConfig.SHARDS)));
+    private static Meter checksInCompletedRanges = Metrics.meter(BuildStore.class, "Checks skipped because their range was rolled up by an earlier run");
 
     static {
+        Range first = null;
+        Range last = null;
         for(Range range : CloudFilesManager.ranges) {
             rangesToRollup.add(range);
             rangesStillApplicable.add(range);
+            if (first == null) {
+                first = range;
+            }
+            last = range;
+        }
+        for (int shard : shardsToBackfill) {
+            shardBuffers.put(shard, new ShardBuffer());
         }
-        log.info("Added the first range as "+rangesToRollup.get(0)+" last range as "+rangesToRollup.get(rangesToRollup.size()-1));
+        log.info("Added the first range as "+first+" last range as "+last);
     }
 
     public static BuildStore getBuilder() {
         return buildStore;
     }
 
+    /**
+     * Describes this backfill in the progress file, so that a file written for another replay period or set of shards
+     * is refused.
+     */
+    public static String describe() {
+        return String.format("backfill %d-%d shards %s", CloudFilesManager.START_TIME, CloudFilesManager.STOP_TIME,
+                Configuration.getInstance().getStringProperty(BackFillerConfig.SHARDS));
+    }
+
+    /**
+     * Records every rolled up range in {@code progress} and skips the ranges it already lists. Must be called before
+     * any file is merged.
+     */
+    public static void resumeFrom(MigrationCheckpoint progress) {
+        checkpoint = progress;
+        for (Range range : rangesToRollup) {
+            if (progress.isDone(Long.toString(range.getStart()))) {
+                rangesStillApplicable.remove(range);
+                rangesCompletedEarlier.add(range);
+            }
+        }
+        if (!rangesCompletedEarlier.isEmpty()) {
+            log.info("Skipping {} ranges rolled up by an earlier run", rangesCompletedEarlier.size());
+        }
+    }
+
     public static void merge (InputStream jsonInput) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(jsonInput));
-        Gson gson = new Gson();
-        String line = reader.readLine();
+        // Decode checks straight off the stream. Lenient mode accepts the file's concatenated top level objects.
+        JsonReader reader = new JsonReader(new InputStreamReader(jsonInput, Charsets.UTF_8));
+        reader.setLenient(true);
         try {
-            while (line != null) {
-                line = line.trim();
-                if (line.length() == 0) {
-                    line = reader.readLine();
-                    continue;
-                }
-
-                CheckFromJson checkFromJson = gson.fromJson(line, CheckFromJson.class);
+            while (reader.peek() != JsonToken.END_DOCUMENT) {
+                CheckFromJson checkFromJson = gson.fromJson(reader, CheckFromJson.class);
 
                 long timestamp = checkFromJson.getTimestamp();
                 long snappedMillis = Granularity.MIN_5.snapMillis(timestamp);
@@ -106,26 +152,25 @@ public class BuildStore {
                 // Do not add timestamps that lie out of range
                 if (!rangesToRollup.contains(rangeOfThisTimestamp)) {
                     log.warn("Timestamp of metrics of check found lying out the range: "+rangeOfThisTimestamp+" TS: "+timestamp);
-                    line = reader.readLine();
                     continue;
                 }
 
-                //These are out of band timestamps lying in the ranges which we have already rolled
-                if (rangesToRollup.contains(rangeOfThisTimestamp) && !rangesStillApplicable.contains(rangeOfThisTimestamp)) {
-                    log.warn("Range of timestamp of metrics of check " + checkFromJson.getCheckId() + "is out of applicable ranges");
-                    outOfRangeToleration++;
+                // A resumed run sees data for the ranges it finished last time. That is expected, not out of band.
+                if (rangesCompletedEarlier.contains(rangeOfThisTimestamp)) {
+                    checksInCompletedRanges.mark();
+                    continue;
+                }
 
-                    // If we are seeing a lot of out of band metrics, something is wrong. May be metrics are back logged a lot. stop immediately. try to increase the range buffer?
-                    if (outOfRangeToleration > OUT_OF_RANGE_TOLERATION_THRESHOLD) {
-                        throw new OutOFBandException("Starting to see a lot of metrics in non-applicable ranges");
-                    }
-                    line = reader.readLine();
+                //These are out of band timestamps lying in the ranges which we have already rolled
+                if (!rangesStillApplicable.contains(rangeOfThisTimestamp)) {
+                    outOfBand(checkFromJson);
                     continue;
                 }
 
                 if (!CheckFromJson.isValid(checkFromJson)) {
                     invalidMetricsCounter.inc();
                 } else {
+                    boolean outOfBand = false;
                     for (String metricName : checkFromJson.getMetricNames()) {
                         MetricPoint metricPoint;
 
@@ -160,34 +205,20 @@ public class BuildStore {
                             metricLocator = Locator.createLocatorFromDbKey(longMetricName);
                         }
 
-                        if (!shardsToBackfill.contains(Util.computeShard(metricLocator.toString()))) continue;
-
-                        // The following it required because concurrent data structure provides weak consistency. For eg. Two threads both calling get will see different results. putIfAbsent provides atomic operation
-                        ConcurrentHashMap<Locator, Points> tsToPoint = locatorToTimestampToPoint.get(rangeOfThisTimestamp);
-                        if(tsToPoint == null) {
-                            // Need to synchronize this HashMap, because multiple threads might be calling containsKey and then putting values at the same time
-                            final ConcurrentHashMap<Locator, Points> tsToPointVal = new ConcurrentHashMap<Locator, Points>();
-                            tsToPoint = locatorToTimestampToPoint.putIfAbsent(rangeOfThisTimestamp, tsToPointVal);
-                            if (tsToPoint == null) {
-                               tsToPoint = tsToPointVal;
-                            }
-                        }
+                        ShardBuffer shardBuffer = shardBuffers.get(metricLocator.getShard());
+                        if (shardBuffer == null) continue;
 
-                        Points points = tsToPoint.get(metricLocator);
-                        if (points == null) {
-                            Points pointsToPut = new Points();
-                            points = tsToPoint.putIfAbsent(metricLocator, pointsToPut);
-                            if (points == null) {
-                                points = pointsToPut;
-                            }
+                        // The range can be rolled up between the check above and this point
+                        if (shardBuffer.add(rangeOfThisTimestamp, metricLocator, new Points.Point(timestamp, new SimpleNumber(metricPoint.getValue())))) {
+                            metricsParsedAndMergedMeter.mark();
+                        } else {
+                            outOfBand = true;
                         }
-
-                        points.add(new Points.Point(timestamp, new SimpleNumber(metricPoint.getValue())));
-                        metricsParsedAndMergedMeter.mark();
+                    }
+                    if (outOfBand) {
+                        outOfBand(checkFromJson);
                     }
                 }
-
-                line = reader.readLine();
             }
         } catch (OutOFBandException e) {
             RollupGenerator.rollupExecutors.shutdownNow();
@@ -203,8 +234,24 @@ public class BuildStore {
         }
     }
 
-    public void close() {
-        locatorToTimestampToPoint.clear();
+    private static void outOfBand(CheckFromJson checkFromJson) throws OutOFBandException {
+        log.warn("Range of timestamp of metrics of check " + checkFromJson.getCheckId() + "is out of applicable ranges");
+
+        // If we are seeing a lot of out of band metrics, something is wrong. May be metrics are back logged a lot. stop immediately. try to increase the range buffer?
+        if (outOfRangeToleration.incrementAndGet() > OUT_OF_RANGE_TOLERATION_THRESHOLD) {
+            throw new OutOFBandException("Starting to see a lot of metrics in non-applicable ranges");
+        }
+    }
+
+    private static void rangeBuffered(Range range) {
+        if (bufferedRanges.add(range)) {
+            rangesLock.lock();
+            try {
+                rangeAdded.signalAll();
+            } finally {
+                rangesLock.unlock();
+            }
+        }
     }
 
     /*
@@ -212,19 +259,87 @@ public class BuildStore {
      * How are we going to decide that a particular range has been totally filled up and ready to be rolled?
      * One behaviour which we will start seeing in the buildstore is "higher" ranges starting to build up. This means the current range has almost filled up.
      * But there is still a possibility for backed up data, getting merged. So we provide RANGE_BUFFER.
-     * Basically, for every call to getEligibleData, it is going to return (n-RANGE_BUFFER) ranges to get rolled up, and keep (RANGE_BUFFER) in buildstore
-     * Also, note that returning the range, will eventually remove them from buildstore, after all rollups are completed in RollupGenerator for that range.
+     * Basically, once more than RANGE_BUFFER ranges are buffered, this returns the (n-RANGE_BUFFER) oldest ones to get rolled up, and keeps (RANGE_BUFFER) in buildstore
+     * Rather than polling, the caller is woken up as soon as a new range shows up. If none does within the timeout, an empty list is returned.
+     * Also, note that the returned ranges stay in the buildstore until RollupGenerator takes them out with removeRange.
+     */
+    public static List<Range> awaitCompletedRanges(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        rangesLock.lock();
+        try {
+            while (bufferedRanges.size() <= RANGE_BUFFER) {
+                if (remaining <= 0) {
+                    log.debug("Range buffer still not exceeded. Returning no ranges to rollup generator");
+                    return Collections.emptyList();
+                }
+                remaining = rangeAdded.awaitNanos(remaining);
+            }
+        } finally {
+            rangesLock.unlock();
+        }
+        List<Range> ranges = new ArrayList<Range>(bufferedRanges);
+        List<Range> completed = new ArrayList<Range>(ranges.subList(0, ranges.size() - RANGE_BUFFER));
+        log.info("Found completed ranges up to the threshold range of {}", completed.get(completed.size() - 1));
+        completedRangesReturned.mark();
+        return completed;
+    }
+
+    /**
+     * Stops merging data into {@code range} and takes its points out of the buildstore. This is the operation that
+     * clears memory and prevents it from blowing up!
+     *
+     * @return the points of the range, one map per shard
      */
-    public static Map<Range, ConcurrentHashMap<Locator, Points>> getEligibleData() {
-        if (locatorToTimestampToPoint.size() <= RANGE_BUFFER) {
-            log.debug("Range buffer still not exceeded. Returning null data to rollup generator");
-            return null;
-        } else {
-            Object[] sortedKeySet = locatorToTimestampToPoint.keySet().toArray();
-            Range cuttingPoint = (Range) sortedKeySet[sortedKeySet.length - RANGE_BUFFER - 1];
-            log.info("Found completed ranges up to the threshold range of {}", cuttingPoint);
-            completedRangesReturned.mark();
-            return locatorToTimestampToPoint.headMap(cuttingPoint, true);
+    public static List<Map<Locator, Points>> removeRange(Range range) {
+        rangesStillApplicable.remove(range);
+        List<Map<Locator, Points>> partitions = new ArrayList<Map<Locator, Points>>();
+        for (ShardBuffer shardBuffer : shardBuffers.values()) {
+            Map<Locator, Points> points = shardBuffer.remove(range);
+            if (points != null) {
+                partitions.add(points);
+            }
+        }
+        bufferedRanges.remove(range);
+        return partitions;
+    }
+
+    /**
+     * Records that the rollups of {@code range} have been written, so that a restarted backfill skips it.
+     */
+    public static void markCompleted(Range range) throws IOException {
+        if (checkpoint != null) {
+            checkpoint.markDone(Long.toString(range.getStart()));
+        }
+    }
+
+    private static class ShardBuffer {
+        private final Map<Range, Map<Locator, Points>> ranges = new HashMap<Range, Map<Locator, Points>>();
+
+        /**
+         * @return false if the range has been rolled up already.
+         */
+        synchronized boolean add(Range range, Locator locator, Points.Point point) {
+            // Checked under the lock, so that nothing gets added to a range after removeRange has taken it out
+            if (!rangesStillApplicable.contains(range)) {
+                return false;
+            }
+            Map<Locator, Points> locatorToPoints = ranges.get(range);
+            if (locatorToPoints == null) {
+                locatorToPoints = new HashMap<Locator, Points>();
+                ranges.put(range, locatorToPoints);
+                rangeBuffered(range);
+            }
+            Points points = locatorToPoints.get(locator);
+            if (points == null) {
+                points = new Points();
+                locatorToPoints.put(locator, points);
+            }
+            points.add(point);
+            return true;
+        }
+
+        synchronized Map<Locator, Points> remove(Range range) {
+            return ranges.remove(range);
         }
     }
 }
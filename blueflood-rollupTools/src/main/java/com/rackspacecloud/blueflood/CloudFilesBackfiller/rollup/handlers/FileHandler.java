@@ -15,6 +15,8 @@
  */
 package com.rackspacecloud.blueflood.CloudFilesBackfiller.rollup.handlers;
 
+import com.rackspacecloud.blueflood.CloudFilesBackfiller.service.BackFillerConfig;
+import com.rackspacecloud.blueflood.service.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,7 +30,8 @@ import java.util.zip.GZIPInputStream;
 public class FileHandler {
 
     private static final Logger log = LoggerFactory.getLogger(FileHandler.class);
-    protected static final ExecutorService handlerThreadPool = Executors.newFixedThreadPool(5);
+    protected static final ExecutorService handlerThreadPool = Executors.newFixedThreadPool(
+            Configuration.getInstance().getIntegerProperty(BackFillerConfig.PARSE_THREADS));
     private CountDownLatch latch;
 
 
@@ -46,8 +49,6 @@ public class FileHandler {
                 } catch (Exception ex) {
                     // something happened during parsing.
                     log.error("Could not parse {} {}", f.getAbsolutePath(), ex);
-                } finally {
-                    storeBuilder.close();
                 }
 
                 try {
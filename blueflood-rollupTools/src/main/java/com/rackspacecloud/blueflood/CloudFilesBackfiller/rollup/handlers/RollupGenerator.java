@@ -19,14 +19,18 @@ import com.rackspacecloud.blueflood.CloudFilesBackfiller.service.BackFillerConfi
 import com.rackspacecloud.blueflood.concurrent.ThreadPoolBuilder;
 import com.rackspacecloud.blueflood.service.Configuration;
 import com.rackspacecloud.blueflood.service.RollupBatchWriter;
+import com.rackspacecloud.blueflood.service.RollupExecutionContext;
 import com.rackspacecloud.blueflood.types.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class RollupGenerator implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(RollupGenerator.class);
@@ -43,40 +47,80 @@ public class RollupGenerator implements Runnable {
 
     @Override
     public void run() {
-        boolean running = true;
-        while (running) {
-            Map<Range,ConcurrentHashMap<Locator,Points>> dataToBeRolled = BuildStore.getEligibleData();
+        // Everything that stops the backfill shuts the rollup executors down before interrupting this thread. Other
+        // interrupts come from the batch writers finishing a batch.
+        while (!rollupExecutors.isShutdown()) {
             try {
-                if (dataToBeRolled != null && !dataToBeRolled.isEmpty()) {
-                    final RollupBatchWriter batchWriter = new RollupBatchWriter(batchWriterPool, null);
-                    Set<Range> ranges = dataToBeRolled.keySet();
-                    for (Range range : ranges) {
-                        // Remove the range from applicable range, so that we do not merge any more data for that range.
-                        BuildStore.rangesStillApplicable.remove(range);
-                        log.info("Removed range {} from applicable ranges", range);
-
-                        Set<Locator> locators = dataToBeRolled.get(range).keySet();
-                        for (Locator locator : locators) {
-                            rollupExecutors.submit(new RollupValidatorAndComputer(locator, range, dataToBeRolled.get(range).get(locator), batchWriter));
-                        }
-                        //This will remove the entry from the backing map in buildstore as well. This is the operation that clears memory and prevents it from blowing up!
-                        dataToBeRolled.remove(range);
-                        log.info("Removed range {} from buildstore", range);
-                        // Drain the remaining rollups
-                        batchWriter.drainBatch();
-                    }
-                } else {
-                    try {
-                        Thread.sleep(10000);
-                    } catch (InterruptedException e) {
-                        log.info("Rollup Generator Thread interrupted");
-                        running = false;
-                    }
+                for (Range range : BuildStore.awaitCompletedRanges(1, TimeUnit.MINUTES)) {
+                    rollup(range);
                 }
+            } catch (InterruptedException e) {
+                log.debug("Rollup Generator Thread interrupted");
             } catch (Throwable e) {
                 log.error("Exception encountered while calculating rollups", e);
                 throw new RuntimeException(e);
             }
         }
+        log.info("Rollup Generator Thread stopping");
+    }
+
+    private void rollup(Range range) throws Exception {
+        // Removing the range also stops any more data from being merged into it
+        List<Map<Locator, Points>> data = BuildStore.removeRange(range);
+        log.info("Removed range {} from buildstore", range);
+        rollup(range, data);
+    }
+
+    void rollup(Range range, List<Map<Locator, Points>> data) throws Exception {
+        // The batch writers interrupt the owner of the context each time a batch has been written
+        RollupExecutionContext context = new RollupExecutionContext(Thread.currentThread());
+        RollupBatchWriter batchWriter = newBatchWriter(context);
+
+        List<Future<?>> rollups = new ArrayList<Future<?>>();
+        for (Map<Locator, Points> shardData : data) {
+            for (Map.Entry<Locator, Points> locatorPoints : shardData.entrySet()) {
+                rollups.add(rollupExecutors.submit(new RollupValidatorAndComputer(locatorPoints.getKey(), range, locatorPoints.getValue(), batchWriter)));
+            }
+        }
+        for (Future<?> rollup : rollups) {
+            // batches are written while rollups are still computed, and every written batch interrupts this thread.
+            while (true) {
+                try {
+                    rollup.get();
+                    break;
+                } catch (InterruptedException e) {
+                    if (rollupExecutors.isShutdown()) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        // Drain the remaining rollups, and wait for them to be written before recording the range as done
+        while (!context.doneWriting()) {
+            batchWriter.drainBatch();
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                if (rollupExecutors.isShutdown()) {
+                    throw e;
+                }
+            }
+        }
+
+        if (context.wasSuccessful()) {
+            markCompleted(range);
+            log.info("Rolled up range {}", range);
+        } else {
+            log.error("Could not write all the rollups for range {}. It will be rolled up again by the next run", range);
+        }
+    }
+
+    RollupBatchWriter newBatchWriter(RollupExecutionContext context) {
+        return new RollupBatchWriter(batchWriterPool, context);
+    }
+
+    void markCompleted(Range range) throws IOException {
+        BuildStore.markCompleted(range);
     }
 }
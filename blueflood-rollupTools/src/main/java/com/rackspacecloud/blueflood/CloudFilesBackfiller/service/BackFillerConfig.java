@@ -29,6 +29,12 @@ public enum BackFillerConfig implements ConfigDefaults {
 
     DOWNLOAD_DIR("/tmp/metrics_gzipped_prod"),
     BATCH_SIZE("5"),
+    // number of files from a batch that are downloaded at the same time
+    DOWNLOAD_THREADS("5"),
+    // downloaded files waiting to be parsed, past which the downloader pauses
+    MAX_PENDING_FILES("10"),
+    // number of files parsed into the build store at the same time
+    PARSE_THREADS("5"),
 
     ROLLUP_DIR("/tmp/metrics_rollup_prod"),
 
@@ -15,14 +15,17 @@
  */
 package com.rackspacecloud.blueflood.CloudFilesBackfiller.service;
 
+import com.rackspacecloud.blueflood.CloudFilesBackfiller.rollup.handlers.BuildStore;
 import com.rackspacecloud.blueflood.CloudFilesBackfiller.rollup.handlers.FileHandler;
 import com.rackspacecloud.blueflood.CloudFilesBackfiller.rollup.handlers.RollupGenerator;
 import com.rackspacecloud.blueflood.service.Configuration;
+import com.rackspacecloud.blueflood.tools.ops.MigrationCheckpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.concurrent.CountDownLatch;
@@ -46,6 +49,15 @@ public class OutOFBandRollup {
         File rollupDir = new File(Configuration.getInstance().getStringProperty(BackFillerConfig.ROLLUP_DIR));
         rollupDir.mkdirs();
 
+        // ranges rolled up by an earlier run are recorded here and skipped
+        File progressFile = new File(rollupDir, "completed_ranges");
+        try {
+            BuildStore.resumeFrom(new MigrationCheckpoint(progressFile, BuildStore.describe()));
+        } catch (IOException e) {
+            log.error("Could not read the progress of earlier runs from " + progressFile, e);
+            System.exit(-1);
+        }
+
         running = true;
 
         monitoringThread = new Thread(){
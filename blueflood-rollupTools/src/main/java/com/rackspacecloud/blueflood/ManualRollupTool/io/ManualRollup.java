@@ -17,44 +17,50 @@ package com.rackspacecloud.blueflood.ManualRollupTool.io;
 
 import com.codahale.metrics.*;
 import com.codahale.metrics.Timer;
-import com.google.common.base.Function;
-import com.netflix.astyanax.model.Column;
-import com.netflix.astyanax.model.ColumnList;
-import com.netflix.astyanax.model.Row;
-import com.netflix.astyanax.recipes.reader.AllRowsReader;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.rackspacecloud.blueflood.ManualRollupTool.io.handlers.ReRollWork;
 import com.rackspacecloud.blueflood.ManualRollupTool.service.RollupToolConfig;
-import com.rackspacecloud.blueflood.concurrent.ThreadPoolBuilder;
-import com.rackspacecloud.blueflood.io.astyanax.AstyanaxIO;
 import com.rackspacecloud.blueflood.io.CassandraModel;
 import com.rackspacecloud.blueflood.io.CassandraModel.MetricColumnFamily;
+import com.rackspacecloud.blueflood.io.LocatorIO;
+import com.rackspacecloud.blueflood.io.datastax.DAbstractMetricsRW;
+import com.rackspacecloud.blueflood.io.datastax.DBasicMetricsRW;
+import com.rackspacecloud.blueflood.io.datastax.DLocatorIO;
 import com.rackspacecloud.blueflood.rollup.Granularity;
 import com.rackspacecloud.blueflood.service.*;
+import com.rackspacecloud.blueflood.tools.ops.MigrationCheckpoint;
 import com.rackspacecloud.blueflood.types.*;
 import com.rackspacecloud.blueflood.utils.Metrics;
 import com.rackspacecloud.blueflood.utils.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-rolls the enabled granularities of the configured shards using the datastax driver. The time range of every
+ * shard is split into slices, and every (shard, slice) is a unit of work of its own, which the reroll threads take
+ * from a shared queue. A shard with many locators therefore does not hold up the others. Finished units are recorded
+ * in a progress file and skipped when the tool is run again.
+ */
+public class ManualRollup {
 
-public class ManualRollup extends AstyanaxIO {
-
-    private static final Meter nullRows = Metrics.meter(ManualRollup.class, "Null Rows Found");
     private static final Timer rerollTimerPerShard = Metrics.timer(ManualRollup.class, "Time taken to rollup per shard");
-    private static final Set<MetricColumnFamily> columnFamiliesEnabled = new HashSet<MetricColumnFamily>();
-
-    private final ThreadPoolExecutor rollupExecutors = new ThreadPoolBuilder()
-                    .withUnboundedQueue()
-                    .withCorePoolSize(Configuration.getInstance().getIntegerProperty(RollupToolConfig.MAX_REROLL_THREADS))
-                    .withMaxPoolSize(Configuration.getInstance().getIntegerProperty(RollupToolConfig.MAX_REROLL_THREADS))
-                    .withName("ReRollup ThreadPool")
-                    .build();
+    private static final Set<MetricColumnFamily> columnFamiliesEnabled = new LinkedHashSet<MetricColumnFamily>();
+    private static final long REPORT_INTERVAL_SECONDS = 10;
 
     private static final Logger log = LoggerFactory.getLogger(ManualRollup.class);
     private static final long START_MILLIS = Configuration.getInstance().getLongProperty(RollupToolConfig.START_MILLIS);
     private static final long STOP_MILLIS = Configuration.getInstance().getLongProperty(RollupToolConfig.STOP_MILLIS);
+    private static final int THREADS = Configuration.getInstance().getIntegerProperty(RollupToolConfig.MAX_REROLL_THREADS);
+    private static final long SLICE_MILLIS = TimeUnit.MINUTES.toMillis(Configuration.getInstance().getIntegerProperty(RollupToolConfig.REROLL_SLICE_MINUTES));
+    private static final int READ_BATCH_SIZE = Configuration.getInstance().getIntegerProperty(RollupToolConfig.REROLL_READ_BATCH_SIZE);
+    private static final String PROGRESS_FILE = Configuration.getInstance().getStringProperty(RollupToolConfig.REROLL_PROGRESS_FILE);
     private static final Collection<Integer> shardsToManuallyRollup = Collections.unmodifiableCollection(
             Util.parseShards(Configuration.getInstance().getStringProperty(RollupToolConfig.SHARDS_TO_MANUALLY_ROLLUP)));
 
@@ -68,104 +74,169 @@ public class ManualRollup extends AstyanaxIO {
 
     }
 
+    private final LocatorIO locatorIO = new DLocatorIO();
+    private final DAbstractMetricsRW metricsRW = new DBasicMetricsRW(locatorIO);
+    private final AtomicLong rollupsWritten = new AtomicLong();
+    private final AtomicInteger unitsDone = new AtomicInteger();
+    private final AtomicInteger unitsFailed = new AtomicInteger();
+
     public void startManualRollup() {
         System.out.println("Logging all (" + columnFamiliesEnabled.size() + ") columnfamilies that we will manually rollup FROM: " + START_MILLIS + "\tTO:" + STOP_MILLIS);
         log.info("Logging all (" + columnFamiliesEnabled.size() + ") columnfamilies that we will manually rollup FROM: " + START_MILLIS + "\tTO:" + STOP_MILLIS);
         for (MetricColumnFamily columnFamily : columnFamiliesEnabled) {
             log.info("\t~\tWILL manually rollup " + columnFamily.getName());
         }
-        for (MetricColumnFamily columnFamily : columnFamiliesEnabled) {
-            log.info("\t~\t~\tSTARTING to manually rollup " + columnFamily.getName());
-            rollupCf(columnFamily);
-            log.info("\t~\t~\tFinished rolling up " + columnFamily.getName());
+
+        MigrationCheckpoint checkpoint;
+        try {
+            checkpoint = new MigrationCheckpoint(new File(PROGRESS_FILE),
+                    String.format("reroll %d-%d slices of %d ms", START_MILLIS, STOP_MILLIS, SLICE_MILLIS));
+        } catch (IOException e) {
+            log.error("Could not read the progress of earlier runs from " + PROGRESS_FILE, e);
+            throw new RuntimeException(e);
+        }
+
+        try {
+            // coarser granularities are rolled up from finer ones, so they go one after the other in increasing order.
+            for (MetricColumnFamily columnFamily : columnFamiliesEnabled) {
+                log.info("\t~\t~\tSTARTING to manually rollup " + columnFamily.getName());
+                rollupCf(columnFamily, checkpoint);
+                log.info("\t~\t~\tFinished rolling up " + columnFamily.getName());
+            }
+        } finally {
+            try {
+                checkpoint.close();
+            } catch (IOException e) {
+                log.warn("Could not close " + PROGRESS_FILE, e);
+            }
         }
         log.info("\t~\tCompleted");
     }
 
-    private void rollupCf(final MetricColumnFamily columnFamily) {
+    private void rollupCf(final MetricColumnFamily columnFamily, final MigrationCheckpoint checkpoint) {
 
         final Granularity gran = Granularity.fromString(columnFamily.getName());
-        Function<Row<Long, Locator>, Boolean> rowFunction = new Function<Row<Long, Locator>, Boolean>() {
+        List<Range> slices = slicesFor(gran, START_MILLIS, STOP_MILLIS, SLICE_MILLIS);
 
-            @Override
-            public Boolean apply(Row<Long, Locator> row) {
+        ExecutorService rollupExecutors = Executors.newFixedThreadPool(THREADS,
+                new ThreadFactoryBuilder().setNameFormat("ReRollup ThreadPool %d").build());
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("ReRollup progress").setDaemon(true).build());
+        rollupsWritten.set(0);
+        unitsDone.set(0);
+        unitsFailed.set(0);
 
-                if (!shardsToManuallyRollup.contains(row.getKey().intValue())) {
-                    log.info("\t~\t~\tSkipping shard " + row.getKey());
-                    return true;
-                }
-
-                Timer.Context rerollContext = rerollTimerPerShard.time();
+        try {
+            // read the locators of all the shards up front, in parallel.
+            Map<Integer, Future<Collection<Locator>>> locatorReads = new TreeMap<Integer, Future<Collection<Locator>>>();
+            for (final int shard : shardsToManuallyRollup) {
+                locatorReads.put(shard, rollupExecutors.submit(new Callable<Collection<Locator>>() {
+                    @Override
+                    public Collection<Locator> call() throws Exception {
+                        return locatorIO.getLocators(shard);
+                    }
+                }));
+            }
+            Map<Integer, List<Locator>> shardLocators = new TreeMap<Integer, List<Locator>>();
+            for (Map.Entry<Integer, Future<Collection<Locator>>> locatorRead : locatorReads.entrySet()) {
+                shardLocators.put(locatorRead.getKey(), new ArrayList<Locator>(locatorRead.getValue().get()));
+            }
 
-                if (row == null) {
-                    log.warn("Found a null row");
-                    nullRows.mark();
-                    return true;
+            // units of the same slice are queued together, so that the shards progress side by side.
+            final Map<Integer, AtomicInteger> slicesLeftPerShard = new HashMap<Integer, AtomicInteger>();
+            int total = 0;
+            for (Range slice : slices) {
+                for (Map.Entry<Integer, List<Locator>> shard : shardLocators.entrySet()) {
+                    String unit = unitId(columnFamily, shard.getKey(), slice);
+                    if (checkpoint.isDone(unit) || shard.getValue().isEmpty()) {
+                        continue;
+                    }
+                    AtomicInteger slicesLeft = slicesLeftPerShard.get(shard.getKey());
+                    if (slicesLeft == null) {
+                        slicesLeft = new AtomicInteger();
+                        slicesLeftPerShard.put(shard.getKey(), slicesLeft);
+                    }
+                    slicesLeft.incrementAndGet();
+                    rollupExecutors.execute(newUnit(unit, shard.getKey(), slicesLeft, shard.getValue(), gran, slice, checkpoint));
+                    total++;
                 }
-
-                log.info("\t~\t~\tReRolling up for shard " + row.getKey());
-                ColumnList<Locator> columns = row.getColumns();
-                ArrayList<ReRollWork> work = new ArrayList<ReRollWork>();
-
-                for (Column<Locator> column : columns) {
-                    Locator locator = column.getName();
-                    work.add(new ReRollWork(locator, gran, new Range(START_MILLIS, STOP_MILLIS)));
+            }
+            log.info("\t~\t~\t" + total + " units of " + slices.size() + " slices x " + shardLocators.size() + " shards left to rollup");
+
+            final long startMillis = System.currentTimeMillis();
+            final int totalUnits = total;
+            reporter.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    report(startMillis, totalUnits);
                 }
+            }, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
 
-                List<Future<Boolean>> retList = null;
-                try {
-                    retList = rollupExecutors.invokeAll(work);
-                } catch (InterruptedException e) {}
-
-                boolean notDone = true;
-
-                //We need to do this dance, because 1)We need to stop whenever an exception has encountered 2)Just keep on adding tasks to the work queue and blowing the stack. this will essentially block per shard
-                while (notDone) {
-                    int doneCount = 0;
-
-                    for(Future<Boolean> myFut : retList) {
-                        if(myFut.isDone()) {
-                            doneCount++;
-                        }
-                    }
+            rollupExecutors.shutdown();
+            while (!rollupExecutors.awaitTermination(1, TimeUnit.MINUTES)) {
+                // still rolling up.
+            }
+            report(startMillis, totalUnits);
+        } catch (Exception e) {
+            log.error("Fatal exception while re-rolling data", e);
+            throw new RuntimeException(e);
+        } finally {
+            rollupExecutors.shutdownNow();
+            reporter.shutdownNow();
+        }
 
-                    if(doneCount == retList.size())
-                        notDone = false;
-                }
+        if (unitsFailed.get() > 0) {
+            // the coarser granularities would be rolled up from incomplete data.
+            throw new RuntimeException(unitsFailed.get() + " units of " + columnFamily.getName() + " failed. Run the tool again to retry them.");
+        }
+    }
 
+    private Runnable newUnit(final String unit, final int shard, final AtomicInteger slicesLeft, List<Locator> locators,
+                             Granularity gran, Range slice, final MigrationCheckpoint checkpoint) {
+        final ReRollWork work = new ReRollWork(locators, gran, slice, metricsRW, READ_BATCH_SIZE);
+        return new Runnable() {
+            @Override
+            public void run() {
+                Timer.Context rerollContext = rerollTimerPerShard.time();
                 try {
-
-                    for (Future<Boolean> retFut : retList) {
-                        //Calling get will throw any suppressed exception from ReRoll Work
-                        retFut.get();
-                    }
-
+                    rollupsWritten.addAndGet(work.call());
+                    checkpoint.markDone(unit);
+                    unitsDone.incrementAndGet();
                 } catch (Exception e) {
-                    log.error("Fatal exception while re-rolling data", e);
-                    throw new RuntimeException();
+                    unitsFailed.incrementAndGet();
+                    log.error("Could not rollup " + unit, e);
                 } finally {
                     rerollContext.stop();
                 }
-
-                return true;
+                if (slicesLeft.decrementAndGet() == 0) {
+                    log.info("\t~\t~\tFinished shard " + shard);
+                }
             }
         };
+    }
+
+    private void report(long startMillis, int totalUnits) {
+        double seconds = Math.max(1, (System.currentTimeMillis() - startMillis) / 1000d);
+        log.info(String.format("%d/%d units done, %d failed; %d rollups (%d rollups/s)",
+                unitsDone.get(), totalUnits, unitsFailed.get(), rollupsWritten.get(), (long) (rollupsWritten.get() / seconds)));
+    }
 
+    private static String unitId(MetricColumnFamily columnFamily, int shard, Range slice) {
+        return columnFamily.getName() + "," + shard + "," + slice.getStart();
+    }
 
-        try {
-            //Get all the locators per shard one by one
-            boolean result = new AllRowsReader.Builder<Long, Locator>(getKeyspace(), CassandraModel.CF_METRICS_LOCATOR)
-                                       .withPageSize(1) //Wide rows
-                                       .withConcurrencyLevel(1)
-                                       .forEachRow(rowFunction)
-                                       .withPartitioner(null)
-                                       .build()
-                                       .call();
-        } catch (Exception e) {
-            log.error("Fatal error in AllRowsReader", e);
-            throw new RuntimeException(e);
-        } finally {
-            rollupExecutors.shutdown();
+    /**
+     * Splits the rollups of {@code gran} between {@code start} and {@code stop} into slices of about {@code sliceMillis},
+     * which never split a rollup. The slices cover the same rollups as {@link Range#rangesForInterval}.
+     */
+    static List<Range> slicesFor(Granularity gran, long start, long stop, long sliceMillis) {
+        long step = Math.max(1, sliceMillis / gran.milliseconds()) * gran.milliseconds();
+        long from = gran.snapMillis(start);
+        long to = Math.min(gran.snapMillis(stop + gran.milliseconds()), gran.snapMillis(System.currentTimeMillis()) + gran.milliseconds());
+        List<Range> slices = new ArrayList<Range>();
+        for (long sliceStart = from; sliceStart < to; sliceStart += step) {
+            slices.add(new Range(sliceStart, Math.min(sliceStart + step, to) - 1));
         }
+        return slices;
     }
 }
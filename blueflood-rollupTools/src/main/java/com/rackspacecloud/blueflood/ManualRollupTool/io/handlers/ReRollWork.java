@@ -18,10 +18,9 @@ package com.rackspacecloud.blueflood.ManualRollupTool.io.handlers;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
-import com.rackspacecloud.blueflood.io.astyanax.AstyanaxReader;
-import com.rackspacecloud.blueflood.io.astyanax.AstyanaxWriter;
 import com.rackspacecloud.blueflood.io.CassandraModel;
 import com.rackspacecloud.blueflood.io.CassandraModel.MetricColumnFamily;
+import com.rackspacecloud.blueflood.io.datastax.DAbstractMetricsRW;
 import com.rackspacecloud.blueflood.ManualRollupTool.io.ManualRollup;
 import com.rackspacecloud.blueflood.rollup.Granularity;
 import com.rackspacecloud.blueflood.service.*;
@@ -30,26 +29,43 @@ import com.rackspacecloud.blueflood.utils.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 
-public class ReRollWork implements Callable<Boolean> {
-    Locator locator;
-    Granularity gran;
-    Range range;
+/**
+ * Rolls up the locators of one shard over one slice of the time range. The finer points are read for a batch of
+ * locators at a time, and the rollups of a batch are written together.
+ */
+public class ReRollWork implements Callable<Integer> {
+    private final List<Locator> locators;
+    private final Granularity gran;
+    private final Range slice;
+    private final DAbstractMetricsRW metricsRW;
+    private final int readBatchSize;
 
     private static final Logger log = LoggerFactory.getLogger(ManualRollup.class);
     private static final Meter failedMeter = Metrics.meter(ManualRollup.class, "Metadatacache exception while grabbing rollup type");
     private static final Timer rollupTimer = Metrics.timer(ManualRollup.class, "ReRoll Timer");
+    private static final Meter rollupsWritten = Metrics.meter(ManualRollup.class, "Rollups written");
+    private static final int WRITE_BATCH_SIZE = Configuration.getInstance().getIntegerProperty(CoreConfig.ROLLUP_BATCH_MAX_SIZE);
 
-    public ReRollWork (Locator locator, Granularity gran, Range range) {
-        this.locator = locator;
+    public ReRollWork(List<Locator> locators, Granularity gran, Range slice, DAbstractMetricsRW metricsRW, int readBatchSize) {
+        this.locators = locators;
         this.gran = gran;
-        this.range = range;
+        this.slice = slice;
+        this.metricsRW = metricsRW;
+        this.readBatchSize = readBatchSize;
     }
 
+    /**
+     * @return the number of rollups written
+     */
     @Override
-    public Boolean call() throws Exception {
+    public Integer call() throws Exception {
         Timer.Context rollupTimerContext = rollupTimer.time();
+        int written = 0;
         try {
             RollupType rollupType = RollupType.BF_BASIC;
             Class<? extends Rollup> rollupClass = RollupType.classOf(rollupType, gran);
@@ -58,27 +74,55 @@ public class ReRollWork implements Callable<Boolean> {
 
             //Get Rollup Computer
             Rollup.Type rollupComputer = RollupRunnable.getRollupComputer(rollupType, gran.finer());
-            Iterable<Range> ranges = Range.rangesForInterval(gran, range.getStart(), range.getStop());
-            ArrayList<SingleRollupWriteContext> writeContexts = new ArrayList<SingleRollupWriteContext>();
 
-            for (Range r : ranges) {
-                Points input;
-                input = AstyanaxReader.getInstance().getDataToRoll(rollupClass,
-                        locator, r, srcCF);
-                Rollup rollup = rollupComputer.compute(input);
-                writeContexts.add(new SingleRollupWriteContext(rollup, new SingleRollupReadContext(locator, r, gran), dstCF));
-                AstyanaxWriter.getInstance().insertRollups(writeContexts);
+            for (int i = 0; i < locators.size(); i += readBatchSize) {
+                List<Locator> batch = locators.subList(i, Math.min(i + readBatchSize, locators.size()));
+                // one read per locator for the whole slice, instead of one per rollup
+                Map<Locator, Points> input = metricsRW.getDataToRollup(batch, rollupType, slice, srcCF.getName());
+
+                List<SingleRollupWriteContext> writeContexts = new ArrayList<SingleRollupWriteContext>();
+                for (Map.Entry<Locator, Points> locatorPoints : input.entrySet()) {
+                    for (Map.Entry<Long, Points> rollupPoints : splitByRollup(locatorPoints.getValue()).entrySet()) {
+                        Range range = new Range(rollupPoints.getKey(), rollupPoints.getKey() + gran.milliseconds() - 1);
+                        Rollup rollup = rollupComputer.compute(rollupPoints.getValue());
+                        writeContexts.add(new SingleRollupWriteContext(rollup, new SingleRollupReadContext(locatorPoints.getKey(), range, gran), dstCF));
+                    }
+                }
+
+                for (int j = 0; j < writeContexts.size(); j += WRITE_BATCH_SIZE) {
+                    metricsRW.insertRollups(writeContexts.subList(j, Math.min(j + WRITE_BATCH_SIZE, writeContexts.size())));
+                }
+                written += writeContexts.size();
+                rollupsWritten.mark(writeContexts.size());
             }
-            log.info("Calculated Rollup for : "+locator+" Granularity: "+gran+" "+" Range: "+range);
+            log.info("Calculated " + written + " rollups for " + locators.size() + " locators Granularity: " + gran + " Range: " + slice);
 
         } catch (Throwable e) {
-            log.error("ReRoll failed for Locator: "+locator+" Granularity: "+gran+" "+e.getMessage());
+            log.error("ReRoll failed for Granularity: "+gran+" Range: "+slice+" "+e.getMessage());
             failedMeter.mark();
             //throw an exception here.
             throw new Exception(e);
         } finally {
             rollupTimerContext.stop();
         }
-        return true;
+        return written;
+    }
+
+    /**
+     * Groups the points of a slice by the rollup they belong to. Rollups without points are not written.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Long, Points> splitByRollup(Points<?> points) {
+        Map<Long, Points> rollupPoints = new TreeMap<Long, Points>();
+        for (Points.Point point : points.getPoints().values()) {
+            long rollupStart = gran.snapMillis(point.getTimestamp());
+            Points pointsOfRollup = rollupPoints.get(rollupStart);
+            if (pointsOfRollup == null) {
+                pointsOfRollup = new Points();
+                rollupPoints.put(rollupStart, pointsOfRollup);
+            }
+            pointsOfRollup.add(point);
+        }
+        return rollupPoints;
     }
 }
@@ -23,6 +23,12 @@ public enum RollupToolConfig implements ConfigDefaults {
     START_MILLIS("1392811200000"), // Human time (GMT): Wed, 19 Feb 2014 12:00:00 GMT
     STOP_MILLIS("1392984000000"),  //                   Fri, 21 Feb 2014 12:00:00 GMT
     MAX_REROLL_THREADS("2"),
+    // the time range of every shard is rolled up in slices this long, each one a separate unit of work
+    REROLL_SLICE_MINUTES("360"),
+    // number of locators whose points are read together
+    REROLL_READ_BATCH_SIZE("100"),
+    // records the finished units of work, so that a restarted run skips them
+    REROLL_PROGRESS_FILE("rollup_tool.progress"),
 
     METRICS_5M_ENABLED("true"),
     METRICS_20M_ENABLED("false"),
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.CloudFilesBackfiller.rollup.handlers;
+
+import com.rackspacecloud.blueflood.CloudFilesBackfiller.download.CloudFilesManager;
+import com.rackspacecloud.blueflood.CloudFilesBackfiller.service.BackFillerConfig;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.tools.ops.MigrationCheckpoint;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.types.Points;
+import com.rackspacecloud.blueflood.types.Range;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class BuildStoreTest {
+
+    private static final Locator LOCATOR = Locator.createLocatorFromDbKey(
+            "tenant.rackspace.monitoring.entities.en.checks.agent.cpu.ch.usage");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // BuildStore is static, so every test uses ranges of its own and takes them out of the store when it is done.
+    private final List<Range> usedRanges = new ArrayList<Range>();
+
+    @BeforeClass
+    public static void setUpClass() {
+        // read when BuildStore is loaded.
+        System.setProperty(BackFillerConfig.SHARDS.toString(), "ALL");
+        System.setProperty(BackFillerConfig.NUMBER_OF_BUFFERED_SLOTS.toString(), "1");
+    }
+
+    @After
+    public void tearDown() {
+        for (Range range : usedRanges) {
+            BuildStore.removeRange(range);
+        }
+    }
+
+    @Test
+    public void testConcurrentAddsToOneShard() throws Exception {
+        final Range range = range(10);
+        final int threads = 8;
+        final int checksPerThread = 200;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> merges = new ArrayList<Future<Void>>();
+            for (int i = 0; i < threads; i++) {
+                final int thread = i;
+                merges.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        StringBuilder file = new StringBuilder();
+                        for (int j = 0; j < checksPerThread; j++) {
+                            file.append(check(range.getStart() + thread * checksPerThread + j, j));
+                        }
+                        BuildStore.merge(new ByteArrayInputStream(file.toString().getBytes("UTF-8")));
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> merge : merges) {
+                merge.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Map<Locator, Points>> partitions = BuildStore.removeRange(range);
+        Assert.assertEquals(1, partitions.size());
+        Assert.assertEquals(threads * checksPerThread, partitions.get(0).get(LOCATOR).getPoints().size());
+    }
+
+    @Test
+    public void testAwaitCompletedRangesWakesOnNewRange() throws Exception {
+        final Range first = range(20);
+        Range second = range(21);
+        merge(check(first.getStart(), 1));
+
+        // one range is kept back as the buffer, so nothing is complete yet.
+        Assert.assertTrue(BuildStore.awaitCompletedRanges(50, TimeUnit.MILLISECONDS).isEmpty());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<Range>> completed = executor.submit(new Callable<List<Range>>() {
+                @Override
+                public List<Range> call() throws Exception {
+                    return BuildStore.awaitCompletedRanges(30, TimeUnit.SECONDS);
+                }
+            });
+            Thread.sleep(200);
+            Assert.assertFalse(completed.isDone());
+
+            merge(check(second.getStart(), 2));
+            Assert.assertEquals(Collections.singletonList(first), completed.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRestartSkipsRecordedRanges() throws Exception {
+        Range done = range(30);
+        Range notDone = range(31);
+        File progressFile = new File(folder.getRoot(), "completed_ranges");
+
+        MigrationCheckpoint earlierRun = new MigrationCheckpoint(progressFile, BuildStore.describe());
+        earlierRun.markDone(Long.toString(done.getStart()));
+        earlierRun.close();
+
+        BuildStore.resumeFrom(new MigrationCheckpoint(progressFile, BuildStore.describe()));
+
+        // more checks than the out of band toleration, which would stop the backfill if they were not skipped.
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            file.append(check(done.getStart() + i, i));
+        }
+        file.append(check(notDone.getStart(), 1));
+        merge(file.toString());
+
+        Assert.assertTrue(BuildStore.removeRange(done).isEmpty());
+        List<Map<Locator, Points>> partitions = BuildStore.removeRange(notDone);
+        Assert.assertEquals(1, partitions.get(0).get(LOCATOR).getPoints().size());
+
+        BuildStore.markCompleted(notDone);
+        MigrationCheckpoint nextRun = new MigrationCheckpoint(progressFile, BuildStore.describe());
+        try {
+            Assert.assertTrue(nextRun.isDone(Long.toString(done.getStart())));
+            Assert.assertTrue(nextRun.isDone(Long.toString(notDone.getStart())));
+        } finally {
+            nextRun.close();
+        }
+    }
+
+    private Range range(int index) {
+        long start = CloudFilesManager.START_TIME + index * Granularity.MIN_5.milliseconds();
+        Range range = new Range(start, start + Granularity.MIN_5.milliseconds() - 1);
+        usedRanges.add(range);
+        return range;
+    }
+
+    private static void merge(String file) throws Exception {
+        BuildStore.merge(new ByteArrayInputStream(file.getBytes("UTF-8")));
+    }
+
+    private static String check(long timestamp, double value) {
+        return String.format("{\"timestamp\":%d,\"accountId\":\"acct\",\"tenantId\":\"tenant\",\"entityId\":\"en\"," +
+                "\"checkId\":\"ch\",\"checkType\":\"agent.cpu\",\"metrics\":{\"usage\":{\"metricType\":%d," +
+                "\"valueDbl\":%s,\"valueI64\":0,\"valueI32\":0}}}\n", timestamp, (int) 'n', value);
+    }
+}
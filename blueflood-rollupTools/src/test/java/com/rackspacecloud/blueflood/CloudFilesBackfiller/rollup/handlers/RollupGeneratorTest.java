@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Rackspace
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.rackspacecloud.blueflood.CloudFilesBackfiller.rollup.handlers;
+
+import com.rackspacecloud.blueflood.CloudFilesBackfiller.download.CloudFilesManager;
+import com.rackspacecloud.blueflood.concurrent.ThreadPoolBuilder;
+import com.rackspacecloud.blueflood.io.AbstractMetricsRW;
+import com.rackspacecloud.blueflood.rollup.Granularity;
+import com.rackspacecloud.blueflood.service.RollupBatchWriter;
+import com.rackspacecloud.blueflood.service.RollupExecutionContext;
+import com.rackspacecloud.blueflood.service.SingleRollupWriteContext;
+import com.rackspacecloud.blueflood.types.Locator;
+import com.rackspacecloud.blueflood.types.Points;
+import com.rackspacecloud.blueflood.types.Range;
+import com.rackspacecloud.blueflood.types.SimpleNumber;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.*;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class RollupGeneratorTest {
+
+    private static final int LOCATORS = 150; // well over ROLLUP_BATCH_MIN_SIZE, and over ROLLUP_BATCH_MAX_SIZE
+
+    private final Set<Locator> written = Collections.synchronizedSet(new HashSet<Locator>());
+    private final List<Range> completed = Collections.synchronizedList(new ArrayList<Range>());
+    private ThreadPoolExecutor writerPool;
+    private RollupGenerator generator;
+
+    @Before
+    public void setUp() throws Exception {
+        final AbstractMetricsRW metricsRW = mock(AbstractMetricsRW.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                for (Object context : (List<?>) invocation.getArguments()[0]) {
+                    written.add(((SingleRollupWriteContext) context).getLocator());
+                }
+                return null;
+            }
+        }).when(metricsRW).insertRollups(anyListOf(SingleRollupWriteContext.class));
+
+        writerPool = new ThreadPoolBuilder().withName("RollupGeneratorTestWriters")
+                .withCorePoolSize(2).withMaxPoolSize(2).withUnboundedQueue().build();
+        writerPool.prestartAllCoreThreads();
+        generator = new RollupGenerator() {
+            @Override
+            RollupBatchWriter newBatchWriter(RollupExecutionContext context) {
+                return new RollupBatchWriter(writerPool, context, metricsRW, metricsRW);
+            }
+
+            @Override
+            void markCompleted(Range range) {
+                completed.add(range);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        writerPool.shutdownNow();
+        // the batch writers interrupt the thread that owns the rollups, which is this one.
+        Thread.interrupted();
+    }
+
+    @Test
+    public void testEveryRollupOfARangeIsWrittenBeforeItIsCompleted() throws Exception {
+        long start = CloudFilesManager.START_TIME;
+        Range range = new Range(start, start + Granularity.MIN_5.milliseconds() - 1);
+        Map<Locator, Points> shardData = new HashMap<Locator, Points>();
+        for (int i = 0; i < LOCATORS; i++) {
+            Points<SimpleNumber> points = new Points<SimpleNumber>();
+            points.add(new Points.Point<SimpleNumber>(start + 1000, new SimpleNumber(i)));
+            shardData.put(Locator.createLocatorFromPathComponents("tenant", "metric" + i), points);
+        }
+
+        // as left over by the last batch written for the previous range.
+        Thread.currentThread().interrupt();
+        generator.rollup(range, Collections.singletonList(shardData));
+
+        Assert.assertEquals(shardData.keySet(), written);
+        Assert.assertEquals(Collections.singletonList(range), completed);
+    }
+}
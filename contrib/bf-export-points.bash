@@ -0,0 +1,22 @@
+#!/bin/bash
+
+#  Exports the points of many metrics of a tenant to a file, reading them in parallel batches.
+#
+#  Usage:
+#    bf-export-points
+#      -tenantId      [required] tenant to export.
+#      -out           [required] file to write the points to.
+#      -glob          metric name glob, resolved through the configured DISCOVERY_MODULES.
+#      -metrics       file listing the metric names to export, one per line. one of -glob and -metrics is required.
+#      -from          [optional] millis since epoch of when to start exporting. defaults to one week ago.
+#      -to            [optional] millis since epoch of when to stop exporting. defaults to right now.
+#      -resolution    [optional] one of full, 5m, 20m, 60m, 240m, 1440m. default=full
+#      -format        [optional] one of csv, json (one object per line), binary. default=csv
+#      -batch         [optional] number of metrics read together. default=50
+#      -concurrency   [optional] number of batches read at the same time. default=8
+
+WORKING_DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+CP=${WORKING_DIR}/../blueflood-all/target/blueflood-all-2.0.0-SNAPSHOT-jar-with-dependencies.jar:${WORKING_DIR}/../blueflood-core/target/classes
+
+java -classpath $CP com.rackspacecloud.blueflood.tools.ops.ExportPoints $@
@@ -0,0 +1,28 @@
+#!/bin/bash
+
+#  Copies a column family from the cluster blueflood is configured for (CASSANDRA_BINXPORT_HOSTS) to another one,
+#  using the datastax driver. Unlike bf-migrate, it can be stopped and restarted: finished token ranges are recorded
+#  in a checkpoint file and skipped when run again with the same arguments.
+#
+#  Usage:
+#    bf-migrate-datastax
+#      -dst           [required] destination cluster specified via host:port:keyspace (native protocol port).
+#      -cf            [required] which column family to migrate.
+#      -ttl           [optional] time to live (in seconds) for migrated data. defaults to the remaining ttl of each column.
+#      -from          [optional] millis since epoch (or ISO 6801 datetime) of when to start migrating data. defaults to one year ago.
+#      -to            [optional] millis since epoch (or ISO 6801 datetime) of when to stop migrating data. defaults to right now.
+#      -segments      [optional] number of token ranges to split the ring into. default=1024
+#      -threads       [optional] number of token ranges to copy at once. default=8
+#      -fetchsize     [optional] number of columns to read per page. default=1000
+#      -inflight      [optional] maximum number of writes in flight. default=256
+#      -rate          [optional] maximum number of columns per second, 0 for no limit. default=5000
+#      -mbps          [optional] maximum number of megabytes per second, 0 for no limit. default=0
+#      -checkpoint    [optional] checkpoint file. default=bf-migrate-<cf>.checkpoint
+#
+#  Exits with 1 if some token ranges failed; running it again copies just those.
+
+WORKING_DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+CP=${WORKING_DIR}/../blueflood-all/target/blueflood-all-2.0.0-SNAPSHOT-jar-with-dependencies.jar:${WORKING_DIR}/../blueflood-core/target/classes
+
+java -classpath $CP com.rackspacecloud.blueflood.tools.ops.DatastaxMigration $@